@@ -11,9 +11,11 @@ package com.ebay.sd.commons.cli;
 import static java.util.Objects.requireNonNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import org.apache.commons.cli.Option;
+import org.apache.commons.cli.ParseException;
 
 /**
  * A command argument definition.
@@ -51,13 +53,33 @@ public class Argument implements NameDescriptionSupport {
   private final String description;
   private final boolean required;
   private final int multiplicity;
+  private final Constraint[] constraints;
   private final List<String> values = new ArrayList<>();
 
   private Argument(Builder builder) {
-    this.name = requireNonNull(builder.name, "name is required");
+    this.name = requireNonNull(builder.name, "name is required").intern();
     this.description = requireNonNull(builder.description, "description is required");
     this.required = builder.required;
     this.multiplicity = requireMultiplicity(builder.multiplicity);
+    this.constraints = builder.constraints.toArray(new Constraint[builder.constraints.size()]);
+  }
+
+  private Argument(Argument argument) {
+    this.name = argument.name;
+    this.description = argument.description;
+    this.required = argument.required;
+    this.multiplicity = argument.multiplicity;
+    this.constraints = argument.constraints;
+  }
+
+  /**
+   * Create a copy of this argument definition, without any values.
+   * Used for binding the parsed values of a single command invocation.
+   *
+   * @return the new unbound argument
+   */
+  Argument unbound() {
+    return new Argument(this);
   }
 
   private int requireMultiplicity(int multiplicity) {
@@ -105,6 +127,29 @@ public class Argument implements NameDescriptionSupport {
     return multiplicity;
   }
 
+  /**
+   * Get the constraints on the values of this argument
+   *
+   * @return the constraints, or an empty list
+   */
+  public List<Constraint> getConstraints() {
+    return Collections.unmodifiableList(Arrays.asList(constraints));
+  }
+
+  /**
+   * Check the bound values against the constraints of this argument
+   *
+   * @throws ParseException if any value does not satisfy any of the constraints
+   */
+  void checkConstraints() throws ParseException {
+    if (constraints.length == 0) {
+      return;
+    }
+    for (int i = 0; i < values.size(); i++) {
+      Constraint.check(constraints, "argument", name, values.get(i));
+    }
+  }
+
   List<String> getValues() {
     return Collections.unmodifiableList(values);
   }
@@ -159,6 +204,7 @@ public class Argument implements NameDescriptionSupport {
     private String description;
     private boolean required = false;
     private int multiplicity = 1;
+    private List<Constraint> constraints = new ArrayList<>();
 
     private Builder(String name) {
       this.name = name;
@@ -221,6 +267,18 @@ public class Argument implements NameDescriptionSupport {
       return this;
     }
 
+    /**
+     * Add a constraint on the values of this argument, which is checked on each value once the values are bound
+     *
+     * @param constraint the constraint
+     * @return this builder
+     * @see Constraint
+     */
+    public Builder constraint(Constraint constraint) {
+      this.constraints.add(requireNonNull(constraint, "constraint is required"));
+      return this;
+    }
+
     /**
      * Build a new argument instance based on the settings to this builder
      *
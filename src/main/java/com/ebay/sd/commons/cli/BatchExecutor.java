@@ -0,0 +1,336 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Execute a batch of command lines with a {@link CommandsCliMain}, one command line per input line, in a single process.
+ * <p>
+ * Each line is split into arguments by whitespace, where single or double quotes group an argument which contains whitespace,
+ * and a backslash escapes the next character. Empty lines and lines which start with <tt>#</tt> are ignored. A line which
+ * fails does not stop the batch: its error is printed to the standard error as <tt>ERROR: line N: ...</tt>
+ * (<tt>N</tt> is 1-based), and its exit status is <tt>1</tt>.
+ * </p>
+ * <p>
+ * With a {@link Builder#journal(Path) journal}, the index and exit status of each completed line are appended to the
+ * journal, and the journal is synced in groups, so a long batch can be resumed after it was interrupted: running the same
+ * batch again with the same journal skips the lines which already completed. The lines which completed but were not yet
+ * synced when the process died are executed again, so the commands of a resumable batch should be idempotent.
+ * The journal records the hash of each line, and the batch fails once a line to skip does not match its record, so a batch
+ * input which was edited or regenerated since is not resumed with the journal of another input. A failed line which is
+ * {@link Builder#retryFailed(boolean) retried} may be edited, e.g. to fix it.
+ * </p>
+ * <p>
+ * For example:
+ * <pre>
+ *   BatchExecutor batch = BatchExecutor.builder(commandsCliMain)
+ *       .journal(Paths.get("batch.journal"))
+ *       .build();
+ *   BatchExecutor.Result result = batch.execute(Files.newBufferedReader(Paths.get("batch.txt")), CommandIO.system());
+ * </pre>
+ * </p>
+ */
+public class BatchExecutor {
+
+  private final CommandsCliMain main;
+  private final Path journalFile;
+  private final int syncEvery;
+  private final long syncIntervalMillis;
+  private final boolean retryFailed;
+
+  private BatchExecutor(Builder builder) {
+    this.main = builder.main;
+    this.journalFile = builder.journalFile;
+    this.syncEvery = builder.syncEvery;
+    this.syncIntervalMillis = builder.syncIntervalMillis;
+    this.retryFailed = builder.retryFailed;
+  }
+
+  /**
+   * Execute a batch
+   *
+   * @param lines the command lines
+   * @param io the IO of the commands
+   * @return the result of the batch
+   * @throws CommandException if failed to read the lines or to access the journal, or if a line does not match its
+   * record in the journal
+   */
+  public Result execute(BufferedReader lines, CommandIO io) throws CommandException {
+    requireNonNull(lines, "lines are required");
+    requireNonNull(io, "io is required");
+    BatchJournal journal = openJournal();
+    Result result = new Result();
+    try {
+      String line;
+      for (int index = 0; (line = lines.readLine()) != null; index++) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+          continue;
+        }
+        int hash = journal != null ? BatchJournal.hash(trimmed) : 0;
+        if (journal != null && (journal.isSucceeded(index) || (!retryFailed && journal.isFailed(index)))) {
+          if (!journal.matches(index, hash)) {
+            throw new CommandException("The batch input does not match the journal at line " + (index + 1) +
+                ", the journal is of another input: " + journalFile);
+          }
+          result.skipped++;
+          continue;
+        }
+        if (journal != null) {
+          journal.syncIfDue();
+        }
+        int status = executeLine(index, trimmed, io);
+        result.executed++;
+        if (status != 0) {
+          result.failed++;
+        }
+        if (journal != null) {
+          journal.append(index, hash, status);
+        }
+      }
+    } catch (IOException e) {
+      throw new CommandException("Failed to execute the batch: " + e.getMessage(), e);
+    } finally {
+      closeJournal(journal);
+    }
+    return result;
+  }
+
+  private BatchJournal openJournal() throws CommandException {
+    if (journalFile == null) {
+      return null;
+    }
+    try {
+      return new BatchJournal(journalFile, syncEvery, TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis));
+    } catch (IOException e) {
+      throw new CommandException("Failed to open the batch journal: " + e.getMessage(), e);
+    }
+  }
+
+  private static void closeJournal(BatchJournal journal) throws CommandException {
+    if (journal != null) {
+      try {
+        journal.close();
+      } catch (IOException e) {
+        throw new CommandException("Failed to close the batch journal: " + e.getMessage(), e);
+      }
+    }
+  }
+
+  private int executeLine(int index, String line, CommandIO io) {
+    try {
+      List<String> args = tokenize(line);
+      main.execute(args.toArray(new String[args.size()]), io);
+      return 0;
+    } catch (ParseException | CommandException | RuntimeException e) {
+      //A runtime exception, e.g. of a command factory, fails only its line as well
+      io.getErrWriter().println("ERROR: line " + (index + 1) + ": " + e.getMessage());
+      io.getErrWriter().flush();
+      return 1;
+    }
+  }
+
+  /**
+   * Split a command line into arguments
+   *
+   * @param line the command line
+   * @return the arguments
+   * @throws ParseException if a quote is not closed or the line ends with an escape
+   */
+  static List<String> tokenize(String line) throws ParseException {
+    List<String> args = new ArrayList<>();
+    StringBuilder arg = new StringBuilder();
+    boolean inArg = false;
+    char quote = 0;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '\\' && quote != '\'') {
+        if (++i == line.length()) {
+          throw new ParseException("Unterminated escape at the end of the line");
+        }
+        arg.append(line.charAt(i));
+        inArg = true;
+      } else if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        } else {
+          arg.append(c);
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+        inArg = true;
+      } else if (Character.isWhitespace(c)) {
+        if (inArg) {
+          args.add(arg.toString());
+          arg.setLength(0);
+          inArg = false;
+        }
+      } else {
+        arg.append(c);
+        inArg = true;
+      }
+    }
+    if (quote != 0) {
+      throw new ParseException("Unterminated quote: " + quote);
+    }
+    if (inArg) {
+      args.add(arg.toString());
+    }
+    return args;
+  }
+
+  /**
+   * Start building a batch executor
+   *
+   * @param main the commands CLI to execute the command lines with
+   * @return a new {@link Builder}
+   */
+  public static Builder builder(CommandsCliMain main) {
+    return new Builder(main);
+  }
+
+  /**
+   * The result of a batch
+   */
+  public static class Result {
+
+    private int executed;
+    private int skipped;
+    private int failed;
+
+    private Result() {
+    }
+
+    /**
+     * Get the number of lines executed in this run
+     *
+     * @return the number of executed lines
+     */
+    public int getExecuted() {
+      return executed;
+    }
+
+    /**
+     * Get the number of lines skipped since they completed in a previous run
+     *
+     * @return the number of skipped lines
+     */
+    public int getSkipped() {
+      return skipped;
+    }
+
+    /**
+     * Get the number of lines which failed in this run
+     *
+     * @return the number of failed lines
+     */
+    public int getFailed() {
+      return failed;
+    }
+
+    @Override
+    public String toString() {
+      return "Result{" +
+          "executed=" + executed +
+          ", skipped=" + skipped +
+          ", failed=" + failed +
+          '}';
+    }
+  }
+
+  /**
+   * Batch executor builder
+   *
+   * @see Builder#build()
+   */
+  public static class Builder {
+
+    private final CommandsCliMain main;
+    private Path journalFile;
+    private int syncEvery = 1000;
+    private long syncIntervalMillis = 1000;
+    private boolean retryFailed = false;
+
+    private Builder(CommandsCliMain main) {
+      this.main = requireNonNull(main, "main is required");
+    }
+
+    /**
+     * Set the journal file of the completed lines, which makes the batch resumable (default: none)
+     *
+     * @param journalFile the journal file, created if not exists
+     * @return this builder
+     */
+    public Builder journal(Path journalFile) {
+      this.journalFile = requireNonNull(journalFile, "journalFile is required");
+      return this;
+    }
+
+    /**
+     * Set the maximal number of completed lines to journal before syncing the journal (default: <tt>1000</tt>).
+     * A larger group syncs less often, and more lines may be executed again on resume.
+     *
+     * @param lines the maximal number of lines in a group
+     * @return this builder
+     */
+    public Builder syncEvery(int lines) {
+      if (lines < 1) {
+        throw new IllegalArgumentException("lines must be positive");
+      }
+      this.syncEvery = lines;
+      return this;
+    }
+
+    /**
+     * Set the maximal time to wait before syncing the journaled lines (default: <tt>1000</tt>). The interval is checked
+     * when a line completes and before the next line starts, so the lines which completed before a slow line are synced
+     * before it starts, rather than after it completes.
+     *
+     * @param millis the maximal time in milliseconds
+     * @return this builder
+     */
+    public Builder syncIntervalMillis(long millis) {
+      if (millis < 0) {
+        throw new IllegalArgumentException("millis must be non-negative");
+      }
+      this.syncIntervalMillis = millis;
+      return this;
+    }
+
+    /**
+     * Set whether to execute again the lines which failed in a previous run (default: <tt>false</tt>)
+     *
+     * @param retryFailed whether to retry failed lines
+     * @return this builder
+     */
+    public Builder retryFailed(boolean retryFailed) {
+      this.retryFailed = retryFailed;
+      return this;
+    }
+
+    /**
+     * Build a new batch executor based on the settings to this builder
+     *
+     * @return the new batch executor
+     */
+    public BatchExecutor build() {
+      return new BatchExecutor(this);
+    }
+  }
+}
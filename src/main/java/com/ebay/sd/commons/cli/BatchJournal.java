@@ -0,0 +1,265 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal of the completed lines of a batch, for resuming the batch after it was interrupted.
+ * <p>
+ * Each completed line is appended as its index, exit status and the hash of its content, e.g. <tt>"41 0 1c291ca3\n"</tt>,
+ * so resuming with a batch input which was edited since can be detected by the content of a line no longer matching its
+ * record. The records are buffered and
+ * forced to the storage device in groups, once enough records are pending or enough time passed since the last sync, so the
+ * cost of a sync is shared by many lines. Records which were not synced when the process died are lost, and their lines are
+ * executed again on resume, i.e. every line is executed at least once. A torn record at the end of the journal is ignored and overwritten.
+ * </p>
+ */
+class BatchJournal implements Closeable {
+
+  static final String HEADER = "commands-cli-batch-journal 2";
+  private static final Charset US_ASCII = Charset.forName("US-ASCII");
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int MAX_RECORD_BYTES = 40;
+  private static final int HASH_DIGITS = 8;
+
+  private final FileChannel channel;
+  private final int syncEvery;
+  private final long syncIntervalNanos;
+  private final ByteBuffer buffer;
+  private final BitSet succeeded = new BitSet();
+  private final BitSet failed = new BitSet();
+  private int[] hashes = new int[0];
+  private int pending;
+  private long lastSync = System.nanoTime();
+  private long syncCount;
+
+  /**
+   * Open a journal, reading the records of previous runs if exists
+   *
+   * @param file the journal file
+   * @param syncEvery the maximal number of records to append before syncing
+   * @param syncIntervalNanos the maximal time to wait before syncing appended records
+   * @throws IOException if failed to read or open the journal
+   */
+  BatchJournal(Path file, int syncEvery, long syncIntervalNanos) throws IOException {
+    this.syncEvery = syncEvery;
+    this.syncIntervalNanos = syncIntervalNanos;
+    this.buffer = ByteBuffer.allocate(Math.min(syncEvery, 4096) * MAX_RECORD_BYTES);
+    if (Files.exists(file)) {
+      read(file);
+    }
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    channel.truncate(lastRecordEnd());
+    channel.position(channel.size());
+    if (channel.size() == 0) {
+      buffer.put((HEADER + "\n").getBytes(US_ASCII));
+      flush(true);
+    }
+  }
+
+  private void read(Path file) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file, US_ASCII)) {
+      String header = reader.readLine();
+      if (header == null) {
+        return;
+      }
+      if (!HEADER.equals(header)) {
+        throw new IOException("Not a batch journal: " + file);
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split(" ");
+        //A torn record, written partially when the process died, is ignored
+        if (fields.length == 3 && fields[2].length() == HASH_DIGITS) {
+          try {
+            record(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), (int) Long.parseLong(fields[2], 16));
+          } catch (NumberFormatException e) {
+            //A torn record
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the position after the last complete record, so a torn record is overwritten rather than appended to
+   */
+  private long lastRecordEnd() throws IOException {
+    ByteBuffer b = ByteBuffer.allocate(1);
+    for (long position = channel.size() - 1; position >= 0; position--) {
+      b.clear();
+      if (channel.read(b, position) == 1 && b.get(0) == '\n') {
+        return position + 1;
+      }
+    }
+    return 0;
+  }
+
+  private void record(int index, int status, int hash) {
+    (status == 0 ? succeeded : failed).set(index);
+    (status == 0 ? failed : succeeded).clear(index);
+    if (index >= hashes.length) {
+      hashes = Arrays.copyOf(hashes, Math.max(index + 1, hashes.length * 2));
+    }
+    hashes[index] = hash;
+  }
+
+  /**
+   * Get the hash of the content of a line, as recorded in the journal
+   *
+   * @param line the line content
+   * @return the hash
+   */
+  static int hash(String line) {
+    CRC32 crc = new CRC32();
+    crc.update(line.getBytes(UTF_8));
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Whether the content of a line matches its record, if it has one
+   *
+   * @param index the line index
+   * @param hash the {@link #hash(String) hash} of the line content
+   * @return <tt>true</tt> if the line has no record, or its record has the same hash
+   */
+  boolean matches(int index, int hash) {
+    return !(succeeded.get(index) || failed.get(index)) || hashes[index] == hash;
+  }
+
+  /**
+   * Whether a line completed successfully in a previous run or in this run
+   *
+   * @param index the line index
+   * @return <tt>true</tt> if succeeded
+   */
+  boolean isSucceeded(int index) {
+    return succeeded.get(index);
+  }
+
+  /**
+   * Whether a line failed in its last execution
+   *
+   * @param index the line index
+   * @return <tt>true</tt> if failed
+   */
+  boolean isFailed(int index) {
+    return failed.get(index);
+  }
+
+  /**
+   * Append a record of a completed line, syncing the journal if the group of pending records is complete
+   *
+   * @param index the line index
+   * @param hash the {@link #hash(String) hash} of the line content
+   * @param status the exit status
+   * @throws IOException if failed to write or sync the journal
+   */
+  void append(int index, int hash, int status) throws IOException {
+    if (buffer.remaining() < MAX_RECORD_BYTES) {
+      flush(false);
+    }
+    putNumber(index);
+    buffer.put((byte) ' ');
+    putNumber(status);
+    buffer.put((byte) ' ');
+    for (int shift = (HASH_DIGITS - 1) * 4; shift >= 0; shift -= 4) {
+      buffer.put((byte) Character.forDigit((hash >>> shift) & 0xf, 16));
+    }
+    buffer.put((byte) '\n');
+    record(index, status, hash);
+    pending++;
+    if (pending >= syncEvery || System.nanoTime() - lastSync >= syncIntervalNanos) {
+      flush(true);
+    }
+  }
+
+  /**
+   * Sync the pending records if enough time passed since the last sync, so the records are not held back by a slow line
+   * which is about to be executed
+   *
+   * @throws IOException if failed to write or sync the journal
+   */
+  void syncIfDue() throws IOException {
+    if (pending > 0 && System.nanoTime() - lastSync >= syncIntervalNanos) {
+      flush(true);
+    }
+  }
+
+  private void putNumber(int number) {
+    if (number < 0) {
+      buffer.put((byte) '-');
+      number = -number;
+    }
+    int start = buffer.position();
+    do {
+      buffer.put((byte) ('0' + number % 10));
+      number /= 10;
+    } while (number > 0);
+    for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+      byte b = buffer.get(i);
+      buffer.put(i, buffer.get(j));
+      buffer.put(j, b);
+    }
+  }
+
+  private void flush(boolean sync) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+    if (sync) {
+      channel.force(false);
+      if (pending > 0) {
+        syncCount++;
+      }
+      pending = 0;
+      lastSync = System.nanoTime();
+    }
+  }
+
+  /**
+   * Get the number of times appended records were synced
+   *
+   * @return the sync count
+   */
+  long getSyncCount() {
+    return syncCount;
+  }
+
+  /**
+   * Sync any pending records and close the journal
+   *
+   * @throws IOException if failed to sync or close the journal
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (pending > 0 || buffer.position() > 0) {
+        flush(true);
+      }
+    } finally {
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Benchmark mode: measure the latency distribution of a command, in process.
+ * <p>
+ * When enabled with {@link #CTX_BENCH_OPTIONS_AUTO_ADD}, the {@link #BENCH_OPTION --bench N} and
+ * {@link #WARMUP_OPTION --warmup M} options are added to every command. With them, the command line is parsed, resolved and
+ * validated once, the command is created once and its {@link Command#execute() execute} method is called <tt>M</tt> times
+ * to warm up and then <tt>N</tt> times, measured. The same command instance is executed repeatedly, hence it must be
+ * re-executable, and its output is discarded. Instead, a report of the latencies (min, mean, p50, p90, p99 and max), the
+ * throughput and the bytes allocated per operation (if supported by the JVM) is printed.
+ * </p>
+ * <p>
+ * The operations are executed back to back, so a stalled operation (e.g. on a garbage collection pause) delays the
+ * operations after it, which are then not measured as delayed (coordinated omission). To avoid reporting a too optimistic
+ * distribution, latencies which exceed the median latency are also recorded as the latencies of the operations which would
+ * have been issued during the stall.
+ * </p>
+ */
+public final class Benchmark {
+
+  /**
+   * Command context key for setting whether the benchmark options should be added automatically to every command
+   * (default: <tt>false</tt>)
+   * <p>
+   * Expected value type: {@link Boolean}
+   * </p>
+   *
+   * @see CommandContext#putValue(String, Object)
+   */
+  public static final String CTX_BENCH_OPTIONS_AUTO_ADD = "bench.options.auto.add";
+  /**
+   * The option to benchmark a command with a number of measured operations
+   */
+  public static final Option BENCH_OPTION = Option.builder().longOpt("bench").hasArg().argName("N")
+      .desc("Benchmark the command with N measured executions").build();
+  /**
+   * The option to set the number of warm-up operations before the measured operations of a benchmark (default: <tt>0</tt>)
+   */
+  public static final Option WARMUP_OPTION = Option.builder().longOpt("warmup").hasArg().argName("M")
+      .desc("Warm up the benchmark with M executions (default: 0)").build();
+
+  private static final Constraint OPERATIONS = Constraint.range(1, Integer.MAX_VALUE);
+  private static final Constraint WARMUPS = Constraint.range(0, Integer.MAX_VALUE);
+
+  private final int operations;
+  private final int warmups;
+
+  Benchmark(int operations, int warmups) {
+    this.operations = operations;
+    this.warmups = warmups;
+  }
+
+  /**
+   * Create a benchmark from the parsed command line
+   *
+   * @param commandLine the command line
+   * @return the benchmark, or <tt>null</tt> if the benchmark option is not given
+   * @throws ParseException if any of the benchmark options has an invalid value
+   */
+  static Benchmark fromCommandLine(CommandLine commandLine) throws ParseException {
+    String operations = commandLine.getOptionValue(BENCH_OPTION.getLongOpt());
+    if (operations == null) {
+      return null;
+    }
+    String warmups = commandLine.getOptionValue(WARMUP_OPTION.getLongOpt(), "0");
+    Constraint.check(new Constraint[]{OPERATIONS}, "option", BENCH_OPTION.getLongOpt(), operations);
+    Constraint.check(new Constraint[]{WARMUPS}, "option", WARMUP_OPTION.getLongOpt(), warmups);
+    return new Benchmark(Integer.parseInt(operations), Integer.parseInt(warmups));
+  }
+
+  /**
+   * Run the benchmark
+   *
+   * @param command the command to execute repeatedly
+   * @return the result
+   * @throws CommandException if any of the executions failed
+   */
+  Result run(Command command) throws CommandException {
+    requireNonNull(command, "command is required");
+    for (int i = 0; i < warmups; i++) {
+      execute(command);
+    }
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+        ? (com.sun.management.ThreadMXBean) threads : null;
+    long threadId = Thread.currentThread().getId();
+    long[] latencies = new long[operations];
+    long allocatedBefore = allocations != null ? allocations.getThreadAllocatedBytes(threadId) : 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < operations; i++) {
+      long operationStart = System.nanoTime();
+      execute(command);
+      latencies[i] = System.nanoTime() - operationStart;
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocated = allocations != null ? allocations.getThreadAllocatedBytes(threadId) - allocatedBefore : -1;
+    return new Result(operations, warmups, latencies, elapsed, allocated);
+  }
+
+  private static void execute(Command command) throws CommandException {
+    try {
+      command.execute();
+    } catch (RuntimeException e) {
+      throw new CommandException("UNEXPECTED ERROR: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * The result of a benchmark
+   */
+  static class Result {
+
+    private final int operations;
+    private final int warmups;
+    private final long elapsedNanos;
+    private final long allocatedBytes;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    Result(int operations, int warmups, long[] latencies, long elapsedNanos, long allocatedBytes) {
+      this.operations = operations;
+      this.warmups = warmups;
+      this.elapsedNanos = elapsedNanos;
+      this.allocatedBytes = allocatedBytes;
+      long[] sorted = Arrays.copyOf(latencies, latencies.length);
+      Arrays.sort(sorted);
+      long expectedInterval = sorted.length > 0 ? sorted[(sorted.length - 1) / 2] : 0;
+      for (long latency : latencies) {
+        histogram.recordWithExpectedInterval(latency, expectedInterval);
+      }
+    }
+
+    int getOperations() {
+      return operations;
+    }
+
+    LatencyHistogram getHistogram() {
+      return histogram;
+    }
+
+    double getThroughput() {
+      return elapsedNanos > 0 ? operations * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * Get the bytes allocated per operation
+     *
+     * @return the allocated bytes per operation, or <tt>-1</tt> if not supported by the JVM
+     */
+    long getAllocatedBytesPerOperation() {
+      return allocatedBytes < 0 ? -1 : allocatedBytes / operations;
+    }
+
+    void print(String name, PrintWriter writer) {
+      writer.println(String.format(Locale.ROOT, "Benchmark '%s': %d operations, %d warm-up operations", name, operations, warmups));
+      printLatency(writer, "min", histogram.getMin());
+      printLatency(writer, "mean", histogram.getMean());
+      printLatency(writer, "p50", histogram.getValueAtPercentile(50));
+      printLatency(writer, "p90", histogram.getValueAtPercentile(90));
+      printLatency(writer, "p99", histogram.getValueAtPercentile(99));
+      printLatency(writer, "max", histogram.getMax());
+      writer.println(String.format(Locale.ROOT, "  %-12s %.1f ops/s", "throughput", getThroughput()));
+      long allocated = getAllocatedBytesPerOperation();
+      writer.println(String.format(Locale.ROOT, "  %-12s %s", "allocated", allocated < 0 ? "n/a" : allocated + " B/op"));
+      if (histogram.getTotalCount() > operations) {
+        writer.println(String.format(Locale.ROOT, "  (%d latencies added to correct for coordinated omission)",
+            histogram.getTotalCount() - operations));
+      }
+    }
+
+    private static void printLatency(PrintWriter writer, String label, double nanos) {
+      writer.println(String.format(Locale.ROOT, "  %-12s %s", label, formatNanos(nanos)));
+    }
+
+    static String formatNanos(double nanos) {
+      if (nanos < 1e3) {
+        return String.format(Locale.ROOT, "%.0f ns", nanos);
+      }
+      if (nanos < 1e6) {
+        return String.format(Locale.ROOT, "%.3f us", nanos / 1e3);
+      }
+      if (nanos < 1e9) {
+        return String.format(Locale.ROOT, "%.3f ms", nanos / 1e6);
+      }
+      return String.format(Locale.ROOT, "%.3f s", nanos / 1e9);
+    }
+  }
+}
@@ -10,10 +10,12 @@ package com.ebay.sd.commons.cli;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.ParseException;
 
 /**
  * A context for carrying data for command execution
@@ -23,10 +25,20 @@ public class CommandContext {
   private final CommandLine commandLine;
   private final CommandRoute commandRoute;
   private final Map<String, Object> data;
+  private final CommandIO io;
+  private final ResourceRegistry resources;
+  private volatile ParsedOptions parsedOptions;
 
   CommandContext(CommandLine commandLine, CommandRoute commandRoute, Map<String, Object> data) {
+    this(commandLine, commandRoute, data, CommandIO.system(), new ResourceRegistry());
+  }
+
+  CommandContext(CommandLine commandLine, CommandRoute commandRoute, Map<String, Object> data, CommandIO io,
+      ResourceRegistry resources) {
     this.commandLine = requireNonNull(commandLine, "commandLine is required");
     this.commandRoute = requireNonNull(commandRoute, "commandRoute is required");
+    this.io = requireNonNull(io, "io is required");
+    this.resources = requireNonNull(resources, "resources is required");
     this.data = new HashMap<>();
     if (data != null) {
       this.data.putAll(data);
@@ -42,6 +54,21 @@ public class CommandContext {
     return commandLine;
   }
 
+  /**
+   * Get an indexed view of the parsed command line options, with constant-time lookups by short or long name.
+   * The view is built once, on first call.
+   *
+   * @return the parsed options
+   */
+  public ParsedOptions getParsedOptions() {
+    ParsedOptions result = parsedOptions;
+    if (result == null) {
+      result = ParsedOptions.of(commandLine);
+      parsedOptions = result;
+    }
+    return result;
+  }
+
   /**
    * Get the resolved command route
    *
@@ -51,6 +78,84 @@ public class CommandContext {
     return commandRoute;
   }
 
+  /**
+   * Get the standard input, output and error of this command execution
+   *
+   * @return the command IO
+   */
+  public CommandIO getIO() {
+    return io;
+  }
+
+  /**
+   * Get a shared resource, which is created once on first use and shared by all the command executions
+   * of the same {@link CommandsCliMain}
+   *
+   * @param resource the shared resource declaration
+   * @param <T> the type of the resource
+   * @return the resource
+   * @throws IllegalStateException on any error creating the resource
+   */
+  public <T> T getResource(SharedResource<T> resource) {
+    return resources.get(resource);
+  }
+
+  ResourceRegistry getResources() {
+    return resources;
+  }
+
+  Map<String, Object> getData() {
+    return data;
+  }
+
+  /**
+   * Invoke another command in-process, with structured option and argument values.
+   * <p>
+   * Unlike executing a command line, the values are bound to the command directly, without parsing and resolving.
+   * The command is executed on the current thread, so interrupting the invoking command also applies to it.
+   * It shares the {@link #getIO() IO}, the {@link #getResource(SharedResource) shared resources} and the data of this
+   * context. Option values are given by short or long name, as a string (or any object, converted using
+   * {@link String#valueOf(Object)}), a collection or an array for multiple values, or <tt>true</tt> / <tt>false</tt>
+   * for an option without a value. Argument values are given by name in the same way.
+   * For example:
+   * <pre>
+   *   context.invoke(CopyCommand.DESCRIPTOR,
+   *       Collections.singletonMap("recursive", true),
+   *       Collections.singletonMap("FILE", Arrays.asList("a.txt", "b.txt")));
+   * </pre>
+   * </p>
+   *
+   * @param command the descriptor of the command to invoke
+   * @param options the option values by short or long name, or <tt>null</tt> if none
+   * @param arguments the argument values by argument name, or <tt>null</tt> if none
+   * @throws ParseException on any invalid, missing or unknown option or argument
+   * @throws CommandException on any error during the command execution
+   */
+  public void invoke(CommandDescriptor command, Map<String, ?> options, Map<String, ?> arguments)
+      throws ParseException, CommandException {
+    new CommandInvoker(this).invoke(command, options, arguments);
+  }
+
+  /**
+   * Get the output format of this command execution
+   *
+   * @return the output format, by default {@link OutputFormat#TEXT}
+   * @see OutputFormat#CTX_OUTPUT_FORMAT
+   */
+  public OutputFormat getOutputFormat() {
+    return (OutputFormat) getValue(OutputFormat.CTX_OUTPUT_FORMAT, OutputFormat.TEXT);
+  }
+
+  /**
+   * Create a record encoder which writes to the output of this command execution, in its {@link #getOutputFormat() output format}
+   *
+   * @param columns the names of the columns of the records
+   * @return the new record encoder
+   */
+  public RecordEncoder createRecordEncoder(String... columns) {
+    return RecordEncoder.create(getOutputFormat(), io.getOutWriter(), columns);
+  }
+
   /**
    * Put a context value
    *
@@ -137,8 +242,79 @@ public class CommandContext {
     return requireNonNull(getArgumentValue(name), name + " is required");
   }
 
+  /**
+   * Get the values of the argument at a given position.
+   * <p>
+   * This is a direct alternative to {@link #getArgumentValues(String)} for callers which know the position of the argument
+   * in the command definition, such as generated command binders.
+   * </p>
+   *
+   * @param index the position of the argument, based on the order of addition to the command descriptor
+   * @return the list of values, or an empty list
+   */
+  public List<String> getArgumentValues(int index) {
+    return getArgument(index).getValues();
+  }
+
+  /**
+   * Get the value of the argument at a given position. If the argument has multiple values, the first value is returned.
+   *
+   * @param index the position of the argument, based on the order of addition to the command descriptor
+   * @return the value, or <tt>null</tt> if the argument has no values
+   * @see #getArgumentValues(int)
+   */
+  public String getArgumentValue(int index) {
+    return getArgument(index).getValue();
+  }
+
+  /**
+   * Get the input source of a given input file argument. If the argument has multiple values, the first value is used.
+   *
+   * @param name the name of the argument, which must be declared as an
+   * {@link CommandDescriptor.Builder#inputFileArgument(String) input file argument}
+   * @return the input source, or <tt>null</tt> if the argument has no value
+   * @see InputSource
+   */
+  public InputSource getInputSource(String name) {
+    String value = findInputFileArgument(name).getValue();
+    return value == null ? null : InputSource.of(value, getIO());
+  }
+
+  /**
+   * Get the input sources of a given input file argument
+   *
+   * @param name the name of the argument, which must be declared as an
+   * {@link CommandDescriptor.Builder#inputFileArgument(String) input file argument}
+   * @return the input sources, or an empty list
+   * @see InputSource
+   */
+  public List<InputSource> getInputSources(String name) {
+    List<String> values = findInputFileArgument(name).getValues();
+    List<InputSource> sources = new ArrayList<>(values.size());
+    for (String value : values) {
+      sources.add(InputSource.of(value, getIO()));
+    }
+    return sources;
+  }
+
+  private Argument findInputFileArgument(String name) {
+    Argument argument = findArgument(name);
+    if (!commandRoute.hasCommand() || !commandRoute.getCommand().getInputFileArguments().contains(name)) {
+      throw new IllegalStateException("Argument is not an input file argument: " + name);
+    }
+    return argument;
+  }
+
+  private Argument getArgument(int index) {
+    List<Argument> arguments = commandRoute.getArguments();
+    if (index < 0 || index >= arguments.size()) {
+      throw new IllegalStateException("Argument not found at index: " + index);
+    }
+    return arguments.get(index);
+  }
+
   private Argument findArgument(String name) {
-    for (Argument argument : commandRoute.getCommand().getArguments()) {
+    for (Argument argument : commandRoute.getArguments()) {
       if (argument.getName().equals(name)) {
         return argument;
       }
@@ -8,12 +8,17 @@ http://www.apache.org/licenses/LICENSE-2.0.
 ************************************************************/
 package com.ebay.sd.commons.cli;
 
+import static com.ebay.sd.commons.cli.Utils.immutableList;
 import static java.lang.String.format;
-import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableSet;
 import static java.util.Objects.requireNonNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import org.apache.commons.cli.ParseException;
 
 /**
@@ -34,11 +39,38 @@ public class CommandDescriptor extends Descriptor {
 
   private final List<Argument> arguments;
   private final CommandFactory factory;
+  private final boolean cacheable;
+  private final Set<String> inputFileArguments;
+  private final List<List<String>> sampleInvocations;
+  private final String parallelArgument;
+  private final String recordArgument;
+  private final boolean watchable;
 
   private CommandDescriptor(Builder builder) {
     super(builder);
-    this.arguments = unmodifiableList(new ArrayList<>(requireNonNull(builder.args, "arguments is required")));
+    this.arguments = immutableList(requireNonNull(builder.args, "arguments is required"));
     this.factory = requireNonNull(builder.factory, "factory is required");
+    this.cacheable = builder.cacheable;
+    if (builder.recordArg != null && !builder.argumentNameExists(builder.recordArg)) {
+      throw new IllegalArgumentException(format("Record argument '%s' does not exist for command '%s'", builder.recordArg, getName()));
+    }
+    for (String name : builder.inputFileArgs) {
+      if (!builder.argumentNameExists(name)) {
+        throw new IllegalArgumentException(format("Input file argument '%s' does not exist for command '%s'", name, getName()));
+      }
+    }
+    this.inputFileArguments = builder.inputFileArgs.isEmpty() ? Collections.<String>emptySet()
+        : unmodifiableSet(new LinkedHashSet<>(builder.inputFileArgs));
+    this.sampleInvocations = immutableList(builder.sampleInvocations);
+    if (builder.parallelArg != null && !builder.argumentNameExists(builder.parallelArg)) {
+      throw new IllegalArgumentException(format("Parallel argument '%s' does not exist for command '%s'", builder.parallelArg, getName()));
+    }
+    this.parallelArgument = builder.parallelArg;
+    this.recordArgument = builder.recordArg;
+    if (builder.watchable && inputFileArguments.isEmpty()) {
+      throw new IllegalArgumentException(format("Watchable command '%s' must have input file arguments", getName()));
+    }
+    this.watchable = builder.watchable;
   }
 
   /**
@@ -50,6 +82,66 @@ public class CommandDescriptor extends Descriptor {
     return arguments;
   }
 
+  /**
+   * Whether the result of the command is cacheable, i.e. the command is idempotent and its output depends only on its route,
+   * options, argument values and the content of its {@link #getInputFileArguments() input files}
+   *
+   * @return <tt>true</tt> if cacheable
+   * @see ResultCache
+   */
+  public boolean isCacheable() {
+    return cacheable;
+  }
+
+  /**
+   * Get the names of the arguments whose values are paths of input files
+   *
+   * @return the names of the input file arguments, or an empty set
+   */
+  public Set<String> getInputFileArguments() {
+    return inputFileArguments;
+  }
+
+  /**
+   * Get the sample invocations of the command, used for warming up a long-lived process
+   *
+   * @return the sample invocations, each is a list of the options and arguments of the command, or an empty list
+   * @see CommandsCliMain.Builder#warmUp(long)
+   */
+  public List<List<String>> getSampleInvocations() {
+    return sampleInvocations;
+  }
+
+  /**
+   * Get the name of the argument whose values are processed in parallel
+   *
+   * @return the name of the parallel argument, or <tt>null</tt> if not set
+   * @see ParallelArgumentCommand
+   */
+  public String getParallelArgument() {
+    return parallelArgument;
+  }
+
+  /**
+   * Get the name of the argument whose records are processed in parallel
+   *
+   * @return the name of the record argument, or <tt>null</tt> if not set
+   * @see RecordCommand
+   */
+  public String getRecordArgument() {
+    return recordArgument;
+  }
+
+  /**
+   * Whether the command can be executed in {@link WatchMode watch mode}, using the {@link WatchMode#WATCH_OPTION watch option}
+   *
+   * @return <tt>true</tt> if watchable
+   * @see WatchMode
+   */
+  public boolean isWatchable() {
+    return watchable;
+  }
+
   /**
    * Create tne command
    *
@@ -61,6 +153,18 @@ public class CommandDescriptor extends Descriptor {
     return factory.create(commandContext);
   }
 
+  /**
+   * Release a command after it was executed successfully, to be reused if its factory supports it
+   *
+   * @param command the executed command
+   * @see PooledCommandFactory
+   */
+  void releaseCommand(Command command) {
+    if (factory instanceof PooledCommandFactory) {
+      ((PooledCommandFactory) factory).release(command);
+    }
+  }
+
   @Override
   public String toString() {
     return "CommandDescriptor{" +
@@ -88,6 +192,12 @@ public class CommandDescriptor extends Descriptor {
 
     private CommandFactory factory;
     private List<Argument> args = new ArrayList<>();
+    private boolean cacheable = false;
+    private Set<String> inputFileArgs = new LinkedHashSet<>();
+    private List<List<String>> sampleInvocations = new ArrayList<>();
+    private String parallelArg;
+    private String recordArg;
+    private boolean watchable;
 
     private Builder(String name) {
       super(name);
@@ -152,6 +262,116 @@ public class CommandDescriptor extends Descriptor {
       return this;
     }
 
+    /**
+     * Set the class of the command, or of its factory, by name. The class is loaded only when the first command is
+     * created, so building the descriptor does not load the command classes.
+     *
+     * @param className the fully qualified name of the command or command factory class
+     * @return this builder
+     * @see LazyCommandFactory
+     */
+    public Builder factoryClass(String className) {
+      this.factory = LazyCommandFactory.of(className);
+      return this;
+    }
+
+    /**
+     * Mark the command as cacheable. The result of a cacheable command may be replayed from a {@link ResultCache}
+     * instead of executing the command, if it was already executed with the same route, options, argument values and
+     * content of input files.
+     * <p>
+     * Only commands which are idempotent and do not depend on anything else (e.g. time, environment, network) should be cacheable.
+     * </p>
+     * <p>
+     * Only the standard output which the command writes through the {@link CommandContext#getIO() IO of its context} is
+     * cached, so a cacheable command must write its output through <tt>context.getIO()</tt>. Output written directly to
+     * <tt>System.out</tt>, and the standard error, are not cached and are not replayed.
+     * </p>
+     *
+     * @return this builder
+     * @see #inputFileArgument(String)
+     */
+    public Builder cacheable() {
+      this.cacheable = true;
+      return this;
+    }
+
+    /**
+     * Declare an argument whose values are paths of input files, which the result of the command depends on.
+     * The command reads them with {@link CommandContext#getInputSource(String)}, where <tt>-</tt> is the standard input.
+     *
+     * @param name the name of the argument (must be added to this builder)
+     * @return this builder
+     * @see #cacheable()
+     */
+    public Builder inputFileArgument(String name) {
+      inputFileArgs.add(requireNonNull(name, "name is required"));
+      return this;
+    }
+
+    /**
+     * Add a sample invocation of the command, which is executed repeatedly when warming up a long-lived process.
+     * <p>
+     * A sample invocation is actually executed, with its output discarded, hence it must be free of side effects.
+     * </p>
+     *
+     * @param args the options and arguments of the command (without the route path)
+     * @return this builder
+     * @see CommandsCliMain.Builder#warmUp(long)
+     */
+    public Builder sampleInvocation(String... args) {
+      sampleInvocations.add(immutableList(Arrays.asList(requireNonNull(args, "args are required"))));
+      return this;
+    }
+
+    /**
+     * Set the argument whose values are processed in parallel by a {@link ParallelArgumentCommand}.
+     * The {@link ParallelArgumentCommand#PARALLELISM_OPTION parallelism option} is added automatically.
+     *
+     * @param name the name of the argument (must be added to this builder)
+     * @return this builder
+     * @see ParallelArgumentCommand
+     */
+    public Builder parallelArgument(String name) {
+      if (parallelArg == null && recordArg == null) {
+        addOption(ParallelArgumentCommand.PARALLELISM_OPTION);
+      }
+      this.parallelArg = requireNonNull(name, "name is required");
+      return this;
+    }
+
+    /**
+     * Set the input file argument whose lines (records) are processed in parallel by a {@link RecordCommand}.
+     * The argument is also declared as an {@link #inputFileArgument(String) input file argument}, and the
+     * {@link ParallelArgumentCommand#PARALLELISM_OPTION parallelism option} is added automatically.
+     *
+     * @param name the name of the argument (must be added to this builder)
+     * @return this builder
+     * @see RecordCommand
+     */
+    public Builder recordArgument(String name) {
+      if (parallelArg == null && recordArg == null) {
+        addOption(ParallelArgumentCommand.PARALLELISM_OPTION);
+      }
+      this.recordArg = requireNonNull(name, "name is required");
+      return inputFileArgument(name);
+    }
+
+    /**
+     * Mark the command as watchable: with the {@link WatchMode#WATCH_OPTION watch option}, which is added automatically,
+     * the command is executed again whenever its {@link #inputFileArgument(String) input files} change.
+     *
+     * @return this builder
+     * @see WatchMode
+     */
+    public Builder watchable() {
+      if (!watchable) {
+        addOption(WatchMode.WATCH_OPTION);
+      }
+      this.watchable = true;
+      return this;
+    }
+
     /**
      * Build a new command descriptor based on the settings to this builder
      *
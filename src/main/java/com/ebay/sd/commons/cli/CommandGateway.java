@@ -0,0 +1,508 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * An HTTP gateway to the commands of a {@link CommandsCliMain}, for local tools which would otherwise execute the CLI
+ * as a new process for each command, and pay the JVM start-up and warm-up on each one.
+ * <p>
+ * The gateway is bound to the loopback address only. The path of the request URI is the path of sub-command names
+ * from the main route, e.g. <tt>/foo/bar</tt> for <tt>my-cli foo bar</tt>:
+ * <ul>
+ * <li><tt>POST</tt> executes the command. The body is either a JSON array of the remaining command line arguments,
+ * e.g. <tt>["-v", "file1"]</tt>, or a JSON object in the form of a {@link CommandRequest}, e.g.
+ * <tt>{"options": {"v": true, "count": 3}, "arguments": {"FILE": ["file1", "file2"]}, "stdin": "..."}</tt>.
+ * The response is a JSON object with the exit status (<tt>0</tt> on success and <tt>1</tt> on any error, same as
+ * {@link CommandsCliMain#main(String[])}) and the captured output, e.g.
+ * <tt>{"status":0,"stdout":"...","stderr":""}</tt>.</li>
+ * <li><tt>GET</tt> returns the usage help of the route or command as plain text.</li>
+ * </ul>
+ * The usage help is always returned in the response, even if a {@link UsageHelp#CTX_HELP_PRINT_WRITER help print writer}
+ * is set in the context data of the commands CLI.
+ * Requests are handled concurrently on the worker executor, each with its own {@link CommandIO}.
+ * </p>
+ * <p>
+ * Threat model: any process of any user on the machine can connect to the loopback port, and so can the web pages open in
+ * a local browser. The gateway therefore:
+ * <ul>
+ * <li>rejects requests whose <tt>Host</tt> header is not <tt>localhost</tt>, <tt>127.0.0.1</tt> or <tt>[::1]</tt> with
+ * the bound port (403), so a page of a DNS-rebinding host name cannot read the responses,</li>
+ * <li>requires <tt>Content-Type: application/json</tt> on <tt>POST</tt> (415), which a cross-site page can send only
+ * after a CORS preflight, and the gateway never approves a preflight,</li>
+ * <li>optionally requires a shared secret in the {@value #TOKEN_HEADER} header (401), see
+ * {@link Builder#token(String)}.</li>
+ * </ul>
+ * Without a token, any local process can execute any command with the privileges of the host process, so a token should
+ * be set on multi-user machines, and passed to the trusted tools out of band (e.g. in a file readable only by the user).
+ * </p>
+ * <p>
+ * For example:
+ * <pre>
+ *   CommandGateway gateway = CommandGateway.builder(commandsCliMain).port(8642).build();
+ *   gateway.start();
+ *   //...
+ *   gateway.close();
+ * </pre>
+ * </p>
+ *
+ * @see CommandsCliMain#execute(CommandRequest, CommandIO)
+ */
+public class CommandGateway implements Closeable {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final String[] NO_ARGS = new String[0];
+  /**
+   * The request header of the shared secret, if a token is set
+   *
+   * @see Builder#token(String)
+   */
+  public static final String TOKEN_HEADER = "X-Command-Gateway-Token";
+
+  private final CommandsCliMain main;
+  private final int port;
+  private final int backlog;
+  private final int maxRequestBytes;
+  private final byte[] token;
+  private final ExecutorService executor;
+  private final boolean ownedExecutor;
+  private HttpServer server;
+  private volatile int boundPort;
+
+  private CommandGateway(Builder builder) {
+    this.main = builder.main;
+    this.port = builder.port;
+    this.backlog = builder.backlog;
+    this.maxRequestBytes = builder.maxRequestBytes;
+    this.token = builder.token != null ? builder.token.getBytes(UTF_8) : null;
+    this.ownedExecutor = builder.executor == null;
+    this.executor = ownedExecutor ? createExecutor(builder.workers) : builder.executor;
+  }
+
+  private static ExecutorService createExecutor(int workers) {
+    final AtomicInteger count = new AtomicInteger();
+    return Executors.newFixedThreadPool(workers, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "command-gateway-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Start accepting requests
+   *
+   * @throws IOException if the server failed to bind
+   * @throws IllegalStateException if already started
+   */
+  public synchronized void start() throws IOException {
+    if (server != null) {
+      throw new IllegalStateException("The gateway is already started");
+    }
+    HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), backlog);
+    httpServer.createContext("/", new Handler());
+    httpServer.setExecutor(executor);
+    boundPort = httpServer.getAddress().getPort();
+    httpServer.start();
+    server = httpServer;
+  }
+
+  /**
+   * Get the address the gateway is bound to, which is useful when started on an ephemeral port
+   *
+   * @return the bound address
+   * @throws IllegalStateException if not started
+   */
+  public synchronized InetSocketAddress getAddress() {
+    if (server == null) {
+      throw new IllegalStateException("The gateway is not started");
+    }
+    return server.getAddress();
+  }
+
+  /**
+   * Stop accepting requests, and shut down the worker executor if it was created by this gateway.
+   * The commands CLI itself is not closed.
+   */
+  @Override
+  public synchronized void close() {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+    if (ownedExecutor) {
+      executor.shutdown();
+    }
+  }
+
+  private class Handler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        String method = exchange.getRequestMethod();
+        if (!isAllowedHost(exchange.getRequestHeaders().getFirst("Host"))) {
+          sendText(exchange, 403, "Invalid Host header");
+        } else if (!hasToken(exchange.getRequestHeaders().getFirst(TOKEN_HEADER))) {
+          sendText(exchange, 401, "Missing or invalid " + TOKEN_HEADER + " header");
+        } else if ("POST".equals(method) && !isJson(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+          sendText(exchange, 415, "Content-Type must be application/json");
+        } else if ("POST".equals(method)) {
+          handleExecute(exchange);
+        } else if ("GET".equals(method)) {
+          handleHelp(exchange);
+        } else {
+          exchange.getResponseHeaders().set("Allow", "GET, POST");
+          sendText(exchange, 405, "Method not allowed: " + method);
+        }
+      } catch (RuntimeException e) {
+        sendText(exchange, 500, "Internal error: " + e.getMessage());
+      } finally {
+        exchange.close();
+      }
+    }
+
+    private void handleExecute(HttpExchange exchange) throws IOException {
+      byte[] body = readBody(exchange);
+      if (body == null) {
+        sendText(exchange, 413, "Request body exceeds " + maxRequestBytes + " bytes");
+        return;
+      }
+      Object parsed;
+      try {
+        String json = new String(body, UTF_8).trim();
+        parsed = json.isEmpty() ? null : JsonParser.parse(json);
+      } catch (IllegalArgumentException e) {
+        sendText(exchange, 400, e.getMessage());
+        return;
+      }
+      List<String> path = getPath(exchange);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ByteArrayOutputStream err = new ByteArrayOutputStream();
+      int status = 0;
+      try {
+        if (parsed == null || parsed instanceof List) {
+          List<String> args = new ArrayList<>(path);
+          if (parsed != null) {
+            args.addAll(toStrings(parsed));
+          }
+          main.execute(args.toArray(NO_ARGS), createIO(null, out, err), true);
+        } else if (parsed instanceof Map) {
+          Map<?, ?> request = (Map<?, ?>) parsed;
+          CommandRequest commandRequest;
+          try {
+            commandRequest = toCommandRequest(path, request);
+          } catch (IllegalArgumentException e) {
+            sendText(exchange, 400, e.getMessage());
+            return;
+          }
+          main.execute(commandRequest, createIO(request.get("stdin"), out, err), true);
+        } else {
+          sendText(exchange, 400, "Request body must be a JSON array or object");
+          return;
+        }
+      } catch (ParseException | CommandException e) {
+        err.write(("ERROR: " + e.getMessage() + "\n").getBytes(UTF_8));
+        status = 1;
+      }
+      sendResult(exchange, status, out, err);
+    }
+
+    private void handleHelp(HttpExchange exchange) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try {
+        main.printUsage(getPath(exchange).toArray(NO_ARGS), createIO(null, out, out));
+      } catch (ParseException e) {
+        sendText(exchange, 404, e.getMessage());
+        return;
+      }
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+      exchange.sendResponseHeaders(200, out.size());
+      try (OutputStream body = exchange.getResponseBody()) {
+        out.writeTo(body);
+      }
+    }
+  }
+
+  private boolean isAllowedHost(String host) {
+    if (host == null) {
+      return false;
+    }
+    int port = boundPort;
+    String name = host.toLowerCase(Locale.ROOT);
+    if (name.endsWith(":" + port)) {
+      name = name.substring(0, name.length() - String.valueOf(port).length() - 1);
+    } else if (port != 80) {
+      return false;
+    }
+    return "localhost".equals(name) || "127.0.0.1".equals(name) || "[::1]".equals(name);
+  }
+
+  private boolean hasToken(String value) {
+    return token == null || (value != null && MessageDigest.isEqual(token, value.getBytes(UTF_8)));
+  }
+
+  private static boolean isJson(String contentType) {
+    if (contentType == null) {
+      return false;
+    }
+    int parameters = contentType.indexOf(';');
+    String mediaType = (parameters >= 0 ? contentType.substring(0, parameters) : contentType).trim();
+    return "application/json".equalsIgnoreCase(mediaType);
+  }
+
+  private byte[] readBody(HttpExchange exchange) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    try (InputStream in = exchange.getRequestBody()) {
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        if (body.size() + read > maxRequestBytes) {
+          return null;
+        }
+        body.write(buffer, 0, read);
+      }
+    }
+    return body.toByteArray();
+  }
+
+  private static List<String> getPath(HttpExchange exchange) {
+    List<String> path = new ArrayList<>();
+    for (String name : exchange.getRequestURI().getPath().split("/")) {
+      if (!name.isEmpty()) {
+        path.add(name);
+      }
+    }
+    return path;
+  }
+
+  private static CommandRequest toCommandRequest(List<String> path, Map<?, ?> request) {
+    CommandRequest.Builder builder = CommandRequest.builder(path.toArray(NO_ARGS));
+    for (Map.Entry<?, ?> option : getMap(request, "options").entrySet()) {
+      if (!Boolean.FALSE.equals(option.getValue())) {
+        builder.option(String.valueOf(option.getKey()), toStrings(option.getValue()).toArray(NO_ARGS));
+      }
+    }
+    for (Map.Entry<?, ?> argument : getMap(request, "arguments").entrySet()) {
+      builder.argument(String.valueOf(argument.getKey()), toStrings(argument.getValue()).toArray(NO_ARGS));
+    }
+    return builder.build();
+  }
+
+  private static Map<?, ?> getMap(Map<?, ?> request, String name) {
+    Object value = request.get(name);
+    if (value == null) {
+      return Collections.emptyMap();
+    }
+    if (!(value instanceof Map)) {
+      throw new IllegalArgumentException("Request member '" + name + "' must be a JSON object");
+    }
+    return (Map<?, ?>) value;
+  }
+
+  private static List<String> toStrings(Object value) {
+    List<String> values = new ArrayList<>();
+    if (value instanceof List) {
+      for (Object item : (List<?>) value) {
+        values.add(String.valueOf(item));
+      }
+    } else if (value != null && !Boolean.TRUE.equals(value)) {
+      values.add(String.valueOf(value));
+    }
+    return values;
+  }
+
+  private static CommandIO createIO(Object stdin, OutputStream out, OutputStream err) {
+    byte[] in = stdin != null ? String.valueOf(stdin).getBytes(UTF_8) : new byte[0];
+    return CommandIO.builder()
+        .in(new ByteArrayInputStream(in))
+        .out(out)
+        .err(err)
+        .interactive(false)
+        .build();
+  }
+
+  private static void sendResult(HttpExchange exchange, int status, ByteArrayOutputStream out,
+      ByteArrayOutputStream err) throws IOException {
+    ByteArrayOutputStream response = new ByteArrayOutputStream(out.size() + err.size() + 64);
+    Writer writer = new OutputStreamWriter(response, UTF_8);
+    try (RecordEncoder encoder = RecordEncoder.create(OutputFormat.JSONL, writer, "status", "stdout", "stderr")) {
+      encoder.beginRecord()
+          .value(status)
+          .value(new String(out.toByteArray(), UTF_8))
+          .value(new String(err.toByteArray(), UTF_8))
+          .endRecord();
+    }
+    writer.flush();
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(200, response.size());
+    try (OutputStream body = exchange.getResponseBody()) {
+      response.writeTo(body);
+    }
+  }
+
+  private static void sendText(HttpExchange exchange, int code, String text) throws IOException {
+    byte[] bytes = (text + "\n").getBytes(UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(code, bytes.length);
+    try (OutputStream body = exchange.getResponseBody()) {
+      body.write(bytes);
+    }
+  }
+
+  /**
+   * Start building a gateway to a commands CLI
+   *
+   * @param main the commands CLI to execute the requests
+   * @return a new {@link Builder}
+   */
+  public static Builder builder(CommandsCliMain main) {
+    return new Builder(main);
+  }
+
+  /**
+   * Command gateway builder
+   *
+   * @see Builder#build()
+   */
+  public static class Builder {
+
+    private final CommandsCliMain main;
+    private int port = 0;
+    private int backlog = 0;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int maxRequestBytes = 1024 * 1024;
+    private ExecutorService executor;
+    private String token;
+
+    private Builder(CommandsCliMain main) {
+      this.main = requireNonNull(main, "main is required");
+    }
+
+    /**
+     * Set the loopback port to listen on. The default is <tt>0</tt>, i.e. an ephemeral port.
+     *
+     * @param port the port
+     * @return this builder
+     * @see CommandGateway#getAddress()
+     */
+    public Builder port(int port) {
+      if (port < 0 || port > 0xFFFF) {
+        throw new IllegalArgumentException("Invalid port: " + port);
+      }
+      this.port = port;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of pending connections. The default is <tt>0</tt>, i.e. the system default.
+     *
+     * @param backlog the backlog
+     * @return this builder
+     */
+    public Builder backlog(int backlog) {
+      this.backlog = Utils.requireNonNegative(backlog, "backlog must be non-negative");
+      return this;
+    }
+
+    /**
+     * Set the number of worker threads of the executor created by the gateway.
+     * The default is the number of available processors.
+     *
+     * @param workers the number of worker threads
+     * @return this builder
+     */
+    public Builder workers(int workers) {
+      if (workers < 1) {
+        throw new IllegalArgumentException("workers must be positive");
+      }
+      this.workers = workers;
+      return this;
+    }
+
+    /**
+     * Set the executor to handle the requests on, instead of a fixed pool created by the gateway.
+     * The executor is not shut down when the gateway is closed.
+     *
+     * @param executor the worker executor
+     * @return this builder
+     */
+    public Builder executor(ExecutorService executor) {
+      this.executor = requireNonNull(executor, "executor is required");
+      return this;
+    }
+
+    /**
+     * Set the maximum size of a request body. The default is 1MB.
+     *
+     * @param maxRequestBytes the maximum size in bytes
+     * @return this builder
+     */
+    public Builder maxRequestBytes(int maxRequestBytes) {
+      this.maxRequestBytes = Utils.requireNonNegative(maxRequestBytes, "maxRequestBytes must be non-negative");
+      return this;
+    }
+
+    /**
+     * Set a shared secret which every request must pass in the {@value CommandGateway#TOKEN_HEADER} header.
+     * The default is none, i.e. any local process may execute commands.
+     *
+     * @param token the shared secret
+     * @return this builder
+     */
+    public Builder token(String token) {
+      requireNonNull(token, "token is required");
+      if (token.isEmpty()) {
+        throw new IllegalArgumentException("token must not be empty");
+      }
+      this.token = token;
+      return this;
+    }
+
+    /**
+     * Build a new command gateway based on the settings to this builder. The gateway is not started.
+     *
+     * @return the new command gateway
+     * @see CommandGateway#start()
+     */
+    public CommandGateway build() {
+      return new CommandGateway(this);
+    }
+  }
+}
@@ -0,0 +1,420 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The standard input, output and error of a single command execution.
+ * <p>
+ * Commands should use the IO of their {@link CommandContext#getIO() context} instead of <tt>System.in</tt>,
+ * <tt>System.out</tt> and <tt>System.err</tt>, so the same commands can be executed concurrently in a single process,
+ * each with its own IO.
+ * </p>
+ * <p>
+ * When the IO is interactive the writers are flushed on every line. By default the IO is interactive when the process is
+ * attached to a console, i.e. when <em>both</em> the standard input and output are terminals, so redirecting only the input
+ * (<tt>cmd &lt; input.txt</tt>) makes the output block buffered unless {@link Builder#interactive(boolean)} is set.
+ * A non-interactive IO block buffers the output, and flushes it only when the buffer is full or when the command execution
+ * completes.
+ * Output written to a channel is always ordered after the output previously written to the writer or the stream of the same output.
+ * </p>
+ * <p>
+ * For example:
+ * <pre>
+ *   CommandIO io = context.getIO();
+ *   io.getOutWriter().println("Copying " + file);
+ *   io.transferFrom(file);
+ * </pre>
+ * </p>
+ *
+ * @see CommandsCliMain#execute(String[], CommandIO)
+ */
+public class CommandIO implements Flushable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream in;
+  private final Output out;
+  private final Output err;
+  private final Charset charset;
+  private final boolean interactive;
+  private BufferedInputStream bufferedIn;
+  private ReadableByteChannel inChannel;
+  private BufferedReader reader;
+
+  private CommandIO(Builder builder) {
+    this.charset = builder.charset;
+    this.interactive = builder.interactive != null ? builder.interactive : System.console() != null;
+    this.in = builder.in != null ? builder.in : System.in;
+    this.out = new Output(builder.out != null ? builder.out : System.out);
+    this.err = new Output(builder.err != null ? builder.err : System.err);
+  }
+
+  /**
+   * Create IO for the current standard streams of the process, i.e. <tt>System.in</tt>, <tt>System.out</tt> and
+   * <tt>System.err</tt>. The IO is interactive if the process is attached to a
+   * console, i.e. if both the standard input and output are terminals.
+   *
+   * @return the new command IO
+   */
+  public static CommandIO system() {
+    return builder().build();
+  }
+
+  /**
+   * Whether this IO is interactive, i.e. flushes output on every line
+   *
+   * @return <tt>true</tt> if interactive
+   */
+  public boolean isInteractive() {
+    return interactive;
+  }
+
+  /**
+   * Get the charset used to encode and decode text
+   *
+   * @return the charset
+   */
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Get the standard input stream
+   *
+   * @return the input stream
+   */
+  public InputStream getIn() {
+    return in;
+  }
+
+  /**
+   * Get a buffered stream of the standard input, which supports {@link InputStream#mark(int) mark}. There is a single
+   * buffered stream per IO, shared by the {@link #getReader() reader} and the {@link InputSource input sources} of the
+   * standard input, so the bytes one of them has buffered are not lost to the others.
+   *
+   * @return the buffered input stream
+   */
+  public synchronized InputStream getBufferedIn() {
+    if (bufferedIn == null) {
+      bufferedIn = new BufferedInputStream(in);
+    }
+    return bufferedIn;
+  }
+
+  /**
+   * Get the standard input as a channel.
+   * Once the {@link #getBufferedIn() buffered stream} is in use, the channel reads through it.
+   *
+   * @return the input channel
+   */
+  public synchronized ReadableByteChannel getInChannel() {
+    if (inChannel == null) {
+      if (bufferedIn != null) {
+        inChannel = Channels.newChannel(bufferedIn);
+      } else {
+        inChannel = in instanceof FileInputStream ? ((FileInputStream) in).getChannel() : Channels.newChannel(in);
+      }
+    }
+    return inChannel;
+  }
+
+  /**
+   * Get a buffered reader of the standard input, which reads through the {@link #getBufferedIn() buffered stream}
+   *
+   * @return the input reader
+   */
+  public synchronized BufferedReader getReader() {
+    if (reader == null) {
+      reader = new BufferedReader(new InputStreamReader(getBufferedIn(), charset));
+    }
+    return reader;
+  }
+
+  /**
+   * Get the buffered standard output stream
+   *
+   * @return the output stream
+   */
+  public OutputStream getOut() {
+    return out.getStream();
+  }
+
+  /**
+   * Get the standard output as a channel
+   *
+   * @return the output channel
+   */
+  public WritableByteChannel getOutChannel() {
+    return out.getChannel();
+  }
+
+  /**
+   * Get a writer of the standard output
+   *
+   * @return the output writer
+   */
+  public PrintWriter getOutWriter() {
+    return out.getWriter();
+  }
+
+  /**
+   * Get the buffered standard error stream
+   *
+   * @return the error stream
+   */
+  public OutputStream getErr() {
+    return err.getStream();
+  }
+
+  /**
+   * Get the standard error as a channel
+   *
+   * @return the error channel
+   */
+  public WritableByteChannel getErrChannel() {
+    return err.getChannel();
+  }
+
+  /**
+   * Get a writer of the standard error
+   *
+   * @return the error writer
+   */
+  public PrintWriter getErrWriter() {
+    return err.getWriter();
+  }
+
+  /**
+   * Write the content of a file to the standard output.
+   * <p>
+   * The content is transferred using {@link FileChannel#transferTo(long, long, WritableByteChannel)}. Only when the
+   * standard output is a {@link FileOutputStream} is the transfer made to its file channel, so the operating system may
+   * avoid copying the content at all. Otherwise, including the default <tt>System.out</tt>, which is a
+   * {@link java.io.PrintStream}, the content is copied through a buffer. To stream files to the standard output of the
+   * process without copying, build the IO with <tt>out(new FileOutputStream(FileDescriptor.out))</tt>, at the cost of
+   * bypassing any redirection of <tt>System.out</tt>.
+   * </p>
+   *
+   * @param file the file to write
+   * @return the number of bytes written
+   * @throws IOException on any error reading the file or writing the output
+   */
+  public long transferFrom(Path file) throws IOException {
+    requireNonNull(file, "file is required");
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return transferFrom(channel);
+    }
+  }
+
+  /**
+   * Write the content of an open file to the standard output, same as {@link #transferFrom(Path)}
+   *
+   * @param channel the channel of the file, which is not closed
+   * @return the number of bytes written
+   * @throws IOException on any error reading the file or writing the output
+   */
+  long transferFrom(FileChannel channel) throws IOException {
+    out.flush();
+    long size = channel.size();
+    long position = 0;
+    while (position < size) {
+      position += channel.transferTo(position, size - position, out.target);
+    }
+    return position;
+  }
+
+  /**
+   * Flush the standard output and the standard error
+   *
+   * @throws IOException on any error flushing the output
+   */
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+    err.flush();
+  }
+
+  /**
+   * Start building a new command IO. Any stream which is not set uses the respective standard stream of the process.
+   *
+   * @return a new {@link Builder}
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private class Output {
+
+    private final OutputStream raw;
+    private final WritableByteChannel target;
+    private final WritableByteChannel channel;
+    private BufferedOutputStream stream;
+    private PrintWriter writer;
+
+    Output(OutputStream raw) {
+      this.raw = raw;
+      this.target = raw instanceof FileOutputStream ? ((FileOutputStream) raw).getChannel() : Channels.newChannel(raw);
+      this.channel = new WritableByteChannel() {
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+          Output.this.flush();
+          return target.write(src);
+        }
+
+        @Override
+        public boolean isOpen() {
+          return target.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+          Output.this.flush();
+        }
+      };
+    }
+
+    synchronized OutputStream getStream() {
+      if (stream == null) {
+        stream = new BufferedOutputStream(raw, BUFFER_SIZE);
+      } else if (writer != null) {
+        writer.flush();
+      }
+      return stream;
+    }
+
+    WritableByteChannel getChannel() {
+      return channel;
+    }
+
+    synchronized PrintWriter getWriter() {
+      if (writer == null) {
+        writer = new PrintWriter(new OutputStreamWriter(getStream(), charset), interactive);
+      }
+      return writer;
+    }
+
+    synchronized void flush() throws IOException {
+      if (writer != null) {
+        writer.flush();
+      }
+      if (stream != null) {
+        stream.flush();
+      }
+      raw.flush();
+    }
+  }
+
+  /**
+   * Command IO builder
+   *
+   * @see #builder()
+   */
+  public static class Builder {
+
+    private InputStream in;
+    private OutputStream out;
+    private OutputStream err;
+    private Boolean interactive;
+    private Charset charset = Charset.defaultCharset();
+
+    private Builder() {
+    }
+
+    /**
+     * Set the standard input (default: <tt>System.in</tt>)
+     *
+     * @param in the input stream
+     * @return this builder
+     */
+    public Builder in(InputStream in) {
+      this.in = requireNonNull(in, "in is required");
+      return this;
+    }
+
+    /**
+     * Set the standard output (default: <tt>System.out</tt>).
+     * A {@link FileOutputStream} is written directly through its channel when transferring files.
+     *
+     * @param out the output stream
+     * @return this builder
+     */
+    public Builder out(OutputStream out) {
+      this.out = requireNonNull(out, "out is required");
+      return this;
+    }
+
+    /**
+     * Set the standard error (default: <tt>System.err</tt>)
+     *
+     * @param err the error stream
+     * @return this builder
+     */
+    public Builder err(OutputStream err) {
+      this.err = requireNonNull(err, "err is required");
+      return this;
+    }
+
+    /**
+     * Set whether the IO is interactive, i.e. flushes output on every line
+     * (default: <tt>true</tt> if the process is attached to a console, i.e. both the
+     * standard input and output are terminals)
+     *
+     * @param interactive whether the IO is interactive
+     * @return this builder
+     */
+    public Builder interactive(boolean interactive) {
+      this.interactive = interactive;
+      return this;
+    }
+
+    /**
+     * Set the charset used to encode and decode text (default: the default charset of the JVM)
+     *
+     * @param charset the charset
+     * @return this builder
+     */
+    public Builder charset(Charset charset) {
+      this.charset = requireNonNull(charset, "charset is required");
+      return this;
+    }
+
+    /**
+     * Build the command IO
+     *
+     * @return the new command IO
+     */
+    public CommandIO build() {
+      return new CommandIO(this);
+    }
+  }
+}
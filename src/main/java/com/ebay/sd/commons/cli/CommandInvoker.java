@@ -0,0 +1,212 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.MissingArgumentException;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.UnrecognizedOptionException;
+
+/**
+ * Command invoker.
+ * <p>
+ * Responsible for invoking a command from within another command, with structured option and argument values.
+ * The command line and the command route are built directly from the values, skipping the parsing and resolving stages.
+ * </p>
+ *
+ * @see CommandContext#invoke(CommandDescriptor, Map, Map)
+ */
+class CommandInvoker {
+
+  private final CommandContext parent;
+
+  CommandInvoker(CommandContext parent) {
+    this.parent = requireNonNull(parent, "parent context is required");
+  }
+
+  /**
+   * Invoke a command on the current thread, sharing the IO, the resources and the data of the parent context
+   *
+   * @param command the command to invoke
+   * @param options the option values by short or long name
+   * @param arguments the argument values by name
+   * @throws ParseException on any invalid option or argument value
+   * @throws CommandException on any error during the command execution, or if the current thread is interrupted
+   */
+  void invoke(CommandDescriptor command, Map<String, ?> options, Map<String, ?> arguments)
+      throws ParseException, CommandException {
+    requireNonNull(command, "command is required");
+    CommandLine.Builder commandLine = new CommandLine.Builder();
+    bindOptions(commandLine, indexOptions(command.getOptions()),
+        options != null ? options : Collections.<String, Object>emptyMap());
+    List<Argument> boundArguments = bindArguments(commandLine, command,
+        arguments != null ? arguments : Collections.<String, Object>emptyMap());
+    CommandLine builtCommandLine = commandLine.build();
+    CommandRouteResolver.validateNoMissingOptions(builtCommandLine, command);
+    CommandRoute route = CommandRoute.builder().command(command).build().withArguments(boundArguments);
+    CommandRouteResolver.validateOptionConstraints(builtCommandLine, route);
+    if (Thread.currentThread().isInterrupted()) {
+      throw new CommandException("Interrupted before invoking command: " + command.getName());
+    }
+    CommandContext context = new CommandContext(builtCommandLine, route, parent.getData(), parent.getIO(),
+        parent.getResources());
+    Command instance = command.createCommand(context);
+    instance.execute();
+    command.releaseCommand(instance);
+  }
+
+  /**
+   * Index option definitions by both short and long name
+   *
+   * @param options the option definitions
+   * @return the options by name
+   */
+  static Map<String, Option> indexOptions(Collection<Option> options) {
+    Map<String, Option> definitions = new HashMap<>();
+    for (Option option : options) {
+      if (option.getOpt() != null) {
+        definitions.put(option.getOpt(), option);
+      }
+      if (option.getLongOpt() != null) {
+        definitions.put(option.getLongOpt(), option);
+      }
+    }
+    return definitions;
+  }
+
+  /**
+   * Bind option values to a command line, validating them against the option definitions
+   *
+   * @param commandLine the command line to add the options to
+   * @param definitions the option definitions by short and long name
+   * @param options the option values by short or long name
+   * @throws ParseException on any unknown option or invalid value
+   */
+  static void bindOptions(CommandLine.Builder commandLine, Map<String, Option> definitions, Map<String, ?> options)
+      throws ParseException {
+    for (Map.Entry<String, ?> entry : options.entrySet()) {
+      Option definition = definitions.get(entry.getKey());
+      if (definition == null) {
+        throw new UnrecognizedOptionException("Unrecognized option: " + entry.getKey(), entry.getKey());
+      }
+      Object value = entry.getValue();
+      if (Boolean.FALSE.equals(value)) {
+        continue;
+      }
+      Option option = (Option) definition.clone();
+      List<String> values = toStrings(value);
+      if (!option.hasArg() && !values.isEmpty()) {
+        throw new ParseException("Option does not take a value: " + entry.getKey());
+      }
+      if (option.hasArg() && values.isEmpty() && !option.hasOptionalArg()) {
+        throw new MissingArgumentException(option);
+      }
+      if (option.hasArg() && option.getArgs() != Option.UNLIMITED_VALUES && values.size() > option.getArgs()) {
+        throw new ParseException("Too many values for option: " + entry.getKey());
+      }
+      option.getValuesList().addAll(values);
+      commandLine.addOption(option);
+    }
+  }
+
+  /**
+   * Bind argument values to copies of the arguments of a command, and add them to the command line args,
+   * validating them the same way as parsed arguments
+   *
+   * @param commandLine the command line to add the argument values to
+   * @param command the command
+   * @param arguments the argument values by argument name
+   * @return the bound arguments
+   * @throws ParseException on any unknown argument, or missing or too many values
+   */
+  static List<Argument> bindArguments(CommandLine.Builder commandLine, CommandDescriptor command,
+      Map<String, ?> arguments) throws ParseException {
+    int bound = 0;
+    List<Argument> boundArguments = new ArrayList<>(command.getArguments().size());
+    for (Argument definition : command.getArguments()) {
+      Argument argument = definition.unbound();
+      Object argumentValues = arguments.get(argument.getName());
+      if (argumentValues != null || arguments.containsKey(argument.getName())) {
+        bound++;
+      }
+      List<String> values = toStrings(argumentValues);
+      if (argument.getMultiplicity() != Argument.UNLIMITED_VALUES && values.size() > argument.getMultiplicity()) {
+        throw new ParseException("Argument has too many values: " + argument.getName());
+      }
+      for (String value : values) {
+        argument.addValue(value);
+        commandLine.addArg(value);
+      }
+      CommandRouteResolver.validateParsedArgument(argument);
+      boundArguments.add(argument);
+    }
+    if (bound < arguments.size()) {
+      for (String name : arguments.keySet()) {
+        if (!hasArgument(command, name)) {
+          throw new ParseException("Unknown argument: " + name);
+        }
+      }
+    }
+    return boundArguments;
+  }
+
+  private static boolean hasArgument(CommandDescriptor command, String name) {
+    for (Argument argument : command.getArguments()) {
+      if (argument.getName().equals(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static List<String> toStrings(Object value) {
+    if (value == null || Boolean.TRUE.equals(value)) {
+      return Collections.emptyList();
+    }
+    if (value instanceof List && allStrings((List<?>) value)) {
+      @SuppressWarnings("unchecked")
+      List<String> values = (List<String>) value;
+      return values;
+    }
+    if (value instanceof Iterable) {
+      List<String> values = new ArrayList<>();
+      for (Object item : (Iterable<?>) value) {
+        values.add(String.valueOf(item));
+      }
+      return values;
+    }
+    if (value instanceof Object[]) {
+      List<String> values = new ArrayList<>();
+      for (Object item : (Object[]) value) {
+        values.add(String.valueOf(item));
+      }
+      return values;
+    }
+    return Collections.singletonList(String.valueOf(value));
+  }
+
+  private static boolean allStrings(List<?> values) {
+    for (Object value : values) {
+      if (!(value instanceof String)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
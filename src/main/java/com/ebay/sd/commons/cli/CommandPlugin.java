@@ -0,0 +1,40 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import java.util.List;
+
+/**
+ * A plugin which contributes sub-commands to a route, discovered at runtime.
+ * <p>
+ * Plugins are provided as {@link java.util.ServiceLoader services}, i.e. the plugin jar lists the implementation classes
+ * in <tt>META-INF/services/com.ebay.sd.commons.cli.CommandPlugin</tt>. Implementations must have a public no-arg
+ * constructor, and should not load the command classes before {@link #getSubCommands()} is called.
+ * </p>
+ *
+ * @see PluginIndex
+ * @see RouteDescriptor.Builder#plugins(PluginIndex)
+ */
+public interface CommandPlugin {
+
+  /**
+   * Get the name of the route to contribute the sub-commands to
+   *
+   * @return the route name
+   */
+  String getRoute();
+
+  /**
+   * Get the contributed sub-commands. This is called only when the route is resolved.
+   *
+   * @return the command and route descriptors to add to the route
+   */
+  List<Descriptor> getSubCommands();
+}
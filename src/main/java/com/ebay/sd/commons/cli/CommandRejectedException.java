@@ -0,0 +1,22 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+/**
+ * An exception thrown when a {@link Command} is not admitted for execution, e.g. when the {@link CommandScheduler} is saturated
+ *
+ * @see CommandScheduler
+ */
+public class CommandRejectedException extends CommandException {
+
+  public CommandRejectedException(String message) {
+    super(message);
+  }
+}
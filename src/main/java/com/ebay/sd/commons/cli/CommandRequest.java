@@ -0,0 +1,163 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static com.ebay.sd.commons.cli.Utils.immutableList;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A structured request to execute a command, as an alternative to command line arguments.
+ * <p>
+ * Useful when embedding the commands in a service, where requests are already structured (e.g. JSON),
+ * so there is no need to format them as command line arguments just to be parsed back.
+ * For example, the equivalent of <tt>foo bar -v --count 3 file1 file2</tt>:
+ * <pre>
+ *   CommandRequest request = CommandRequest.builder("foo", "bar")
+ *       .option("v")
+ *       .option("count", "3")
+ *       .argument("FILE", "file1", "file2")
+ *       .build();
+ *   commandsCliMain.execute(request);
+ * </pre>
+ * </p>
+ *
+ * @see CommandsCliMain#execute(CommandRequest)
+ */
+public class CommandRequest {
+
+  private final List<String> path;
+  private final Map<String, List<String>> options;
+  private final Map<String, List<String>> arguments;
+
+  private CommandRequest(Builder builder) {
+    this.path = immutableList(builder.path);
+    this.options = copy(builder.options);
+    this.arguments = copy(builder.arguments);
+  }
+
+  private static Map<String, List<String>> copy(Map<String, List<String>> values) {
+    Map<String, List<String>> copy = new LinkedHashMap<>();
+    for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+      copy.put(entry.getKey(), immutableList(entry.getValue()));
+    }
+    return unmodifiableMap(copy);
+  }
+
+  /**
+   * Get the path of sub-command names to the command, from the main route
+   *
+   * @return the path, or an empty list for a main command
+   */
+  public List<String> getPath() {
+    return path;
+  }
+
+  /**
+   * Get the option values, by short or long option name
+   *
+   * @return the option values, with an empty list for options without a value
+   */
+  public Map<String, List<String>> getOptions() {
+    return options;
+  }
+
+  /**
+   * Get the argument values, by argument name
+   *
+   * @return the argument values
+   */
+  public Map<String, List<String>> getArguments() {
+    return arguments;
+  }
+
+  @Override
+  public String toString() {
+    return "CommandRequest{" +
+        "path=" + path +
+        ", options=" + options +
+        ", arguments=" + arguments +
+        '}';
+  }
+
+  /**
+   * Start building a new command request
+   *
+   * @param path the names of the sub-commands in the path to the command, from the main route
+   * @return a new {@link Builder}
+   */
+  public static Builder builder(String... path) {
+    return new Builder(path);
+  }
+
+  /**
+   * Command request builder
+   *
+   * @see Builder#build()
+   */
+  public static class Builder {
+
+    private final List<String> path;
+    private final Map<String, List<String>> options = new LinkedHashMap<>();
+    private final Map<String, List<String>> arguments = new LinkedHashMap<>();
+
+    private Builder(String[] path) {
+      this.path = new ArrayList<>(Arrays.asList(requireNonNull(path, "path is required")));
+    }
+
+    /**
+     * Add an option. Values of an option which is added more than once are accumulated.
+     *
+     * @param name the short or long name of the option
+     * @param values the values of the option, or none for an option without a value
+     * @return this builder
+     */
+    public Builder option(String name, String... values) {
+      add(options, requireNonNull(name, "name is required"), values);
+      return this;
+    }
+
+    /**
+     * Set the values of an argument. Values of an argument which is set more than once are accumulated.
+     *
+     * @param name the name of the argument
+     * @param values the values of the argument
+     * @return this builder
+     */
+    public Builder argument(String name, String... values) {
+      add(arguments, requireNonNull(name, "name is required"), values);
+      return this;
+    }
+
+    private static void add(Map<String, List<String>> map, String name, String[] values) {
+      List<String> list = map.get(name);
+      if (list == null) {
+        list = new ArrayList<>();
+        map.put(name, list);
+      }
+      list.addAll(Arrays.asList(requireNonNull(values, "values are required")));
+    }
+
+    /**
+     * Build a new command request based on the settings to this builder
+     *
+     * @return the new command request
+     */
+    public CommandRequest build() {
+      return new CommandRequest(this);
+    }
+  }
+}
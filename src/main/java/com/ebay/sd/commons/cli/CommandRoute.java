@@ -22,10 +22,18 @@ public class CommandRoute {
 
   private final List<RouteDescriptor> path;
   private final CommandDescriptor command;
+  private final List<Argument> arguments;
 
   private CommandRoute(Builder builder) {
     this.path = Collections.unmodifiableList(requireNonNull(builder.path, "path is required"));
     this.command = builder.command;
+    this.arguments = null;
+  }
+
+  private CommandRoute(CommandRoute route, List<Argument> arguments) {
+    this.path = route.path;
+    this.command = route.command;
+    this.arguments = Collections.unmodifiableList(requireNonNull(arguments, "arguments is required"));
   }
 
   /**
@@ -54,6 +62,26 @@ public class CommandRoute {
     return command != null;
   }
 
+  /**
+   * Get the arguments of the command, bound with the values parsed for this route.
+   * If the arguments were not parsed for this route, the arguments of the command are returned as is.
+   *
+   * @return the list of arguments
+   */
+  List<Argument> getArguments() {
+    return arguments != null ? arguments : getCommand().getArguments();
+  }
+
+  /**
+   * Create a copy of this route with the given bound arguments
+   *
+   * @param arguments the arguments bound with the parsed values
+   * @return the new command route
+   */
+  CommandRoute withArguments(List<Argument> arguments) {
+    return new CommandRoute(this, arguments);
+  }
+
   /**
    * Get the full path this command route holds as string
    *
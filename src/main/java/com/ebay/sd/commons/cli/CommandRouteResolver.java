@@ -15,6 +15,7 @@ import static java.util.Objects.requireNonNull;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.MissingOptionException;
 import org.apache.commons.cli.Option;
@@ -47,26 +48,38 @@ class CommandRouteResolver {
    */
   CommandRoute resolve(CommandLine commandLine, boolean skipParseArguments) throws ParseException {
     requireNonNull(commandLine, "commandLine is required");
-    CommandRoute route = doResolve(commandLine);
+    CommandRoute route = doResolve(commandLine.getArgList());
     if (!skipParseArguments) {
       validateOptions(commandLine, route);
-      parseCommandArguments(commandLine, route);
+      route = parseCommandArguments(commandLine, route);
+      validateOptionConstraints(commandLine, route);
     }
     return route;
   }
 
-  private CommandRoute doResolve(CommandLine commandLine) throws ParseException {
+  /**
+   * Resolve the command route from a path of sub-command names, without parsing any arguments
+   *
+   * @param path the sub-command names
+   * @return the resolved command route
+   * @throws ParseException on any unknown sub-command
+   */
+  CommandRoute resolve(List<String> path) throws ParseException {
+    return doResolve(requireNonNull(path, "path is required"));
+  }
+
+  private CommandRoute doResolve(List<String> args) throws ParseException {
     CommandRoute.Builder route = CommandRoute.builder();
-    doResolve(route, commandLine, root, -1);
+    doResolve(route, args, root, -1);
     return route.build();
   }
 
-  private void doResolve(CommandRoute.Builder route, CommandLine commandLine, Descriptor descriptor, int cmdIndex) throws ParseException {
+  private void doResolve(CommandRoute.Builder route, List<String> args, Descriptor descriptor, int cmdIndex) throws ParseException {
     if (descriptor instanceof RouteDescriptor) {
       route.addToPath((RouteDescriptor) descriptor);
-      Descriptor subCommand = findSubCommand(commandLine, (RouteDescriptor) descriptor, cmdIndex + 1);
+      Descriptor subCommand = findSubCommand(args, (RouteDescriptor) descriptor, cmdIndex + 1);
       if (subCommand != null) {
-        doResolve(route, commandLine, subCommand, cmdIndex + 1);
+        doResolve(route, args, subCommand, cmdIndex + 1);
       }
       return;
     } else if (descriptor instanceof CommandDescriptor) {
@@ -76,10 +89,10 @@ class CommandRouteResolver {
     throw new IllegalStateException("Unexpected descriptor type: " + descriptor.getClass());
   }
 
-  private Descriptor findSubCommand(CommandLine commandLine, RouteDescriptor descriptor, int cmdIndex) throws ParseException {
+  private Descriptor findSubCommand(List<String> args, RouteDescriptor descriptor, int cmdIndex) throws ParseException {
     Descriptor found = null;
-    if (commandLine.getArgList().size() > cmdIndex) {
-      String cmd = commandLine.getArgList().get(cmdIndex);
+    if (args.size() > cmdIndex) {
+      String cmd = args.get(cmdIndex);
       for (Descriptor subCmd : descriptor.getSubCommands()) {
         if (subCmd.getName().equals(cmd)) {
           found = subCmd;
@@ -91,7 +104,7 @@ class CommandRouteResolver {
       return null;
     }
     if (found == null) {
-      throw new ParseException("Unknown command: " + commandLine.getArgList().get(cmdIndex));
+      throw new ParseException("Unknown command: " + args.get(cmdIndex));
     }
     return found;
   }
@@ -106,7 +119,7 @@ class CommandRouteResolver {
     validateNoMissingOptions(commandLine, descriptor);
   }
 
-  private void validateNoMissingOptions(CommandLine commandLine, Descriptor descriptor) throws MissingOptionException {
+  static void validateNoMissingOptions(CommandLine commandLine, Descriptor descriptor) throws MissingOptionException {
     List<String> missingOptions = new ArrayList<>();
     for (Option option : descriptor.getOptions()) {
       String opt = option.getOpt() != null ? option.getOpt() : option.getLongOpt();
@@ -119,28 +132,66 @@ class CommandRouteResolver {
     }
   }
 
-  private void parseCommandArguments(CommandLine commandLine, CommandRoute commandRoute) throws ParseException {
+  /**
+   * Parse the command arguments and bind them to a copy of the command's arguments,
+   * so the command descriptor itself is not modified and can be used by multiple invocations.
+   */
+  private CommandRoute parseCommandArguments(CommandLine commandLine, CommandRoute commandRoute) throws ParseException {
     if (!commandRoute.hasCommand()) {
-      return;
+      return commandRoute;
     }
     int cmdIndex = commandRoute.getPath().size() - 1;
     List<String> cmdArgs = commandLine.getArgList().subList(cmdIndex + 1, commandLine.getArgList().size());
     List<Argument> arguments = commandRoute.getCommand().getArguments();
+    List<Argument> boundArguments = new ArrayList<>(arguments.size());
     Iterator<String> cmdArgsIter = cmdArgs.iterator();
-    for (Argument argument : arguments) {
+    for (Argument definition : arguments) {
+      Argument argument = definition.unbound();
       boolean unlimited = argument.getMultiplicity() == Argument.UNLIMITED_VALUES;
       int count = unlimited ? Integer.MAX_VALUE : argument.getMultiplicity();
       for (int i = 0; i < count && cmdArgsIter.hasNext(); i++) {
         argument.addValue(cmdArgsIter.next());
       }
       validateParsedArgument(argument);
+      boundArguments.add(argument);
     }
     if (cmdArgsIter.hasNext()) {
       throw new ParseException("There is at least one unhandled argument: " + cmdArgsIter.next());
     }
+    return commandRoute.withArguments(boundArguments);
+  }
+
+  /**
+   * Check the values of the options against the constraints declared by the descriptors of the route
+   *
+   * @param commandLine the parsed command line
+   * @param route the command route
+   * @throws ParseException if any value does not satisfy any of the constraints
+   */
+  static void validateOptionConstraints(CommandLine commandLine, CommandRoute route) throws ParseException {
+    for (RouteDescriptor descriptor : route.getPath()) {
+      validateOptionConstraints(commandLine, descriptor);
+    }
+    if (route.hasCommand()) {
+      validateOptionConstraints(commandLine, route.getCommand());
+    }
+  }
+
+  private static void validateOptionConstraints(CommandLine commandLine, Descriptor descriptor) throws ParseException {
+    if (descriptor.getOptionConstraints().isEmpty()) {
+      return;
+    }
+    for (Map.Entry<String, Constraint[]> entry : descriptor.getOptionConstraints().entrySet()) {
+      String[] values = commandLine.getOptionValues(entry.getKey());
+      if (values != null) {
+        for (String value : values) {
+          Constraint.check(entry.getValue(), "option", entry.getKey(), value);
+        }
+      }
+    }
   }
 
-  private void validateParsedArgument(Argument argument) throws ParseException {
+  static void validateParsedArgument(Argument argument) throws ParseException {
     if (argument.isRequired() && argument.getValues().isEmpty()) {
       throw new ParseException("Argument is required: " + argument.getName());
     }
@@ -157,5 +208,6 @@ class CommandRouteResolver {
             format("Argument has too many values: %s (expected: %d)", argument.getName(), argument.getMultiplicity()));
       }
     }
+    argument.checkConstraints();
   }
 }
@@ -0,0 +1,414 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static com.ebay.sd.commons.cli.Utils.requireNonNegative;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for concurrent command executions, for a long-lived process which executes commands for many callers.
+ * <p>
+ * Each command is assigned to a {@link Lane}, by its route. Each lane has its own limit of concurrently running commands,
+ * so a burst of heavy bulk commands does not starve quick interactive commands. Commands which cannot run immediately wait
+ * in a bounded queue, in order of arrival, up to a maximum wait time. A command is rejected with a
+ * {@link CommandRejectedException} when the queue of its lane is full, or when it waits for too long.
+ * In addition, the number of concurrently running commands can be limited per route.
+ * </p>
+ * <p>
+ * For example:
+ * <pre>
+ *   CommandScheduler scheduler = CommandScheduler.builder()
+ *       .lane(Lane.INTERACTIVE, 16, 64, 1000)
+ *       .lane(Lane.BULK, 2, 8, 60000)
+ *       .bulkRoute("my-cli export")
+ *       .routeLimit("my-cli export", 1)
+ *       .build();
+ *   CommandsCliMain main = CommandsCliMain.builder()
+ *       .mainRoute(root)
+ *       .scheduler(scheduler)
+ *       .build();
+ * </pre>
+ * Commands are executed on the calling thread, the scheduler only decides when they may start.
+ * </p>
+ *
+ * @see CommandsCliMain.Builder#scheduler(CommandScheduler)
+ */
+public class CommandScheduler {
+
+  /**
+   * A scheduling lane
+   */
+  public enum Lane {
+    /**
+     * The lane of short, latency sensitive commands. This is the default lane.
+     */
+    INTERACTIVE,
+    /**
+     * The lane of long running, resource heavy commands
+     */
+    BULK
+  }
+
+  private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+  private final Map<String, Lane> routeLanes;
+  private final Map<String, Semaphore> routeLimits = new HashMap<>();
+
+  private CommandScheduler(Builder builder) {
+    for (Lane lane : Lane.values()) {
+      lanes.put(lane, new LaneState(lane, builder.laneSettings.get(lane)));
+    }
+    routeLanes = new HashMap<>(builder.routeLanes);
+    for (Map.Entry<String, Integer> entry : builder.routeLimits.entrySet()) {
+      routeLimits.put(entry.getKey(), new Semaphore(entry.getValue(), true));
+    }
+  }
+
+  /**
+   * Execute a command, once admitted.
+   *
+   * @param route the route of the command
+   * @param command the command to execute
+   * @throws CommandRejectedException if the command was not admitted
+   * @throws CommandException on any command execution error
+   */
+  public void execute(CommandRoute route, Command command) throws CommandException {
+    requireNonNull(route, "route is required");
+    requireNonNull(command, "command is required");
+    String path = route.getFullPathAsString();
+    LaneState lane = lanes.get(getLane(path));
+    Semaphore routeLimit = routeLimits.get(path);
+    long start = System.nanoTime();
+    if (!lane.enter()) {
+      throw lane.reject(format("Command rejected, the %s lane queue is full (max queued: %d): %s", lane.lane, lane.maxQueued, path));
+    }
+    try {
+      long deadline = start + lane.maxWaitNanos;
+      if (routeLimit != null && !tryAcquire(routeLimit, deadline)) {
+        throw lane.reject(format("Command rejected, timed out waiting for the route concurrency limit: %s", path));
+      }
+      try {
+        if (!tryAcquire(lane.running, deadline)) {
+          throw lane.reject(format("Command rejected, timed out waiting in the %s lane: %s", lane.lane, path));
+        }
+        try {
+          lane.admitted(System.nanoTime() - start);
+          command.execute();
+        } finally {
+          lane.running.release();
+        }
+      } finally {
+        if (routeLimit != null) {
+          routeLimit.release();
+        }
+      }
+    } finally {
+      lane.exit();
+    }
+  }
+
+  private boolean tryAcquire(Semaphore semaphore, long deadline) throws CommandRejectedException {
+    try {
+      return semaphore.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CommandRejectedException("Command rejected, interrupted while waiting to be admitted");
+    }
+  }
+
+  /**
+   * Get the lane of a given route
+   *
+   * @param route the full path of the route (e.g. <tt>"my-cli foo bar"</tt>)
+   * @return the lane of the route
+   */
+  public Lane getLane(String route) {
+    Lane lane = routeLanes.get(route);
+    return lane != null ? lane : Lane.INTERACTIVE;
+  }
+
+  /**
+   * Get a snapshot of the metrics of a given lane
+   *
+   * @param lane the lane
+   * @return the lane metrics
+   */
+  public LaneMetrics getMetrics(Lane lane) {
+    return lanes.get(requireNonNull(lane, "lane is required")).snapshot();
+  }
+
+  /**
+   * Start building a new command scheduler
+   *
+   * @return a new {@link Builder}
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private static class LaneState {
+
+    private final Lane lane;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+    private final Semaphore running;
+    private final int maxRunning;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanosObserved = new AtomicLong();
+
+    LaneState(Lane lane, LaneSettings settings) {
+      this.lane = lane;
+      this.maxRunning = settings.maxRunning;
+      this.maxQueued = settings.maxQueued;
+      this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(settings.maxWaitMillis);
+      this.running = new Semaphore(settings.maxRunning, true);
+    }
+
+    /**
+     * Enter the lane, unless there are already as many commands waiting and running as the lane allows
+     *
+     * @return <tt>true</tt> if entered, <tt>false</tt> if the lane is saturated
+     */
+    boolean enter() {
+      while (true) {
+        int current = inFlight.get();
+        if (current >= maxRunning + maxQueued) {
+          return false;
+        }
+        if (inFlight.compareAndSet(current, current + 1)) {
+          return true;
+        }
+      }
+    }
+
+    void exit() {
+      inFlight.decrementAndGet();
+    }
+
+    void admitted(long waitNanos) {
+      admitted.incrementAndGet();
+      totalWaitNanos.addAndGet(waitNanos);
+      long max;
+      do {
+        max = maxWaitNanosObserved.get();
+      } while (waitNanos > max && !maxWaitNanosObserved.compareAndSet(max, waitNanos));
+    }
+
+    CommandRejectedException reject(String message) {
+      rejected.incrementAndGet();
+      return new CommandRejectedException(message);
+    }
+
+    LaneMetrics snapshot() {
+      int runningNow = maxRunning - running.availablePermits();
+      int waiting = Math.max(0, inFlight.get() - runningNow);
+      return new LaneMetrics(lane, waiting, runningNow, admitted.get(), rejected.get(), totalWaitNanos.get(),
+          maxWaitNanosObserved.get());
+    }
+  }
+
+  /**
+   * A snapshot of the metrics of a single lane
+   */
+  public static class LaneMetrics {
+
+    private final Lane lane;
+    private final int queueDepth;
+    private final int running;
+    private final long admitted;
+    private final long rejected;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+
+    LaneMetrics(Lane lane, int queueDepth, int running, long admitted, long rejected, long totalWaitNanos, long maxWaitNanos) {
+      this.lane = lane;
+      this.queueDepth = queueDepth;
+      this.running = running;
+      this.admitted = admitted;
+      this.rejected = rejected;
+      this.totalWaitNanos = totalWaitNanos;
+      this.maxWaitNanos = maxWaitNanos;
+    }
+
+    /**
+     * Get the lane of these metrics
+     */
+    public Lane getLane() {
+      return lane;
+    }
+
+    /**
+     * Get the number of commands currently waiting to be admitted
+     */
+    public int getQueueDepth() {
+      return queueDepth;
+    }
+
+    /**
+     * Get the number of commands currently running
+     */
+    public int getRunning() {
+      return running;
+    }
+
+    /**
+     * Get the total number of admitted commands
+     */
+    public long getAdmitted() {
+      return admitted;
+    }
+
+    /**
+     * Get the total number of rejected commands
+     */
+    public long getRejected() {
+      return rejected;
+    }
+
+    /**
+     * Get the total time admitted commands waited before they started, in nanoseconds
+     */
+    public long getTotalWaitNanos() {
+      return totalWaitNanos;
+    }
+
+    /**
+     * Get the maximal time an admitted command waited before it started, in nanoseconds
+     */
+    public long getMaxWaitNanos() {
+      return maxWaitNanos;
+    }
+
+    /**
+     * Get the average time admitted commands waited before they started, in nanoseconds
+     */
+    public long getAverageWaitNanos() {
+      return admitted == 0 ? 0 : totalWaitNanos / admitted;
+    }
+
+    @Override
+    public String toString() {
+      return "LaneMetrics{" +
+          "lane=" + lane +
+          ", queueDepth=" + queueDepth +
+          ", running=" + running +
+          ", admitted=" + admitted +
+          ", rejected=" + rejected +
+          ", averageWaitNanos=" + getAverageWaitNanos() +
+          ", maxWaitNanos=" + maxWaitNanos +
+          '}';
+    }
+  }
+
+  private static class LaneSettings {
+
+    private final int maxRunning;
+    private final int maxQueued;
+    private final long maxWaitMillis;
+
+    LaneSettings(int maxRunning, int maxQueued, long maxWaitMillis) {
+      this.maxRunning = maxRunning;
+      this.maxQueued = maxQueued;
+      this.maxWaitMillis = maxWaitMillis;
+    }
+  }
+
+  /**
+   * Command scheduler builder
+   *
+   * @see #builder()
+   */
+  public static class Builder {
+
+    private static final int DEFAULT_MAX_RUNNING = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_MAX_QUEUED = 4 * DEFAULT_MAX_RUNNING;
+    private static final long DEFAULT_MAX_WAIT_MILLIS = 10000;
+
+    private final Map<Lane, LaneSettings> laneSettings = new EnumMap<>(Lane.class);
+    private final Map<String, Lane> routeLanes = new HashMap<>();
+    private final Map<String, Integer> routeLimits = new HashMap<>();
+
+    private Builder() {
+      for (Lane lane : Lane.values()) {
+        laneSettings.put(lane, new LaneSettings(DEFAULT_MAX_RUNNING, DEFAULT_MAX_QUEUED, DEFAULT_MAX_WAIT_MILLIS));
+      }
+    }
+
+    /**
+     * Set the limits of a lane.
+     * By default, each lane runs as many commands as available processors and queues four times that number.
+     *
+     * @param lane the lane
+     * @param maxRunning the maximal number of concurrently running commands in the lane (must be positive)
+     * @param maxQueued the maximal number of commands waiting to be admitted to the lane (must be non-negative)
+     * @param maxWaitMillis the maximal time a command waits to be admitted, in milliseconds (must be non-negative)
+     * @return this builder
+     */
+    public Builder lane(Lane lane, int maxRunning, int maxQueued, long maxWaitMillis) {
+      requireNonNull(lane, "lane is required");
+      if (maxRunning <= 0) {
+        throw new IllegalArgumentException("maxRunning must be positive");
+      }
+      requireNonNegative(maxQueued, "maxQueued must be non-negative");
+      if (maxWaitMillis < 0) {
+        throw new IllegalArgumentException("maxWaitMillis must be non-negative");
+      }
+      laneSettings.put(lane, new LaneSettings(maxRunning, maxQueued, maxWaitMillis));
+      return this;
+    }
+
+    /**
+     * Assign a route to the {@link Lane#BULK bulk} lane. Routes are assigned to the {@link Lane#INTERACTIVE interactive} lane by default.
+     *
+     * @param route the full path of the route (e.g. <tt>"my-cli foo bar"</tt>)
+     * @return this builder
+     */
+    public Builder bulkRoute(String route) {
+      routeLanes.put(requireNonNull(route, "route is required"), Lane.BULK);
+      return this;
+    }
+
+    /**
+     * Limit the number of concurrently running commands of a given route
+     *
+     * @param route the full path of the route (e.g. <tt>"my-cli foo bar"</tt>)
+     * @param maxRunning the maximal number of concurrently running commands of the route (must be positive)
+     * @return this builder
+     */
+    public Builder routeLimit(String route, int maxRunning) {
+      requireNonNull(route, "route is required");
+      if (maxRunning <= 0) {
+        throw new IllegalArgumentException("maxRunning must be positive");
+      }
+      routeLimits.put(route, maxRunning);
+      return this;
+    }
+
+    /**
+     * Build the command scheduler
+     *
+     * @return the new command scheduler
+     */
+    public CommandScheduler build() {
+      return new CommandScheduler(this);
+    }
+  }
+}
@@ -10,8 +10,20 @@ package com.ebay.sd.commons.cli;
 
 import static java.util.Objects.requireNonNull;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -32,19 +44,132 @@ import org.apache.commons.cli.ParseException;
  *     }
  * </pre>
  */
-public class CommandsCliMain {
+public class CommandsCliMain implements Closeable {
 
   private final Descriptor rootDescriptor;
-  private final Options options;
   private final Map<String, Object> contextData = new HashMap<>();
+  private final Map<String, Object> ioHelpContextData;
+  private final boolean compiledParser;
+  private final Set<PluginIndex> pluginIndexes = new HashSet<>();
+  private final Set<PluginLoader> pluginLoaders = new HashSet<>();
+  private volatile ParserState parserState;
+  private final CommandScheduler scheduler;
+  private final Option outputOption;
+  private final ResultCache resultCache;
+  private final WarmUp warmUp;
+  private final ResourceRegistry resources = new ResourceRegistry();
 
   private CommandsCliMain(Builder builder) {
     rootDescriptor = requireNonNull(builder.rootDescriptor, "rootDescriptor is required");
     if (builder.contextData != null) {
       contextData.putAll(builder.contextData);
     }
-    options = new OptionsAggregator().aggregate(rootDescriptor);
+    ioHelpContextData = new HashMap<>(contextData);
+    ioHelpContextData.remove(UsageHelp.CTX_HELP_PRINT_WRITER);
+    compiledParser = builder.compiledParser;
+    collectPlugins(rootDescriptor);
+    parserState = createParserState(getPluginLoadCount());
+    outputOption = getOutputOption();
+    scheduler = builder.scheduler;
+    resultCache = builder.resultCache;
+    warmUp = builder.warmUpMillis > 0 ? new WarmUp(this, rootDescriptor, builder.warmUpMillis) : null;
+    if (warmUp != null) {
+      warmUp.start();
+    }
+  }
+
+  private void collectPlugins(Descriptor descriptor) {
+    if (descriptor instanceof RouteDescriptor) {
+      RouteDescriptor route = (RouteDescriptor) descriptor;
+      if (route.getPlugins() != null) {
+        pluginIndexes.add(route.getPlugins());
+      }
+      pluginLoaders.addAll(route.getPluginLoaders());
+      for (Descriptor subCommand : route.getLoadedSubCommands()) {
+        collectPlugins(subCommand);
+      }
+    }
+  }
+
+  private ParserState createParserState(int pluginLoadCount) {
+    Options options = new OptionsAggregator().aggregate(rootDescriptor);
     addHelpOptionIfNeeded(options);
+    Option outputOpt = getOutputOption();
+    if (outputOpt != null) {
+      options.addOption(outputOpt);
+    }
+    if (benchOptionsEnabled()) {
+      options.addOption(Benchmark.BENCH_OPTION);
+      options.addOption(Benchmark.WARMUP_OPTION);
+    }
+    return new ParserState(pluginLoadCount, options, compiledParser);
+  }
+
+  /**
+   * Get the current parser state, aggregating the options again if plugins were loaded or reloaded since it was created
+   */
+  private ParserState getParserState() {
+    ParserState state = parserState;
+    if (pluginIndexes.isEmpty() && pluginLoaders.isEmpty()) {
+      return state;
+    }
+    int pluginLoadCount = getPluginLoadCount();
+    if (state.pluginLoadCount != pluginLoadCount) {
+      synchronized (this) {
+        state = parserState;
+        if (state.pluginLoadCount != pluginLoadCount) {
+          state = createParserState(pluginLoadCount);
+          parserState = state;
+        }
+      }
+    }
+    return state;
+  }
+
+  /**
+   * Get the options aggregated from all the loaded descriptors
+   *
+   * @return the aggregated options
+   */
+  Options getOptions() {
+    return getParserState().options;
+  }
+
+  private int getPluginLoadCount() {
+    int count = 0;
+    for (PluginIndex index : pluginIndexes) {
+      count += index.getLoadCount();
+    }
+    for (PluginLoader loader : pluginLoaders) {
+      count += loader.getGeneration();
+    }
+    return count;
+  }
+
+  /**
+   * Load the plugins of the routes in the path of the given arguments, so their options are aggregated before parsing.
+   * Any argument which is the name of a sub-command of the current route continues the path, so an option value may
+   * load plugins needlessly, but never prevents the plugins of the actual route from loading.
+   */
+  private void loadPluginRoutes(Iterable<String> args) {
+    if (pluginIndexes.isEmpty()) {
+      return;
+    }
+    Descriptor current = rootDescriptor;
+    for (String arg : args) {
+      if (!(current instanceof RouteDescriptor)) {
+        return;
+      }
+      for (Descriptor subCommand : ((RouteDescriptor) current).getSubCommands()) {
+        if (subCommand.getName().equals(arg)) {
+          current = subCommand;
+          break;
+        }
+      }
+    }
+    if (current instanceof RouteDescriptor) {
+      ((RouteDescriptor) current).getSubCommands();
+    }
   }
 
   private void addHelpOptionIfNeeded(Options options) {
@@ -58,21 +183,48 @@ public class CommandsCliMain {
     }
   }
 
+  private Option getOutputOption() {
+    if (Boolean.TRUE.equals(this.contextData.get(OutputFormat.CTX_OUTPUT_OPTION_AUTO_ADD))) {
+      Option outputOpt = (Option) this.contextData.get(OutputFormat.CTX_OUTPUT_OPTION);
+      if (outputOpt == null) {
+        outputOpt = OutputFormat.DEFAULT_OUTPUT_OPTION;
+      }
+      return outputOpt;
+    }
+    return null;
+  }
+
+  private boolean benchOptionsEnabled() {
+    return Boolean.TRUE.equals(this.contextData.get(Benchmark.CTX_BENCH_OPTIONS_AUTO_ADD));
+  }
+
   /**
    * The main method, should usually be called in the <tt>main(String[] args)</tt> method of the using program.
    * <p>
    * This method uses <tt>System.exit(int)</tt> on any error, hence should not be used for tests.
+   * Once the execution completes, this commands CLI is {@link #close() closed}.
    * </p>
    *
    * @param args the command line arguments
    * @see #execute(String[])
    */
   public void main(String[] args) {
+    int status = 0;
     try {
       execute(args);
     } catch (ParseException | CommandException e) {
       System.err.println("ERROR: " + e.getMessage());
-      System.exit(1);
+      status = 1;
+    } finally {
+      try {
+        close();
+      } catch (IOException e) {
+        System.err.println("ERROR: " + e.getMessage());
+        status = 1;
+      }
+    }
+    if (status != 0) {
+      System.exit(status);
     }
   }
 
@@ -87,18 +239,350 @@ public class CommandsCliMain {
    * @param args the command line arguments
    * @throws ParseException on any command line parsing error
    * @throws CommandException on any command execution error
+   * @see #execute(String[], CommandIO)
    */
   public void execute(String[] args) throws ParseException, CommandException {
-    CommandLine commandLine = parseCommandLine(options, args);
-    boolean helpRequested = helpRequested(commandLine, contextData);
-    CommandRoute commandRoute = new CommandRouteResolver(rootDescriptor).resolve(commandLine, helpRequested);
-    CommandContext context = new CommandContext(commandLine, commandRoute, contextData);
+    execute(args, CommandIO.system());
+  }
+
+  /**
+   * Execute the commands cli with a given IO.
+   * <p>
+   * This allows executing commands concurrently in a single process, each with its own standard input, output and error.
+   * The output of the IO is flushed once the execution completes.
+   * </p>
+   *
+   * @param args the command line arguments
+   * @param io the standard input, output and error of the execution
+   * @throws ParseException on any command line parsing error
+   * @throws CommandException on any command execution error
+   * @see CommandContext#getIO()
+   */
+  public void execute(String[] args, CommandIO io) throws ParseException, CommandException {
+    execute(args, io, false);
+  }
+
+  /**
+   * Execute the commands cli with a given IO, optionally printing a requested usage help into the IO even if a help print
+   * writer is set in the context data
+   */
+  void execute(String[] args, CommandIO io, boolean helpToIO) throws ParseException, CommandException {
+    requireNonNull(io, "io is required");
+    try {
+      CommandLine commandLine = parseCommandLine(args);
+      boolean helpRequested = helpRequested(commandLine, contextData);
+      CommandRoute commandRoute = new CommandRouteResolver(rootDescriptor).resolve(commandLine, helpRequested);
+      execute(commandLine, commandRoute, helpRequested, helpToIO, io);
+    } finally {
+      flush(io);
+    }
+  }
+
+  /**
+   * Execute a structured command request.
+   * <p>
+   * The request is validated against the descriptors the same way as command line arguments, but without tokenizing
+   * and parsing - the option and argument values are bound directly.
+   * </p>
+   *
+   * @param request the command request
+   * @throws ParseException on any invalid route, option or argument in the request
+   * @throws CommandException on any command execution error
+   * @see #execute(CommandRequest, CommandIO)
+   */
+  public void execute(CommandRequest request) throws ParseException, CommandException {
+    execute(request, CommandIO.system());
+  }
+
+  /**
+   * Execute a structured command request with a given IO.
+   * The output of the IO is flushed once the execution completes.
+   *
+   * @param request the command request
+   * @param io the standard input, output and error of the execution
+   * @throws ParseException on any invalid route, option or argument in the request
+   * @throws CommandException on any command execution error
+   * @see #execute(String[], CommandIO)
+   */
+  public void execute(CommandRequest request, CommandIO io) throws ParseException, CommandException {
+    execute(request, io, false);
+  }
+
+  /**
+   * Execute a structured command request with a given IO, optionally printing a requested usage help into the IO even if
+   * a help print writer is set in the context data
+   */
+  void execute(CommandRequest request, CommandIO io, boolean helpToIO) throws ParseException, CommandException {
+    requireNonNull(request, "request is required");
+    requireNonNull(io, "io is required");
+    try {
+      loadPluginRoutes(request.getPath());
+      Map<String, Option> optionsByName = getParserState().optionsByName;
+      CommandRoute commandRoute = new CommandRouteResolver(rootDescriptor).resolve(request.getPath());
+      CommandLine.Builder commandLine = new CommandLine.Builder();
+      for (String name : request.getPath()) {
+        commandLine.addArg(name);
+      }
+      CommandInvoker.bindOptions(commandLine, optionsByName, request.getOptions());
+      boolean helpRequested = helpRequested(request, optionsByName, contextData);
+      if (!helpRequested && commandRoute.hasCommand()) {
+        List<Argument> arguments = CommandInvoker.bindArguments(commandLine, commandRoute.getCommand(),
+            request.getArguments());
+        commandRoute = commandRoute.withArguments(arguments);
+      } else if (!helpRequested && !request.getArguments().isEmpty()) {
+        throw new ParseException("Command is required for route: " + commandRoute);
+      }
+      CommandLine builtCommandLine = commandLine.build();
+      if (!helpRequested) {
+        CommandRouteResolver.validateNoMissingOptions(builtCommandLine, commandRoute.hasCommand()
+            ? commandRoute.getCommand() : commandRoute.getPath().get(commandRoute.getPath().size() - 1));
+        CommandRouteResolver.validateOptionConstraints(builtCommandLine, commandRoute);
+      }
+      execute(builtCommandLine, commandRoute, helpRequested, helpToIO, io);
+    } finally {
+      flush(io);
+    }
+  }
+
+  private void execute(CommandLine commandLine, CommandRoute commandRoute, boolean helpRequested, boolean helpToIO,
+      CommandIO io) throws ParseException, CommandException {
+    List<Lock> leases = acquirePlugins(commandRoute);
+    try {
+      executeLeased(commandLine, commandRoute, helpRequested, helpToIO, io);
+    } finally {
+      releasePlugins(leases);
+    }
+  }
+
+  /**
+   * Acquire leases on the reloadable plugins which contributed the descriptors in the route, so they are not closed
+   * during the invocation
+   */
+  private List<Lock> acquirePlugins(CommandRoute commandRoute) throws CommandException {
+    if (pluginLoaders.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Lock> leases = new ArrayList<>();
+    List<RouteDescriptor> path = commandRoute.getPath();
+    try {
+      for (int i = 0; i < path.size(); i++) {
+        Descriptor subCommand = i + 1 < path.size() ? path.get(i + 1)
+            : commandRoute.hasCommand() ? commandRoute.getCommand() : null;
+        Lock lease = subCommand != null ? path.get(i).acquirePlugins(subCommand) : null;
+        if (lease != null) {
+          leases.add(lease);
+        }
+      }
+    } catch (CommandException | RuntimeException e) {
+      releasePlugins(leases);
+      throw e;
+    }
+    return leases;
+  }
+
+  private static void releasePlugins(List<Lock> leases) {
+    for (int i = leases.size() - 1; i >= 0; i--) {
+      leases.get(i).unlock();
+    }
+  }
+
+  private void executeLeased(CommandLine commandLine, CommandRoute commandRoute, boolean helpRequested, boolean helpToIO,
+      CommandIO io) throws ParseException, CommandException {
     if (helpRequested) {
+      CommandContext context = new CommandContext(commandLine, commandRoute, helpToIO ? ioHelpContextData : contextData,
+          io, resources);
       new UsageHelp(context).pringUsage();
       return;
     }
+    Benchmark benchmark = benchOptionsEnabled() && commandRoute.hasCommand() ? Benchmark.fromCommandLine(commandLine) : null;
+    if (benchmark != null) {
+      executeBenchmark(commandLine, commandRoute, io, benchmark);
+      return;
+    }
+    if (watchRequested(commandLine, commandRoute)) {
+      executeWatching(commandLine, commandRoute, io);
+      return;
+    }
+    String cacheKey = resultCache != null ? resultCache.computeKey(commandLine, commandRoute) : null;
+    if (cacheKey == null) {
+      execute(commandLine, commandRoute, io, true);
+    } else if (!resultCache.replay(cacheKey, io)) {
+      executeAndCache(commandLine, commandRoute, io, cacheKey);
+    }
+  }
+
+  private void execute(CommandLine commandLine, CommandRoute commandRoute, CommandIO io, boolean scheduled)
+      throws ParseException, CommandException {
+    CommandContext context = new CommandContext(commandLine, commandRoute, contextData, io, resources);
+    setOutputFormat(commandLine, context);
     Command command = createCommand(context);
-    execute(command);
+    execute(commandRoute, command, scheduled);
+    commandRoute.getCommand().releaseCommand(command);
+  }
+
+  private void executeBenchmark(CommandLine commandLine, CommandRoute commandRoute, CommandIO io, Benchmark benchmark)
+      throws ParseException, CommandException {
+    CommandIO discardIO = CommandIO.builder()
+        .in(new ByteArrayInputStream(new byte[0]))
+        .out(WarmUp.DiscardOutputStream.INSTANCE)
+        .err(WarmUp.DiscardOutputStream.INSTANCE)
+        .interactive(false)
+        .build();
+    CommandContext context = new CommandContext(commandLine, commandRoute, contextData, discardIO, resources);
+    setOutputFormat(commandLine, context);
+    Command command = createCommand(context);
+    Benchmark.Result result;
+    try {
+      result = benchmark.run(command);
+    } finally {
+      commandRoute.getCommand().releaseCommand(command);
+    }
+    result.print(commandRoute.getCommand().getName(), io.getOutWriter());
+  }
+
+  private boolean watchRequested(CommandLine commandLine, CommandRoute commandRoute) {
+    return commandRoute.hasCommand() && commandRoute.getCommand().isWatchable() &&
+        commandLine.hasOption(WatchMode.WATCH_OPTION.getLongOpt());
+  }
+
+  private void executeWatching(CommandLine commandLine, final CommandRoute commandRoute, final CommandIO io)
+      throws ParseException, CommandException {
+    final CommandContext context = new CommandContext(commandLine, commandRoute, contextData, io, resources);
+    setOutputFormat(commandLine, context);
+    final CommandDescriptor descriptor = commandRoute.getCommand();
+    List<Path> paths = new ArrayList<>();
+    for (String name : descriptor.getInputFileArguments()) {
+      for (String file : context.getArgumentValues(name)) {
+        if (!InputSource.STDIN.equals(file)) {
+          paths.add(Paths.get(file));
+        }
+      }
+    }
+    final Command[] command = new Command[1];
+    try {
+      new WatchMode(paths, WatchMode.getDebounceMillis(context), io.getErrWriter()).run(new WatchMode.Execution() {
+        @Override
+        public void execute(Set<Path> changedPaths) throws ParseException, CommandException {
+          try {
+            if (changedPaths != null && command[0] instanceof IncrementalCommand) {
+              executeChanged((IncrementalCommand) command[0], changedPaths);
+            } else {
+              if (command[0] != null) {
+                descriptor.releaseCommand(command[0]);
+                command[0] = null;
+              }
+              command[0] = descriptor.createCommand(context);
+              CommandsCliMain.this.execute(commandRoute, command[0], true);
+            }
+          } finally {
+            flush(io);
+          }
+        }
+      });
+    } finally {
+      if (command[0] != null) {
+        descriptor.releaseCommand(command[0]);
+      }
+    }
+  }
+
+  private static void executeChanged(IncrementalCommand command, Set<Path> changedPaths) throws CommandException {
+    try {
+      command.executeChanged(changedPaths);
+    } catch (RuntimeException e) {
+      throw new CommandException("UNEXPECTED ERROR: " + e.getMessage(), e);
+    }
+  }
+
+  private void executeAndCache(CommandLine commandLine, CommandRoute commandRoute, CommandIO io, String cacheKey)
+      throws ParseException, CommandException {
+    ResultCache.Recording recording = resultCache.record(cacheKey, io);
+    if (recording == null) {
+      execute(commandLine, commandRoute, io, true);
+      return;
+    }
+    try {
+      execute(commandLine, commandRoute, recording.getIO(), true);
+      recording.commit();
+    } finally {
+      flush(recording.getIO());
+      recording.close();
+    }
+  }
+
+  /**
+   * Get the warm-up of this commands CLI, if enabled
+   *
+   * @return the warm-up, or <tt>null</tt> if warm-up is not enabled
+   * @see Builder#warmUp(long)
+   */
+  public WarmUp getWarmUp() {
+    return warmUp;
+  }
+
+  /**
+   * Get the registry of the resources shared by the command executions of this commands CLI
+   *
+   * @return the resource registry
+   * @see CommandContext#getResource(SharedResource)
+   */
+  public ResourceRegistry getResources() {
+    return resources;
+  }
+
+  /**
+   * Close this commands CLI, which stops the warm-up if still running and closes all the created shared resources.
+   * This should be called when a long-lived process shuts down.
+   *
+   * @throws IOException if any of the shared resources failed to close
+   */
+  @Override
+  public void close() throws IOException {
+    if (warmUp != null) {
+      warmUp.cancel();
+    }
+    resources.close();
+  }
+
+  /**
+   * Print the usage help of a route into the given IO, even if a help print writer is set in the context data
+   */
+  void printUsage(String[] path, CommandIO io) throws ParseException {
+    CommandLine commandLine = parseCommandLine(path);
+    CommandRoute commandRoute = new CommandRouteResolver(rootDescriptor).resolve(commandLine, true);
+    new UsageHelp(new CommandContext(commandLine, commandRoute, ioHelpContextData, io, resources)).pringUsage();
+  }
+
+  /**
+   * Execute a sample invocation, bypassing the scheduler so it does not take admission permits from actual invocations
+   */
+  void executeSample(String[] args, CommandIO io) throws ParseException, CommandException {
+    CommandLine commandLine = parseCommandLine(args);
+    CommandRoute commandRoute = new CommandRouteResolver(rootDescriptor).resolve(commandLine, false);
+    List<Lock> leases = acquirePlugins(commandRoute);
+    try {
+      execute(commandLine, commandRoute, io, false);
+    } finally {
+      releasePlugins(leases);
+    }
+  }
+
+  private void flush(CommandIO io) throws CommandException {
+    try {
+      io.flush();
+    } catch (IOException e) {
+      throw new CommandException("Failed to flush the command output: " + e.getMessage(), e);
+    }
+  }
+
+  private void setOutputFormat(CommandLine commandLine, CommandContext context) throws ParseException {
+    if (outputOption != null) {
+      String opt = outputOption.getLongOpt() != null ? outputOption.getLongOpt() : outputOption.getOpt();
+      String format = commandLine.getOptionValue(opt);
+      if (format != null) {
+        context.putValue(OutputFormat.CTX_OUTPUT_FORMAT, OutputFormat.parse(format));
+      }
+    }
   }
 
   private Command createCommand(CommandContext context) throws ParseException {
@@ -110,24 +594,63 @@ public class CommandsCliMain {
     return descriptor.createCommand(context);
   }
 
-  private void execute(Command command) throws CommandException {
+  private void execute(CommandRoute commandRoute, Command command, boolean scheduled) throws CommandException {
     try {
-      command.execute();
+      if (scheduled && scheduler != null) {
+        scheduler.execute(commandRoute, command);
+      } else {
+        command.execute();
+      }
     } catch (RuntimeException e) {
       throw new CommandException("UNEXPECTED ERROR: " + e.getMessage(), e);
     }
   }
 
   private boolean helpRequested(CommandLine commandLine, Map<String, Object> contextData) {
+    return commandLine.hasOption(getHelpOptionName(contextData));
+  }
+
+  private boolean helpRequested(CommandRequest request, Map<String, Option> optionsByName,
+      Map<String, Object> contextData) {
+    String helpOpt = getHelpOptionName(contextData);
+    for (String name : request.getOptions().keySet()) {
+      Option option = optionsByName.get(name);
+      if (option != null && (helpOpt.equals(option.getLongOpt()) || helpOpt.equals(option.getOpt()))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private String getHelpOptionName(Map<String, Object> contextData) {
     Option helpOpt = (Option) contextData.get(UsageHelp.CTX_HELP_OPTION);
     helpOpt = helpOpt == null ? UsageHelp.DEFAULT_HELP_OPTION : helpOpt;
-    String opt = helpOpt.getLongOpt() != null ? helpOpt.getLongOpt() : helpOpt.getOpt();
-    return commandLine.hasOption(opt);
+    return helpOpt.getLongOpt() != null ? helpOpt.getLongOpt() : helpOpt.getOpt();
   }
 
-  private CommandLine parseCommandLine(Options options, String[] args) throws ParseException {
-    CommandLineParser cliParser = new DefaultParser();
-    return cliParser.parse(options, args);
+  private CommandLine parseCommandLine(String[] args) throws ParseException {
+    loadPluginRoutes(Arrays.asList(args));
+    ParserState state = getParserState();
+    CommandLineParser cliParser = state.compiledParser != null ? state.compiledParser : new DefaultParser();
+    return cliParser.parse(state.options, args);
+  }
+
+  /**
+   * The aggregated options, and what is derived from them for parsing
+   */
+  private static class ParserState {
+
+    private final int pluginLoadCount;
+    private final Options options;
+    private final Map<String, Option> optionsByName;
+    private final CompiledCommandLineParser compiledParser;
+
+    ParserState(int pluginLoadCount, Options options, boolean compiled) {
+      this.pluginLoadCount = pluginLoadCount;
+      this.options = options;
+      this.optionsByName = CommandInvoker.indexOptions(options.getOptions());
+      this.compiledParser = compiled ? new CompiledCommandLineParser(options) : null;
+    }
   }
 
   /**
@@ -147,6 +670,10 @@ public class CommandsCliMain {
 
     private Descriptor rootDescriptor;
     private Map<String, Object> contextData;
+    private boolean compiledParser = false;
+    private CommandScheduler scheduler;
+    private ResultCache resultCache;
+    private long warmUpMillis = 0;
 
     private Builder() {
     }
@@ -196,6 +723,72 @@ public class CommandsCliMain {
       return this;
     }
 
+    /**
+     * Set whether to parse the command line using a parser which is compiled once from the aggregated options
+     * (default: <tt>false</tt>).
+     * <p>
+     * The compiled parser follows the same parsing rules as the commons-cli {@link DefaultParser},
+     * but uses lookup tables instead of searching the options on every token.
+     * This is mostly useful for large command trees and for programs which execute many command lines.
+     * </p>
+     *
+     * @param compiledParser whether to use the compiled parser
+     * @return this builder
+     */
+    public Builder compiledParser(boolean compiledParser) {
+      this.compiledParser = compiledParser;
+      return this;
+    }
+
+    /**
+     * Set a scheduler for admission control of concurrent command executions (default: none).
+     * <p>
+     * This is useful when a single commands CLI instance executes commands for many concurrent callers.
+     * </p>
+     *
+     * @param scheduler the command scheduler
+     * @return this builder
+     * @see CommandScheduler
+     */
+    public Builder scheduler(CommandScheduler scheduler) {
+      this.scheduler = scheduler;
+      return this;
+    }
+
+    /**
+     * Set a cache for the results of cacheable commands (default: none).
+     *
+     * @param resultCache the result cache
+     * @return this builder
+     * @see ResultCache
+     * @see CommandDescriptor.Builder#cacheable()
+     */
+    public Builder resultCache(ResultCache resultCache) {
+      this.resultCache = resultCache;
+      return this;
+    }
+
+    /**
+     * Set the maximal time to warm up the commands CLI in the background once it is built (default: <tt>0</tt>, no warm-up).
+     * <p>
+     * This is useful for a long-lived process, so that the first invocations of each route do not pay for class loading
+     * and interpreted execution. The warm-up resolves every route, renders its usage help and executes the
+     * {@link CommandDescriptor.Builder#sampleInvocation(String...) sample invocations} of every command, repeatedly,
+     * on a low priority daemon thread.
+     * </p>
+     *
+     * @param maxMillis the maximal warm-up time, in milliseconds
+     * @return this builder
+     * @see CommandsCliMain#getWarmUp()
+     */
+    public Builder warmUp(long maxMillis) {
+      if (maxMillis < 0) {
+        throw new IllegalArgumentException("maxMillis must be non-negative");
+      }
+      this.warmUpMillis = maxMillis;
+      return this;
+    }
+
     /**
      * Build the commands CLI main entry point
      *
@@ -0,0 +1,481 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.cli.AmbiguousOptionException;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.MissingArgumentException;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.UnrecognizedOptionException;
+
+/**
+ * A command line parser compiled from a given {@link Options} instance.
+ * <p>
+ * The parser follows the exact parsing rules of the commons-cli {@link DefaultParser}, but resolves options using
+ * lookup tables which are built once, when the parser is created, instead of searching the options on every token:
+ * <ul>
+ * <li>Short and long names are resolved with hash lookups</li>
+ * <li>Partial long names are resolved with a binary search on the sorted long names</li>
+ * <li>Single character options, as used in bundled flags (e.g. <tt>-abc</tt>), are resolved with an array lookup</li>
+ * </ul>
+ * Option values given as separate tokens are taken as is, without copying.
+ * </p>
+ * <p>
+ * Options with features which affect the parsing state beyond a single option (option groups, required options and
+ * value separators) are not compiled. In such case, as well as when parsing other options than the compiled ones, or when
+ * asked to stop at a non-option, parsing is delegated to a new {@link DefaultParser}.
+ * </p>
+ * <p>
+ * A compiled parser is immutable, hence can be shared and used concurrently.
+ * </p>
+ */
+class CompiledCommandLineParser implements CommandLineParser {
+
+  private static final int SINGLE_CHAR_TABLE_SIZE = 128;
+
+  private final Options options;
+  private final boolean compiled;
+  private final Map<String, Option> shortOptions = new HashMap<>();
+  private final Map<String, Option> longOptions = new HashMap<>();
+  private final Option[] singleCharOptions = new Option[SINGLE_CHAR_TABLE_SIZE];
+  private final String[] longNames;
+  private final String[] sortedLongNames;
+  private final int[] sortedLongNamesOrder;
+
+  /**
+   * Compile a parser for the given options
+   *
+   * @param options the options to compile the parser for
+   */
+  CompiledCommandLineParser(Options options) {
+    this.options = requireNonNull(options, "options are required");
+    this.compiled = isCompilable(options);
+    for (Option option : options.getOptions()) {
+      shortOptions.put(option.getOpt() != null ? option.getOpt() : option.getLongOpt(), option);
+    }
+    longNames = options.getMatchingOptions("").toArray(new String[0]);
+    for (String longName : longNames) {
+      for (Option option : options.getOptions()) {
+        if (longName.equals(option.getLongOpt())) {
+          longOptions.put(longName, option);
+        }
+      }
+    }
+    for (char c = 0; c < SINGLE_CHAR_TABLE_SIZE; c++) {
+      singleCharOptions[c] = lookupOption(String.valueOf(c));
+    }
+    Integer[] order = new Integer[longNames.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return longNames[o1].compareTo(longNames[o2]);
+      }
+    });
+    sortedLongNames = new String[order.length];
+    sortedLongNamesOrder = new int[order.length];
+    for (int i = 0; i < order.length; i++) {
+      sortedLongNames[i] = longNames[order[i]];
+      sortedLongNamesOrder[i] = order[i];
+    }
+  }
+
+  private static boolean isCompilable(Options options) {
+    if (!options.getRequiredOptions().isEmpty()) {
+      return false;
+    }
+    for (Option option : options.getOptions()) {
+      if (option.hasValueSeparator() || options.getOptionGroup(option) != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether the options this parser was created with were compiled,
+   * or parsing is always delegated to the {@link DefaultParser}
+   */
+  boolean isCompiled() {
+    return compiled;
+  }
+
+  @Override
+  public CommandLine parse(Options options, String[] arguments) throws ParseException {
+    return parse(options, arguments, false);
+  }
+
+  @Override
+  public CommandLine parse(Options options, String[] arguments, boolean stopAtNonOption) throws ParseException {
+    if (!compiled || options != this.options || stopAtNonOption) {
+      return new DefaultParser().parse(options, arguments, stopAtNonOption);
+    }
+    return new Parsing().parse(arguments);
+  }
+
+  /**
+   * Parse the given arguments using the options this parser was compiled for
+   *
+   * @param arguments the command line arguments
+   * @return the parsed command line
+   * @throws ParseException on any parsing error
+   */
+  CommandLine parse(String[] arguments) throws ParseException {
+    return parse(options, arguments, false);
+  }
+
+  private static String stripLeadingHyphens(String str) {
+    if (str.startsWith("--")) {
+      return str.substring(2);
+    } else if (str.startsWith("-")) {
+      return str.substring(1);
+    }
+    return str;
+  }
+
+  private static String stripLeadingAndTrailingQuotes(String str) {
+    int length = str.length();
+    if (length > 1 && str.charAt(0) == '"' && str.charAt(length - 1) == '"' && str.indexOf('"', 1) == length - 1) {
+      return str.substring(1, length - 1);
+    }
+    return str;
+  }
+
+  private Option lookupOption(String name) {
+    Option option = shortOptions.get(name);
+    return option != null ? option : longOptions.get(name);
+  }
+
+  private Option getOption(String name) {
+    return lookupOption(stripLeadingHyphens(name));
+  }
+
+  private Option getSingleCharOption(char c) {
+    return c < SINGLE_CHAR_TABLE_SIZE ? singleCharOptions[c] : lookupOption(String.valueOf(c));
+  }
+
+  private boolean hasShortOption(String name) {
+    return shortOptions.containsKey(stripLeadingHyphens(name));
+  }
+
+  private boolean hasLongOption(String name) {
+    return longOptions.containsKey(stripLeadingHyphens(name));
+  }
+
+  /**
+   * Get the long option names matching the given (partial) name, in the order they were added to the options.
+   */
+  private List<String> getMatchingOptions(String name) {
+    String prefix = stripLeadingHyphens(name);
+    if (longOptions.containsKey(prefix)) {
+      return Collections.singletonList(prefix);
+    }
+    int from = Arrays.binarySearch(sortedLongNames, prefix);
+    from = from < 0 ? -from - 1 : from;
+    int to = from;
+    while (to < sortedLongNames.length && sortedLongNames[to].startsWith(prefix)) {
+      to++;
+    }
+    if (from == to) {
+      return Collections.emptyList();
+    }
+    int[] order = Arrays.copyOfRange(sortedLongNamesOrder, from, to);
+    Arrays.sort(order);
+    List<String> matching = new ArrayList<>(order.length);
+    for (int index : order) {
+      matching.add(longNames[index]);
+    }
+    return matching;
+  }
+
+  private static boolean acceptsArg(Option option) {
+    return (option.hasArg() || option.hasArgs() || option.hasOptionalArg())
+        && (option.getArgs() <= 0 || option.getValuesList().size() < option.getArgs());
+  }
+
+  private static boolean requiresArg(Option option) {
+    if (option.hasOptionalArg()) {
+      return false;
+    }
+    if (option.getArgs() == Option.UNLIMITED_VALUES) {
+      return option.getValuesList().isEmpty();
+    }
+    return acceptsArg(option);
+  }
+
+  private static boolean isNegativeNumber(String token) {
+    if (token.length() < 2) {
+      return false;
+    }
+    char c = token.charAt(1);
+    if (!(c >= '0' && c <= '9' || c == '.' || c == 'I' || c == 'N')) {
+      //Not a number, avoid the cost of a failed parse
+      return false;
+    }
+    try {
+      Double.parseDouble(token);
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * The state of a single parsing, mirrors the state of a {@link DefaultParser}
+   */
+  private class Parsing {
+
+    private final CommandLine.Builder cmd = new CommandLine.Builder();
+    private String currentToken;
+    private Option currentOption;
+    private boolean skipParsing;
+
+    CommandLine parse(String[] arguments) throws ParseException {
+      if (arguments != null) {
+        for (String argument : arguments) {
+          handleToken(argument);
+        }
+      }
+      checkRequiredArgs();
+      return cmd.build();
+    }
+
+    private void checkRequiredArgs() throws ParseException {
+      if (currentOption != null && requiresArg(currentOption)) {
+        throw new MissingArgumentException(currentOption);
+      }
+    }
+
+    private void handleToken(String token) throws ParseException {
+      currentToken = token;
+      if (skipParsing) {
+        cmd.addArg(token);
+      } else if ("--".equals(token)) {
+        skipParsing = true;
+      } else if (currentOption != null && acceptsArg(currentOption) && isArgument(token)) {
+        addValue(stripLeadingAndTrailingQuotes(token));
+      } else if (token.startsWith("--")) {
+        handleLongOption(token);
+      } else if (token.startsWith("-") && !"-".equals(token)) {
+        handleShortAndLongOption(token);
+      } else {
+        handleUnknownToken(token);
+      }
+      if (currentOption != null && !acceptsArg(currentOption)) {
+        currentOption = null;
+      }
+    }
+
+    private void addValue(String value) {
+      currentOption.getValuesList().add(value);
+    }
+
+    private boolean isArgument(String token) {
+      return !isOption(token) || isNegativeNumber(token);
+    }
+
+    private boolean isOption(String token) {
+      return isLongOption(token) || isShortOption(token);
+    }
+
+    private boolean isShortOption(String token) {
+      if (!token.startsWith("-") || token.length() == 1) {
+        return false;
+      }
+      int pos = token.indexOf('=');
+      String optName = pos == -1 ? token.substring(1) : token.substring(1, pos);
+      if (hasShortOption(optName)) {
+        return true;
+      }
+      return optName.length() > 0 && getSingleCharShortOption(optName) != null;
+    }
+
+    private Option getSingleCharShortOption(String optName) {
+      String name = stripLeadingHyphens(String.valueOf(optName.charAt(0)));
+      return shortOptions.get(name);
+    }
+
+    private boolean isLongOption(String token) {
+      if (!token.startsWith("-") || token.length() == 1) {
+        return false;
+      }
+      int pos = token.indexOf('=');
+      String t = pos == -1 ? token : token.substring(0, pos);
+      if (!getMatchingOptions(t).isEmpty()) {
+        return true;
+      } else if (getLongPrefix(token) != null && !token.startsWith("--")) {
+        return true;
+      }
+      return false;
+    }
+
+    private void handleUnknownToken(String token) throws ParseException {
+      if (token.startsWith("-") && token.length() > 1) {
+        throw new UnrecognizedOptionException("Unrecognized option: " + token, token);
+      }
+      cmd.addArg(token);
+    }
+
+    private void handleLongOption(String token) throws ParseException {
+      if (token.indexOf('=') == -1) {
+        handleLongOptionWithoutEqual(token);
+      } else {
+        handleLongOptionWithEqual(token);
+      }
+    }
+
+    private void handleLongOptionWithoutEqual(String token) throws ParseException {
+      List<String> matchingOpts = getMatchingOptions(token);
+      if (matchingOpts.isEmpty()) {
+        handleUnknownToken(currentToken);
+      } else if (matchingOpts.size() > 1) {
+        throw new AmbiguousOptionException(token, matchingOpts);
+      } else {
+        handleOption(getOption(matchingOpts.get(0)));
+      }
+    }
+
+    private void handleLongOptionWithEqual(String token) throws ParseException {
+      int pos = token.indexOf('=');
+      String value = token.substring(pos + 1);
+      String opt = token.substring(0, pos);
+      List<String> matchingOpts = getMatchingOptions(opt);
+      if (matchingOpts.isEmpty()) {
+        handleUnknownToken(currentToken);
+      } else if (matchingOpts.size() > 1) {
+        throw new AmbiguousOptionException(opt, matchingOpts);
+      } else {
+        Option option = getOption(matchingOpts.get(0));
+        if (acceptsArg(option)) {
+          handleOption(option);
+          addValue(value);
+          currentOption = null;
+        } else {
+          handleUnknownToken(currentToken);
+        }
+      }
+    }
+
+    private void handleShortAndLongOption(String token) throws ParseException {
+      String t = stripLeadingHyphens(token);
+      int pos = t.indexOf('=');
+      if (t.length() == 1) {
+        // -S
+        if (hasShortOption(t)) {
+          handleOption(getOption(t));
+        } else {
+          handleUnknownToken(token);
+        }
+      } else if (pos == -1) {
+        // -xxx
+        if (hasShortOption(t)) {
+          handleOption(getOption(t));
+        } else if (!getMatchingOptions(t).isEmpty()) {
+          // -L or -l
+          handleLongOptionWithoutEqual(token);
+        } else {
+          // -Xmx512m
+          String opt = getLongPrefix(t);
+          if (opt != null && acceptsArg(getOption(opt))) {
+            handleOption(getOption(opt));
+            addValue(t.substring(opt.length()));
+            currentOption = null;
+          } else if (isJavaProperty(t)) {
+            // -SV1 (-Dflag)
+            handleOption(getOption(t.substring(0, 1)));
+            addValue(t.substring(1));
+            currentOption = null;
+          } else {
+            // -S1S2S3 or -S1S2V
+            handleConcatenatedOptions(token);
+          }
+        }
+      } else {
+        // -xxx=yyy
+        String opt = t.substring(0, pos);
+        String value = t.substring(pos + 1);
+        if (opt.length() == 1) {
+          // -S=V
+          Option option = getOption(opt);
+          if (option != null && acceptsArg(option)) {
+            handleOption(option);
+            addValue(value);
+            currentOption = null;
+          } else {
+            handleUnknownToken(token);
+          }
+        } else if (isJavaProperty(opt)) {
+          // -SV1=V2 (-Dkey=value)
+          handleOption(getOption(opt.substring(0, 1)));
+          addValue(opt.substring(1));
+          addValue(value);
+          currentOption = null;
+        } else {
+          // -L=V or -l=V
+          handleLongOptionWithEqual(token);
+        }
+      }
+    }
+
+    private String getLongPrefix(String token) {
+      String t = stripLeadingHyphens(token);
+      for (int i = t.length() - 2; i > 1; i--) {
+        String prefix = t.substring(0, i);
+        if (hasLongOption(prefix)) {
+          return prefix;
+        }
+      }
+      return null;
+    }
+
+    private boolean isJavaProperty(String token) {
+      Option option = getOption(token.substring(0, 1));
+      return option != null && (option.getArgs() >= 2 || option.getArgs() == Option.UNLIMITED_VALUES);
+    }
+
+    private void handleOption(Option option) throws ParseException {
+      checkRequiredArgs();
+      option = (Option) option.clone();
+      cmd.addOption(option);
+      currentOption = option.hasArg() ? option : null;
+    }
+
+    private void handleConcatenatedOptions(String token) throws ParseException {
+      for (int i = 1; i < token.length(); i++) {
+        Option option = getSingleCharOption(token.charAt(i));
+        if (option != null) {
+          handleOption(option);
+          if (currentOption != null && token.length() != i + 1) {
+            addValue(token.substring(i + 1));
+            break;
+          }
+        } else {
+          handleUnknownToken(token);
+          break;
+        }
+      }
+    }
+  }
+}
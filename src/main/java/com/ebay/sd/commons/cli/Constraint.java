@@ -0,0 +1,208 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * A constraint on the values of an argument or an option.
+ * <p>
+ * Constraints are declared on the {@link Argument.Builder#constraint(Constraint) argument} or with the
+ * {@link Descriptor.Builder#addOption(org.apache.commons.cli.Option, Constraint...) option}, and are evaluated on each value
+ * right after the values are bound, before the command is created. A value which does not satisfy a constraint fails with a
+ * {@link ParseException} such as <tt>Invalid value for argument 'PORT': 70000 (expected: an integer
+ * between 1 and 65535)</tt>.
+ * </p>
+ * <p>
+ * Constraints are prepared once, when declared (e.g. a regular expression is compiled once), and the range, pattern and
+ * one-of constraints evaluate a valid value without allocating, so the same descriptors can validate many invocations cheaply.
+ * For example:
+ * <pre>
+ *   Argument.builder("PORT")
+ *       .description("The port")
+ *       .constraint(Constraint.range(1, 65535))
+ *       .build();
+ * </pre>
+ * </p>
+ */
+public abstract class Constraint {
+
+  private final String expectation;
+
+  /**
+   * Create a constraint
+   *
+   * @param expectation a description of the expected values, used in the error message, e.g. <tt>a positive integer</tt>
+   */
+  protected Constraint(String expectation) {
+    this.expectation = requireNonNull(expectation, "expectation is required");
+  }
+
+  /**
+   * Test whether a value satisfies this constraint
+   *
+   * @param value the value to test
+   * @return <tt>true</tt> if the value is valid
+   */
+  public abstract boolean test(String value);
+
+  /**
+   * Get the description of the expected values
+   *
+   * @return the expectation
+   */
+  public String getExpectation() {
+    return expectation;
+  }
+
+  /**
+   * Check a value against constraints
+   *
+   * @param constraints the constraints
+   * @param kind the kind of the constrained element, i.e. <tt>argument</tt> or <tt>option</tt>
+   * @param name the name of the constrained element
+   * @param value the value to check
+   * @throws ParseException if the value does not satisfy any of the constraints
+   */
+  static void check(Constraint[] constraints, String kind, String name, String value) throws ParseException {
+    for (Constraint constraint : constraints) {
+      if (!constraint.test(value)) {
+        throw new ParseException("Invalid value for " + kind + " '" + name + "': " + value +
+            " (expected: " + constraint.expectation + ")");
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Constraint{" +
+        "expectation='" + expectation + '\'' +
+        '}';
+  }
+
+  /**
+   * Constrain the values to integers in a range
+   *
+   * @param min the minimal value, inclusive
+   * @param max the maximal value, inclusive
+   * @return the new constraint
+   */
+  public static Constraint range(final long min, final long max) {
+    if (min > max) {
+      throw new IllegalArgumentException("min must not be greater than max");
+    }
+    return new Constraint("an integer between " + min + " and " + max) {
+      @Override
+      public boolean test(String value) {
+        long number;
+        try {
+          number = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+          return false;
+        }
+        return number >= min && number <= max;
+      }
+    };
+  }
+
+  /**
+   * Constrain the values to match a regular expression, in whole. The expression is compiled once.
+   *
+   * @param regex the regular expression
+   * @return the new constraint
+   */
+  public static Constraint pattern(String regex) {
+    final Pattern pattern = Pattern.compile(requireNonNull(regex, "regex is required"));
+    final ThreadLocal<Matcher> matchers = new ThreadLocal<Matcher>() {
+      @Override
+      protected Matcher initialValue() {
+        return pattern.matcher("");
+      }
+    };
+    return new Constraint("a value matching " + regex) {
+      @Override
+      public boolean test(String value) {
+        Matcher matcher = matchers.get();
+        boolean matches = matcher.reset(value).matches();
+        matcher.reset("");
+        return matches;
+      }
+    };
+  }
+
+  /**
+   * Constrain the values to one of the given values
+   *
+   * @param values the allowed values
+   * @return the new constraint
+   */
+  public static Constraint oneOf(String... values) {
+    final Set<String> allowed = new HashSet<>(Arrays.asList(requireNonNull(values, "values are required")));
+    if (allowed.isEmpty()) {
+      throw new IllegalArgumentException("At least one value is required");
+    }
+    return new Constraint("one of " + Arrays.toString(values)) {
+      @Override
+      public boolean test(String value) {
+        return allowed.contains(value);
+      }
+    };
+  }
+
+  /**
+   * Constrain the values to paths of existing files or directories
+   *
+   * @return the new constraint
+   */
+  public static Constraint pathExists() {
+    return new Constraint("an existing path") {
+      @Override
+      public boolean test(String value) {
+        return new File(value).exists();
+      }
+    };
+  }
+
+  /**
+   * Constrain the values to paths of existing regular files
+   *
+   * @return the new constraint
+   */
+  public static Constraint fileExists() {
+    return new Constraint("an existing file") {
+      @Override
+      public boolean test(String value) {
+        return new File(value).isFile();
+      }
+    };
+  }
+
+  /**
+   * Constrain the values to paths of existing directories
+   *
+   * @return the new constraint
+   */
+  public static Constraint directoryExists() {
+    return new Constraint("an existing directory") {
+      @Override
+      public boolean test(String value) {
+        return new File(value).isDirectory();
+      }
+    };
+  }
+}
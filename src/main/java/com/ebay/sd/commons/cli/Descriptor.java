@@ -9,12 +9,15 @@ http://www.apache.org/licenses/LICENSE-2.0.
 
 package com.ebay.sd.commons.cli;
 
-import static java.util.Collections.unmodifiableList;
+import static com.ebay.sd.commons.cli.Utils.immutableList;
 import static java.util.Objects.requireNonNull;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.OptionGroup;
 
@@ -27,12 +30,15 @@ public abstract class Descriptor implements NameDescriptionSupport {
   private final String description;
   private final List<Option> options;
   private final List<OptionGroup> optionGroups;
+  private final Map<String, Constraint[]> optionConstraints;
 
   Descriptor(Builder<?, ?> builder) {
-    this.name = requireNonNull(builder.name, "name is required");
+    this.name = requireNonNull(builder.name, "name is required").intern();
     this.description = requireNonNull(builder.description, "description is required");
-    this.options = unmodifiableList(new ArrayList<>(requireNonNull(builder.options, "options is required")));
-    this.optionGroups = unmodifiableList(new ArrayList<>(requireNonNull(builder.optionGroups, "optionGroups is required")));
+    this.options = immutableList(requireNonNull(builder.options, "options is required"));
+    this.optionGroups = immutableList(requireNonNull(builder.optionGroups, "optionGroups is required"));
+    this.optionConstraints = builder.optionConstraints.isEmpty() ? Collections.<String, Constraint[]>emptyMap()
+        : Collections.unmodifiableMap(new LinkedHashMap<>(builder.optionConstraints));
   }
 
   /**
@@ -67,6 +73,15 @@ public abstract class Descriptor implements NameDescriptionSupport {
     return optionGroups;
   }
 
+  /**
+   * Get the constraints on the values of the options of this descriptor
+   *
+   * @return the constraints by the short name of the option (or the long name, if it has no short name), or an empty map
+   */
+  Map<String, Constraint[]> getOptionConstraints() {
+    return optionConstraints;
+  }
+
   @Override
   public String toString() {
     return "Descriptor{" +
@@ -80,6 +95,7 @@ public abstract class Descriptor implements NameDescriptionSupport {
     private String description;
     private List<Option> options = new ArrayList<>();
     private List<OptionGroup> optionGroups = new ArrayList<>();
+    private Map<String, Constraint[]> optionConstraints = new LinkedHashMap<>();
 
     @SuppressWarnings("unchecked")
     private B self() {
@@ -116,6 +132,26 @@ public abstract class Descriptor implements NameDescriptionSupport {
       return self();
     }
 
+    /**
+     * Add an option with constraints on its values, which are checked on each value once the options are parsed
+     *
+     * @param option the option
+     * @param constraints the constraints
+     * @return this builder
+     * @see Constraint
+     */
+    public B addOption(Option option, Constraint... constraints) {
+      addOption(option);
+      requireNonNull(constraints, "constraints are required");
+      for (Constraint constraint : constraints) {
+        requireNonNull(constraint, "constraint is required");
+      }
+      if (constraints.length > 0) {
+        optionConstraints.put(option.getOpt() != null ? option.getOpt() : option.getLongOpt(), constraints.clone());
+      }
+      return self();
+    }
+
     /**
      * Add an option group
      *
@@ -0,0 +1,34 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * A command which can process changes to its input files incrementally, when executed in {@link WatchMode watch mode}.
+ * <p>
+ * The command is created and {@link #execute() executed} once, and then the same command is executed again with
+ * the changed paths on each change, so it can keep its state (e.g. the results for the unchanged files) between executions.
+ * Commands which are not incremental are created again and fully executed on each change.
+ * </p>
+ *
+ * @see WatchMode
+ */
+public interface IncrementalCommand extends Command {
+
+  /**
+   * Execute the command again, after some of its input files changed
+   *
+   * @param changedPaths the created, modified and deleted paths
+   * @throws CommandException on any error during the command execution
+   */
+  void executeChanged(Set<Path> changedPaths) throws CommandException;
+}
@@ -0,0 +1,362 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The input of a command, given as an {@link CommandDescriptor.Builder#inputFileArgument(String) input file argument}:
+ * either a file, or the standard input when the value is <tt>-</tt>.
+ * <p>
+ * The input is opened the same way regardless of its kind: {@link #openStream()} and {@link #openReader()} transparently
+ * decompress gzip input (detected by its content, not by its name). An uncompressed file can also be
+ * {@link #map() memory mapped}, which avoids copying the content through buffers and is faster for reading large files,
+ * and {@link #split(int) split} into byte ranges aligned to line boundaries, to be read by parallel readers.
+ * </p>
+ * <p>
+ * For example:
+ * <pre>
+ *   InputSource input = context.getInputSource("FILE");
+ *   try (BufferedReader reader = input.openReader()) {
+ *     //...
+ *   }
+ * </pre>
+ * </p>
+ *
+ * @see CommandContext#getInputSource(String)
+ */
+public final class InputSource {
+
+  /**
+   * The argument value for reading the standard input
+   */
+  public static final String STDIN = "-";
+  private static final int GZIP_MAGIC = 0x8b1f;
+  private static final int BUFFER_BYTES = 8192;
+
+  private final String name;
+  private final Path path;
+  private final CommandIO io;
+  private final long start;
+  private final long end;
+
+  private InputSource(String name, Path path, CommandIO io, long start, long end) {
+    this.name = name;
+    this.path = path;
+    this.io = io;
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Create an input source of an argument value
+   *
+   * @param value the argument value, a file path or <tt>-</tt> for the standard input
+   * @param io the command IO, whose standard input and charset are used
+   * @return the new input source
+   */
+  public static InputSource of(String value, CommandIO io) {
+    requireNonNull(value, "value is required");
+    requireNonNull(io, "io is required");
+    return STDIN.equals(value) ? new InputSource(value, null, io, 0, -1) : new InputSource(value, Paths.get(value), io, 0, -1);
+  }
+
+  /**
+   * Get the name of the input, i.e. the argument value
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Get the path of the file
+   *
+   * @return the path, or <tt>null</tt> for the standard input
+   */
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Whether this is the standard input
+   *
+   * @return <tt>true</tt> if the standard input
+   */
+  public boolean isStdin() {
+    return path == null;
+  }
+
+  /**
+   * Whether this is a byte range of a file, created by {@link #split(int)}
+   *
+   * @return <tt>true</tt> if a range
+   */
+  public boolean isRange() {
+    return end >= 0;
+  }
+
+  /**
+   * Get the position of the first byte of this input in the file
+   *
+   * @return the start position, <tt>0</tt> unless a range
+   */
+  public long getStart() {
+    return start;
+  }
+
+  /**
+   * Get the size of this input in bytes, as stored (i.e. compressed, if compressed)
+   *
+   * @return the size in bytes, or <tt>-1</tt> for the standard input
+   * @throws IOException if failed to read the file size
+   */
+  public long getSize() throws IOException {
+    if (isStdin()) {
+      return -1;
+    }
+    return isRange() ? end - start : Files.size(path);
+  }
+
+  /**
+   * Whether the content of this input is gzip compressed
+   *
+   * @return <tt>true</tt> if compressed
+   * @throws IOException if failed to read the input
+   */
+  public boolean isCompressed() throws IOException {
+    if (isRange()) {
+      return false;
+    }
+    if (isStdin()) {
+      InputStream in = io.getBufferedIn();
+      in.mark(2);
+      try {
+        return readMagic(in) == GZIP_MAGIC;
+      } finally {
+        in.reset();
+      }
+    }
+    try (InputStream in = Files.newInputStream(path)) {
+      return readMagic(in) == GZIP_MAGIC;
+    }
+  }
+
+  private static int readMagic(InputStream in) throws IOException {
+    int b1 = in.read();
+    int b2 = in.read();
+    return b1 < 0 || b2 < 0 ? -1 : (b2 << 8) | b1;
+  }
+
+  /**
+   * Open a stream of the content of this input, decompressed if compressed.
+   * Closing a stream of the standard input does not close the standard input.
+   *
+   * @return the input stream
+   * @throws IOException if failed to open the input
+   */
+  public InputStream openStream() throws IOException {
+    InputStream in;
+    if (isStdin()) {
+      in = new FilterInputStream(io.getBufferedIn()) {
+        @Override
+        public void close() {
+          //The standard input is owned by the command IO
+        }
+      };
+    } else if (isRange()) {
+      FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+      channel.position(start);
+      return new RangeInputStream(Channels.newInputStream(channel), end - start);
+    } else {
+      in = Files.newInputStream(path);
+    }
+    try {
+      return isCompressed() ? new GZIPInputStream(in, BUFFER_BYTES) : in;
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Open a reader of the content of this input, decompressed if compressed, using the charset of the command IO
+   *
+   * @return the buffered reader
+   * @throws IOException if failed to open the input
+   */
+  public BufferedReader openReader() throws IOException {
+    return new BufferedReader(new InputStreamReader(openStream(), io.getCharset()));
+  }
+
+  /**
+   * Map the content of this input to memory, read only.
+   * Only an uncompressed file, or a range of it, of up to 2GB can be mapped - split larger files.
+   *
+   * @return the mapped buffer, positioned at the start of this input
+   * @throws IOException if failed to map the file
+   * @throws IllegalStateException if this input cannot be mapped
+   */
+  public MappedByteBuffer map() throws IOException {
+    if (isStdin()) {
+      throw new IllegalStateException("The standard input cannot be mapped");
+    }
+    if (isCompressed()) {
+      throw new IllegalStateException("A compressed file cannot be mapped: " + name);
+    }
+    long size = getSize();
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalStateException("The file is too large to map, split it first: " + name);
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+    }
+  }
+
+  /**
+   * Split this input into byte ranges, so each range starts at the beginning of a line and ends after the end of a line
+   * (or at the end of the file). The ranges are of roughly equal sizes, but there may be fewer ranges than requested,
+   * e.g. for a small file.
+   *
+   * @param parts the requested number of ranges
+   * @return the ranges, in order, which cover this input
+   * @throws IOException if failed to read the file
+   * @throws IllegalStateException if this input cannot be split
+   */
+  public List<InputSource> split(int parts) throws IOException {
+    if (parts < 1) {
+      throw new IllegalArgumentException("parts must be positive");
+    }
+    if (isStdin()) {
+      throw new IllegalStateException("The standard input cannot be split");
+    }
+    if (isCompressed()) {
+      throw new IllegalStateException("A compressed file cannot be split: " + name);
+    }
+    long rangeStart = start;
+    long rangeEnd = start + getSize();
+    List<InputSource> ranges = new ArrayList<>(parts);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+      long from = rangeStart;
+      for (int i = 1; i <= parts && from < rangeEnd; i++) {
+        long to = i == parts ? rangeEnd
+            : nextLineStart(channel, buffer, Math.max(from, rangeStart + (rangeEnd - rangeStart) * i / parts), rangeEnd);
+        if (to > from) {
+          ranges.add(new InputSource(name, path, io, from, to));
+          from = to;
+        }
+      }
+    }
+    return ranges;
+  }
+
+  /**
+   * Find the position after the first line separator at or after a position
+   */
+  private static long nextLineStart(FileChannel channel, ByteBuffer buffer, long position, long limit) throws IOException {
+    if (position <= 0) {
+      return 0;
+    }
+    //Start from the byte before the position, in case the position is already at the start of a line
+    long current = position - 1;
+    while (current < limit) {
+      buffer.clear();
+      int read = channel.read(buffer, current);
+      if (read <= 0) {
+        break;
+      }
+      for (int i = 0; i < read && current + i < limit; i++) {
+        if (buffer.get(i) == '\n') {
+          return current + i + 1;
+        }
+      }
+      current += read;
+    }
+    return limit;
+  }
+
+  @Override
+  public String toString() {
+    return "InputSource{" +
+        "name='" + name + '\'' +
+        (isRange() ? ", start=" + start + ", end=" + end : "") +
+        '}';
+  }
+
+  private static class RangeInputStream extends FilterInputStream {
+
+    private long remaining;
+
+    RangeInputStream(InputStream in, long length) {
+      super(in);
+      this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int b = super.read();
+      if (b >= 0) {
+        remaining--;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int read = super.read(b, off, (int) Math.min(len, remaining));
+      if (read > 0) {
+        remaining -= read;
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(Math.min(n, remaining));
+      remaining -= skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(super.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,252 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal JSON parser, for parsing small structured requests without an external dependency.
+ * <p>
+ * Objects are parsed to {@link Map}s (in the order of their members), arrays to {@link List}s, numbers to {@link Long}s
+ * if they are integral and to {@link Double}s otherwise, and <tt>true</tt>, <tt>false</tt> and <tt>null</tt>
+ * to their Java equivalents.
+ * Arrays and objects may be nested up to {@link #MAX_DEPTH} levels, so a malicious document cannot exhaust the stack.
+ * </p>
+ */
+class JsonParser {
+
+  static final int MAX_DEPTH = 256;
+
+  private final String json;
+  private int pos;
+  private int depth;
+
+  private JsonParser(String json) {
+    this.json = json;
+  }
+
+  /**
+   * Parse a JSON document
+   *
+   * @param json the JSON document
+   * @return the parsed value
+   * @throws IllegalArgumentException if the document is not valid JSON
+   */
+  static Object parse(String json) {
+    JsonParser parser = new JsonParser(requireNonNull(json, "json is required"));
+    Object value = parser.readValue();
+    parser.skipWhitespace();
+    if (parser.pos < json.length()) {
+      throw parser.error("Unexpected content after the value");
+    }
+    return value;
+  }
+
+  private Object readValue() {
+    skipWhitespace();
+    if (pos >= json.length()) {
+      throw error("Unexpected end of input");
+    }
+    char c = json.charAt(pos);
+    switch (c) {
+      case '{':
+        return readObject();
+      case '[':
+        return readArray();
+      case '"':
+        return readString();
+      case 't':
+        return readLiteral("true", Boolean.TRUE);
+      case 'f':
+        return readLiteral("false", Boolean.FALSE);
+      case 'n':
+        return readLiteral("null", null);
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          return readNumber();
+        }
+        throw error("Unexpected character '" + c + "'");
+    }
+  }
+
+  private Map<String, Object> readObject() {
+    Map<String, Object> object = new LinkedHashMap<>();
+    enter();
+    skipWhitespace();
+    if (tryRead('}')) {
+      depth--;
+      return object;
+    }
+    do {
+      skipWhitespace();
+      if (pos >= json.length() || json.charAt(pos) != '"') {
+        throw error("Expected a member name");
+      }
+      String name = readString();
+      skipWhitespace();
+      expect(':');
+      object.put(name, readValue());
+      skipWhitespace();
+    } while (tryRead(','));
+    expect('}');
+    depth--;
+    return object;
+  }
+
+  private List<Object> readArray() {
+    List<Object> array = new ArrayList<>();
+    enter();
+    skipWhitespace();
+    if (tryRead(']')) {
+      depth--;
+      return array;
+    }
+    do {
+      array.add(readValue());
+      skipWhitespace();
+    } while (tryRead(','));
+    expect(']');
+    depth--;
+    return array;
+  }
+
+  private void enter() {
+    if (++depth > MAX_DEPTH) {
+      throw error("Nesting depth exceeds " + MAX_DEPTH);
+    }
+    pos++;
+  }
+
+  private String readString() {
+    pos++;
+    StringBuilder sb = null;
+    int start = pos;
+    while (pos < json.length()) {
+      char c = json.charAt(pos);
+      if (c == '"') {
+        String value = sb == null ? json.substring(start, pos) : sb.append(json, start, pos).toString();
+        pos++;
+        return value;
+      }
+      if (c < 0x20) {
+        throw error("Unescaped control character in string");
+      }
+      if (c == '\\') {
+        if (sb == null) {
+          sb = new StringBuilder();
+        }
+        sb.append(json, start, pos);
+        pos++;
+        sb.append(readEscape());
+        start = pos;
+      } else {
+        pos++;
+      }
+    }
+    throw error("Unterminated string");
+  }
+
+  private char readEscape() {
+    if (pos >= json.length()) {
+      throw error("Unterminated string");
+    }
+    char c = json.charAt(pos++);
+    switch (c) {
+      case '"':
+      case '\\':
+      case '/':
+        return c;
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'u':
+        if (pos + 4 > json.length()) {
+          throw error("Invalid unicode escape");
+        }
+        try {
+          char unicode = (char) Integer.parseInt(json.substring(pos, pos + 4), 16);
+          pos += 4;
+          return unicode;
+        } catch (NumberFormatException e) {
+          throw error("Invalid unicode escape");
+        }
+      default:
+        throw error("Invalid escape character '" + c + "'");
+    }
+  }
+
+  private Object readLiteral(String literal, Object value) {
+    if (!json.startsWith(literal, pos)) {
+      throw error("Unexpected literal");
+    }
+    pos += literal.length();
+    return value;
+  }
+
+  private Number readNumber() {
+    int start = pos;
+    boolean integral = true;
+    while (pos < json.length()) {
+      char c = json.charAt(pos);
+      if (c == '.' || c == 'e' || c == 'E') {
+        integral = false;
+      } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+        break;
+      }
+      pos++;
+    }
+    String number = json.substring(start, pos);
+    try {
+      return integral ? (Number) Long.parseLong(number) : (Number) Double.parseDouble(number);
+    } catch (NumberFormatException e) {
+      throw error("Invalid number '" + number + "'");
+    }
+  }
+
+  private void skipWhitespace() {
+    while (pos < json.length()) {
+      char c = json.charAt(pos);
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+        return;
+      }
+      pos++;
+    }
+  }
+
+  private boolean tryRead(char c) {
+    if (pos < json.length() && json.charAt(pos) == c) {
+      pos++;
+      return true;
+    }
+    return false;
+  }
+
+  private void expect(char c) {
+    if (!tryRead(c)) {
+      throw error("Expected '" + c + "'");
+    }
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException("Invalid JSON at position " + pos + ": " + message);
+  }
+}
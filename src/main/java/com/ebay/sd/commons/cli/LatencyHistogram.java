@@ -0,0 +1,135 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+/**
+ * A histogram of latencies in nanoseconds, with a fixed relative precision.
+ * <p>
+ * Values below {@value #LINEAR_LIMIT} are counted exactly, larger values are counted in log-linear buckets, each power of 2
+ * split into {@value #SUB_BUCKETS} sub-buckets, so a value is reported within 1% of its actual value. Recording a value is
+ * allocation free and takes constant time, and the histogram takes a fixed amount of memory regardless of the number of
+ * recorded values.
+ * </p>
+ */
+class LatencyHistogram {
+
+  static final int SUB_BUCKETS = 128;
+  static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+  private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+  private final long[] counts = new long[index(Long.MAX_VALUE) + 1];
+  private long totalCount;
+  private long min = Long.MAX_VALUE;
+  private long max;
+  private double sum;
+
+  /**
+   * Record a value
+   *
+   * @param value the value, must be non-negative
+   */
+  void record(long value) {
+    record(value, 1);
+  }
+
+  private void record(long value, long count) {
+    if (value < 0) {
+      throw new IllegalArgumentException("value must be non-negative");
+    }
+    counts[index(value)] += count;
+    totalCount += count;
+    sum += (double) value * count;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  /**
+   * Record a value, correcting for coordinated omission: a measuring loop which issues an operation only after the previous
+   * one completed does not measure the operations which would have been issued while a long operation stalled the loop.
+   * When the value exceeds the expected interval between operations, the values these missed operations would have measured
+   * are recorded as well (the value minus each multiple of the interval, down to the interval).
+   *
+   * @param value the value, must be non-negative
+   * @param expectedInterval the expected interval between operations, or <tt>0</tt> to not correct
+   */
+  void recordWithExpectedInterval(long value, long expectedInterval) {
+    record(value);
+    if (expectedInterval <= 0) {
+      return;
+    }
+    for (long missed = value - expectedInterval; missed >= expectedInterval; missed -= expectedInterval) {
+      record(missed);
+    }
+  }
+
+  /**
+   * Get the number of recorded values
+   *
+   * @return the total count
+   */
+  long getTotalCount() {
+    return totalCount;
+  }
+
+  long getMin() {
+    return totalCount == 0 ? 0 : min;
+  }
+
+  long getMax() {
+    return max;
+  }
+
+  double getMean() {
+    return totalCount == 0 ? 0 : sum / totalCount;
+  }
+
+  /**
+   * Get the value at a percentile, i.e. the highest value of the bucket which contains the value with that rank
+   *
+   * @param percentile the percentile, between <tt>0</tt> and <tt>100</tt>
+   * @return the value at the percentile, or <tt>0</tt> if no value was recorded
+   */
+  long getValueAtPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile must be between 0 and 100");
+    }
+    if (totalCount == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+    long count = 0;
+    for (int i = 0; i < counts.length; i++) {
+      count += counts[i];
+      if (count >= rank) {
+        return Math.max(getMin(), Math.min(max, highestValue(i)));
+      }
+    }
+    return max;
+  }
+
+  static int index(long value) {
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  static long highestValue(int index) {
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+    int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+    long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+    long lowest = subBucket << shift;
+    long highest = lowest + (1L << shift) - 1;
+    return highest < lowest ? Long.MAX_VALUE : highest;
+  }
+}
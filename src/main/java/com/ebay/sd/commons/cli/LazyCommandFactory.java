@@ -0,0 +1,177 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * A command factory which loads its class by name only when the first command is created.
+ * <p>
+ * Referring to command classes directly from the descriptors (e.g. with an anonymous {@link CommandFactory}) loads all the
+ * command classes of the tree, and the classes they depend on, as soon as the root descriptor is built. With a lazy factory,
+ * only the classes of the executed command are loaded.
+ * </p>
+ * <p>
+ * The class is either:
+ * <ul>
+ * <li>a {@link CommandFactory} with a public no-arg constructor, which is instantiated once, or</li>
+ * <li>a {@link Command} with a public constructor which takes a {@link CommandContext}, or a public no-arg constructor,
+ * which is instantiated for each command using a cached {@link MethodHandle} to the constructor.</li>
+ * </ul>
+ * For example:
+ * <pre>
+ *     CommandDescriptor fooCmd = CommandDescriptor.builder("foo")
+ *         .description("Do foo")
+ *         .factoryClass("com.example.FooCommand")
+ *         .build();
+ * </pre>
+ * </p>
+ *
+ * @see CommandDescriptor.Builder#factoryClass(String)
+ */
+public class LazyCommandFactory implements CommandFactory {
+
+  private static final MethodType FACTORY_TYPE = MethodType.methodType(Command.class, CommandContext.class);
+
+  private final String className;
+  private final ClassLoader classLoader;
+  private volatile CommandFactory delegate;
+
+  private LazyCommandFactory(String className, ClassLoader classLoader) {
+    this.className = requireNonNull(className, "className is required");
+    this.classLoader = requireNonNull(classLoader, "classLoader is required");
+  }
+
+  /**
+   * Create a lazy command factory, which loads the class using the context class loader of the current thread
+   *
+   * @param className the fully qualified name of the command or command factory class
+   * @return the new lazy command factory
+   */
+  public static LazyCommandFactory of(String className) {
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    return of(className, classLoader != null ? classLoader : LazyCommandFactory.class.getClassLoader());
+  }
+
+  /**
+   * Create a lazy command factory
+   *
+   * @param className the fully qualified name of the command or command factory class
+   * @param classLoader the class loader to load the class with
+   * @return the new lazy command factory
+   */
+  public static LazyCommandFactory of(String className, ClassLoader classLoader) {
+    return new LazyCommandFactory(className, classLoader);
+  }
+
+  /**
+   * Get the name of the command or command factory class
+   *
+   * @return the class name
+   */
+  public String getClassName() {
+    return className;
+  }
+
+  /**
+   * Whether the class was already loaded, i.e. a command was already created
+   *
+   * @return <tt>true</tt> if loaded
+   */
+  public boolean isLoaded() {
+    return delegate != null;
+  }
+
+  @Override
+  public Command create(CommandContext commandContext) throws ParseException {
+    CommandFactory factory = delegate;
+    if (factory == null) {
+      synchronized (this) {
+        factory = delegate;
+        if (factory == null) {
+          factory = resolve();
+          delegate = factory;
+        }
+      }
+    }
+    return factory.create(commandContext);
+  }
+
+  private CommandFactory resolve() {
+    Class<?> type;
+    try {
+      type = Class.forName(className, true, classLoader);
+    } catch (ClassNotFoundException | LinkageError e) {
+      throw new IllegalStateException("Failed to load command class: " + className, e);
+    }
+    MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+    try {
+      if (CommandFactory.class.isAssignableFrom(type)) {
+        MethodHandle constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+        return (CommandFactory) constructor.invoke();
+      }
+      if (Command.class.isAssignableFrom(type)) {
+        return new ConstructorCommandFactory(findCommandConstructor(lookup, type));
+      }
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException("Failed to create command factory: " + className, e);
+    }
+    throw new IllegalStateException("Class is neither a command nor a command factory: " + className);
+  }
+
+  private MethodHandle findCommandConstructor(MethodHandles.Lookup lookup, Class<?> type) throws IllegalAccessException {
+    try {
+      return lookup.findConstructor(type, MethodType.methodType(void.class, CommandContext.class)).asType(FACTORY_TYPE);
+    } catch (NoSuchMethodException e) {
+      try {
+        MethodHandle constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+        return MethodHandles.dropArguments(constructor, 0, CommandContext.class).asType(FACTORY_TYPE);
+      } catch (NoSuchMethodException e2) {
+        throw new IllegalStateException("Command class has no public constructor which takes a CommandContext " +
+            "or no arguments: " + className, e2);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "LazyCommandFactory{" +
+        "className='" + className + '\'' +
+        ", loaded=" + isLoaded() +
+        '}';
+  }
+
+  private static class ConstructorCommandFactory implements CommandFactory {
+
+    private final MethodHandle constructor;
+
+    ConstructorCommandFactory(MethodHandle constructor) {
+      this.constructor = constructor;
+    }
+
+    @Override
+    public Command create(CommandContext commandContext) throws ParseException {
+      try {
+        return (Command) constructor.invokeExact(commandContext);
+      } catch (ParseException | RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException("Failed to create command: " + e.getMessage(), e);
+      }
+    }
+  }
+}
@@ -11,6 +11,8 @@ package com.ebay.sd.commons.cli;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.OptionGroup;
 import org.apache.commons.cli.Options;
@@ -19,6 +21,8 @@ import org.apache.commons.cli.Options;
  * Options aggregator.
  * <p>
  * Responsible for aggregating and validating all options and option groups from the given descriptor recursively.
+ * Option instances are shared with the descriptors where possible - an option which is added to several descriptors
+ * is aggregated once, and only required options are copied (to be made optional).
  * </p>
  */
 class OptionsAggregator {
@@ -31,27 +35,34 @@ class OptionsAggregator {
    */
   Options aggregate(Descriptor rootDescriptor) {
     Options options = new Options();
-    aggregate(options, requireNonNull(rootDescriptor, "root descriptor is required"));
+    aggregate(options, requireNonNull(rootDescriptor, "root descriptor is required"), new IdentityHashMap<Option, Option>());
     return options;
   }
 
-  private void aggregate(Options options, Descriptor descriptor) {
+  private void aggregate(Options options, Descriptor descriptor, Map<Option, Option> aggregated) {
     for (Option option : descriptor.getOptions()) {
+      if (aggregated.containsKey(option)) {
+        continue;
+      }
       Option normalizedOption = normalizeOption(option);
       assertNoConflict(options, normalizedOption);
       options.addOption(normalizedOption);
+      aggregated.put(option, normalizedOption);
     }
     for (OptionGroup group : descriptor.getOptionGroups()) {
       options.addOptionGroup(group);
     }
     if (descriptor instanceof RouteDescriptor) {
-      for (Descriptor subCmd : ((RouteDescriptor) descriptor).getSubCommands()) {
-        aggregate(options, subCmd);
+      for (Descriptor subCmd : ((RouteDescriptor) descriptor).getLoadedSubCommands()) {
+        aggregate(options, subCmd, aggregated);
       }
     }
   }
 
   private Option normalizeOption(Option option) {
+    if (!option.isRequired()) {
+      return option;
+    }
     Option copy = (Option) option.clone();
     copy.setRequired(false);
     return copy;
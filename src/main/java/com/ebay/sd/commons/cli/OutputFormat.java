@@ -0,0 +1,112 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import java.util.Locale;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * The format of the records a command writes to its output
+ *
+ * @see RecordEncoder
+ * @see CommandContext#createRecordEncoder(String...)
+ */
+public enum OutputFormat {
+
+  /**
+   * Plain text, a line per record with the values separated by spaces, without a header line
+   */
+  TEXT,
+  /**
+   * A JSON array of objects, an object per record
+   */
+  JSON,
+  /**
+   * JSON Lines, a JSON object per record on each line
+   */
+  JSONL,
+  /**
+   * Comma separated values, with a header line
+   */
+  CSV,
+  /**
+   * Tab separated values, with a header line
+   */
+  TSV;
+
+  /**
+   * Command context key for setting a custom output format option, instead of the default <tt>--output</tt> option
+   * <p>
+   * Expected value type: {@link Option}
+   * </p>
+   *
+   * @see CommandContext#putValue(String, Object)
+   */
+  public static final String CTX_OUTPUT_OPTION = "output.option";
+  /**
+   * Command context key for setting whether the output format option should be added automatically to every command
+   * (default: <tt>false</tt>)
+   * <p>
+   * Expected value type: {@link Boolean}
+   * </p>
+   *
+   * @see CommandContext#putValue(String, Object)
+   */
+  public static final String CTX_OUTPUT_OPTION_AUTO_ADD = "output.option.auto.add";
+  /**
+   * Command context key for setting the output format. When the output format option is given in the command line,
+   * this value is overridden with the parsed format.
+   * <p>
+   * Expected value type: {@link OutputFormat}
+   * </p>
+   *
+   * @see CommandContext#getOutputFormat()
+   */
+  public static final String CTX_OUTPUT_FORMAT = "output.format";
+  static final Option DEFAULT_OUTPUT_OPTION = Option.builder().longOpt("output").hasArg().argName("FORMAT")
+      .desc("Output format, one of: " + names()).build();
+
+  /**
+   * Get the name of this format, as given in the command line
+   *
+   * @return the lower case name of this format
+   */
+  public String getName() {
+    return name().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Parse an output format by its name, ignoring case
+   *
+   * @param name the name of the format
+   * @return the output format
+   * @throws ParseException if the name does not match any format
+   */
+  public static OutputFormat parse(String name) throws ParseException {
+    for (OutputFormat format : values()) {
+      if (format.name().equalsIgnoreCase(name)) {
+        return format;
+      }
+    }
+    throw new ParseException("Invalid output format: " + name + " (expected one of: " + names() + ")");
+  }
+
+  private static String names() {
+    StringBuilder names = new StringBuilder();
+    for (OutputFormat format : values()) {
+      if (names.length() > 0) {
+        names.append(", ");
+      }
+      names.append(format.getName());
+    }
+    return names.toString();
+  }
+}
@@ -0,0 +1,340 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * A base class for commands which process each of the values of a multi-valued argument independently,
+ * fanning the values out to a {@link ForkJoinPool}.
+ * <p>
+ * The processed argument is set on the command descriptor using
+ * {@link CommandDescriptor.Builder#parallelArgument(String)}, which also adds the {@link #PARALLELISM_OPTION}.
+ * Each value is passed to {@link #process(String)} on a pool thread, and each result is passed to
+ * {@link #emit(String, Object)} on the executing thread - in the order of the values if {@link #isOrdered()},
+ * otherwise in the order of completion.
+ * Failures of single values do not stop the others, they are collected and passed to {@link #handleFailures(List)}
+ * once all the values are processed.
+ * For example:
+ * <pre>
+ *   CommandDescriptor.builder("checksum")
+ *       .addArgument(Argument.builder("FILE").description("The files").multiplicityUnlimited().build())
+ *       .parallelArgument("FILE")
+ *       //...
+ * </pre>
+ * </p>
+ *
+ * @param <R> the type of the result of processing a single value
+ */
+public abstract class ParallelArgumentCommand<R> extends AbstractCommand {
+
+  /**
+   * The option to set the number of values to process in parallel
+   */
+  public static final Option PARALLELISM_OPTION = Option.builder().longOpt("parallelism").hasArg().argName("N")
+      .desc("Number of items to process in parallel (default: number of processors)").build();
+
+  private final int parallelism;
+
+  protected ParallelArgumentCommand(CommandContext context) throws ParseException {
+    super(context);
+    this.parallelism = parseParallelism(context, getDefaultParallelism());
+  }
+
+  static int parseParallelism(CommandContext context, int defaultParallelism) throws ParseException {
+    String value = context.getParsedOptions().getValue(PARALLELISM_OPTION.getLongOpt());
+    if (value == null) {
+      return defaultParallelism;
+    }
+    try {
+      int parallelism = Integer.parseInt(value.trim());
+      if (parallelism > 0) {
+        return parallelism;
+      }
+    } catch (NumberFormatException e) {
+      //Handled below
+    }
+    throw new ParseException("Invalid parallelism: " + value);
+  }
+
+  /**
+   * Process a single value of the argument. Called concurrently on the pool threads.
+   *
+   * @param item the argument value
+   * @return the result, passed to {@link #emit(String, Object)}
+   * @throws Exception on any error processing the value
+   */
+  protected abstract R process(String item) throws Exception;
+
+  /**
+   * Emit the result of processing a single value. Called on the executing thread only, once per successful value.
+   *
+   * @param item the argument value
+   * @param result the result of processing the value
+   * @throws CommandException on any error emitting the result, which stops the execution
+   */
+  protected void emit(String item, R result) throws CommandException {
+  }
+
+  /**
+   * Handle the values which failed to process. The default implementation throws a {@link CommandException} with
+   * a summary of the failures, if there are any.
+   *
+   * @param failures the failures, in the order of the values
+   * @throws CommandException to fail the execution
+   */
+  protected void handleFailures(List<ItemFailure> failures) throws CommandException {
+    if (failures.isEmpty()) {
+      return;
+    }
+    StringBuilder message = new StringBuilder()
+        .append(failures.size()).append(" of ").append(getItems().size()).append(" items failed:");
+    for (ItemFailure failure : failures) {
+      message.append(System.lineSeparator()).append("  ").append(failure.getItem()).append(": ")
+          .append(failure.getCause().getMessage());
+    }
+    throw new CommandException(message.toString(), failures.get(0).getCause());
+  }
+
+  /**
+   * Whether to emit the results in the order of the values (the default), or in the order of completion
+   *
+   * @return <tt>true</tt> for the order of the values
+   */
+  protected boolean isOrdered() {
+    return true;
+  }
+
+  /**
+   * Get the parallelism to use when the {@link #PARALLELISM_OPTION} is not set
+   *
+   * @return the default parallelism, the number of processors unless overridden
+   */
+  protected int getDefaultParallelism() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Get the number of values to process in parallel
+   *
+   * @return the parallelism
+   */
+  protected int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Get the pool to process the values on. The default implementation returns <tt>null</tt>, in which case a pool with
+   * the {@link #getParallelism() parallelism} is created for the execution and shut down after it.
+   * Override to use a shared pool (e.g. a {@link SharedResource}), which is not shut down by this command.
+   *
+   * @return the pool, or <tt>null</tt> to use a dedicated pool
+   */
+  protected ForkJoinPool getPool() {
+    return null;
+  }
+
+  /**
+   * Get the name of the argument to process
+   *
+   * @return the argument name, by default as set on the command descriptor
+   */
+  protected String getArgumentName() {
+    return requireNonNull(getContext().getCommandRoute().getCommand().getParallelArgument(),
+        "parallel argument is required");
+  }
+
+  /**
+   * Get the values to process
+   *
+   * @return the argument values
+   */
+  protected List<String> getItems() {
+    List<String> items = getContext().getArgumentValues(getArgumentName());
+    return items != null ? items : Collections.<String>emptyList();
+  }
+
+  @Override
+  public void execute() throws CommandException {
+    List<String> items = getItems();
+    if (items.isEmpty()) {
+      return;
+    }
+    ForkJoinPool pool = getPool();
+    boolean dedicatedPool = pool == null;
+    if (dedicatedPool) {
+      pool = new ForkJoinPool(Math.min(parallelism, items.size()));
+    }
+    List<Future<Result>> futures = new ArrayList<>(items.size());
+    try {
+      List<ItemFailure> failures;
+      if (isOrdered()) {
+        for (int i = 0; i < items.size(); i++) {
+          futures.add(pool.submit(new Task(i, items.get(i))));
+        }
+        failures = emitInOrder(futures);
+      } else {
+        CompletionService<Result> completionService = new ExecutorCompletionService<>(pool);
+        for (int i = 0; i < items.size(); i++) {
+          futures.add(completionService.submit(new Task(i, items.get(i))));
+        }
+        failures = emitOnCompletion(completionService, items.size());
+      }
+      handleFailures(failures);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CommandException("Interrupted", e);
+    } finally {
+      for (Future<Result> future : futures) {
+        future.cancel(true);
+      }
+      if (dedicatedPool) {
+        pool.shutdownNow();
+      }
+    }
+  }
+
+  private List<ItemFailure> emitInOrder(List<Future<Result>> futures) throws InterruptedException, CommandException {
+    List<ItemFailure> failures = new ArrayList<>();
+    for (Future<Result> future : futures) {
+      emitOrCollect(get(future), failures);
+    }
+    return failures;
+  }
+
+  private List<ItemFailure> emitOnCompletion(CompletionService<Result> completionService, int count)
+      throws InterruptedException, CommandException {
+    List<ItemFailure> failures = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      emitOrCollect(get(completionService.take()), failures);
+    }
+    Collections.sort(failures);
+    return failures;
+  }
+
+  private Result get(Future<Result> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      //Not expected, the task catches all the exceptions
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private void emitOrCollect(Result result, List<ItemFailure> failures) throws CommandException {
+    if (result.failure != null) {
+      failures.add(result.failure);
+    } else {
+      emit(result.item, result.value);
+    }
+  }
+
+  private class Task implements Callable<Result> {
+
+    private final int index;
+    private final String item;
+
+    Task(int index, String item) {
+      this.index = index;
+      this.item = item;
+    }
+
+    @Override
+    public Result call() {
+      try {
+        return new Result(item, process(item), null);
+      } catch (Exception e) {
+        return new Result(item, null, new ItemFailure(index, item, e));
+      }
+    }
+  }
+
+  private class Result {
+
+    private final String item;
+    private final R value;
+    private final ItemFailure failure;
+
+    Result(String item, R value, ItemFailure failure) {
+      this.item = item;
+      this.value = value;
+      this.failure = failure;
+    }
+  }
+
+  /**
+   * A failure to process a single value of the argument
+   */
+  public static class ItemFailure implements Comparable<ItemFailure> {
+
+    private final int index;
+    private final String item;
+    private final Exception cause;
+
+    ItemFailure(int index, String item, Exception cause) {
+      this.index = index;
+      this.item = item;
+      this.cause = cause;
+    }
+
+    /**
+     * Get the index of the value in the argument values
+     *
+     * @return the index
+     */
+    public int getIndex() {
+      return index;
+    }
+
+    /**
+     * Get the value which failed to process
+     *
+     * @return the value
+     */
+    public String getItem() {
+      return item;
+    }
+
+    /**
+     * Get the cause of the failure
+     *
+     * @return the cause
+     */
+    public Exception getCause() {
+      return cause;
+    }
+
+    @Override
+    public int compareTo(ItemFailure other) {
+      return Integer.compare(index, other.index);
+    }
+
+    @Override
+    public String toString() {
+      return "ItemFailure{" +
+          "index=" + index +
+          ", item='" + item + '\'' +
+          ", cause=" + cause +
+          '}';
+    }
+  }
+}
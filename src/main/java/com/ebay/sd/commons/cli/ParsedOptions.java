@@ -0,0 +1,288 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static com.ebay.sd.commons.cli.Utils.immutableList;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.TypeHandler;
+
+/**
+ * An immutable view of the options of a parsed command line, indexed by both short and long name.
+ * <p>
+ * The view is built once per command execution, with the option values already split, and the first values already
+ * converted to the types of their options and to numbers. Unlike {@link CommandLine}, which scans its options on each
+ * call, lookups are constant-time, which makes this view suitable for use in loops.
+ * Option names can be given with or without the leading hyphens.
+ * </p>
+ *
+ * @see CommandContext#getParsedOptions()
+ */
+public final class ParsedOptions {
+
+  private final Map<String, Entry> entries;
+
+  private ParsedOptions(Map<String, Entry> entries) {
+    this.entries = entries;
+  }
+
+  /**
+   * Build an indexed view of the options of a parsed command line
+   *
+   * @param commandLine the parsed command line
+   * @return the new view
+   */
+  static ParsedOptions of(CommandLine commandLine) {
+    requireNonNull(commandLine, "commandLine is required");
+    Map<String, List<String>> values = new HashMap<>();
+    Map<String, Option> options = new HashMap<>();
+    for (Option option : commandLine.getOptions()) {
+      String key = option.getOpt() != null ? option.getOpt() : option.getLongOpt();
+      List<String> optionValues = values.get(key);
+      if (optionValues == null) {
+        optionValues = new ArrayList<>();
+        values.put(key, optionValues);
+        options.put(key, option);
+      }
+      if (option.getValuesList() != null) {
+        optionValues.addAll(option.getValuesList());
+      }
+    }
+    Map<String, Entry> entries = new HashMap<>();
+    for (Map.Entry<String, Option> option : options.entrySet()) {
+      Entry entry = new Entry(option.getValue(), immutableList(values.get(option.getKey())));
+      if (option.getValue().getOpt() != null) {
+        entries.put(option.getValue().getOpt(), entry);
+      }
+      if (option.getValue().getLongOpt() != null) {
+        entries.put(option.getValue().getLongOpt(), entry);
+      }
+    }
+    return new ParsedOptions(entries);
+  }
+
+  /**
+   * Whether an option was set
+   *
+   * @param name the short or long name of the option
+   * @return <tt>true</tt> if set
+   */
+  public boolean hasOption(String name) {
+    return find(name) != null;
+  }
+
+  /**
+   * Get the first value of an option
+   *
+   * @param name the short or long name of the option
+   * @return the value, or <tt>null</tt> if the option was not set or has no value
+   */
+  public String getValue(String name) {
+    return getValue(name, null);
+  }
+
+  /**
+   * Get the first value of an option, or a default value
+   *
+   * @param name the short or long name of the option
+   * @param defaultValue the value to return if the option was not set or has no value
+   * @return the value
+   */
+  public String getValue(String name, String defaultValue) {
+    Entry entry = find(name);
+    return entry != null && !entry.values.isEmpty() ? entry.values.get(0) : defaultValue;
+  }
+
+  /**
+   * Get all the values of an option, of all its occurrences, split by the value separator if the option has one
+   *
+   * @param name the short or long name of the option
+   * @return the list of values, or an empty list
+   */
+  public List<String> getValues(String name) {
+    Entry entry = find(name);
+    return entry != null ? entry.values : Collections.<String>emptyList();
+  }
+
+  /**
+   * Get the first value of an option, converted to the {@link Option#getType() type} of the option
+   *
+   * @param name the short or long name of the option
+   * @return the converted value, or <tt>null</tt> if the option was not set or has no value
+   * @throws ParseException if the value failed to convert
+   */
+  public Object getParsedValue(String name) throws ParseException {
+    Entry entry = find(name);
+    if (entry == null || entry.values.isEmpty()) {
+      return null;
+    }
+    if (entry.conversionError != null) {
+      throw entry.conversionError;
+    }
+    return entry.parsedValue;
+  }
+
+  /**
+   * Get the first value of an option as an int
+   *
+   * @param name the short or long name of the option
+   * @param defaultValue the value to return if the option was not set or has no value
+   * @return the value
+   * @throws ParseException if the value is not a valid int
+   */
+  public int getInt(String name, int defaultValue) throws ParseException {
+    Entry entry = find(name);
+    if (entry == null || entry.values.isEmpty()) {
+      return defaultValue;
+    }
+    if (!(entry.integral && entry.longValue == (int) entry.longValue)) {
+      throw invalidValue(name, entry.values.get(0));
+    }
+    return (int) entry.longValue;
+  }
+
+  /**
+   * Get the first value of an option as a long
+   *
+   * @param name the short or long name of the option
+   * @param defaultValue the value to return if the option was not set or has no value
+   * @return the value
+   * @throws ParseException if the value is not a valid long
+   */
+  public long getLong(String name, long defaultValue) throws ParseException {
+    Entry entry = find(name);
+    if (entry == null || entry.values.isEmpty()) {
+      return defaultValue;
+    }
+    if (!entry.integral) {
+      throw invalidValue(name, entry.values.get(0));
+    }
+    return entry.longValue;
+  }
+
+  /**
+   * Get the first value of an option as a double
+   *
+   * @param name the short or long name of the option
+   * @param defaultValue the value to return if the option was not set or has no value
+   * @return the value
+   * @throws ParseException if the value is not a valid double
+   */
+  public double getDouble(String name, double defaultValue) throws ParseException {
+    Entry entry = find(name);
+    if (entry == null || entry.values.isEmpty()) {
+      return defaultValue;
+    }
+    if (!entry.numeric) {
+      throw invalidValue(name, entry.values.get(0));
+    }
+    return entry.doubleValue;
+  }
+
+  private Entry find(String name) {
+    Entry entry = entries.get(name);
+    if (entry == null && name != null && name.startsWith("-")) {
+      entry = entries.get(name.startsWith("--") ? name.substring(2) : name.substring(1));
+    }
+    return entry;
+  }
+
+  private static ParseException invalidValue(String name, String value) {
+    return new ParseException("Invalid value for option '" + name + "': " + value);
+  }
+
+  @Override
+  public String toString() {
+    return "ParsedOptions{" +
+        "names=" + entries.keySet() +
+        '}';
+  }
+
+  private static class Entry {
+
+    private final List<String> values;
+    private final Object parsedValue;
+    private final ParseException conversionError;
+    private boolean integral;
+    private long longValue;
+    private boolean numeric;
+    private double doubleValue;
+
+    Entry(Option option, List<String> values) {
+      this.values = values;
+      Object parsed = null;
+      ParseException error = null;
+      if (!values.isEmpty()) {
+        if (option.getType() == null || option.getType() == String.class) {
+          parsed = values.get(0);
+        } else {
+          try {
+            parsed = TypeHandler.createValue(values.get(0), option.getType());
+          } catch (ParseException e) {
+            error = e;
+          }
+        }
+      }
+      this.parsedValue = parsed;
+      this.conversionError = error;
+      if (!values.isEmpty()) {
+        toNumber(values.get(0).trim());
+      }
+    }
+
+    private void toNumber(String value) {
+      //Most values which are not numbers are rejected upfront, without the cost of a failed parsing
+      if (value.isEmpty() || !isNumberStart(value.charAt(0))) {
+        return;
+      }
+      try {
+        if (isIntegral(value)) {
+          longValue = Long.parseLong(value);
+          doubleValue = longValue;
+          integral = numeric = true;
+          return;
+        }
+      } catch (NumberFormatException e) {
+        //Out of the long range, may still be a double
+      }
+      try {
+        doubleValue = Double.parseDouble(value);
+        numeric = true;
+      } catch (NumberFormatException e) {
+        //Not a number
+      }
+    }
+
+    private static boolean isNumberStart(char c) {
+      return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'N' || c == 'I';
+    }
+
+    private static boolean isIntegral(String value) {
+      int start = value.charAt(0) == '-' || value.charAt(0) == '+' ? 1 : 0;
+      if (start == value.length()) {
+        return false;
+      }
+      for (int i = start; i < value.length(); i++) {
+        if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
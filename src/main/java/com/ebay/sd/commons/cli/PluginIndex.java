@@ -0,0 +1,331 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An index of the {@link CommandPlugin}s on the classpath, by the route they contribute to.
+ * <p>
+ * Discovering the plugins with a {@link ServiceLoader} scans the whole classpath and loads every plugin class, which is too
+ * slow to do on every invocation with a large classpath. Instead, the discovered plugin class names are stored in a cache
+ * file, keyed by the classpath entries and their modification times, and the discovery is repeated only when the classpath
+ * changes. The plugins themselves are loaded only when the route they contribute to is resolved.
+ * </p>
+ * <p>
+ * For example:
+ * <pre>
+ *   PluginIndex plugins = PluginIndex.builder()
+ *       .cacheFile(Paths.get(System.getProperty("user.home"), ".my-cli", "plugins.idx"))
+ *       .build();
+ *   RouteDescriptor tools = RouteDescriptor.builder("tools")
+ *       .description("Tools contributed by plugins")
+ *       .plugins(plugins)
+ *       .build();
+ * </pre>
+ * </p>
+ *
+ * @see RouteDescriptor.Builder#plugins(PluginIndex)
+ */
+public class PluginIndex {
+
+  static final String SERVICE_FILE = "META-INF/services/" + CommandPlugin.class.getName();
+  private static final String HEADER = "commands-cli-plugin-index 1";
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final ClassLoader classLoader;
+  private final Path cacheFile;
+  private final AtomicInteger loadCount = new AtomicInteger();
+  private final Map<String, CommandPlugin> discovered = new HashMap<>();
+  private Map<String, List<String>> pluginClasses;
+  private boolean fromCache;
+
+  private PluginIndex(Builder builder) {
+    this.classLoader = builder.classLoader != null ? builder.classLoader : defaultClassLoader();
+    this.cacheFile = builder.cacheFile;
+  }
+
+  private static ClassLoader defaultClassLoader() {
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    return classLoader != null ? classLoader : PluginIndex.class.getClassLoader();
+  }
+
+  /**
+   * Get the plugin class names by the route they contribute to, reading the cache file or discovering them on first call
+   *
+   * @return the plugin class names, by route name
+   */
+  public synchronized Map<String, List<String>> getPluginClasses() {
+    if (pluginClasses == null) {
+      List<String> classpath = getClasspathKey();
+      Map<String, List<String>> cached = readCache(classpath);
+      fromCache = cached != null;
+      pluginClasses = fromCache ? cached : discover();
+      if (!fromCache) {
+        writeCache(classpath, pluginClasses);
+      }
+    }
+    return pluginClasses;
+  }
+
+  /**
+   * Whether the plugin class names were read from the cache file, rather than discovered
+   *
+   * @return <tt>true</tt> if read from the cache file
+   */
+  public synchronized boolean isFromCache() {
+    getPluginClasses();
+    return fromCache;
+  }
+
+  /**
+   * Load the plugins which contribute to a route, and get their sub-commands
+   *
+   * @param route the route name
+   * @return the contributed sub-commands, or an empty list
+   */
+  List<Descriptor> loadSubCommands(String route) {
+    List<String> classNames = getPluginClasses().get(route);
+    if (classNames == null) {
+      return Collections.emptyList();
+    }
+    List<Descriptor> subCommands = new ArrayList<>();
+    for (String className : classNames) {
+      subCommands.addAll(requireNonNull(getPlugin(className).getSubCommands(),
+          "sub-commands are required from plugin: " + className));
+    }
+    loadCount.incrementAndGet();
+    return subCommands;
+  }
+
+  /**
+   * Get the number of routes whose plugins were loaded so far
+   *
+   * @return the number of loaded routes
+   */
+  int getLoadCount() {
+    return loadCount.get();
+  }
+
+  private synchronized CommandPlugin getPlugin(String className) {
+    CommandPlugin plugin = discovered.get(className);
+    if (plugin == null) {
+      try {
+        plugin = (CommandPlugin) Class.forName(className, true, classLoader).getConstructor().newInstance();
+      } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+        throw new IllegalStateException("Failed to load command plugin: " + className, e);
+      }
+      discovered.put(className, plugin);
+    }
+    return plugin;
+  }
+
+  private Map<String, List<String>> discover() {
+    Map<String, List<String>> classes = new LinkedHashMap<>();
+    try {
+      for (CommandPlugin plugin : ServiceLoader.load(CommandPlugin.class, classLoader)) {
+        String className = plugin.getClass().getName();
+        discovered.put(className, plugin);
+        addPluginClass(classes, requireNonNull(plugin.getRoute(), "route is required from plugin: " + className), className);
+      }
+    } catch (ServiceConfigurationError e) {
+      throw new IllegalStateException("Failed to discover command plugins: " + e.getMessage(), e);
+    }
+    return classes;
+  }
+
+  private static void addPluginClass(Map<String, List<String>> classes, String route, String className) {
+    List<String> routeClasses = classes.get(route);
+    if (routeClasses == null) {
+      routeClasses = new ArrayList<>();
+      classes.put(route, routeClasses);
+    }
+    routeClasses.add(className);
+  }
+
+  /**
+   * Get the key of the current classpath: each entry with its modification time.
+   * The modification time of a directory entry is the modification time of its plugin service file, since the
+   * modification time of the directory itself does not change when nested files change.
+   */
+  private List<String> getClasspathKey() {
+    List<String> key = new ArrayList<>();
+    for (File entry : getClasspathEntries()) {
+      File file = entry.isDirectory() ? new File(entry, SERVICE_FILE) : entry;
+      key.add(file.lastModified() + " " + entry.getPath());
+    }
+    return key;
+  }
+
+  private Set<File> getClasspathEntries() {
+    Set<File> entries = new LinkedHashSet<>();
+    for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+      if (loader instanceof URLClassLoader) {
+        for (URL url : ((URLClassLoader) loader).getURLs()) {
+          if ("file".equals(url.getProtocol())) {
+            try {
+              entries.add(new File(url.toURI()).getAbsoluteFile());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+              entries.add(new File(url.getPath()).getAbsoluteFile());
+            }
+          }
+        }
+      }
+    }
+    for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+      if (!entry.isEmpty()) {
+        entries.add(new File(entry).getAbsoluteFile());
+      }
+    }
+    return entries;
+  }
+
+  private Map<String, List<String>> readCache(List<String> classpath) {
+    if (cacheFile == null) {
+      return null;
+    }
+    List<String> entries = new ArrayList<>();
+    Map<String, List<String>> classes = new LinkedHashMap<>();
+    try (BufferedReader reader = Files.newBufferedReader(cacheFile, UTF_8)) {
+      if (!HEADER.equals(reader.readLine())) {
+        return null;
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("E ")) {
+          entries.add(line.substring(2));
+        } else if (line.startsWith("P ")) {
+          String[] plugin = line.substring(2).split(" ", 2);
+          if (plugin.length != 2) {
+            return null;
+          }
+          addPluginClass(classes, plugin[1], plugin[0]);
+        } else {
+          return null;
+        }
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    return entries.equals(classpath) ? classes : null;
+  }
+
+  private void writeCache(List<String> classpath, Map<String, List<String>> classes) {
+    if (cacheFile == null) {
+      return;
+    }
+    try {
+      Path directory = cacheFile.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+      Path temp = Files.createTempFile(directory, cacheFile.getFileName().toString(), ".tmp");
+      try (BufferedWriter writer = Files.newBufferedWriter(temp, UTF_8)) {
+        writer.write(HEADER);
+        writer.newLine();
+        for (String entry : classpath) {
+          writer.write("E " + entry);
+          writer.newLine();
+        }
+        for (Map.Entry<String, List<String>> route : classes.entrySet()) {
+          for (String className : route.getValue()) {
+            writer.write("P " + className + " " + route.getKey());
+            writer.newLine();
+          }
+        }
+      }
+      Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      //The cache is an optimization only, the plugins are discovered again on the next invocation
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PluginIndex{" +
+        "cacheFile=" + cacheFile +
+        '}';
+  }
+
+  /**
+   * Start building a plugin index
+   *
+   * @return a new {@link Builder}
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Plugin index builder
+   *
+   * @see Builder#build()
+   */
+  public static class Builder {
+
+    private ClassLoader classLoader;
+    private Path cacheFile;
+
+    private Builder() {
+    }
+
+    /**
+     * Set the class loader to discover and load the plugins with. The default is the context class loader of the current thread.
+     *
+     * @param classLoader the class loader
+     * @return this builder
+     */
+    public Builder classLoader(ClassLoader classLoader) {
+      this.classLoader = requireNonNull(classLoader, "classLoader is required");
+      return this;
+    }
+
+    /**
+     * Set the file to cache the index in. Without a cache file, the plugins are discovered on every invocation.
+     *
+     * @param cacheFile the cache file
+     * @return this builder
+     */
+    public Builder cacheFile(Path cacheFile) {
+      this.cacheFile = requireNonNull(cacheFile, "cacheFile is required");
+      return this;
+    }
+
+    /**
+     * Build a new plugin index based on the settings to this builder. The plugins are not discovered until needed.
+     *
+     * @return the new plugin index
+     */
+    public PluginIndex build() {
+      return new PluginIndex(this);
+    }
+  }
+}
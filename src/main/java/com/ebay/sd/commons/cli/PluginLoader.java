@@ -0,0 +1,357 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static com.ebay.sd.commons.cli.Utils.immutableList;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The {@link CommandPlugin}s of a separate classpath, loaded in their own class loader, which can be reloaded in a
+ * long-lived host without restarting it.
+ * <p>
+ * The plugins are listed in <tt>META-INF/services/com.ebay.sd.commons.cli.CommandPlugin</tt> of the classpath entries, and
+ * all of them are loaded, together with their sub-commands, when the loader is built and on every {@link #reload()}.
+ * A reload loads a new generation of the plugins in a new class loader and swaps it in atomically, so routes resolved
+ * from then on use the new sub-commands. It then waits for the invocations of the previous generation which are still
+ * executing to complete, and closes the previous class loader, so its classes can be unloaded.
+ * </p>
+ * <p>
+ * The plugin classes must not be visible to the parent class loader, otherwise they are loaded by the parent and cannot
+ * be reloaded. The classes are unloaded only once nothing references them, so plugin commands should not leave
+ * references behind them in the host, e.g. in the {@link CommandContext#getResource(SharedResource) shared resources},
+ * in thread locals of the host threads, or in threads they start.
+ * </p>
+ * <p>
+ * For example:
+ * <pre>
+ *   PluginLoader toolsPlugin = PluginLoader.builder(Paths.get("plugins", "tools.jar")).build();
+ *   RouteDescriptor tools = RouteDescriptor.builder("tools")
+ *       .description("Tools contributed by plugins")
+ *       .plugins(toolsPlugin)
+ *       .build();
+ *   ...
+ *   toolsPlugin.reload(); //After deploying a new version of tools.jar
+ * </pre>
+ * </p>
+ *
+ * @see RouteDescriptor.Builder#plugins(PluginLoader)
+ */
+public class PluginLoader implements Closeable {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final URL[] classpath;
+  private final ClassLoader parent;
+  private final List<Generation> generations = new CopyOnWriteArrayList<>();
+  private volatile Generation current;
+  private boolean closed;
+
+  private PluginLoader(Builder builder) {
+    this.classpath = builder.classpath;
+    this.parent = builder.parent != null ? builder.parent : defaultClassLoader();
+    this.current = load(1);
+    this.generations.add(current);
+  }
+
+  private static ClassLoader defaultClassLoader() {
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    return classLoader != null ? classLoader : PluginLoader.class.getClassLoader();
+  }
+
+  /**
+   * Load the plugins again in a new class loader and swap them in, then wait for the invocations of the previous
+   * plugins to complete and close their class loader.
+   * If the plugins fail to load, the previous plugins remain in use.
+   *
+   * @throws IllegalStateException if the plugins fail to load, if this loader is closed, or if called from a command
+   * of these plugins
+   */
+  public synchronized void reload() {
+    if (closed) {
+      throw new IllegalStateException("Plugin loader is closed");
+    }
+    checkNotWithinInvocation();
+    Generation previous = current;
+    Generation next = load(previous.number + 1);
+    generations.add(next);
+    current = next;
+    retire(previous);
+  }
+
+  /**
+   * Get the generation of the loaded plugins, which is incremented on each reload
+   *
+   * @return the current generation, starting from 1
+   */
+  public int getGeneration() {
+    return current.number;
+  }
+
+  /**
+   * Get the sub-commands contributed to a route by the current generation of the plugins
+   *
+   * @param route the route name
+   * @return the contributed sub-commands, or an empty list
+   */
+  List<Descriptor> getSubCommands(String route) {
+    List<Descriptor> subCommands = current.subCommands.get(route);
+    return subCommands != null ? subCommands : Collections.<Descriptor>emptyList();
+  }
+
+  /**
+   * Acquire a lease on the generation of the plugins which contributed a sub-command, preventing its class loader from
+   * being closed until the lease is released. The lease must be released by the same thread.
+   *
+   * @param subCommand the sub-command, as contributed to a route
+   * @return the acquired lease, or <tt>null</tt> if the sub-command is not contributed by a generation which is still open
+   */
+  Lock acquire(Descriptor subCommand) {
+    for (Generation generation : generations) {
+      if (generation.descriptors.contains(subCommand)) {
+        Lock lease = generation.lock.readLock();
+        lease.lock();
+        if (generation.closed) {
+          lease.unlock();
+          return null;
+        }
+        return lease;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Wait for the invocations of the current plugins to complete and close their class loader.
+   * The plugins contribute no sub-commands once closed.
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    checkNotWithinInvocation();
+    closed = true;
+    Generation previous = current;
+    current = new Generation(previous.number + 1, null, Collections.<String, List<Descriptor>>emptyMap());
+    retire(previous);
+  }
+
+  private void checkNotWithinInvocation() {
+    for (Generation generation : generations) {
+      if (generation.lock.getReadHoldCount() > 0) {
+        throw new IllegalStateException("Plugins cannot be reloaded or closed by one of their own commands");
+      }
+    }
+  }
+
+  private void retire(Generation generation) {
+    Lock drain = generation.lock.writeLock();
+    drain.lock();
+    try {
+      generation.closed = true;
+    } finally {
+      drain.unlock();
+    }
+    generations.remove(generation);
+    closeQuietly(generation.classLoader);
+  }
+
+  private Generation load(int number) {
+    URLClassLoader classLoader = new URLClassLoader(classpath, parent);
+    try {
+      Map<String, List<Descriptor>> subCommands = new LinkedHashMap<>();
+      for (String className : readPluginClassNames(classLoader)) {
+        CommandPlugin plugin = createPlugin(classLoader, className);
+        String route = requireNonNull(plugin.getRoute(), "route is required from plugin: " + className);
+        List<Descriptor> routeSubCommands = subCommands.get(route);
+        if (routeSubCommands == null) {
+          routeSubCommands = new ArrayList<>();
+          subCommands.put(route, routeSubCommands);
+        }
+        routeSubCommands.addAll(requireNonNull(plugin.getSubCommands(), "sub-commands are required from plugin: " + className));
+      }
+      for (Map.Entry<String, List<Descriptor>> entry : subCommands.entrySet()) {
+        entry.setValue(immutableList(entry.getValue()));
+      }
+      return new Generation(number, classLoader, subCommands);
+    } catch (RuntimeException | Error e) {
+      closeQuietly(classLoader);
+      throw e;
+    }
+  }
+
+  private List<String> readPluginClassNames(URLClassLoader classLoader) {
+    List<String> classNames = new ArrayList<>();
+    try {
+      //Only the service files of this classpath, the parent class loader may have plugins of its own
+      Enumeration<URL> serviceFiles = classLoader.findResources(PluginIndex.SERVICE_FILE);
+      while (serviceFiles.hasMoreElements()) {
+        URLConnection connection = serviceFiles.nextElement().openConnection();
+        //A cached jar file would remain open, and serve the previous content on reload
+        connection.setUseCaches(false);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), UTF_8))) {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            int comment = line.indexOf('#');
+            String className = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (!className.isEmpty() && !classNames.contains(className)) {
+              classNames.add(className);
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read command plugins from: " + Arrays.toString(classpath), e);
+    }
+    if (classNames.isEmpty()) {
+      throw new IllegalStateException("No command plugins found in: " + Arrays.toString(classpath));
+    }
+    return classNames;
+  }
+
+  private static CommandPlugin createPlugin(ClassLoader classLoader, String className) {
+    Class<?> type;
+    try {
+      type = Class.forName(className, true, classLoader);
+    } catch (ClassNotFoundException | LinkageError e) {
+      throw new IllegalStateException("Failed to load command plugin: " + className, e);
+    }
+    if (type.getClassLoader() != classLoader) {
+      throw new IllegalStateException("Command plugin is visible to the parent class loader and cannot be reloaded: " + className);
+    }
+    try {
+      return (CommandPlugin) type.getConstructor().newInstance();
+    } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+      throw new IllegalStateException("Failed to load command plugin: " + className, e);
+    }
+  }
+
+  private static void closeQuietly(URLClassLoader classLoader) {
+    if (classLoader == null) {
+      return;
+    }
+    try {
+      classLoader.close();
+    } catch (IOException e) {
+      //The classes are unloaded once unreferenced regardless, only the open classpath files remain until then
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PluginLoader{" +
+        "classpath=" + Arrays.toString(classpath) +
+        ", generation=" + getGeneration() +
+        '}';
+  }
+
+  /**
+   * Start building a plugin loader
+   *
+   * @param classpath the jars and class directories of the plugins
+   * @return a new {@link Builder}
+   */
+  public static Builder builder(Path... classpath) {
+    return new Builder(classpath);
+  }
+
+  /**
+   * A generation of the plugins, i.e. their class loader and the sub-commands they contributed
+   */
+  private static class Generation {
+
+    private final int number;
+    private final URLClassLoader classLoader;
+    private final Map<String, List<Descriptor>> subCommands;
+    private final Set<Descriptor> descriptors = Collections.newSetFromMap(new IdentityHashMap<Descriptor, Boolean>());
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    Generation(int number, URLClassLoader classLoader, Map<String, List<Descriptor>> subCommands) {
+      this.number = number;
+      this.classLoader = classLoader;
+      this.subCommands = subCommands;
+      for (List<Descriptor> routeSubCommands : subCommands.values()) {
+        descriptors.addAll(routeSubCommands);
+      }
+    }
+  }
+
+  /**
+   * Plugin loader builder
+   *
+   * @see Builder#build()
+   */
+  public static class Builder {
+
+    private final URL[] classpath;
+    private ClassLoader parent;
+
+    private Builder(Path... classpath) {
+      requireNonNull(classpath, "classpath is required");
+      if (classpath.length == 0) {
+        throw new IllegalArgumentException("At least one classpath entry is required");
+      }
+      this.classpath = new URL[classpath.length];
+      for (int i = 0; i < classpath.length; i++) {
+        try {
+          this.classpath[i] = requireNonNull(classpath[i], "classpath entry is required").toUri().toURL();
+        } catch (MalformedURLException e) {
+          throw new IllegalArgumentException("Invalid classpath entry: " + classpath[i], e);
+        }
+      }
+    }
+
+    /**
+     * Set the parent class loader of the plugin class loaders, which provides the host classes to the plugins.
+     * The default is the context class loader of the current thread.
+     *
+     * @param parent the parent class loader
+     * @return this builder
+     */
+    public Builder parent(ClassLoader parent) {
+      this.parent = requireNonNull(parent, "parent is required");
+      return this;
+    }
+
+    /**
+     * Build a new plugin loader based on the settings to this builder, and load the first generation of the plugins
+     *
+     * @return the new plugin loader
+     * @throws IllegalStateException if the plugins fail to load
+     */
+    public PluginLoader build() {
+      return new PluginLoader(this);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static com.ebay.sd.commons.cli.Utils.requireNonNegative;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * A command factory which reuses {@link ReusableCommand reusable commands} instead of creating a new command for each execution.
+ * <p>
+ * Once a command execution completes successfully, the command is returned to the pool, up to a maximal number of idle commands.
+ * The next execution takes an idle command from the pool and {@link ReusableCommand#reset(CommandContext) resets} it,
+ * or creates a new command using the delegate factory if the pool is empty.
+ * Commands which are not reusable, or whose execution failed, are not returned to the pool.
+ * </p>
+ * <p>
+ * For example:
+ * <pre>
+ *     CommandDescriptor fooCmd = CommandDescriptor.builder("foo")
+ *         .description("Do foo")
+ *         .factory(PooledCommandFactory.of(fooCmdFactory, 8))
+ *         .build();
+ * </pre>
+ * </p>
+ */
+public class PooledCommandFactory implements CommandFactory {
+
+  private final CommandFactory delegate;
+  private final int maxIdle;
+  private final Queue<ReusableCommand> idle = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  private PooledCommandFactory(CommandFactory delegate, int maxIdle) {
+    this.delegate = requireNonNull(delegate, "delegate is required");
+    this.maxIdle = requireNonNegative(maxIdle, "maxIdle must be non-negative");
+  }
+
+  /**
+   * Create a pooled command factory
+   *
+   * @param delegate the factory to create new commands with
+   * @param maxIdle the maximal number of idle commands to keep in the pool
+   * @return the new pooled command factory
+   */
+  public static PooledCommandFactory of(CommandFactory delegate, int maxIdle) {
+    return new PooledCommandFactory(delegate, maxIdle);
+  }
+
+  @Override
+  public Command create(CommandContext commandContext) throws ParseException {
+    ReusableCommand command = idle.poll();
+    if (command == null) {
+      return delegate.create(commandContext);
+    }
+    idleCount.decrementAndGet();
+    command.reset(commandContext);
+    return command;
+  }
+
+  /**
+   * Return a command to the pool, after it was executed successfully
+   *
+   * @param command the command
+   */
+  void release(Command command) {
+    if (!(command instanceof ReusableCommand)) {
+      return;
+    }
+    while (true) {
+      int count = idleCount.get();
+      if (count >= maxIdle) {
+        return;
+      }
+      if (idleCount.compareAndSet(count, count + 1)) {
+        idle.offer((ReusableCommand) command);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Get the number of idle commands in the pool
+   *
+   * @return the number of idle commands
+   */
+  public int getIdleCount() {
+    return idleCount.get();
+  }
+}
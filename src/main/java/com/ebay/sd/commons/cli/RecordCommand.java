@@ -0,0 +1,484 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * A base class for line oriented commands, which transform each line (record) of their input to output, in parallel.
+ * <p>
+ * The input argument is set on the command descriptor using {@link CommandDescriptor.Builder#recordArgument(String)}, which
+ * also declares it as an input file argument (so <tt>-</tt> reads the standard input and gzip input is decompressed) and
+ * adds the {@link ParallelArgumentCommand#PARALLELISM_OPTION parallelism option}. The executing thread reads the input in
+ * chunks of whole lines, the chunks are processed on a {@link ForkJoinPool}, each record passed to
+ * {@link #process(CharSequence, Output)}, and the output of each chunk is written to the standard output by the executing
+ * thread, in the order of the input.
+ * </p>
+ * <p>
+ * The chunk buffers, with their decoded characters and encoded output, are reused: at most a fixed number of chunks
+ * (a few per thread) are in flight, which bounds both the memory and how far processing may run ahead of a slow chunk
+ * whose output is waited for. The record passed to {@link #process(CharSequence, Output)} is a view of the chunk buffer,
+ * so no object is allocated per record unless the command does. The charset of the command IO must encode the line feed
+ * as a single byte, as UTF-8 and ISO-8859-1 do.
+ * </p>
+ * <p>
+ * For example:
+ * <pre>
+ *   public class UpperCaseCommand extends RecordCommand {
+ *     protected void process(CharSequence record, Output output) {
+ *       for (int i = 0; i &lt; record.length(); i++) {
+ *         output.append(Character.toUpperCase(record.charAt(i)));
+ *       }
+ *       output.newLine();
+ *     }
+ *   }
+ * </pre>
+ * </p>
+ */
+public abstract class RecordCommand extends AbstractCommand {
+
+  static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private final int parallelism;
+
+  protected RecordCommand(CommandContext context) throws ParseException {
+    super(context);
+    this.parallelism = ParallelArgumentCommand.parseParallelism(context, getDefaultParallelism());
+  }
+
+  /**
+   * Process a single record. Called concurrently on the pool threads, in no particular order.
+   *
+   * @param record the record, without the line separator. It is valid only during this call,
+   * use {@link CharSequence#toString()} to retain it.
+   * @param output the output of the chunk of the record, which is written in the order of the input
+   * @throws Exception on any error processing the record, which stops the execution
+   */
+  protected abstract void process(CharSequence record, Output output) throws Exception;
+
+  /**
+   * Get the size in bytes of the chunks to read the input in. A chunk grows as needed to hold a longer line.
+   *
+   * @return the chunk size, 1MB unless overridden
+   */
+  protected int getChunkSize() {
+    return DEFAULT_CHUNK_SIZE;
+  }
+
+  /**
+   * Get the parallelism to use when the {@link ParallelArgumentCommand#PARALLELISM_OPTION} is not set
+   *
+   * @return the default parallelism, the number of processors unless overridden
+   */
+  protected int getDefaultParallelism() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Get the number of chunks to process in parallel
+   *
+   * @return the parallelism
+   */
+  protected int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Get the pool to process the chunks on. The default implementation returns <tt>null</tt>, in which case a pool with
+   * the {@link #getParallelism() parallelism} is created for the execution and shut down after it.
+   * Override to use a shared pool (e.g. a {@link SharedResource}), which is not shut down by this command.
+   *
+   * @return the pool, or <tt>null</tt> to use a dedicated pool
+   */
+  protected ForkJoinPool getPool() {
+    return null;
+  }
+
+  /**
+   * Get the name of the input argument
+   *
+   * @return the argument name, by default as set on the command descriptor
+   */
+  protected String getArgumentName() {
+    return requireNonNull(getContext().getCommandRoute().getCommand().getRecordArgument(), "record argument is required");
+  }
+
+  @Override
+  public void execute() throws CommandException {
+    ForkJoinPool pool = getPool();
+    boolean dedicatedPool = pool == null;
+    if (dedicatedPool) {
+      pool = new ForkJoinPool(parallelism);
+    }
+    try {
+      new Execution(pool, parallelism * CHUNKS_PER_THREAD).run();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CommandException("Interrupted", e);
+    } catch (IOException e) {
+      throw new CommandException("Failed to process the records: " + e.getMessage(), e);
+    } finally {
+      if (dedicatedPool) {
+        pool.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * The state of a single execution, accessed by the executing thread only, except for the reorder buffer
+   */
+  private class Execution {
+
+    private final ForkJoinPool pool;
+    private final int capacity;
+    private final Chunk[] completed;
+    private final Deque<Chunk> free = new ArrayDeque<>();
+    private final OutputStream out = getContext().getIO().getOut();
+    private int allocated;
+    private long nextSequence;
+    private long nextWrite;
+    private byte[] carry = new byte[0];
+    private int carryLength;
+
+    Execution(ForkJoinPool pool, int capacity) {
+      this.pool = pool;
+      this.capacity = capacity;
+      this.completed = new Chunk[capacity];
+    }
+
+    void run() throws IOException, InterruptedException, CommandException {
+      for (InputSource source : getContext().getInputSources(getArgumentName())) {
+        try (InputStream in = source.openStream()) {
+          boolean more = true;
+          while (more) {
+            Chunk chunk = nextFreeChunk();
+            more = fill(chunk, in);
+            if (chunk.length == 0) {
+              free.add(chunk);
+            } else {
+              chunk.sequence = nextSequence++;
+              pool.execute(chunk);
+              writeCompleted(false);
+            }
+          }
+        }
+      }
+      while (nextWrite < nextSequence) {
+        writeCompleted(true);
+      }
+      out.flush();
+    }
+
+    private Chunk nextFreeChunk() throws InterruptedException, CommandException, IOException {
+      while (free.isEmpty()) {
+        if (allocated < capacity) {
+          allocated++;
+          return new Chunk(this);
+        }
+        writeCompleted(true);
+      }
+      return free.poll();
+    }
+
+    /**
+     * Fill a chunk with whole lines, keeping the bytes of a partial line for the next chunk
+     *
+     * @return <tt>false</tt> if the input ended
+     */
+    private boolean fill(Chunk chunk, InputStream in) throws IOException {
+      chunk.input = ensureCapacity(chunk.input, Math.max(getChunkSize(), carryLength * 2));
+      byte[] input = chunk.input;
+      System.arraycopy(carry, 0, input, 0, carryLength);
+      int length = carryLength;
+      carryLength = 0;
+      while (true) {
+        while (length < input.length) {
+          int read = in.read(input, length, input.length - length);
+          if (read < 0) {
+            chunk.length = length;
+            return false;
+          }
+          length += read;
+        }
+        int lastLineEnd = length - 1;
+        while (lastLineEnd >= 0 && input[lastLineEnd] != '\n') {
+          lastLineEnd--;
+        }
+        if (lastLineEnd >= 0) {
+          carryLength = length - lastLineEnd - 1;
+          carry = ensureCapacity(carry, carryLength);
+          System.arraycopy(input, lastLineEnd + 1, carry, 0, carryLength);
+          chunk.length = lastLineEnd + 1;
+          return true;
+        }
+        //A single line longer than the chunk
+        input = Arrays.copyOf(input, input.length * 2);
+        chunk.input = input;
+      }
+    }
+
+    /**
+     * Write the completed chunks which are next in order, recycling their buffers
+     *
+     * @param wait whether to wait for the next chunk in order to complete, and write it at least
+     */
+    private void writeCompleted(boolean wait) throws InterruptedException, CommandException, IOException {
+      Chunk chunk;
+      while ((chunk = takeCompleted(wait)) != null) {
+        wait = false;
+        if (chunk.failure != null) {
+          throw new CommandException("Failed to process a record: " + chunk.failure.getMessage(), chunk.failure);
+        }
+        out.write(chunk.encoded, 0, chunk.encodedLength);
+        nextWrite++;
+        free.add(chunk);
+      }
+    }
+
+    private synchronized Chunk takeCompleted(boolean wait) throws InterruptedException {
+      if (nextWrite == nextSequence) {
+        return null;
+      }
+      int index = (int) (nextWrite % capacity);
+      while (completed[index] == null || completed[index].sequence != nextWrite) {
+        if (!wait) {
+          return null;
+        }
+        wait();
+      }
+      Chunk chunk = completed[index];
+      completed[index] = null;
+      return chunk;
+    }
+
+    synchronized void complete(Chunk chunk) {
+      completed[(int) (chunk.sequence % capacity)] = chunk;
+      notifyAll();
+    }
+  }
+
+  /**
+   * A chunk of whole lines, with its reusable buffers
+   */
+  private class Chunk implements Runnable {
+
+    private final Execution execution;
+    private final CharsetDecoder decoder;
+    private final CharsetEncoder encoder;
+    private final Record record = new Record();
+    private final Output output = new Output();
+    private byte[] input = new byte[0];
+    private int length;
+    private char[] chars = new char[0];
+    private byte[] encoded = new byte[0];
+    private int encodedLength;
+    private long sequence;
+    private Throwable failure;
+
+    Chunk(Execution execution) {
+      this.execution = execution;
+      this.decoder = getContext().getIO().getCharset().newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+      this.encoder = getContext().getIO().getCharset().newEncoder()
+          .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    @Override
+    public void run() {
+      failure = null;
+      try {
+        processRecords(decode());
+        encode();
+      } catch (Throwable e) {
+        //Including errors, otherwise the partial output of the chunk would be written as if it succeeded
+        failure = e;
+      } finally {
+        execution.complete(this);
+      }
+    }
+
+    private int decode() {
+      chars = ensureCapacity(chars, (int) Math.ceil(length * (double) decoder.maxCharsPerByte()));
+      CharBuffer charBuffer = CharBuffer.wrap(chars);
+      decoder.reset();
+      decoder.decode(ByteBuffer.wrap(input, 0, length), charBuffer, true);
+      decoder.flush(charBuffer);
+      return charBuffer.position();
+    }
+
+    private void processRecords(int charCount) throws Exception {
+      output.length = 0;
+      int start = 0;
+      for (int i = 0; i < charCount; i++) {
+        if (chars[i] == '\n') {
+          processRecord(start, i);
+          start = i + 1;
+        }
+      }
+      if (start < charCount) {
+        processRecord(start, charCount);
+      }
+    }
+
+    private void processRecord(int start, int end) throws Exception {
+      if (end > start && chars[end - 1] == '\r') {
+        end--;
+      }
+      record.set(chars, start, end - start);
+      process(record, output);
+    }
+
+    private void encode() {
+      encoded = ensureCapacity(encoded, (int) Math.ceil(output.length * (double) encoder.maxBytesPerChar()));
+      ByteBuffer byteBuffer = ByteBuffer.wrap(encoded);
+      encoder.reset();
+      encoder.encode(CharBuffer.wrap(output.chars, 0, output.length), byteBuffer, true);
+      encoder.flush(byteBuffer);
+      encodedLength = byteBuffer.position();
+    }
+  }
+
+  private static byte[] ensureCapacity(byte[] buffer, int capacity) {
+    return buffer.length >= capacity ? buffer : new byte[capacity];
+  }
+
+  private static char[] ensureCapacity(char[] buffer, int capacity) {
+    return buffer.length >= capacity ? buffer : new char[capacity];
+  }
+
+  /**
+   * A record, as a view of the characters of its chunk
+   */
+  private static class Record implements CharSequence {
+
+    private char[] chars;
+    private int offset;
+    private int length;
+
+    void set(char[] chars, int offset, int length) {
+      this.chars = chars;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= length) {
+        throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+      }
+      return chars[offset + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      if (start < 0 || end > length || start > end) {
+        throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+      }
+      return new String(chars, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+      return new String(chars, offset, length);
+    }
+  }
+
+  /**
+   * The output of a chunk of records. Its buffer is reused for the following chunks processed by the same buffers.
+   */
+  public static final class Output {
+
+    private char[] chars = new char[256];
+    private int length;
+
+    private Output() {
+    }
+
+    /**
+     * Append characters to the output
+     *
+     * @param text the characters
+     * @return this output
+     */
+    public Output append(CharSequence text) {
+      int textLength = text.length();
+      ensureAvailable(textLength);
+      if (text instanceof String) {
+        ((String) text).getChars(0, textLength, chars, length);
+      } else if (text instanceof Record) {
+        Record record = (Record) text;
+        System.arraycopy(record.chars, record.offset, chars, length, textLength);
+      } else {
+        for (int i = 0; i < textLength; i++) {
+          chars[length + i] = text.charAt(i);
+        }
+      }
+      length += textLength;
+      return this;
+    }
+
+    /**
+     * Append a character to the output
+     *
+     * @param c the character
+     * @return this output
+     */
+    public Output append(char c) {
+      ensureAvailable(1);
+      chars[length++] = c;
+      return this;
+    }
+
+    /**
+     * Append a line feed to the output
+     *
+     * @return this output
+     */
+    public Output newLine() {
+      return append('\n');
+    }
+
+    /**
+     * Append characters followed by a line feed to the output
+     *
+     * @param line the characters
+     * @return this output
+     */
+    public Output appendLine(CharSequence line) {
+      return append(line).newLine();
+    }
+
+    private void ensureAvailable(int count) {
+      if (length + count > chars.length) {
+        chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + count));
+      }
+    }
+  }
+}
@@ -0,0 +1,566 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A streaming encoder of records in a given {@link OutputFormat}.
+ * <p>
+ * Values are encoded directly to the output writer as they are given, without building an intermediate string per record.
+ * Each record must have exactly one value per column, in the order of the columns.
+ * </p>
+ * <p>
+ * For example:
+ * <pre>
+ *   try (RecordEncoder encoder = context.createRecordEncoder("name", "size")) {
+ *     for (File file : files) {
+ *       encoder.beginRecord().value(file.getName()).value(file.length()).endRecord();
+ *     }
+ *   }
+ * </pre>
+ * Closing the encoder completes the encoded output and flushes it, but does not close the underlying writer.
+ * </p>
+ *
+ * @see CommandContext#createRecordEncoder(String...)
+ */
+public abstract class RecordEncoder implements Flushable, Closeable {
+
+  private static final char[] MIN_LONG = Long.toString(Long.MIN_VALUE).toCharArray();
+
+  final Writer out;
+  final List<String> columns;
+  private final char[] digits = new char[20];
+  private boolean started;
+  private boolean inRecord;
+  private boolean closed;
+  private int valueIndex;
+  private long recordCount;
+
+  private RecordEncoder(Writer out, List<String> columns) {
+    this.out = requireNonNull(out, "out is required");
+    requireNonNull(columns, "columns are required");
+    if (columns.isEmpty()) {
+      throw new IllegalArgumentException("At least one column is required");
+    }
+    this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+  }
+
+  /**
+   * Create a record encoder
+   *
+   * @param format the output format
+   * @param out the writer to encode the records to
+   * @param columns the names of the columns of the records
+   * @return the new record encoder
+   */
+  public static RecordEncoder create(OutputFormat format, Writer out, String... columns) {
+    return create(format, out, Arrays.asList(columns));
+  }
+
+  /**
+   * Create a record encoder
+   *
+   * @param format the output format
+   * @param out the writer to encode the records to
+   * @param columns the names of the columns of the records
+   * @return the new record encoder
+   */
+  public static RecordEncoder create(OutputFormat format, Writer out, List<String> columns) {
+    switch (requireNonNull(format, "format is required")) {
+      case TEXT:
+        return new SeparatedValuesEncoder(out, columns, ' ', false);
+      case JSON:
+        return new JsonEncoder(out, columns, true);
+      case JSONL:
+        return new JsonEncoder(out, columns, false);
+      case CSV:
+        return new SeparatedValuesEncoder(out, columns, ',', true);
+      case TSV:
+        return new SeparatedValuesEncoder(out, columns, '\t', true);
+      default:
+        throw new IllegalArgumentException("Unsupported output format: " + format);
+    }
+  }
+
+  /**
+   * Get the names of the columns of the records
+   *
+   * @return the column names
+   */
+  public List<String> getColumns() {
+    return columns;
+  }
+
+  /**
+   * Get the number of records encoded so far
+   *
+   * @return the number of records
+   */
+  public long getRecordCount() {
+    return recordCount;
+  }
+
+  /**
+   * Begin a new record
+   *
+   * @return this encoder
+   * @throws IOException on any error writing the output
+   */
+  public RecordEncoder beginRecord() throws IOException {
+    assertNotClosed();
+    if (inRecord) {
+      throw new IllegalStateException("Previous record was not ended");
+    }
+    if (!started) {
+      started = true;
+      writeStart();
+    }
+    writeRecordStart(recordCount);
+    inRecord = true;
+    valueIndex = 0;
+    return this;
+  }
+
+  /**
+   * Encode the next value of the current record as a string
+   *
+   * @param value the value, may be <tt>null</tt>
+   * @return this encoder
+   * @throws IOException on any error writing the output
+   */
+  public RecordEncoder value(String value) throws IOException {
+    nextValue();
+    if (value == null) {
+      writeNull();
+    } else {
+      writeString(value);
+    }
+    return this;
+  }
+
+  /**
+   * Encode the next value of the current record as a number
+   *
+   * @param value the value
+   * @return this encoder
+   * @throws IOException on any error writing the output
+   */
+  public RecordEncoder value(long value) throws IOException {
+    nextValue();
+    writeLong(value);
+    return this;
+  }
+
+  /**
+   * Encode the next value of the current record as a number
+   *
+   * @param value the value
+   * @return this encoder
+   * @throws IOException on any error writing the output
+   */
+  public RecordEncoder value(double value) throws IOException {
+    nextValue();
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      writeNonFinite(value);
+    } else if (value == (long) value && Math.abs(value) < 1e15) {
+      writeLong((long) value);
+    } else {
+      out.write(Double.toString(value));
+    }
+    return this;
+  }
+
+  /**
+   * Encode the next value of the current record as a boolean
+   *
+   * @param value the value
+   * @return this encoder
+   * @throws IOException on any error writing the output
+   */
+  public RecordEncoder value(boolean value) throws IOException {
+    nextValue();
+    out.write(value ? "true" : "false");
+    return this;
+  }
+
+  /**
+   * Encode the next value of the current record, by its type.
+   * Numbers and booleans are encoded as such, any other value is encoded as its string representation.
+   *
+   * @param value the value, may be <tt>null</tt>
+   * @return this encoder
+   * @throws IOException on any error writing the output
+   */
+  public RecordEncoder value(Object value) throws IOException {
+    if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      return value(((Number) value).longValue());
+    } else if (value instanceof Number) {
+      return value(((Number) value).doubleValue());
+    } else if (value instanceof Boolean) {
+      return value(((Boolean) value).booleanValue());
+    }
+    return value(value == null ? null : value.toString());
+  }
+
+  /**
+   * End the current record
+   *
+   * @throws IOException on any error writing the output
+   */
+  public void endRecord() throws IOException {
+    if (!inRecord) {
+      throw new IllegalStateException("Record was not begun");
+    }
+    if (valueIndex != columns.size()) {
+      throw new IllegalStateException("Expected " + columns.size() + " values in record but got " + valueIndex);
+    }
+    writeRecordEnd();
+    inRecord = false;
+    recordCount++;
+  }
+
+  /**
+   * Encode a complete record
+   *
+   * @param values the values of the record, a value per column
+   * @throws IOException on any error writing the output
+   * @see #value(Object)
+   */
+  public void writeRecord(Object... values) throws IOException {
+    beginRecord();
+    for (Object value : values) {
+      value(value);
+    }
+    endRecord();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  /**
+   * Complete the encoded output and flush it. The underlying writer is not closed.
+   *
+   * @throws IOException on any error writing the output
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    if (inRecord) {
+      throw new IllegalStateException("Last record was not ended");
+    }
+    if (!started) {
+      started = true;
+      writeStart();
+    }
+    writeEnd();
+    closed = true;
+    flush();
+  }
+
+  private void nextValue() throws IOException {
+    if (!inRecord) {
+      throw new IllegalStateException("Record was not begun");
+    }
+    if (valueIndex >= columns.size()) {
+      throw new IllegalStateException("Too many values in record, expected " + columns.size());
+    }
+    writeValueStart(valueIndex++);
+  }
+
+  private void assertNotClosed() {
+    if (closed) {
+      throw new IllegalStateException("Encoder is closed");
+    }
+  }
+
+  /**
+   * Write a long value without creating an intermediate string
+   */
+  void writeLong(long value) throws IOException {
+    if (value == Long.MIN_VALUE) {
+      out.write(MIN_LONG);
+      return;
+    }
+    boolean negative = value < 0;
+    long remaining = negative ? -value : value;
+    int pos = digits.length;
+    do {
+      digits[--pos] = (char) ('0' + (remaining % 10));
+      remaining /= 10;
+    } while (remaining != 0);
+    if (negative) {
+      digits[--pos] = '-';
+    }
+    out.write(digits, pos, digits.length - pos);
+  }
+
+  abstract void writeStart() throws IOException;
+
+  abstract void writeRecordStart(long index) throws IOException;
+
+  abstract void writeValueStart(int index) throws IOException;
+
+  abstract void writeString(String value) throws IOException;
+
+  abstract void writeNull() throws IOException;
+
+  abstract void writeNonFinite(double value) throws IOException;
+
+  abstract void writeRecordEnd() throws IOException;
+
+  abstract void writeEnd() throws IOException;
+
+  private static class JsonEncoder extends RecordEncoder {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private final boolean array;
+    private final char[][] keys;
+    private final char[] escape = {'\\', 'u', '0', '0', '0', '0'};
+
+    JsonEncoder(Writer out, List<String> columns, boolean array) {
+      super(out, columns);
+      this.array = array;
+      this.keys = new char[columns.size()][];
+      for (int i = 0; i < keys.length; i++) {
+        StringBuilder key = new StringBuilder().append(i == 0 ? "{" : ",");
+        appendQuoted(key, columns.get(i));
+        keys[i] = key.append(':').toString().toCharArray();
+      }
+    }
+
+    @Override
+    void writeStart() throws IOException {
+      if (array) {
+        out.write('[');
+      }
+    }
+
+    @Override
+    void writeRecordStart(long index) throws IOException {
+      if (array) {
+        out.write(index == 0 ? "\n" : ",\n");
+      }
+    }
+
+    @Override
+    void writeValueStart(int index) throws IOException {
+      out.write(keys[index]);
+    }
+
+    @Override
+    void writeString(String value) throws IOException {
+      out.write('"');
+      int length = value.length();
+      int start = 0;
+      for (int i = 0; i < length; i++) {
+        char c = value.charAt(i);
+        if (c >= 0x20 && c != '"' && c != '\\') {
+          continue;
+        }
+        if (i > start) {
+          out.write(value, start, i - start);
+        }
+        start = i + 1;
+        switch (c) {
+          case '"':
+            out.write("\\\"");
+            break;
+          case '\\':
+            out.write("\\\\");
+            break;
+          case '\n':
+            out.write("\\n");
+            break;
+          case '\r':
+            out.write("\\r");
+            break;
+          case '\t':
+            out.write("\\t");
+            break;
+          default:
+            escape[4] = HEX[(c >> 4) & 0xF];
+            escape[5] = HEX[c & 0xF];
+            out.write(escape);
+        }
+      }
+      if (start < length) {
+        out.write(value, start, length - start);
+      }
+      out.write('"');
+    }
+
+    @Override
+    void writeNull() throws IOException {
+      out.write("null");
+    }
+
+    @Override
+    void writeNonFinite(double value) throws IOException {
+      writeNull();
+    }
+
+    @Override
+    void writeRecordEnd() throws IOException {
+      out.write(array ? "}" : "}\n");
+    }
+
+    @Override
+    void writeEnd() throws IOException {
+      if (array) {
+        out.write(getRecordCount() == 0 ? "]\n" : "\n]\n");
+      }
+    }
+
+    private static void appendQuoted(StringBuilder sb, String value) {
+      sb.append('"');
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (c == '"' || c == '\\') {
+          sb.append('\\').append(c);
+        } else if (c < 0x20) {
+          sb.append(String.format("\\u%04x", (int) c));
+        } else {
+          sb.append(c);
+        }
+      }
+      sb.append('"');
+    }
+  }
+
+  private static class SeparatedValuesEncoder extends RecordEncoder {
+
+    private final char separator;
+    private final boolean header;
+
+    SeparatedValuesEncoder(Writer out, List<String> columns, char separator, boolean header) {
+      super(out, columns);
+      this.separator = separator;
+      this.header = header;
+    }
+
+    @Override
+    void writeStart() throws IOException {
+      if (header) {
+        for (int i = 0; i < columns.size(); i++) {
+          writeValueStart(i);
+          writeString(columns.get(i));
+        }
+        out.write('\n');
+      }
+    }
+
+    @Override
+    void writeRecordStart(long index) {
+    }
+
+    @Override
+    void writeValueStart(int index) throws IOException {
+      if (index > 0) {
+        out.write(separator);
+      }
+    }
+
+    @Override
+    void writeString(String value) throws IOException {
+      if (separator == ',') {
+        writeCsv(value);
+      } else if (separator == '\t') {
+        writeTsv(value);
+      } else {
+        out.write(value);
+      }
+    }
+
+    private void writeCsv(String value) throws IOException {
+      int length = value.length();
+      boolean quote = false;
+      for (int i = 0; i < length && !quote; i++) {
+        char c = value.charAt(i);
+        quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+      }
+      if (!quote) {
+        out.write(value);
+        return;
+      }
+      out.write('"');
+      int start = 0;
+      for (int i = 0; i < length; i++) {
+        if (value.charAt(i) == '"') {
+          out.write(value, start, i + 1 - start);
+          out.write('"');
+          start = i + 1;
+        }
+      }
+      out.write(value, start, length - start);
+      out.write('"');
+    }
+
+    private void writeTsv(String value) throws IOException {
+      int length = value.length();
+      int start = 0;
+      for (int i = 0; i < length; i++) {
+        char c = value.charAt(i);
+        String escaped;
+        switch (c) {
+          case '\t':
+            escaped = "\\t";
+            break;
+          case '\n':
+            escaped = "\\n";
+            break;
+          case '\r':
+            escaped = "\\r";
+            break;
+          case '\\':
+            escaped = "\\\\";
+            break;
+          default:
+            continue;
+        }
+        out.write(value, start, i - start);
+        out.write(escaped);
+        start = i + 1;
+      }
+      out.write(value, start, length - start);
+    }
+
+    @Override
+    void writeNull() {
+    }
+
+    @Override
+    void writeNonFinite(double value) throws IOException {
+      out.write(Double.toString(value));
+    }
+
+    @Override
+    void writeRecordEnd() throws IOException {
+      out.write('\n');
+    }
+
+    @Override
+    void writeEnd() {
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A registry of {@link SharedResource shared resources}, which creates each resource once, on first use,
+ * and closes the created resources when it is closed.
+ * <p>
+ * Each {@link CommandsCliMain} has its own registry, shared by all of its command executions.
+ * Resources are closed in the reverse order of their creation.
+ * </p>
+ *
+ * @see CommandsCliMain#getResources()
+ * @see CommandContext#getResource(SharedResource)
+ */
+public class ResourceRegistry implements Closeable {
+
+  private final ConcurrentMap<SharedResource<?>, Holder> holders = new ConcurrentHashMap<>();
+  private final List<Holder> created = new ArrayList<>();
+  private volatile boolean closed;
+
+  /**
+   * Get a shared resource, create it if it was not created yet
+   *
+   * @param resource the shared resource declaration
+   * @param <T> the type of the resource
+   * @return the resource
+   * @throws IllegalStateException if the registry is closed, or on any error creating the resource
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(SharedResource<T> resource) {
+    requireNonNull(resource, "resource is required");
+    Holder holder = holders.get(resource);
+    if (holder == null) {
+      Holder newHolder = new Holder(resource);
+      holder = holders.putIfAbsent(resource, newHolder);
+      if (holder == null) {
+        holder = newHolder;
+      }
+    }
+    return (T) holder.get();
+  }
+
+  /**
+   * Whether a shared resource was already created
+   *
+   * @param resource the shared resource declaration
+   * @return <tt>true</tt> if created
+   */
+  public boolean isCreated(SharedResource<?> resource) {
+    Holder holder = holders.get(resource);
+    return holder != null && holder.value != null;
+  }
+
+  /**
+   * Close all the created resources, in the reverse order of their creation.
+   * Resources which are not {@link AutoCloseable} are just released.
+   *
+   * @throws IOException if any of the resources failed to close, after attempting to close all of them
+   */
+  @Override
+  public void close() throws IOException {
+    List<Holder> toClose;
+    synchronized (created) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      toClose = new ArrayList<>(created);
+      created.clear();
+    }
+    IOException error = null;
+    for (int i = toClose.size() - 1; i >= 0; i--) {
+      Holder holder = toClose.get(i);
+      Object value = holder.value;
+      holder.value = null;
+      if (value instanceof AutoCloseable) {
+        try {
+          ((AutoCloseable) value).close();
+        } catch (Exception e) {
+          if (error == null) {
+            error = new IOException("Failed to close shared resource: " + holder.resource.getName(), e);
+          } else {
+            error.addSuppressed(e);
+          }
+        }
+      }
+    }
+    holders.clear();
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  private static void closeQuietly(Object value) {
+    if (value instanceof AutoCloseable) {
+      try {
+        ((AutoCloseable) value).close();
+      } catch (Exception e) {
+        //Ignore, the resource is discarded anyway
+      }
+    }
+  }
+
+  private void assertNotClosed() {
+    if (closed) {
+      throw new IllegalStateException("Resource registry is closed");
+    }
+  }
+
+  private class Holder {
+
+    private final SharedResource<?> resource;
+    private volatile Object value;
+
+    Holder(SharedResource<?> resource) {
+      this.resource = resource;
+    }
+
+    Object get() {
+      Object result = value;
+      if (result != null) {
+        return result;
+      }
+      synchronized (this) {
+        assertNotClosed();
+        if (value == null) {
+          Object newValue = create();
+          synchronized (created) {
+            if (closed) {
+              closeQuietly(newValue);
+              assertNotClosed();
+            }
+            created.add(this);
+            value = newValue;
+          }
+        }
+        return value;
+      }
+    }
+
+    private Object create() {
+      Object result;
+      try {
+        result = resource.getFactory().create();
+      } catch (Exception e) {
+        throw new IllegalStateException("Failed to create shared resource: " + resource.getName() + ": " + e.getMessage(), e);
+      }
+      return requireNonNull(result, "shared resource " + resource.getName() + " is required");
+    }
+  }
+}
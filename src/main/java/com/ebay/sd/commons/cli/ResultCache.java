@@ -0,0 +1,425 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+
+/**
+ * A local on-disk cache of the output of {@link CommandDescriptor#isCacheable() cacheable} commands.
+ * <p>
+ * Before a cacheable command is executed, a key is computed from its route, its options, its argument values and the content
+ * of its {@link CommandDescriptor#getInputFileArguments() input files}. If the cache has an entry for the key, the stored
+ * output is replayed instead of executing the command. Otherwise, the command output is stored in the cache, but only if the
+ * command completes successfully.
+ * </p>
+ * <p>
+ * The cache is limited by its total size. When it exceeds the limit, the least recently used entries are evicted.
+ * The cache is best-effort: an error accessing the cache does not fail the command, which is then executed as usual.
+ * </p>
+ * <p>
+ * For example:
+ * <pre>
+ *   CommandsCliMain.builder()
+ *       .mainRoute(root)
+ *       .resultCache(ResultCache.builder().directory(Paths.get(".my-cli-cache")).maxSizeBytes(100_000_000).build())
+ *       .build();
+ * </pre>
+ * </p>
+ *
+ * @see CommandsCliMain.Builder#resultCache(ResultCache)
+ * @see CommandDescriptor.Builder#cacheable()
+ */
+public class ResultCache {
+
+  private static final String ENTRY_SUFFIX = ".out";
+  private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+  private final Path directory;
+  private final long maxSizeBytes;
+
+  private ResultCache(Builder builder) {
+    this.directory = requireNonNull(builder.directory, "directory is required");
+    this.maxSizeBytes = builder.maxSizeBytes;
+  }
+
+  /**
+   * Get the directory of the cache entries
+   *
+   * @return the cache directory
+   */
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Get the maximal total size of the cache entries
+   *
+   * @return the maximal size, in bytes
+   */
+  public long getMaxSizeBytes() {
+    return maxSizeBytes;
+  }
+
+  /**
+   * Compute the cache key of a command execution
+   *
+   * @param commandLine the parsed command line
+   * @param commandRoute the resolved command route, with the bound arguments
+   * @return the key, or <tt>null</tt> if the command is not cacheable or the key cannot be computed
+   */
+  String computeKey(CommandLine commandLine, CommandRoute commandRoute) {
+    if (!commandRoute.hasCommand() || !commandRoute.getCommand().isCacheable()) {
+      return null;
+    }
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      update(digest, commandRoute.getFullPathAsString());
+      Option[] options = commandLine.getOptions().clone();
+      Arrays.sort(options, new Comparator<Option>() {
+        @Override
+        public int compare(Option o1, Option o2) {
+          return key(o1).compareTo(key(o2));
+        }
+      });
+      update(digest, options.length);
+      for (Option option : options) {
+        update(digest, key(option));
+        update(digest, option.getValuesList());
+      }
+      Set<String> inputFileArguments = commandRoute.getCommand().getInputFileArguments();
+      List<Argument> arguments = commandRoute.getArguments();
+      update(digest, arguments.size());
+      for (Argument argument : arguments) {
+        update(digest, argument.getName());
+        update(digest, argument.getValues());
+        if (inputFileArguments.contains(argument.getName())) {
+          for (String file : argument.getValues()) {
+            if (InputSource.STDIN.equals(file)) {
+              return null;
+            }
+            hashFile(digest, Paths.get(file));
+          }
+        }
+      }
+      return toHex(digest.digest());
+    } catch (IOException | RuntimeException | NoSuchAlgorithmException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Replay the output of a cache entry, if exists
+   *
+   * @param key the cache key
+   * @param io the IO to write the output to
+   * @return <tt>true</tt> if replayed, <tt>false</tt> if there is no entry for the key, or it cannot be opened
+   * @throws CommandException if failed to replay an opened entry, since part of the output may already be written
+   */
+  boolean replay(String key, CommandIO io) throws CommandException {
+    Path entry = directory.resolve(key + ENTRY_SUFFIX);
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(entry, StandardOpenOption.READ);
+    } catch (IOException e) {
+      return false;
+    }
+    try (FileChannel opened = channel) {
+      try {
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+      } catch (IOException e) {
+        //Only affects the eviction order, e.g. if the entry was just evicted, it can still be read while open
+      }
+      io.transferFrom(opened);
+      return true;
+    } catch (IOException e) {
+      throw new CommandException("Failed to replay the cached output: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Start recording the output of a command execution into a new cache entry
+   *
+   * @param key the cache key
+   * @param io the IO of the command execution
+   * @return the new recording, or <tt>null</tt> if the cache entry cannot be created
+   */
+  Recording record(String key, CommandIO io) {
+    try {
+      Files.createDirectories(directory);
+      Path temp = Files.createTempFile(directory, key, ".tmp");
+      return new Recording(key, temp, io);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private synchronized void commit(String key, Path temp) throws IOException {
+    Files.move(temp, directory.resolve(key + ENTRY_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    evict();
+  }
+
+  private void evict() throws IOException {
+    List<Path> entries = new ArrayList<>();
+    final List<BasicFileAttributes> attributes = new ArrayList<>();
+    long totalSize = 0;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX)) {
+      for (Path entry : stream) {
+        BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+        entries.add(entry);
+        attributes.add(attrs);
+        totalSize += attrs.size();
+      }
+    }
+    if (totalSize <= maxSizeBytes) {
+      return;
+    }
+    List<Integer> order = new ArrayList<>();
+    for (int i = 0; i < entries.size(); i++) {
+      order.add(i);
+    }
+    Collections.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer i1, Integer i2) {
+        return attributes.get(i1).lastModifiedTime().compareTo(attributes.get(i2).lastModifiedTime());
+      }
+    });
+    for (int i = 0; i < order.size() && totalSize > maxSizeBytes; i++) {
+      int index = order.get(i);
+      if (Files.deleteIfExists(entries.get(index))) {
+        totalSize -= attributes.get(index).size();
+      }
+    }
+  }
+
+  private static String key(Option option) {
+    return option.getOpt() != null ? option.getOpt() : option.getLongOpt();
+  }
+
+  private static void hashFile(MessageDigest digest, Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      update(digest, channel.size());
+      ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+      while (channel.read(buffer) >= 0) {
+        buffer.flip();
+        digest.update(buffer);
+        buffer.clear();
+      }
+    }
+  }
+
+  private static void update(MessageDigest digest, List<String> values) {
+    update(digest, values.size());
+    for (String value : values) {
+      update(digest, value);
+    }
+  }
+
+  private static void update(MessageDigest digest, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    update(digest, bytes.length);
+    digest.update(bytes);
+  }
+
+  private static void update(MessageDigest digest, long value) {
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      digest.update((byte) (value >>> shift));
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+      hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+    }
+    return new String(hex);
+  }
+
+  /**
+   * Start building a new result cache
+   *
+   * @return a new {@link Builder}
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * The recording of the output of a single command execution into a new cache entry
+   */
+  class Recording {
+
+    private final String key;
+    private final Path temp;
+    private final OutputStream file;
+    private final CommandIO io;
+    private boolean committed;
+
+    private Recording(String key, Path temp, CommandIO io) throws IOException {
+      this.key = key;
+      this.temp = temp;
+      try {
+        this.file = Files.newOutputStream(temp);
+      } catch (IOException e) {
+        try {
+          Files.deleteIfExists(temp);
+        } catch (IOException suppressed) {
+          e.addSuppressed(suppressed);
+        }
+        throw e;
+      }
+      this.io = CommandIO.builder()
+          .in(io.getIn())
+          .out(new TeeOutputStream(io.getOut(), file))
+          .err(io.getErr())
+          .interactive(io.isInteractive())
+          .charset(io.getCharset())
+          .build();
+    }
+
+    /**
+     * Get the IO to execute the command with, which writes the output to the original IO and to the cache entry
+     */
+    CommandIO getIO() {
+      return io;
+    }
+
+    /**
+     * Store the recorded output in the cache
+     */
+    void commit() {
+      try {
+        io.flush();
+        file.close();
+        ResultCache.this.commit(key, temp);
+        committed = true;
+      } catch (IOException e) {
+        //The cache is best-effort
+      }
+    }
+
+    /**
+     * Discard the recorded output, unless committed
+     */
+    void close() {
+      if (!committed) {
+        try {
+          file.close();
+          Files.deleteIfExists(temp);
+        } catch (IOException e) {
+          //The cache is best-effort
+        }
+      }
+    }
+  }
+
+  private static class TeeOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final OutputStream copy;
+
+    TeeOutputStream(OutputStream out, OutputStream copy) {
+      this.out = out;
+      this.copy = copy;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      copy.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      copy.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+      copy.flush();
+    }
+  }
+
+  /**
+   * Result cache builder
+   *
+   * @see #builder()
+   */
+  public static class Builder {
+
+    private static final long DEFAULT_MAX_SIZE_BYTES = 256L * 1024 * 1024;
+
+    private Path directory;
+    private long maxSizeBytes = DEFAULT_MAX_SIZE_BYTES;
+
+    private Builder() {
+    }
+
+    /**
+     * Set the directory of the cache entries (required). The directory is created if it does not exist.
+     *
+     * @param directory the cache directory
+     * @return this builder
+     */
+    public Builder directory(Path directory) {
+      this.directory = directory;
+      return this;
+    }
+
+    /**
+     * Set the maximal total size of the cache entries (default: 256MB)
+     *
+     * @param maxSizeBytes the maximal size, in bytes (must be non-negative)
+     * @return this builder
+     */
+    public Builder maxSizeBytes(long maxSizeBytes) {
+      if (maxSizeBytes < 0) {
+        throw new IllegalArgumentException("maxSizeBytes must be non-negative");
+      }
+      this.maxSizeBytes = maxSizeBytes;
+      return this;
+    }
+
+    /**
+     * Build the result cache
+     *
+     * @return the new result cache
+     */
+    public ResultCache build() {
+      return new ResultCache(this);
+    }
+  }
+}
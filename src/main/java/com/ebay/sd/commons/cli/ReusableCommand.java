@@ -0,0 +1,32 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import org.apache.commons.cli.ParseException;
+
+/**
+ * A command which can be reused for multiple executions, instead of creating a new command for each execution.
+ * <p>
+ * A reusable command is created by a {@link PooledCommandFactory}, and is reset with the context of each execution
+ * before it is executed. A reusable command is never executed concurrently.
+ * </p>
+ *
+ * @see PooledCommandFactory
+ */
+public interface ReusableCommand extends Command {
+
+  /**
+   * Reset the command for a new execution, with the given context
+   *
+   * @param commandContext the context of the new execution
+   * @throws ParseException on any parse or preparation error on the command
+   */
+  void reset(CommandContext commandContext) throws ParseException;
+}
@@ -8,13 +8,14 @@ http://www.apache.org/licenses/LICENSE-2.0.
 ************************************************************/
 package com.ebay.sd.commons.cli;
 
-import static java.util.Collections.unmodifiableList;
+import static com.ebay.sd.commons.cli.Utils.immutableList;
 import static java.util.Objects.requireNonNull;
 
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Descriptor of a route.
@@ -28,29 +29,136 @@ import java.util.Map;
  *         .addSubCommand(RouteDescriptor.builder("baz") ... .build())
  *         .build();
  * </pre>
+ * A route can also have sub-commands contributed by {@link CommandPlugin plugins}, which are loaded only when
+ * the route is resolved.
  */
 public class RouteDescriptor extends Descriptor {
 
   private final List<Descriptor> subCommands;
+  private final PluginIndex plugins;
+  private final List<PluginLoader> pluginLoaders;
+  private volatile List<Descriptor> allSubCommands;
 
   private RouteDescriptor(Builder builder) {
     super(builder);
-    this.subCommands = unmodifiableList(new ArrayList<>(requireNonNull(builder.subCommands.values(), "subCommands is required")));
-    if (subCommands.isEmpty()) {
+    this.subCommands = immutableList(requireNonNull(builder.subCommands.values(), "subCommands is required"));
+    this.plugins = builder.plugins;
+    this.pluginLoaders = immutableList(builder.pluginLoaders);
+    if (subCommands.isEmpty() && plugins == null && pluginLoaders.isEmpty()) {
       throw new IllegalArgumentException("Route must have at least one sub-command");
     }
+    this.allSubCommands = plugins == null ? subCommands : null;
   }
 
   /**
-   * Get the sub-commands of this route.
-   * A non-empty list is expected (since a route must have at least one sub-command).
+   * Get the sub-commands of this route, including the sub-commands contributed by plugins, which are loaded
+   * on the first call, and the sub-commands currently contributed by plugin loaders.
+   * A non-empty list is expected, unless the route has plugins.
    *
    * @return the list of sub-command {@link Descriptor}s
    */
   public List<Descriptor> getSubCommands() {
+    List<Descriptor> all = allSubCommands;
+    if (all == null) {
+      synchronized (this) {
+        all = allSubCommands;
+        if (all == null) {
+          all = loadPluginSubCommands();
+          allSubCommands = all;
+        }
+      }
+    }
+    return withReloadableSubCommands(all);
+  }
+
+  private List<Descriptor> loadPluginSubCommands() {
+    return merge(subCommands, plugins.loadSubCommands(getName()));
+  }
+
+  /**
+   * Add the sub-commands currently contributed by the plugin loaders. These are not cached, so a route never holds on
+   * to the sub-commands of a reloaded generation of the plugins.
+   */
+  private List<Descriptor> withReloadableSubCommands(List<Descriptor> subCommands) {
+    for (PluginLoader loader : pluginLoaders) {
+      subCommands = merge(subCommands, loader.getSubCommands(getName()));
+    }
     return subCommands;
   }
 
+  private List<Descriptor> merge(List<Descriptor> subCommands, List<Descriptor> pluginSubCommands) {
+    if (pluginSubCommands.isEmpty()) {
+      return subCommands;
+    }
+    Map<String, Descriptor> all = new LinkedHashMap<>();
+    for (Descriptor subCommand : subCommands) {
+      all.put(subCommand.getName(), subCommand);
+    }
+    for (Descriptor subCommand : pluginSubCommands) {
+      if (all.containsKey(subCommand.getName())) {
+        throw new IllegalStateException("Sub-command '" + subCommand.getName() + "' contributed by a plugin already exists for route '" + getName() + "'");
+      }
+      all.put(subCommand.getName(), subCommand);
+    }
+    return immutableList(new ArrayList<>(all.values()));
+  }
+
+  /**
+   * Get the sub-commands of this route without loading plugins, i.e. including the sub-commands contributed by plugins
+   * only if already loaded
+   *
+   * @return the list of loaded sub-command {@link Descriptor}s
+   */
+  List<Descriptor> getLoadedSubCommands() {
+    List<Descriptor> all = allSubCommands;
+    return withReloadableSubCommands(all != null ? all : subCommands);
+  }
+
+  /**
+   * Get the plugin index this route loads plugin sub-commands from
+   *
+   * @return the plugin index, or <tt>null</tt> if the route has no plugins
+   */
+  PluginIndex getPlugins() {
+    return plugins;
+  }
+
+  /**
+   * Get the plugin loaders this route gets sub-commands from
+   *
+   * @return the plugin loaders, or an empty list
+   */
+  List<PluginLoader> getPluginLoaders() {
+    return pluginLoaders;
+  }
+
+  /**
+   * Acquire a lease on the plugins which contributed a sub-command of this route, for the duration of an invocation.
+   *
+   * @param subCommand the resolved sub-command
+   * @return the acquired lease, or <tt>null</tt> if the sub-command is not contributed by a plugin loader
+   * @throws CommandException if the sub-command was contributed by plugins which were reloaded since it was resolved
+   * @see PluginLoader#reload()
+   */
+  Lock acquirePlugins(Descriptor subCommand) throws CommandException {
+    if (pluginLoaders.isEmpty()) {
+      return null;
+    }
+    List<Descriptor> all = allSubCommands;
+    for (Descriptor loaded : all != null ? all : subCommands) {
+      if (loaded == subCommand) {
+        return null;
+      }
+    }
+    for (PluginLoader loader : pluginLoaders) {
+      Lock lease = loader.acquire(subCommand);
+      if (lease != null) {
+        return lease;
+      }
+    }
+    throw new CommandException("Command '" + subCommand.getName() + "' was reloaded during the invocation, execute it again");
+  }
+
   @Override
   public String toString() {
     return "RouteDescriptor{" +
@@ -76,6 +184,8 @@ public class RouteDescriptor extends Descriptor {
   public static class Builder extends Descriptor.Builder<Builder, RouteDescriptor> {
 
     private Map<String, Descriptor> subCommands = new LinkedHashMap<>();
+    private PluginIndex plugins;
+    private List<PluginLoader> pluginLoaders = new ArrayList<>();
 
     private Builder(String name) {
       super(name);
@@ -99,6 +209,32 @@ public class RouteDescriptor extends Descriptor {
       return this;
     }
 
+    /**
+     * Add the sub-commands contributed by the plugins of the given index to this route, by the route name.
+     * The plugins are loaded only when the route is resolved.
+     *
+     * @param plugins the plugin index
+     * @return this builder
+     * @see CommandPlugin#getRoute()
+     */
+    public Builder plugins(PluginIndex plugins) {
+      this.plugins = requireNonNull(plugins, "plugins is required");
+      return this;
+    }
+
+    /**
+     * Add the sub-commands contributed to this route by the plugins of a plugin loader, by the route name.
+     * The sub-commands are swapped whenever the plugins are reloaded.
+     *
+     * @param loader the plugin loader
+     * @return this builder
+     * @see PluginLoader#reload()
+     */
+    public Builder plugins(PluginLoader loader) {
+      this.pluginLoaders.add(requireNonNull(loader, "loader is required"));
+      return this;
+    }
+
     /**
      * Build a new route descriptor based on the settings to this builder
      *
@@ -0,0 +1,94 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Declaration of a resource which is shared by command executions, such as a connection pool, an HTTP client or a large lookup table.
+ * <p>
+ * A shared resource is usually declared as a constant, and is created lazily on first use in each {@link ResourceRegistry}.
+ * The resource must be thread-safe, as concurrent command executions may use it.
+ * If the resource is {@link AutoCloseable}, it is closed when the registry is closed.
+ * For example:
+ * <pre>
+ *   public static final SharedResource&lt;HttpClient&gt; HTTP_CLIENT = SharedResource.of("http-client",
+ *       new SharedResource.Factory&lt;HttpClient&gt;() {
+ *         public HttpClient create() {
+ *           return HttpClients.createDefault();
+ *         }
+ *       });
+ *   //...
+ *   HttpClient client = context.getResource(HTTP_CLIENT);
+ * </pre>
+ * </p>
+ *
+ * @param <T> the type of the resource
+ * @see CommandContext#getResource(SharedResource)
+ * @see ResourceRegistry
+ */
+public final class SharedResource<T> {
+
+  private final String name;
+  private final Factory<T> factory;
+
+  private SharedResource(String name, Factory<T> factory) {
+    this.name = requireNonNull(name, "name is required");
+    this.factory = requireNonNull(factory, "factory is required");
+  }
+
+  /**
+   * Declare a shared resource
+   *
+   * @param name the name of the resource, for error messages
+   * @param factory the factory to create the resource with
+   * @param <T> the type of the resource
+   * @return the new shared resource declaration
+   */
+  public static <T> SharedResource<T> of(String name, Factory<T> factory) {
+    return new SharedResource<>(name, factory);
+  }
+
+  /**
+   * Get the name of the resource
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  Factory<T> getFactory() {
+    return factory;
+  }
+
+  @Override
+  public String toString() {
+    return "SharedResource{" +
+        "name='" + name + '\'' +
+        '}';
+  }
+
+  /**
+   * A factory of a shared resource
+   *
+   * @param <T> the type of the resource
+   */
+  public interface Factory<T> {
+
+    /**
+     * Create the resource
+     *
+     * @return the new resource (must not be <tt>null</tt>)
+     * @throws Exception on any error creating the resource
+     */
+    T create() throws Exception;
+  }
+}
@@ -74,7 +74,8 @@ public class UsageHelp {
    */
   public static final String CTX_HELP_OPTION_AUTO_ADD = "help.option.auto.add";
   /**
-   * Command context key for setting the print writer, instead of the default one writing to stdout.
+   * Command context key for setting the print writer, instead of the default one writing to the output of the
+   * {@link CommandContext#getIO() command IO}.
    * <p>
    * Expected value type: {@link PrintWriter}
    * </p>
@@ -111,7 +112,10 @@ public class UsageHelp {
     if (!options.getOptions().isEmpty()) {
       header += formatter.getNewLine() + "Options:";
     }
-    PrintWriter out = (PrintWriter) commandContext.getValue(CTX_HELP_PRINT_WRITER, new PrintWriter(System.out));
+    PrintWriter out = (PrintWriter) commandContext.getValue(CTX_HELP_PRINT_WRITER);
+    if (out == null) {
+      out = commandContext.getIO().getOutWriter();
+    }
     try {
       formatter.printHelp(out, width, cmdLineSyntax, header, options, leftPadding, descPadding, footer);
     } finally {
@@ -209,6 +213,15 @@ public class UsageHelp {
     if (Boolean.TRUE.equals(commandContext.getValue(CTX_HELP_OPTION_AUTO_ADD, true))) {
       options.addOption((Option) commandContext.getValue(CTX_HELP_OPTION, DEFAULT_HELP_OPTION));
     }
+    if (descriptor instanceof CommandDescriptor
+        && Boolean.TRUE.equals(commandContext.getValue(OutputFormat.CTX_OUTPUT_OPTION_AUTO_ADD))) {
+      options.addOption((Option) commandContext.getValue(OutputFormat.CTX_OUTPUT_OPTION, OutputFormat.DEFAULT_OUTPUT_OPTION));
+    }
+    if (descriptor instanceof CommandDescriptor
+        && Boolean.TRUE.equals(commandContext.getValue(Benchmark.CTX_BENCH_OPTIONS_AUTO_ADD))) {
+      options.addOption(Benchmark.BENCH_OPTION);
+      options.addOption(Benchmark.WARMUP_OPTION);
+    }
     return options;
   }
 
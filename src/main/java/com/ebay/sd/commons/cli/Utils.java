@@ -13,6 +13,8 @@ import static java.util.Objects.requireNonNull;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Simple internal utilities
@@ -68,6 +70,26 @@ abstract class Utils {
     return String.valueOf(chars);
   }
 
+  /**
+   * Create a compact immutable copy of a collection, backed by an exact-sized array.
+   * Empty and single element collections are copied to the shared empty and singleton lists.
+   *
+   * @param items the items to copy (must be not null)
+   * @param <T> the type of the items
+   * @return the immutable list of the items
+   */
+  @SuppressWarnings("unchecked")
+  static <T> List<T> immutableList(Collection<? extends T> items) {
+    switch (items.size()) {
+      case 0:
+        return Collections.emptyList();
+      case 1:
+        return Collections.<T>singletonList(items.iterator().next());
+      default:
+        return Collections.unmodifiableList(Arrays.asList((T[]) items.toArray()));
+    }
+  }
+
   static int requireNonNegative(int value, String message) {
     if (value < 0) {
       throw new IllegalArgumentException(message);
@@ -0,0 +1,222 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The warm-up of a long-lived process, which executes the hot paths of all routes in the background,
+ * so they are loaded and compiled before real invocations arrive.
+ * <p>
+ * Each warm-up round resolves every route and renders its usage help, and executes the
+ * {@link CommandDescriptor#getSampleInvocations() sample invocations} of every command, discarding their output.
+ * Rounds are repeated until the time limit is reached, or until enough rounds were executed for the hot paths to be compiled.
+ * </p>
+ *
+ * @see CommandsCliMain.Builder#warmUp(long)
+ * @see CommandsCliMain#getWarmUp()
+ */
+public class WarmUp {
+
+  static final int MAX_ROUNDS = 10000;
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  private final CommandsCliMain main;
+  private final List<Target> targets;
+  private final long maxNanos;
+  private final CountDownLatch done = new CountDownLatch(1);
+  private final AtomicInteger warmedRoutes = new AtomicInteger();
+  private final AtomicInteger rounds = new AtomicInteger();
+  private volatile boolean cancelled;
+  private volatile long elapsedNanos;
+
+  WarmUp(CommandsCliMain main, Descriptor root, long maxMillis) {
+    this.main = main;
+    this.targets = collectTargets(root);
+    this.maxNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+  }
+
+  void start() {
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        WarmUp.this.run();
+      }
+    }, "commands-cli-warm-up-" + THREAD_COUNTER.incrementAndGet());
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.start();
+  }
+
+  void run() {
+    long start = System.nanoTime();
+    long deadline = start + maxNanos;
+    try {
+      CommandIO io = CommandIO.builder()
+          .in(new ByteArrayInputStream(new byte[0]))
+          .out(DiscardOutputStream.INSTANCE)
+          .err(DiscardOutputStream.INSTANCE)
+          .interactive(false)
+          .build();
+      boolean[] warmed = new boolean[targets.size()];
+      while (!cancelled && rounds.get() < MAX_ROUNDS && System.nanoTime() < deadline) {
+        for (int i = 0; i < targets.size() && !cancelled && System.nanoTime() < deadline; i++) {
+          if (targets.get(i).warmUp(io) && !warmed[i]) {
+            warmed[i] = true;
+            warmedRoutes.incrementAndGet();
+          }
+        }
+        rounds.incrementAndGet();
+      }
+    } finally {
+      elapsedNanos = System.nanoTime() - start;
+      done.countDown();
+    }
+  }
+
+  /**
+   * Get the number of routes which were warmed up successfully at least once
+   *
+   * @return the number of warmed routes
+   */
+  public int getWarmedRoutes() {
+    return warmedRoutes.get();
+  }
+
+  /**
+   * Get the total number of routes to warm up, including the intermediate routes
+   *
+   * @return the number of routes
+   */
+  public int getTotalRoutes() {
+    return targets.size();
+  }
+
+  /**
+   * Get the number of completed warm-up rounds
+   *
+   * @return the number of rounds
+   */
+  public int getRounds() {
+    return rounds.get();
+  }
+
+  /**
+   * Get the time the warm-up took, in milliseconds
+   *
+   * @return the elapsed time, or <tt>0</tt> if not done yet
+   */
+  public long getElapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+  }
+
+  /**
+   * Whether the warm-up is done
+   *
+   * @return <tt>true</tt> if done
+   */
+  public boolean isDone() {
+    return done.getCount() == 0;
+  }
+
+  /**
+   * Wait for the warm-up to be done
+   *
+   * @param timeout the maximal time to wait
+   * @param unit the unit of the timeout
+   * @return <tt>true</tt> if done, <tt>false</tt> if the timeout elapsed
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+    return done.await(timeout, unit);
+  }
+
+  /**
+   * Stop the warm-up as soon as possible
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  @Override
+  public String toString() {
+    return "WarmUp{" +
+        "warmedRoutes=" + warmedRoutes +
+        ", totalRoutes=" + targets.size() +
+        ", rounds=" + rounds +
+        ", done=" + isDone() +
+        '}';
+  }
+
+  private List<Target> collectTargets(Descriptor root) {
+    List<Target> targets = new ArrayList<>();
+    collectTargets(root, new ArrayList<String>(), targets);
+    return targets;
+  }
+
+  private void collectTargets(Descriptor descriptor, List<String> path, List<Target> targets) {
+    targets.add(new Target(descriptor, path));
+    if (descriptor instanceof RouteDescriptor) {
+      for (Descriptor subCommand : ((RouteDescriptor) descriptor).getLoadedSubCommands()) {
+        List<String> subPath = new ArrayList<>(path);
+        subPath.add(subCommand.getName());
+        collectTargets(subCommand, subPath, targets);
+      }
+    }
+  }
+
+  private class Target {
+
+    private final String[] path;
+    private final List<String[]> samples = new ArrayList<>();
+
+    Target(Descriptor descriptor, List<String> path) {
+      this.path = path.toArray(new String[0]);
+      if (descriptor instanceof CommandDescriptor) {
+        for (List<String> sample : ((CommandDescriptor) descriptor).getSampleInvocations()) {
+          List<String> args = new ArrayList<>(path);
+          args.addAll(sample);
+          samples.add(args.toArray(new String[0]));
+        }
+      }
+    }
+
+    boolean warmUp(CommandIO io) {
+      try {
+        main.printUsage(path, io);
+        for (String[] sample : samples) {
+          main.executeSample(sample, io);
+        }
+        return true;
+      } catch (Exception e) {
+        return false;
+      }
+    }
+  }
+
+  static class DiscardOutputStream extends OutputStream {
+
+    static final DiscardOutputStream INSTANCE = new DiscardOutputStream();
+
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  }
+}
@@ -0,0 +1,218 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Watch mode: execute a command, and execute it again whenever its input files change, in the same process.
+ * <p>
+ * A command which declares {@link CommandDescriptor.Builder#inputFileArgument(String) input file arguments} can be marked
+ * as {@link CommandDescriptor.Builder#watchable() watchable}, which adds the {@link #WATCH_OPTION --watch} option.
+ * With the option, the command is executed once, and then the paths of its input file arguments are watched using a
+ * {@link WatchService} (directories are watched recursively). Changes are collected until no change occurs for the
+ * {@link #CTX_WATCH_DEBOUNCE_MILLIS debounce} time, so a burst of changes (e.g. saving several files) triggers a single
+ * execution. Commands which implement {@link IncrementalCommand} are executed again with the changed paths, other commands
+ * are created again. Shared resources are created once and reused by all the executions.
+ * </p>
+ * <p>
+ * Errors of an execution are printed to the standard error, and watching continues. Watching stops when the thread is
+ * interrupted.
+ * </p>
+ */
+public final class WatchMode {
+
+  /**
+   * The option to execute a command in watch mode
+   */
+  public static final Option WATCH_OPTION = Option.builder().longOpt("watch")
+      .desc("Execute again whenever the input files change").build();
+  /**
+   * Command context key for setting the time in milliseconds without changes to wait after a change, before executing
+   * the command again (default: 200)
+   * <p>
+   * Expected value type: {@link Number}
+   * </p>
+   *
+   * @see CommandContext#putValue(String, Object)
+   */
+  public static final String CTX_WATCH_DEBOUNCE_MILLIS = "watch.debounce.millis";
+
+  static final long DEFAULT_DEBOUNCE_MILLIS = 200;
+
+  private final List<Path> paths;
+  private final long debounceMillis;
+  private final PrintWriter err;
+  private final Map<WatchKey, Path> directories = new HashMap<>();
+  private final Set<Path> recursiveRoots = new LinkedHashSet<>();
+
+  /**
+   * A single execution of the watched command
+   */
+  interface Execution {
+
+    /**
+     * Execute the command
+     *
+     * @param changedPaths the changed paths, or <tt>null</tt> on the first execution
+     * @throws ParseException on any invalid input
+     * @throws CommandException on any execution error
+     */
+    void execute(Set<Path> changedPaths) throws ParseException, CommandException;
+  }
+
+  WatchMode(Collection<Path> paths, long debounceMillis, PrintWriter err) {
+    this.paths = new ArrayList<>();
+    for (Path path : requireNonNull(paths, "paths are required")) {
+      this.paths.add(path.toAbsolutePath().normalize());
+    }
+    this.debounceMillis = debounceMillis;
+    this.err = requireNonNull(err, "err is required");
+  }
+
+  /**
+   * Execute the command, then watch the paths and execute it again on changes, until the current thread is interrupted
+   *
+   * @param execution the execution of the command
+   * @throws ParseException if there is nothing to watch, i.e. no path is an existing directory or a file in one
+   * @throws CommandException if failed to watch the paths
+   */
+  void run(Execution execution) throws ParseException, CommandException {
+    try (WatchService service = FileSystems.getDefault().newWatchService()) {
+      for (Path path : paths) {
+        register(service, path);
+      }
+      if (directories.isEmpty()) {
+        throw new ParseException("Nothing to watch: the input files must be in existing directories, " +
+            "and not the standard input");
+      }
+      executeAndReport(execution, null);
+      while (!Thread.currentThread().isInterrupted()) {
+        Set<Path> changed = new LinkedHashSet<>();
+        collect(service, service.take(), changed);
+        WatchKey key;
+        while ((key = service.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+          collect(service, key, changed);
+        }
+        if (!changed.isEmpty()) {
+          executeAndReport(execution, Collections.unmodifiableSet(changed));
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      throw new CommandException("Failed to watch the input files: " + e.getMessage(), e);
+    }
+  }
+
+  private void executeAndReport(Execution execution, Set<Path> changed) {
+    try {
+      execution.execute(changed);
+    } catch (ParseException | CommandException e) {
+      err.println("ERROR: " + e.getMessage());
+    } catch (RuntimeException e) {
+      //E.g. of a command factory, which should not stop watching either
+      err.println("ERROR: UNEXPECTED ERROR: " + e.getMessage());
+    }
+    err.flush();
+  }
+
+  private void register(WatchService service, Path path) throws IOException {
+    if (Files.isDirectory(path)) {
+      recursiveRoots.add(path);
+      registerRecursively(service, path);
+    } else {
+      Path parent = path.getParent();
+      if (parent != null && Files.isDirectory(parent)) {
+        registerDirectory(service, parent);
+      }
+    }
+  }
+
+  private void registerRecursively(final WatchService service, Path root) throws IOException {
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        registerDirectory(service, dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private void registerDirectory(WatchService service, Path dir) throws IOException {
+    if (!directories.containsValue(dir)) {
+      directories.put(dir.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+    }
+  }
+
+  private void collect(WatchService service, WatchKey key, Set<Path> changed) throws IOException {
+    Path dir = directories.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        changed.addAll(paths);
+        continue;
+      }
+      Path path = dir.resolve((Path) event.context());
+      if (isWatched(path)) {
+        changed.add(path);
+        if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+          registerRecursively(service, path);
+        }
+      }
+    }
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+  }
+
+  private boolean isWatched(Path path) {
+    if (paths.contains(path)) {
+      return true;
+    }
+    for (Path root : recursiveRoots) {
+      if (path.startsWith(root)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static long getDebounceMillis(CommandContext context) {
+    Object value = context.getValue(CTX_WATCH_DEBOUNCE_MILLIS);
+    return value instanceof Number ? ((Number) value).longValue() : DEFAULT_DEBOUNCE_MILLIS;
+  }
+}
@@ -0,0 +1,660 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * A pool of worker processes which execute command lines, each with its own {@link CommandsCliMain}.
+ * <p>
+ * This is useful for commands which do not scale within a single JVM, e.g. because of long garbage collection pauses with
+ * a large heap, or native libraries which are not thread safe. Each worker is a separate JVM, started with the classpath of
+ * the current JVM, which creates its commands CLI using a {@link MainFactory} class. The invocations are sent to the
+ * workers over the standard input and output pipes of the worker processes, serialized as the command line arguments and
+ * the content of the standard input, and each idle worker takes the next pending invocation. The results are returned as
+ * {@link Future}s, or in the order of the invocations with {@link #executeAll(List)}.
+ * </p>
+ * <p>
+ * A worker which dies (e.g. crashes or runs out of memory) fails only the invocation it executed, with status <tt>1</tt>,
+ * and is started again for the next invocation. A worker can also be recycled after a number of invocations, to bound the
+ * effect of leaks.
+ * </p>
+ * <p>
+ * For example:
+ * <pre>
+ *   public class MyMainFactory implements WorkerPool.MainFactory {
+ *     public CommandsCliMain create() {
+ *       return CommandsCliMain.builder().mainRoute(MyCli.ROOT).build();
+ *     }
+ *   }
+ *
+ *   try (WorkerPool pool = WorkerPool.builder(MyMainFactory.class.getName()).workers(4).jvmOptions("-Xmx2g").build()) {
+ *     List&lt;WorkerPool.Result&gt; results = pool.executeAll(invocations);
+ *   }
+ * </pre>
+ * </p>
+ */
+public class WorkerPool implements Closeable {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final byte[] NO_BYTES = new byte[0];
+  static final long DISCARD_TIMEOUT_MILLIS = 5000;
+
+  private final String factoryClass;
+  private final int maxInvocations;
+  private final List<String> jvmOptions;
+  private final BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+  private final List<Thread> threads = new ArrayList<>();
+  private final List<WorkerSlot> slots = new ArrayList<>();
+  private final AtomicInteger startedProcesses = new AtomicInteger();
+  private volatile boolean closed;
+
+  /**
+   * A factory of the commands CLI of a worker process. Implementations must have a public no-arg constructor.
+   */
+  public interface MainFactory {
+
+    /**
+     * Create the commands CLI of the worker process
+     *
+     * @return the commands CLI
+     */
+    CommandsCliMain create();
+  }
+
+  private WorkerPool(Builder builder) {
+    this.factoryClass = builder.factoryClass;
+    this.maxInvocations = builder.maxInvocations;
+    this.jvmOptions = Collections.unmodifiableList(new ArrayList<>(builder.jvmOptions));
+    for (int i = 0; i < builder.workers; i++) {
+      WorkerSlot slot = new WorkerSlot();
+      Thread thread = new Thread(slot, "worker-pool-" + (i + 1));
+      thread.setDaemon(true);
+      slots.add(slot);
+      threads.add(thread);
+      thread.start();
+    }
+  }
+
+  /**
+   * Submit an invocation to be executed by the next idle worker
+   *
+   * @param args the command line arguments
+   * @param stdin the content of the standard input of the command
+   * @return the future result of the invocation
+   * @throws IllegalStateException if the pool is closed
+   */
+  public Future<Result> submit(String[] args, byte[] stdin) {
+    Task task = new Task(requireNonNull(args, "args are required").clone(), requireNonNull(stdin, "stdin is required"));
+    //Checked and added under the lock which close() marks the pool closed under, so no task is added after the final drain
+    synchronized (queue) {
+      if (closed) {
+        throw new IllegalStateException("The worker pool is closed");
+      }
+      queue.add(task);
+    }
+    return task;
+  }
+
+  /**
+   * Execute invocations concurrently on the workers, and wait for all of them to complete
+   *
+   * @param invocations the command line arguments of each invocation
+   * @return the results, in the order of the invocations
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public List<Result> executeAll(List<String[]> invocations) throws InterruptedException {
+    List<Future<Result>> futures = new ArrayList<>(invocations.size());
+    for (String[] args : invocations) {
+      futures.add(submit(args, NO_BYTES));
+    }
+    List<Result> results = new ArrayList<>(futures.size());
+    for (Future<Result> future : futures) {
+      results.add(getResult(future));
+    }
+    return results;
+  }
+
+  /**
+   * Execute an invocation on a worker and write its output to an IO, as if it was executed in this process
+   *
+   * @param args the command line arguments
+   * @param io the IO to write the output of the command to
+   * @throws CommandException if the invocation failed, or interrupted while waiting
+   */
+  public void execute(String[] args, CommandIO io) throws CommandException {
+    Result result;
+    try {
+      result = getResult(submit(args, NO_BYTES));
+      io.getOut().write(result.getOut());
+      io.getErr().write(result.getErr());
+      io.flush();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CommandException("Interrupted while waiting for the worker", e);
+    } catch (IOException e) {
+      throw new CommandException("Failed to write the command output: " + e.getMessage(), e);
+    }
+    if (result.getStatus() != 0) {
+      throw new CommandException("Worker invocation failed with status " + result.getStatus());
+    }
+  }
+
+  private static Result getResult(Future<Result> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Unexpected worker failure: " + e.getCause(), e.getCause());
+    }
+  }
+
+  /**
+   * Get the number of worker processes started so far, including restarted and recycled workers
+   *
+   * @return the number of started processes
+   */
+  public int getStartedProcesses() {
+    return startedProcesses.get();
+  }
+
+  /**
+   * Close the pool: pending invocations are cancelled, and the worker processes exit once their current invocation completes
+   *
+   * @throws IOException never, declared by {@link Closeable}
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (queue) {
+      closed = true;
+    }
+    Task task;
+    while ((task = queue.poll()) != null) {
+      task.cancel(false);
+    }
+    for (Thread thread : threads) {
+      thread.interrupt();
+    }
+    boolean interrupted = false;
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private Process startProcess() throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    command.addAll(jvmOptions);
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(Worker.class.getName());
+    command.add(factoryClass);
+    Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    startedProcesses.incrementAndGet();
+    return process;
+  }
+
+  @Override
+  public String toString() {
+    return "WorkerPool{" +
+        "factoryClass='" + factoryClass + '\'' +
+        ", workers=" + slots.size() +
+        '}';
+  }
+
+  private class WorkerSlot implements Runnable {
+
+    private Process process;
+    private DataOutputStream requests;
+    private DataInputStream responses;
+    private int invocations;
+
+    @Override
+    public void run() {
+      try {
+        while (!closed) {
+          Task task = queue.take();
+          if (task.isCancelled()) {
+            continue;
+          }
+          try {
+            task.set(invoke(task));
+          } catch (RuntimeException e) {
+            discard();
+            task.setException(e);
+          }
+        }
+      } catch (InterruptedException e) {
+        //Closed
+      } finally {
+        stop(true);
+      }
+    }
+
+    private Result invoke(Task task) {
+      try {
+        if (process == null) {
+          process = startProcess();
+          requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+          responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+          invocations = 0;
+        }
+        requests.writeInt(task.args.length);
+        for (String arg : task.args) {
+          writeBytes(requests, arg.getBytes(UTF_8));
+        }
+        writeBytes(requests, task.stdin);
+        requests.flush();
+        int status = responses.readInt();
+        Result result = new Result(status, readBytes(responses), readBytes(responses));
+        if (++invocations >= maxInvocations) {
+          stop(false);
+        }
+        return result;
+      } catch (IOException e) {
+        int exitCode = discard();
+        return new Result(1, NO_BYTES,
+            ("ERROR: Worker process failed (exit code: " + exitCode + "): " + e.getMessage() + "\n").getBytes(UTF_8));
+      }
+    }
+
+    /**
+     * Stop the worker process by closing its input, which it exits on
+     */
+    private void stop(boolean wait) {
+      if (process == null) {
+        return;
+      }
+      Process stopped = process;
+      closeQuietly(requests);
+      closeQuietly(responses);
+      process = null;
+      if (wait) {
+        try {
+          stopped.waitFor();
+        } catch (InterruptedException e) {
+          stopped.destroy();
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    /**
+     * Discard a failed worker process, and get its exit code. If it is still alive, it exits once its input is closed,
+     * or is destroyed if it does not exit in time.
+     */
+    private int discard() {
+      Process failed = process;
+      if (failed == null) {
+        return -1;
+      }
+      closeQuietly(requests);
+      closeQuietly(responses);
+      process = null;
+      try {
+        return waitFor(failed, DISCARD_TIMEOUT_MILLIS);
+      } catch (InterruptedException e) {
+        failed.destroy();
+        Thread.currentThread().interrupt();
+        return -1;
+      }
+    }
+  }
+
+  /**
+   * Wait for a process to exit, and destroy it if it does not exit in time
+   */
+  private static int waitFor(Process process, long timeoutMillis) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    while (true) {
+      try {
+        return process.exitValue();
+      } catch (IllegalThreadStateException e) {
+        //Still running
+      }
+      if (System.nanoTime() - deadline >= 0) {
+        process.destroy();
+        return process.waitFor();
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      //Ignore, the worker process is discarded anyway
+    }
+  }
+
+  static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static byte[] readBytes(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      throw new IOException("Invalid length: " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  /**
+   * An invocation, and its future result which is set by the worker slot which executed it
+   */
+  private static class Task implements Future<Result> {
+
+    private final String[] args;
+    private final byte[] stdin;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private Result result;
+    private Throwable failure;
+    private boolean cancelled;
+
+    Task(String[] args, byte[] stdin) {
+      this.args = args;
+      this.stdin = stdin;
+    }
+
+    synchronized void set(Result result) {
+      if (!isDone()) {
+        this.result = result;
+        done.countDown();
+      }
+    }
+
+    synchronized void setException(Throwable failure) {
+      if (!isDone()) {
+        this.failure = failure;
+        done.countDown();
+      }
+    }
+
+    @Override
+    public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+      if (isDone()) {
+        return false;
+      }
+      cancelled = true;
+      done.countDown();
+      return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+      return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+      return done.getCount() == 0;
+    }
+
+    @Override
+    public Result get() throws InterruptedException, ExecutionException {
+      done.await();
+      return report();
+    }
+
+    @Override
+    public Result get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+      if (!done.await(timeout, unit)) {
+        throw new TimeoutException();
+      }
+      return report();
+    }
+
+    private synchronized Result report() throws ExecutionException {
+      if (cancelled) {
+        throw new CancellationException("The invocation was cancelled");
+      }
+      if (failure != null) {
+        throw new ExecutionException(failure);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * The result of an invocation executed by a worker
+   */
+  public static class Result {
+
+    private final int status;
+    private final byte[] out;
+    private final byte[] err;
+
+    Result(int status, byte[] out, byte[] err) {
+      this.status = status;
+      this.out = out;
+      this.err = err;
+    }
+
+    /**
+     * Get the exit status: <tt>0</tt> on success and <tt>1</tt> on any error, same as {@link CommandsCliMain#main(String[])}
+     *
+     * @return the exit status
+     */
+    public int getStatus() {
+      return status;
+    }
+
+    /**
+     * Get the standard output of the command
+     *
+     * @return the output bytes
+     */
+    public byte[] getOut() {
+      return out;
+    }
+
+    /**
+     * Get the standard error of the command, including the error message if failed
+     *
+     * @return the error bytes
+     */
+    public byte[] getErr() {
+      return err;
+    }
+
+    @Override
+    public String toString() {
+      return "Result{" +
+          "status=" + status +
+          ", out=" + out.length + " bytes" +
+          ", err=" + err.length + " bytes" +
+          '}';
+    }
+  }
+
+  /**
+   * The entry point of a worker process. It reads invocations from the standard input and writes their results to the
+   * standard output until the standard input is closed. Anything the commands print to <tt>System.out</tt> directly is
+   * redirected to the standard error, so it cannot corrupt the results.
+   */
+  public static final class Worker {
+
+    private Worker() {
+    }
+
+    /**
+     * Run the worker
+     *
+     * @param args the name of the {@link MainFactory} class
+     * @throws Exception if failed to create the commands CLI
+     */
+    public static void main(String[] args) throws Exception {
+      if (args.length != 1) {
+        throw new IllegalArgumentException("Usage: " + Worker.class.getName() + " <main-factory-class>");
+      }
+      DataInputStream requests = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+      DataOutputStream responses = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+      System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+      System.setIn(new ByteArrayInputStream(NO_BYTES));
+      MainFactory factory = (MainFactory) Class.forName(args[0]).getConstructor().newInstance();
+      try (CommandsCliMain main = factory.create()) {
+        serve(main, requests, responses);
+      }
+    }
+
+    static void serve(CommandsCliMain main, DataInputStream requests, DataOutputStream responses) throws IOException {
+      while (true) {
+        int argc;
+        try {
+          argc = requests.readInt();
+        } catch (EOFException e) {
+          return;
+        }
+        String[] args = new String[argc];
+        for (int i = 0; i < argc; i++) {
+          args[i] = new String(readBytes(requests), UTF_8);
+        }
+        byte[] stdin = readBytes(requests);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        CommandIO io = CommandIO.builder()
+            .in(new ByteArrayInputStream(stdin))
+            .out(out)
+            .err(err)
+            .interactive(false)
+            .charset(UTF_8)
+            .build();
+        int status = 0;
+        try {
+          main.execute(args, io);
+        } catch (ParseException | CommandException | RuntimeException e) {
+          io.flush();
+          err.write(("ERROR: " + e.getMessage() + "\n").getBytes(UTF_8));
+          status = 1;
+        }
+        responses.writeInt(status);
+        writeBytes(responses, out.toByteArray());
+        writeBytes(responses, err.toByteArray());
+        responses.flush();
+      }
+    }
+  }
+
+  /**
+   * Start building a worker pool
+   *
+   * @param factoryClass the name of the {@link MainFactory} class which creates the commands CLI of each worker
+   * @return a new {@link Builder}
+   */
+  public static Builder builder(String factoryClass) {
+    return new Builder(factoryClass);
+  }
+
+  /**
+   * Worker pool builder
+   *
+   * @see Builder#build()
+   */
+  public static class Builder {
+
+    private final String factoryClass;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int maxInvocations = Integer.MAX_VALUE;
+    private List<String> jvmOptions = new ArrayList<>();
+
+    private Builder(String factoryClass) {
+      this.factoryClass = requireNonNull(factoryClass, "factoryClass is required");
+    }
+
+    /**
+     * Set the number of worker processes (default: the number of available processors)
+     *
+     * @param workers the number of workers
+     * @return this builder
+     */
+    public Builder workers(int workers) {
+      if (workers < 1) {
+        throw new IllegalArgumentException("workers must be positive");
+      }
+      this.workers = workers;
+      return this;
+    }
+
+    /**
+     * Set the number of invocations after which a worker process is recycled, i.e. replaced by a new process
+     * (default: never)
+     *
+     * @param maxInvocations the maximal number of invocations per process
+     * @return this builder
+     */
+    public Builder maxInvocationsPerWorker(int maxInvocations) {
+      if (maxInvocations < 1) {
+        throw new IllegalArgumentException("maxInvocations must be positive");
+      }
+      this.maxInvocations = maxInvocations;
+      return this;
+    }
+
+    /**
+     * Set the options of the worker JVMs, e.g. <tt>-Xmx2g</tt>
+     *
+     * @param jvmOptions the JVM options
+     * @return this builder
+     */
+    public Builder jvmOptions(String... jvmOptions) {
+      this.jvmOptions = new ArrayList<>(Arrays.asList(requireNonNull(jvmOptions, "jvmOptions are required")));
+      return this;
+    }
+
+    /**
+     * Build a new worker pool based on the settings to this builder. The worker processes are started when needed.
+     *
+     * @return the new worker pool
+     */
+    public WorkerPool build() {
+      return new WorkerPool(this);
+    }
+  }
+}
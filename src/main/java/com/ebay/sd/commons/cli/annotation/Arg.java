@@ -0,0 +1,60 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field of a {@link CliCommand} annotated class as a command argument.
+ * <p>
+ * Arguments are added to the generated descriptor in the order of the fields declaration.
+ * Supported field types: <tt>String</tt>, <tt>int</tt>, <tt>long</tt>, <tt>String[]</tt> and <tt>List&lt;String&gt;</tt>.
+ * The field must not be <tt>private</tt> or <tt>final</tt>.
+ * </p>
+ *
+ * @see com.ebay.sd.commons.cli.Argument
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface Arg {
+
+  /**
+   * The name of the argument, must be unique per command
+   */
+  String name();
+
+  /**
+   * The description of the argument
+   */
+  String description();
+
+  /**
+   * Whether the argument is required (default: <tt>false</tt>)
+   */
+  boolean required() default false;
+
+  /**
+   * The multiplicity of the argument.
+   * <p>
+   * The default (<tt>0</tt>) infers the multiplicity from the field type:
+   * <tt>1</tt> for single value fields and unlimited for array and list fields.
+   * Otherwise, it must be positive or {@link com.ebay.sd.commons.cli.Argument#UNLIMITED_VALUES}, and a multiplicity other
+   * than <tt>1</tt> requires an array or a list field.
+   * </p>
+   *
+   * @see com.ebay.sd.commons.cli.Argument.Builder#multiplicity(int)
+   */
+  int multiplicity() default 0;
+}
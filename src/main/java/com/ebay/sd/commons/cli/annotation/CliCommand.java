@@ -0,0 +1,62 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link com.ebay.sd.commons.cli.Command} class for which a command descriptor shall be generated at compile time.
+ * <p>
+ * The {@link CommandAnnotationProcessor} generates a <tt>&lt;ClassName&gt;_Descriptor</tt> class next to the annotated class,
+ * which exposes a <tt>DESCRIPTOR</tt> constant. The generated factory creates the command and binds the
+ * {@link Arg} and {@link Opt} annotated fields using direct field assignments, without any reflection.
+ * For example:
+ * <pre>
+ *   &#64;CliCommand(name = "foo", description = "Do foo")
+ *   public class FooCommand extends AbstractCommand {
+ *     &#64;Opt(opt = "v", longOpt = "verbose", description = "Show verbose output")
+ *     boolean verbose;
+ *     &#64;Arg(name = "FILE", description = "The input file", required = true)
+ *     String file;
+ *     ...
+ *   }
+ *
+ *   RouteDescriptor.builder("my-cli")
+ *       .addSubCommand(FooCommand_Descriptor.DESCRIPTOR)
+ *       ...
+ * </pre>
+ * The annotated class must implement {@link com.ebay.sd.commons.cli.Command} and have either a constructor accepting a
+ * {@link com.ebay.sd.commons.cli.CommandContext} or a no-arguments constructor. Annotated fields are assigned right after
+ * the command is constructed, hence are not yet set when {@link com.ebay.sd.commons.cli.AbstractCommand} validates the context.
+ * </p>
+ *
+ * @see Arg
+ * @see Opt
+ * @see CommandAnnotationProcessor
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface CliCommand {
+
+  /**
+   * The name of the command
+   */
+  String name();
+
+  /**
+   * The description of the command
+   */
+  String description();
+}
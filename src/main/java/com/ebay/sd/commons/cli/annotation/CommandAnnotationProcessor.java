@@ -0,0 +1,659 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli.annotation;
+
+import com.ebay.sd.commons.cli.Argument;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * Annotation processor which generates command descriptors, factories and binders for {@link CliCommand} annotated classes.
+ * <p>
+ * For each annotated class a <tt>&lt;ClassName&gt;_Descriptor</tt> class is generated, and for each package with
+ * annotated classes a <tt>CommandsDispatcher</tt> class is generated, which finds a command descriptor by name
+ * using a <tt>switch</tt> statement.
+ * </p>
+ * <p>
+ * The processor is registered as a service, so it is discovered by <tt>javac</tt> whenever this library is on the
+ * compile classpath.
+ * </p>
+ *
+ * @see CliCommand
+ * @see Arg
+ * @see Opt
+ */
+public class CommandAnnotationProcessor extends AbstractProcessor {
+
+  static final String DESCRIPTOR_CLASS_SUFFIX = "_Descriptor";
+  static final String DISPATCHER_CLASS_NAME = "CommandsDispatcher";
+  private static final String CLI_PACKAGE = "com.ebay.sd.commons.cli";
+
+  private final Set<String> generatedDispatchers = new HashSet<>();
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return Collections.singleton(CliCommand.class.getCanonicalName());
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    Map<String, List<CommandModel>> commandsByPackage = new LinkedHashMap<>();
+    for (Element element : roundEnv.getElementsAnnotatedWith(CliCommand.class)) {
+      CommandModel command = createModel(element);
+      if (command == null) {
+        continue;
+      }
+      List<CommandModel> packageCommands = commandsByPackage.get(command.packageName);
+      if (packageCommands == null) {
+        packageCommands = new ArrayList<>();
+        commandsByPackage.put(command.packageName, packageCommands);
+      }
+      packageCommands.add(command);
+      writeSource(command.element, command.qualifiedDescriptorName(), generateDescriptor(command));
+    }
+    for (Map.Entry<String, List<CommandModel>> entry : commandsByPackage.entrySet()) {
+      String packageName = entry.getKey();
+      List<CommandModel> commands = entry.getValue();
+      if (!generatedDispatchers.add(packageName)) {
+        error(commands.get(0).element, "Commands of package '%s' must be processed in a single round", packageName);
+        continue;
+      }
+      String qualifiedName = packageName.isEmpty() ? DISPATCHER_CLASS_NAME : packageName + "." + DISPATCHER_CLASS_NAME;
+      writeSource(commands.get(0).element, qualifiedName, generateDispatcher(packageName, uniqueCommands(packageName, commands)));
+    }
+    return true;
+  }
+
+  private CommandModel createModel(Element element) {
+    if (element.getKind() != ElementKind.CLASS) {
+      error(element, "@CliCommand is supported only on classes");
+      return null;
+    }
+    TypeElement type = (TypeElement) element;
+    boolean valid = true;
+    if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+      valid = error(type, "@CliCommand class must not be abstract");
+    }
+    if (type.getModifiers().contains(Modifier.PRIVATE)) {
+      valid = error(type, "@CliCommand class must not be private");
+    }
+    if (type.getNestingKind() != NestingKind.TOP_LEVEL
+        && (type.getNestingKind() != NestingKind.MEMBER || !type.getModifiers().contains(Modifier.STATIC))) {
+      valid = error(type, "@CliCommand class must be a top level or a static nested class");
+    }
+    TypeMirror commandType = processingEnv.getElementUtils().getTypeElement(CLI_PACKAGE + ".Command").asType();
+    if (!processingEnv.getTypeUtils().isAssignable(type.asType(), commandType)) {
+      valid = error(type, "@CliCommand class must implement %s.Command", CLI_PACKAGE);
+    }
+    CommandModel command = new CommandModel(type, packageOf(type));
+    CliCommand annotation = type.getAnnotation(CliCommand.class);
+    command.name = annotation.name();
+    command.description = annotation.description();
+    command.constructorWithContext = findConstructor(type, true);
+    if (!command.constructorWithContext && !findConstructor(type, false)) {
+      valid = error(type, "@CliCommand class must have a non-private constructor with a single CommandContext parameter, "
+          + "or a non-private no-arguments constructor");
+    }
+    for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+      Arg arg = field.getAnnotation(Arg.class);
+      Opt opt = field.getAnnotation(Opt.class);
+      if (arg == null && opt == null) {
+        continue;
+      }
+      if (arg != null && opt != null) {
+        valid = error(field, "Field cannot be annotated with both @Arg and @Opt");
+        continue;
+      }
+      if (!isAssignableField(field)) {
+        valid = false;
+        continue;
+      }
+      FieldType fieldType = getFieldType(field.asType());
+      if (fieldType == null || arg != null && fieldType == FieldType.BOOLEAN) {
+        valid = error(field, "Unsupported field type: %s", field.asType());
+        continue;
+      }
+      if (arg != null) {
+        if (!isValidMultiplicity(field, fieldType, arg.multiplicity())) {
+          valid = false;
+          continue;
+        }
+        command.arguments.add(new ArgModel(field, fieldType, arg));
+      } else {
+        if (opt.opt().isEmpty() && opt.longOpt().isEmpty()) {
+          valid = error(field, "@Opt requires at least one of opt and longOpt");
+          continue;
+        }
+        command.options.add(new OptModel(field, fieldType, opt));
+      }
+    }
+    return valid ? command : null;
+  }
+
+  private boolean isValidMultiplicity(VariableElement field, FieldType fieldType, int multiplicity) {
+    if (multiplicity < 0 && multiplicity != Argument.UNLIMITED_VALUES) {
+      return error(field, "@Arg multiplicity must be positive or Argument.UNLIMITED_VALUES: %d", multiplicity);
+    }
+    if (multiplicity != 0 && multiplicity != 1 && !fieldType.isMultiValued()) {
+      return error(field, "@Arg multiplicity other than 1 requires an array or a List<String> field: %s", field.asType());
+    }
+    return true;
+  }
+
+  private boolean isAssignableField(VariableElement field) {
+    Set<Modifier> modifiers = field.getModifiers();
+    if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL) || modifiers.contains(Modifier.STATIC)) {
+      return error(field, "Annotated field must not be private, final or static");
+    }
+    return true;
+  }
+
+  private boolean findConstructor(TypeElement type, boolean withContext) {
+    for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (constructor.getModifiers().contains(Modifier.PRIVATE)) {
+        continue;
+      }
+      List<? extends VariableElement> params = constructor.getParameters();
+      if (!withContext && params.isEmpty()) {
+        return true;
+      }
+      if (withContext && params.size() == 1 && isType(params.get(0).asType(), CLI_PACKAGE + ".CommandContext")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private FieldType getFieldType(TypeMirror type) {
+    switch (type.getKind()) {
+      case BOOLEAN:
+        return FieldType.BOOLEAN;
+      case INT:
+        return FieldType.INT;
+      case LONG:
+        return FieldType.LONG;
+      case ARRAY:
+        return isType(((ArrayType) type).getComponentType(), String.class.getName()) ? FieldType.ARRAY : null;
+      case DECLARED:
+        if (isType(type, String.class.getName())) {
+          return FieldType.STRING;
+        }
+        DeclaredType declaredType = (DeclaredType) type;
+        List<? extends TypeMirror> typeArgs = declaredType.getTypeArguments();
+        if (isType(processingEnv.getTypeUtils().erasure(type), List.class.getName())
+            && typeArgs.size() == 1 && isType(typeArgs.get(0), String.class.getName())) {
+          return FieldType.LIST;
+        }
+        return null;
+      default:
+        return null;
+    }
+  }
+
+  private boolean isType(TypeMirror type, String qualifiedName) {
+    return type.getKind() == TypeKind.DECLARED
+        && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals(qualifiedName);
+  }
+
+  private String packageOf(TypeElement type) {
+    PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+    return pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+  }
+
+  private String generateDescriptor(CommandModel command) {
+    SourceWriter out = new SourceWriter();
+    out.packageDeclaration(command.packageName);
+    out.line("import %s.Argument;", CLI_PACKAGE);
+    out.line("import %s.Command;", CLI_PACKAGE);
+    out.line("import %s.CommandContext;", CLI_PACKAGE);
+    out.line("import %s.CommandDescriptor;", CLI_PACKAGE);
+    out.line("import %s.CommandFactory;", CLI_PACKAGE);
+    out.line("import java.util.Arrays;");
+    out.line("import java.util.List;");
+    out.line("import org.apache.commons.cli.CommandLine;");
+    out.line("import org.apache.commons.cli.Option;");
+    out.line("import org.apache.commons.cli.ParseException;");
+    out.line("");
+    out.line("/**");
+    out.line(" * Command descriptor and binder of {@link %s}.", command.qualifiedName());
+    out.line(" * <p>");
+    out.line(" * Generated by {@link %s}, do not edit.", CommandAnnotationProcessor.class.getName());
+    out.line(" * </p>");
+    out.line(" */");
+    out.line("public final class %s {", command.descriptorName());
+    out.line("");
+    out.line("  /**");
+    out.line("   * The descriptor of the <tt>%s</tt> command", command.name);
+    out.line("   */");
+    out.line("  public static final CommandDescriptor DESCRIPTOR = CommandDescriptor.builder(%s)", literal(command.name));
+    out.line("      .description(%s)", literal(command.description));
+    for (OptModel opt : command.options) {
+      StringBuilder option = new StringBuilder("Option.builder(")
+          .append(opt.opt.isEmpty() ? "" : literal(opt.opt)).append(")");
+      if (!opt.longOpt.isEmpty()) {
+        option.append(".longOpt(").append(literal(opt.longOpt)).append(")");
+      }
+      if (!opt.description.isEmpty()) {
+        option.append(".desc(").append(literal(opt.description)).append(")");
+      }
+      if (opt.required) {
+        option.append(".required()");
+      }
+      if (opt.type.isMultiValued()) {
+        option.append(".hasArgs()");
+      } else if (opt.type != FieldType.BOOLEAN) {
+        option.append(".hasArg()");
+      }
+      if (!opt.argName.isEmpty()) {
+        option.append(".argName(").append(literal(opt.argName)).append(")");
+      }
+      out.line("      .addOption(%s.build())", option);
+    }
+    for (ArgModel arg : command.arguments) {
+      out.line("      .addArgument(Argument.builder(%s).description(%s).required(%s).multiplicity(%s).build())",
+          literal(arg.name), literal(arg.description), arg.required, arg.multiplicityExpression());
+    }
+    out.line("      .factory(new CommandFactory() {");
+    out.line("        @Override");
+    out.line("        public Command create(CommandContext commandContext) throws ParseException {");
+    out.line("          %s command = new %s(%s);", command.qualifiedName(), command.qualifiedName(),
+        command.constructorWithContext ? "commandContext" : "");
+    out.line("          bind(commandContext, command);");
+    out.line("          return command;");
+    out.line("        }");
+    out.line("      })");
+    out.line("      .build();");
+    out.line("");
+    out.line("  private %s() {", command.descriptorName());
+    out.line("    //Generated class");
+    out.line("  }");
+    out.line("");
+    out.line("  /**");
+    out.line("   * Bind the parsed options and arguments of the given context to the annotated fields of the given command");
+    out.line("   *");
+    out.line("   * @param commandContext the command context");
+    out.line("   * @param command the command to bind");
+    out.line("   * @throws ParseException if a value cannot be converted to the field type");
+    out.line("   */");
+    out.line("  public static void bind(CommandContext commandContext, %s command) throws ParseException {",
+        command.qualifiedName());
+    if (!command.options.isEmpty()) {
+      out.line("    CommandLine commandLine = commandContext.getCommandLine();");
+    }
+    for (OptModel opt : command.options) {
+      String key = literal(opt.key());
+      switch (opt.type) {
+        case BOOLEAN:
+          out.line("    command.%s = commandLine.hasOption(%s);", opt.fieldName, key);
+          break;
+        case STRING:
+          out.line("    if (commandLine.hasOption(%s)) {", key);
+          out.line("      command.%s = commandLine.getOptionValue(%s);", opt.fieldName, key);
+          out.line("    }");
+          break;
+        case INT:
+        case LONG:
+          out.line("    if (commandLine.hasOption(%s)) {", key);
+          out.line("      command.%s = %s(commandLine.getOptionValue(%s), %s);", opt.fieldName, opt.type.converter, key, key);
+          out.line("    }");
+          break;
+        case ARRAY:
+          out.line("    if (commandLine.hasOption(%s)) {", key);
+          out.line("      command.%s = commandLine.getOptionValues(%s);", opt.fieldName, key);
+          out.line("    }");
+          break;
+        case LIST:
+          out.line("    if (commandLine.hasOption(%s)) {", key);
+          out.line("      command.%s = Arrays.asList(commandLine.getOptionValues(%s));", opt.fieldName, key);
+          out.line("    }");
+          break;
+        default:
+          throw new IllegalStateException("Unexpected option field type: " + opt.type);
+      }
+    }
+    for (int i = 0; i < command.arguments.size(); i++) {
+      ArgModel arg = command.arguments.get(i);
+      switch (arg.type) {
+        case STRING:
+          out.line("    if (commandContext.getArgumentValue(%d) != null) {", i);
+          out.line("      command.%s = commandContext.getArgumentValue(%d);", arg.fieldName, i);
+          out.line("    }");
+          break;
+        case INT:
+        case LONG:
+          out.line("    if (commandContext.getArgumentValue(%d) != null) {", i);
+          out.line("      command.%s = %s(commandContext.getArgumentValue(%d), %s);", arg.fieldName, arg.type.converter, i,
+              literal(arg.name));
+          out.line("    }");
+          break;
+        case ARRAY:
+          out.line("    List<String> %sValues = commandContext.getArgumentValues(%d);", arg.fieldName, i);
+          out.line("    command.%s = %sValues.toArray(new String[%sValues.size()]);", arg.fieldName, arg.fieldName,
+              arg.fieldName);
+          break;
+        case LIST:
+          out.line("    command.%s = commandContext.getArgumentValues(%d);", arg.fieldName, i);
+          break;
+        default:
+          throw new IllegalStateException("Unexpected argument field type: " + arg.type);
+      }
+    }
+    out.line("  }");
+    if (command.uses(FieldType.INT)) {
+      out.line("");
+      out.line("  private static int toInt(String value, String name) throws ParseException {");
+      out.line("    try {");
+      out.line("      return Integer.parseInt(value);");
+      out.line("    } catch (NumberFormatException e) {");
+      out.line("      throw new ParseException(\"Invalid integer value for \" + name + \": \" + value);");
+      out.line("    }");
+      out.line("  }");
+    }
+    if (command.uses(FieldType.LONG)) {
+      out.line("");
+      out.line("  private static long toLong(String value, String name) throws ParseException {");
+      out.line("    try {");
+      out.line("      return Long.parseLong(value);");
+      out.line("    } catch (NumberFormatException e) {");
+      out.line("      throw new ParseException(\"Invalid long value for \" + name + \": \" + value);");
+      out.line("    }");
+      out.line("  }");
+    }
+    out.line("}");
+    return out.toString();
+  }
+
+  private String generateDispatcher(String packageName, List<CommandModel> commands) {
+    SourceWriter out = new SourceWriter();
+    out.packageDeclaration(packageName);
+    out.line("import %s.CommandDescriptor;", CLI_PACKAGE);
+    out.line("import %s.RouteDescriptor;", CLI_PACKAGE);
+    out.line("import java.util.Arrays;");
+    out.line("import java.util.Collections;");
+    out.line("import java.util.List;");
+    out.line("");
+    out.line("/**");
+    out.line(" * Dispatcher of the generated command descriptors in this package.");
+    out.line(" * <p>");
+    out.line(" * Generated by {@link %s}, do not edit.", CommandAnnotationProcessor.class.getName());
+    out.line(" * </p>");
+    out.line(" */");
+    out.line("public final class %s {", DISPATCHER_CLASS_NAME);
+    out.line("");
+    out.line("  private %s() {", DISPATCHER_CLASS_NAME);
+    out.line("    //Generated class");
+    out.line("  }");
+    out.line("");
+    out.line("  /**");
+    out.line("   * Find a command descriptor by its name");
+    out.line("   *");
+    out.line("   * @param name the name of the command");
+    out.line("   * @return the command descriptor, or <tt>null</tt> if there is no such command");
+    out.line("   */");
+    out.line("  public static CommandDescriptor find(String name) {");
+    out.line("    if (name == null) {");
+    out.line("      return null;");
+    out.line("    }");
+    out.line("    switch (name) {");
+    for (CommandModel command : commands) {
+      out.line("      case %s:", literal(command.name));
+      out.line("        return %s.DESCRIPTOR;", command.descriptorName());
+    }
+    out.line("      default:");
+    out.line("        return null;");
+    out.line("    }");
+    out.line("  }");
+    out.line("");
+    out.line("  /**");
+    out.line("   * Get all the command descriptors of this package");
+    out.line("   *");
+    out.line("   * @return the list of command descriptors");
+    out.line("   */");
+    out.line("  public static List<CommandDescriptor> getCommands() {");
+    out.line("    return Collections.unmodifiableList(Arrays.asList(");
+    for (int i = 0; i < commands.size(); i++) {
+      out.line("        %s.DESCRIPTOR%s", commands.get(i).descriptorName(), i < commands.size() - 1 ? "," : "));");
+    }
+    out.line("  }");
+    out.line("");
+    out.line("  /**");
+    out.line("   * Add all the command descriptors of this package as sub-commands of the given route");
+    out.line("   *");
+    out.line("   * @param route the route builder");
+    out.line("   * @return the given route builder");
+    out.line("   */");
+    out.line("  public static RouteDescriptor.Builder addTo(RouteDescriptor.Builder route) {");
+    out.line("    for (CommandDescriptor command : getCommands()) {");
+    out.line("      route.addSubCommand(command);");
+    out.line("    }");
+    out.line("    return route;");
+    out.line("  }");
+    out.line("}");
+    return out.toString();
+  }
+
+  private List<CommandModel> uniqueCommands(String packageName, List<CommandModel> commands) {
+    List<CommandModel> unique = new ArrayList<>();
+    Set<String> names = new HashSet<>();
+    for (CommandModel command : commands) {
+      if (names.add(command.name)) {
+        unique.add(command);
+      } else {
+        error(command.element, "Command '%s' already exists in package '%s'", command.name, packageName);
+      }
+    }
+    return unique;
+  }
+
+  private void writeSource(Element origin, String qualifiedName, String source) {
+    try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, origin).openWriter()) {
+      writer.write(source);
+    } catch (IOException e) {
+      error(origin, "Failed to write %s: %s", qualifiedName, e.getMessage());
+    }
+  }
+
+  private boolean error(Element element, String format, Object... args) {
+    Messager messager = processingEnv.getMessager();
+    messager.printMessage(Kind.ERROR, String.format(format, args), element);
+    return false;
+  }
+
+  static String literal(String value) {
+    StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < 0x20 || c > 0x7e) {
+            sb.append(String.format("\\u%04x", (int) c));
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  private enum FieldType {
+    BOOLEAN(null), STRING(null), INT("toInt"), LONG("toLong"), ARRAY(null), LIST(null);
+
+    private final String converter;
+
+    FieldType(String converter) {
+      this.converter = converter;
+    }
+
+    boolean isMultiValued() {
+      return this == ARRAY || this == LIST;
+    }
+  }
+
+  private static class CommandModel {
+
+    private final TypeElement element;
+    private final String packageName;
+    private final List<OptModel> options = new ArrayList<>();
+    private final List<ArgModel> arguments = new ArrayList<>();
+    private String name;
+    private String description;
+    private boolean constructorWithContext;
+
+    CommandModel(TypeElement element, String packageName) {
+      this.element = element;
+      this.packageName = packageName;
+    }
+
+    String qualifiedName() {
+      return element.getQualifiedName().toString();
+    }
+
+    String descriptorName() {
+      String qualifiedName = qualifiedName();
+      String nestedName = packageName.isEmpty() ? qualifiedName : qualifiedName.substring(packageName.length() + 1);
+      return nestedName.replace('.', '_') + DESCRIPTOR_CLASS_SUFFIX;
+    }
+
+    String qualifiedDescriptorName() {
+      return packageName.isEmpty() ? descriptorName() : packageName + "." + descriptorName();
+    }
+
+    boolean uses(FieldType type) {
+      for (OptModel opt : options) {
+        if (opt.type == type) {
+          return true;
+        }
+      }
+      for (ArgModel arg : arguments) {
+        if (arg.type == type) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static class OptModel {
+
+    private final String fieldName;
+    private final FieldType type;
+    private final String opt;
+    private final String longOpt;
+    private final String description;
+    private final boolean required;
+    private final String argName;
+
+    OptModel(VariableElement field, FieldType type, Opt annotation) {
+      this.fieldName = field.getSimpleName().toString();
+      this.type = type;
+      this.opt = annotation.opt();
+      this.longOpt = annotation.longOpt();
+      this.description = annotation.description();
+      this.required = annotation.required();
+      this.argName = annotation.argName();
+    }
+
+    String key() {
+      return opt.isEmpty() ? longOpt : opt;
+    }
+  }
+
+  private static class ArgModel {
+
+    private final String fieldName;
+    private final FieldType type;
+    private final String name;
+    private final String description;
+    private final boolean required;
+    private final int multiplicity;
+
+    ArgModel(VariableElement field, FieldType type, Arg annotation) {
+      this.fieldName = field.getSimpleName().toString();
+      this.type = type;
+      this.name = annotation.name();
+      this.description = annotation.description();
+      this.required = annotation.required();
+      this.multiplicity = annotation.multiplicity();
+    }
+
+    String multiplicityExpression() {
+      if (multiplicity == 0) {
+        return type.isMultiValued() ? "Argument.UNLIMITED_VALUES" : "1";
+      }
+      return String.valueOf(multiplicity);
+    }
+  }
+
+  private static class SourceWriter {
+
+    private final StringBuilder source = new StringBuilder();
+
+    void packageDeclaration(String packageName) {
+      if (!packageName.isEmpty()) {
+        line("package %s;", packageName);
+        line("");
+      }
+    }
+
+    void line(String format, Object... args) {
+      source.append(args.length == 0 ? format : String.format(format, args)).append('\n');
+    }
+
+    @Override
+    public String toString() {
+      return source.toString();
+    }
+  }
+}
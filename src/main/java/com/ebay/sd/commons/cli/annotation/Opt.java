@@ -0,0 +1,59 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field of a {@link CliCommand} annotated class as a command option.
+ * <p>
+ * At least one of {@link #opt()} and {@link #longOpt()} is required.
+ * The field type determines the option arguments:
+ * <tt>boolean</tt> fields are flags (no argument), <tt>String</tt>, <tt>int</tt> and <tt>long</tt> fields take one argument,
+ * <tt>String[]</tt> and <tt>List&lt;String&gt;</tt> fields take unlimited arguments.
+ * The field must not be <tt>private</tt> or <tt>final</tt>.
+ * </p>
+ *
+ * @see org.apache.commons.cli.Option
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface Opt {
+
+  /**
+   * The short name of the option (default: none)
+   */
+  String opt() default "";
+
+  /**
+   * The long name of the option (default: none)
+   */
+  String longOpt() default "";
+
+  /**
+   * The description of the option
+   */
+  String description() default "";
+
+  /**
+   * Whether the option is required (default: <tt>false</tt>)
+   */
+  boolean required() default false;
+
+  /**
+   * The display name of the option argument, used in usage help (default: none)
+   */
+  String argName() default "";
+}
@@ -0,0 +1,184 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import org.apache.commons.cli.ParseException
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class BatchExecutorSpec extends Specification {
+
+  @Rule
+  TemporaryFolder temp = new TemporaryFolder()
+
+  List<String> executed = Collections.synchronizedList([])
+  ByteArrayOutputStream err = new ByteArrayOutputStream()
+  CommandIO io = CommandIO.builder().err(err).interactive(false).build()
+
+  def 'Split command lines into arguments'() {
+    expect:
+    BatchExecutor.tokenize(line) == args
+
+    where:
+    line                           | args
+    ''                             | []
+    'a  b\tc'                      | ['a', 'b', 'c']
+    '"a b" \'c d\''                | ['a b', 'c d']
+    'a\\ b "c\\"d" \'e\\f\''       | ['a b', 'c"d', 'e\\f']
+    '--name="x y"z ""'             | ['--name=x yz', '']
+  }
+
+  def 'Fail to split an invalid command line'() {
+    when:
+    BatchExecutor.tokenize(line)
+
+    then:
+    thrown(ParseException)
+
+    where:
+    line << ['"a', 'a\\']
+  }
+
+  def 'Execute all the lines of a batch, continuing after failures'() {
+    when:
+    def result = BatchExecutor.builder(main()).build().execute(lines('run 1', '', '# comment', 'fail 2', 'run "3 4"'), io)
+
+    then:
+    executed == ['1', '2', '3 4']
+    result.executed == 3
+    result.failed == 1
+    result.skipped == 0
+    err.toString() == 'ERROR: line 4: failed 2\n'
+  }
+
+  def 'Resume a batch, skipping the lines which completed in a previous run'() {
+    given:
+    def journal = temp.root.toPath().resolve('batch.journal')
+    def batch = BatchExecutor.builder(main()).journal(journal).syncEvery(2).build()
+    batch.execute(lines('run 1', 'fail 2'), io)
+    executed.clear()
+
+    when:
+    def result = batch.execute(lines('run 1', 'fail 2', 'run 3', 'run 4'), io)
+
+    then:
+    executed == ['3', '4']
+    result.executed == 2
+    result.skipped == 2
+    journal.readLines() == [BatchJournal.HEADER, record(0, 0, 'run 1'), record(1, 1, 'fail 2'), record(2, 0, 'run 3'),
+                             record(3, 0, 'run 4')]
+  }
+
+  def 'Retry the lines which failed in a previous run'() {
+    given:
+    def journal = temp.root.toPath().resolve('batch.journal')
+    BatchExecutor.builder(main()).journal(journal).build().execute(lines('run 1', 'fail 2'), io)
+    executed.clear()
+
+    when:
+    def result = BatchExecutor.builder(main()).journal(journal).retryFailed(true).build().execute(lines('run 1', 'run 2'), io)
+
+    then:
+    executed == ['2']
+    result.skipped == 1
+    result.failed == 0
+    journal.readLines().last() == record(1, 0, 'run 2')
+  }
+
+  def 'Execute again the lines which were not journaled when the previous run died'() {
+    given:
+    def journal = temp.root.toPath().resolve('batch.journal')
+    journal.text = [BatchJournal.HEADER, record(0, 0, 'run 1'), record(1, 0, 'run 2'), '2 0 1c'].join('\n')
+
+    when:
+    def result = BatchExecutor.builder(main()).journal(journal).build().execute(lines('run 1', 'run 2', 'run 3', 'run 4'), io)
+
+    then:
+    executed == ['3', '4']
+    result.skipped == 2
+    journal.readLines() == [BatchJournal.HEADER, record(0, 0, 'run 1'), record(1, 0, 'run 2'), record(2, 0, 'run 3'),
+                             record(3, 0, 'run 4')]
+  }
+
+  def 'Fail to resume with the journal of another batch input'() {
+    given:
+    def journal = temp.root.toPath().resolve('batch.journal')
+    BatchExecutor.builder(main()).journal(journal).build().execute(lines('run 1', 'run 2', 'run 3'), io)
+    executed.clear()
+
+    when:
+    BatchExecutor.builder(main()).journal(journal).build().execute(lines('run 1', 'run 3', 'run 4'), io)
+
+    then:
+    def ex = thrown(CommandException)
+    ex.message == "The batch input does not match the journal at line 2, the journal is of another input: $journal"
+    executed.empty
+  }
+
+  def 'Fail only the line whose command fails to be created'() {
+    when:
+    def result = BatchExecutor.builder(main()).build().execute(lines('broken', 'run 2'), io)
+
+    then:
+    executed == ['2']
+    result.executed == 2
+    result.failed == 1
+    err.toString().startsWith('ERROR: line 1: ')
+  }
+
+  def 'Fail on a file which is not a batch journal'() {
+    given:
+    def journal = temp.newFile('other.txt').toPath()
+    journal.text = 'something else\n'
+
+    when:
+    BatchExecutor.builder(main()).journal(journal).build().execute(lines('run 1'), io)
+
+    then:
+    def ex = thrown(CommandException)
+    ex.message.startsWith('Failed to open the batch journal: Not a batch journal')
+    executed.empty
+  }
+
+  private static String record(int index, int status, String line) {
+    "$index $status ${String.format('%08x', BatchJournal.hash(line))}"
+  }
+
+  private static BufferedReader lines(String... lines) {
+    new BufferedReader(new StringReader(lines.join('\n')))
+  }
+
+  private CommandsCliMain main() {
+    def run = CommandDescriptor.builder('run')
+        .description('Run')
+        .addArgument(Argument.builder('VALUE').description('A value').build())
+        .factory({ CommandContext ctx -> { -> executed << ctx.getArgumentValue('VALUE') } as Command } as CommandFactory)
+        .build()
+    def fail = CommandDescriptor.builder('fail')
+        .description('Fail')
+        .addArgument(Argument.builder('VALUE').description('A value').build())
+        .factory({ CommandContext ctx ->
+          { ->
+            executed << ctx.getArgumentValue('VALUE')
+            throw new CommandException('failed ' + ctx.getArgumentValue('VALUE'))
+          } as Command
+        } as CommandFactory)
+        .build()
+    def broken = CommandDescriptor.builder('broken')
+        .description('Fail to create the command')
+        .factory({ ctx -> throw new IllegalStateException('cannot create') } as CommandFactory)
+        .build()
+    CommandsCliMain.builder()
+        .mainRoute(RouteDescriptor.builder('batch').description('Batch')
+            .addSubCommand(run).addSubCommand(fail).addSubCommand(broken).build())
+        .build()
+  }
+}
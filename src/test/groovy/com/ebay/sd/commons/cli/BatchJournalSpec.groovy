@@ -0,0 +1,110 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class BatchJournalSpec extends Specification {
+
+  @Rule
+  TemporaryFolder temp = new TemporaryFolder()
+
+  def 'Sync the journal in groups'() {
+    given:
+    def file = temp.root.toPath().resolve('journal')
+    def journal = new BatchJournal(file, 100, TimeUnit.HOURS.toNanos(1))
+
+    when:
+    (0..<250).each { journal.append(it, it, it % 7 == 0 ? 1 : 0) }
+
+    then:
+    journal.syncCount == 2
+
+    when:
+    journal.close()
+
+    then:
+    journal.syncCount == 3
+    file.readLines().size() == 251
+    file.readLines()[1..3] == ['0 1 00000000', '1 0 00000001', '2 0 00000002']
+    file.readLines().last() == '249 0 000000f9'
+  }
+
+  def 'Sync the pending records once the interval passed, before the next line starts'() {
+    given:
+    def file = temp.root.toPath().resolve('journal')
+    def journal = new BatchJournal(file, 100, TimeUnit.MILLISECONDS.toNanos(1000))
+    journal.append(0, 0, 0)
+
+    when:
+    journal.syncIfDue()
+
+    then:
+    journal.syncCount == 0
+
+    when:
+    Thread.sleep(1100)
+    journal.syncIfDue()
+
+    then:
+    journal.syncCount == 1
+    file.readLines().size() == 2
+
+    cleanup:
+    journal?.close()
+  }
+
+  def 'Read the records of previous runs, ignoring a torn record'() {
+    given:
+    def file = temp.root.toPath().resolve('journal')
+    file.text = BatchJournal.HEADER + '\n0 0 00000000\n1 1 00000000\n12345 0 00000000\n1 0 00000000\n2 1 00000000\n3 0 000'
+
+    when:
+    def journal = new BatchJournal(file, 10, 0)
+
+    then:
+    journal.isSucceeded(0)
+    journal.isSucceeded(1)
+    !journal.isFailed(1)
+    journal.isFailed(2)
+    journal.isSucceeded(12345)
+    !journal.isSucceeded(3)
+    !journal.isFailed(3)
+
+    cleanup:
+    journal?.close()
+  }
+
+  def 'Match the lines to the hashes of their records'() {
+    given:
+    def file = temp.root.toPath().resolve('journal')
+    def journal = new BatchJournal(file, 10, 0)
+    journal.append(0, BatchJournal.hash('run 1'), 0)
+    journal.append(1, BatchJournal.hash('run 2'), 1)
+    journal.close()
+
+    when:
+    journal = new BatchJournal(file, 10, 0)
+
+    then:
+    journal.matches(0, BatchJournal.hash('run 1'))
+    !journal.matches(0, BatchJournal.hash('run 2'))
+    journal.matches(1, BatchJournal.hash('run 2'))
+    journal.matches(2, BatchJournal.hash('run 3'))
+    BatchJournal.hash('run 1') != BatchJournal.hash('run 2')
+
+    cleanup:
+    journal?.close()
+  }
+}
@@ -0,0 +1,132 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import org.apache.commons.cli.ParseException
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicInteger
+
+class BenchmarkSpec extends Specification {
+
+  AtomicInteger executions = new AtomicInteger()
+  AtomicInteger created = new AtomicInteger()
+
+  def 'Benchmark a command with warm-up and report the latency distribution'() {
+    given:
+    def out = new ByteArrayOutputStream()
+    def io = CommandIO.builder().out(out).interactive(false).build()
+
+    when:
+    main(true).execute(['--bench', '50', '--warmup', '10', 'value'] as String[], io)
+
+    then:
+    executions.get() == 60
+    created.get() == 1
+    def report = out.toString()
+    report.startsWith("Benchmark 'cmd': 50 operations, 10 warm-up operations")
+    ['min', 'mean', 'p50', 'p90', 'p99', 'max', 'throughput', 'allocated'].every { report =~ /(?m)^  $it\s+\S+/ }
+    !report.contains('output of the command')
+  }
+
+  def 'Execute normally without the bench option'() {
+    given:
+    def out = new ByteArrayOutputStream()
+    def io = CommandIO.builder().out(out).interactive(false).build()
+
+    when:
+    main(true).execute(['value'] as String[], io)
+
+    then:
+    executions.get() == 1
+    out.toString() == 'output of the command\n'
+  }
+
+  def 'Bench options are not available unless enabled'() {
+    when:
+    main(false).execute(['--bench', '5', 'value'] as String[], CommandIO.builder().interactive(false).build())
+
+    then:
+    thrown(ParseException)
+    executions.get() == 0
+  }
+
+  def 'Invalid bench option values'() {
+    when:
+    main(true).execute(args as String[], CommandIO.builder().interactive(false).build())
+
+    then:
+    def ex = thrown(ParseException)
+    ex.message == message
+    executions.get() == 0
+
+    where:
+    args                                    | message
+    ['--bench', '0', 'value']               | "Invalid value for option 'bench': 0 (expected: an integer between 1 and 2147483647)"
+    ['--bench', '5', '--warmup', 'x', 'v']  | "Invalid value for option 'warmup': x (expected: an integer between 0 and 2147483647)"
+  }
+
+  def 'Measure allocated bytes per operation'() {
+    given:
+    def command = { -> new byte[1024 * 1024] } as Command
+
+    when:
+    def result = new Benchmark(20, 5).run(command)
+
+    then:
+    result.operations == 20
+    result.histogram.totalCount >= 20
+    result.throughput > 0
+    result.allocatedBytesPerOperation == -1 || result.allocatedBytesPerOperation >= 1024 * 1024
+  }
+
+  def 'Correct stalls for coordinated omission'() {
+    given:
+    long[] latencies = [1000] * 99 + [100000]
+
+    when:
+    def result = new Benchmark.Result(100, 0, latencies, 199000, -1)
+
+    then:
+    result.histogram.totalCount == 100 + 99
+    result.histogram.getValueAtPercentile(90) > 1000
+    result.allocatedBytesPerOperation == -1
+  }
+
+  def 'Format latencies in readable units'() {
+    expect:
+    Benchmark.Result.formatNanos(nanos) == formatted
+
+    where:
+    nanos  | formatted
+    512    | '512 ns'
+    1500   | '1.500 us'
+    2.5e6  | '2.500 ms'
+    3e9    | '3.000 s'
+  }
+
+  private CommandsCliMain main(boolean benchEnabled) {
+    def descriptor = CommandDescriptor.builder('cmd')
+        .description('A command')
+        .addArgument(Argument.builder('VALUE').description('A value').build())
+        .factory({ CommandContext ctx ->
+          created.incrementAndGet()
+          return { ->
+            executions.incrementAndGet()
+            ctx.getIO().outWriter.println('output of the command')
+          } as Command
+        } as CommandFactory)
+        .build()
+    CommandsCliMain.builder()
+        .mainCommand(descriptor)
+        .contextData([(Benchmark.CTX_BENCH_OPTIONS_AUTO_ADD): benchEnabled] as Map<String, Object>)
+        .build()
+  }
+}
@@ -48,6 +48,46 @@ class CommandDescriptorSpec extends Specification {
     descriptor.arguments.empty
     descriptor.options.empty
     descriptor.optionGroups.empty
+    !descriptor.cacheable
+    descriptor.inputFileArguments.empty
+    descriptor.sampleInvocations.empty
+  }
+
+  def 'Build command descriptor with sample invocations'() {
+    when:
+    def descriptor = minimalBuilder().sampleInvocation().sampleInvocation('-v', 'foo').build()
+
+    then:
+    descriptor.sampleInvocations == [[], ['-v', 'foo']]
+  }
+
+  def 'Build cacheable command descriptor with input file arguments'() {
+    given:
+    def builder = minimalBuilder()
+        .addArgument(Argument.builder('in').description('').required().build())
+        .addArgument(Argument.builder('more').description('').multiplicityUnlimited().build())
+        .cacheable()
+        .inputFileArgument('in')
+        .inputFileArgument('more')
+
+    when:
+    def descriptor = builder.build()
+
+    then:
+    descriptor.cacheable
+    descriptor.inputFileArguments as List == ['in', 'more']
+  }
+
+  def 'Fail to build with unknown input file argument'() {
+    given:
+    def builder = minimalBuilder().cacheable().inputFileArgument('in')
+
+    when:
+    builder.build()
+
+    then:
+    def e = thrown(IllegalArgumentException)
+    e.message == 'Input file argument \'in\' does not exist for command \'cmd1\''
   }
 
   def 'Build full command descriptor'() {
@@ -0,0 +1,286 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import org.apache.commons.cli.Option
+import spock.lang.Specification
+
+class CommandGatewaySpec extends Specification {
+
+  def latch = new CountDownLatch(0)
+  def main = CommandsCliMain.builder().mainRoute(RouteDescriptor.builder('my-cli')
+      .description('The CLI')
+      .addSubCommand(CommandDescriptor.builder('echo')
+          .description('Echo the arguments')
+          .addOption(Option.builder('u').longOpt('upper').desc('Upper case').build())
+          .addOption(Option.builder('p').longOpt('prefix').hasArg().desc('The prefix').build())
+          .addArgument(Argument.builder('WORD').description('The words').multiplicityUnlimited().build())
+          .factory({ ctx ->
+            { ->
+              def words = ctx.getArgumentValues('WORD').join(' ')
+              def text = (ctx.commandLine.getOptionValue('p') ?: '') + words
+              ctx.IO.outWriter.print(ctx.commandLine.hasOption('u') ? text.toUpperCase() : text)
+            } as Command
+          } as CommandFactory)
+          .build())
+      .addSubCommand(CommandDescriptor.builder('cat')
+          .description('Copy the input to the output')
+          .factory({ ctx -> { -> ctx.IO.outWriter.print(ctx.IO.reader.text) } as Command } as CommandFactory)
+          .build())
+      .addSubCommand(CommandDescriptor.builder('fail')
+          .description('Fail')
+          .factory({ ctx ->
+            { -> ctx.IO.errWriter.print('failing\n'); throw new CommandException('failed') } as Command
+          } as CommandFactory)
+          .build())
+      .addSubCommand(CommandDescriptor.builder('wait')
+          .description('Wait for the latch')
+          .factory({ ctx -> { -> latch.await(5, TimeUnit.SECONDS) } as Command } as CommandFactory)
+          .build())
+      .build()).build()
+  def gateway = CommandGateway.builder(main).workers(4).build()
+
+  def setup() {
+    gateway.start()
+  }
+
+  def cleanup() {
+    gateway.close()
+  }
+
+  def 'Bind to the loopback address'() {
+    expect:
+    gateway.address.address.loopbackAddress
+    gateway.address.port > 0
+  }
+
+  def 'Execute a command with command line arguments'() {
+    when:
+    def response = request('POST', '/echo', '["-u", "hello", "world"]')
+
+    then:
+    response.code == 200
+    response.contentType.startsWith('application/json')
+    response.body == '{"status":0,"stdout":"HELLO WORLD","stderr":""}\n'
+  }
+
+  def 'Execute a command with an empty body'() {
+    expect:
+    request('POST', '/echo', '').body == '{"status":0,"stdout":"","stderr":""}\n'
+  }
+
+  def 'Execute a structured command request'() {
+    when:
+    def response = request('POST', '/echo',
+        '{"options": {"upper": false, "p": "> "}, "arguments": {"WORD": ["a", 1, true]}}')
+
+    then:
+    response.code == 200
+    response.body == '{"status":0,"stdout":"> a 1 true","stderr":""}\n'
+  }
+
+  def 'Execute a command with standard input'() {
+    expect:
+    request('POST', '/cat', '{"stdin": "line 1\\nline \\"2\\""}').body ==
+        '{"status":0,"stdout":"line 1\\nline \\"2\\"","stderr":""}\n'
+  }
+
+  def 'Return the status and the error output of a failed command'() {
+    expect:
+    request('POST', '/fail', '').body == '{"status":1,"stdout":"","stderr":"failing\\nERROR: failed\\n"}\n'
+    request('POST', '/unknown', '').body == '{"status":1,"stdout":"","stderr":"ERROR: Unknown command: unknown\\n"}\n'
+    request('POST', '/echo', '{"options": {"x": true}}').body ==
+        '{"status":1,"stdout":"","stderr":"ERROR: Unrecognized option: x\\n"}\n'
+  }
+
+  def 'Get the usage help of a route and a command'() {
+    when:
+    def routeHelp = request('GET', '/', null)
+    def commandHelp = request('GET', '/echo', null)
+
+    then:
+    routeHelp.code == 200
+    routeHelp.contentType.startsWith('text/plain')
+    routeHelp.body.contains('echo')
+    routeHelp.body.contains('Copy the input to the output')
+    commandHelp.code == 200
+    commandHelp.body.contains('--prefix')
+  }
+
+  def 'Return the usage help in the response even with a help print writer'() {
+    given:
+    def help = new StringWriter()
+    def helpMain = CommandsCliMain.builder()
+        .mainCommand(CommandDescriptor.builder('echo').description('Echo the arguments')
+            .factory({ ctx -> { -> } as Command } as CommandFactory)
+            .build())
+        .contextData([(UsageHelp.CTX_HELP_PRINT_WRITER): new PrintWriter(help)] as Map<String, Object>)
+        .build()
+    def helpGateway = CommandGateway.builder(helpMain).build()
+    helpGateway.start()
+
+    when:
+    def getHelp = request(helpGateway, 'GET', '/', null)
+    def postHelp = request(helpGateway, 'POST', '/', '["--help"]')
+
+    then:
+    getHelp.code == 200
+    getHelp.body.contains('Echo the arguments')
+    postHelp.body.contains('Echo the arguments')
+    help.toString().isEmpty()
+
+    cleanup:
+    helpGateway.close()
+  }
+
+  def 'Reject invalid requests'() {
+    expect:
+    request('GET', '/unknown', null).code == 404
+    request('POST', '/echo', '{"options": ').code == 400
+    request('POST', '/echo', '"hello"').code == 400
+    request('POST', '/echo', '{"options": []}').code == 400
+    request('PUT', '/echo', '').code == 405
+    request('POST', '/echo', '[' * 100000).code == 400
+  }
+
+  def 'Reject requests with a foreign Host header'() {
+    expect:
+    rawRequest("POST /echo HTTP/1.1\r\nHost: evil.example.com:${gateway.address.port}\r\n" +
+        "Content-Type: application/json\r\nContent-Length: 2\r\n\r\n[]").startsWith('HTTP/1.1 403')
+    rawRequest("GET / HTTP/1.1\r\nHost: localhost:1\r\n\r\n").startsWith('HTTP/1.1 403')
+    rawRequest("GET / HTTP/1.0\r\n\r\n").startsWith('HTTP/1.1 403')
+    rawRequest("GET / HTTP/1.1\r\nHost: 127.0.0.1:${gateway.address.port}\r\n\r\n").startsWith('HTTP/1.1 200')
+  }
+
+  def 'Reject POST requests which are not JSON'() {
+    given:
+    def connection = new URL("http://localhost:${gateway.address.port}/echo").openConnection() as HttpURLConnection
+    connection.requestMethod = 'POST'
+    connection.doOutput = true
+    connection.setRequestProperty('Content-Type', 'text/plain')
+    connection.outputStream.withStream { it.write('["hi"]'.getBytes('UTF-8')) }
+
+    expect:
+    connection.responseCode == 415
+  }
+
+  def 'Require the token if set'() {
+    given:
+    def secured = CommandGateway.builder(main).token('s3cret').build()
+    secured.start()
+    def port = secured.address.port
+
+    expect:
+    request(secured, 'POST', '/echo', '["hi"]').code == 401
+    rawRequest(port, "GET / HTTP/1.1\r\nHost: localhost:$port\r\n${CommandGateway.TOKEN_HEADER}: wrong\r\n\r\n")
+        .startsWith('HTTP/1.1 401')
+    rawRequest(port, "POST /echo HTTP/1.1\r\nHost: localhost:$port\r\n${CommandGateway.TOKEN_HEADER}: s3cret\r\n" +
+        "Content-Type: application/json\r\nContent-Length: 6\r\n\r\n[\"hi\"]").contains('"stdout":"hi"')
+
+    cleanup:
+    secured.close()
+  }
+
+  def 'Reject a request body which is too large'() {
+    given:
+    gateway.close()
+    gateway = CommandGateway.builder(main).maxRequestBytes(10).build()
+    gateway.start()
+
+    expect:
+    request('POST', '/echo', '["0123456789"]').code == 413
+    request('POST', '/echo', '["0123"]').code == 200
+  }
+
+  def 'Handle requests concurrently on the worker executor'() {
+    given:
+    latch = new CountDownLatch(1)
+    def pool = Executors.newFixedThreadPool(2)
+
+    when:
+    def waiting = pool.submit({ request('POST', '/wait', '') } as Callable)
+    def echo = request('POST', '/echo', '["done"]')
+    def waitedBeforeRelease = waiting.isDone()
+    latch.countDown()
+
+    then:
+    echo.body.contains('"stdout":"done"')
+    !waitedBeforeRelease
+    waiting.get(5, TimeUnit.SECONDS).code == 200
+
+    cleanup:
+    pool.shutdown()
+  }
+
+  def 'Use a given executor without shutting it down'() {
+    given:
+    def executor = Executors.newSingleThreadExecutor()
+    def other = CommandGateway.builder(main).executor(executor).build()
+    other.start()
+
+    when:
+    def response = request(other, 'POST', '/echo', '["hi"]')
+    other.close()
+
+    then:
+    response.body.contains('"stdout":"hi"')
+    !executor.isShutdown()
+
+    cleanup:
+    executor.shutdown()
+  }
+
+  def 'Fail to start twice'() {
+    when:
+    gateway.start()
+
+    then:
+    thrown(IllegalStateException)
+  }
+
+  private String rawRequest(String request) {
+    rawRequest(gateway.address.port, request)
+  }
+
+  private static String rawRequest(int port, String request) {
+    def socket = new Socket(InetAddress.loopbackAddress, port)
+    try {
+      socket.outputStream.write(request.getBytes('UTF-8'))
+      socket.outputStream.flush()
+      socket.shutdownOutput()
+      socket.inputStream.getText('UTF-8')
+    } finally {
+      socket.close()
+    }
+  }
+
+  private Map request(String method, String path, String body) {
+    request(gateway, method, path, body)
+  }
+
+  private static Map request(CommandGateway gateway, String method, String path, String body) {
+    def connection = new URL("http://localhost:${gateway.address.port}$path").openConnection() as HttpURLConnection
+    connection.requestMethod = method
+    if (method == 'POST') {
+      connection.setRequestProperty('Content-Type', 'application/json; charset=utf-8')
+    }
+    if (body != null) {
+      connection.doOutput = true
+      connection.outputStream.withStream { it.write(body.getBytes('UTF-8')) }
+    }
+    def code = connection.responseCode
+    def stream = code < 400 ? connection.inputStream : connection.errorStream
+    [code: code, contentType: connection.contentType, body: stream?.getText('UTF-8')]
+  }
+}
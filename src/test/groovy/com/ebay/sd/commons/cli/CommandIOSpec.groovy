@@ -0,0 +1,159 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+
+class CommandIOSpec extends Specification {
+
+  def 'Block buffered output is written only when flushed'() {
+    given:
+    def out = new ByteArrayOutputStream()
+    def io = CommandIO.builder().out(out).interactive(false).build()
+
+    when:
+    io.outWriter.println('line 1')
+    io.outWriter.println('line 2')
+
+    then:
+    !io.interactive
+    out.size() == 0
+
+    when:
+    io.flush()
+
+    then:
+    out.toString() == "line 1${System.lineSeparator()}line 2${System.lineSeparator()}"
+  }
+
+  def 'Interactive output is flushed on every line'() {
+    given:
+    def out = new ByteArrayOutputStream()
+    def io = CommandIO.builder().out(out).interactive(true).build()
+
+    when:
+    io.outWriter.println('line 1')
+
+    then:
+    io.interactive
+    out.toString() == "line 1${System.lineSeparator()}"
+  }
+
+  def 'Output written to the channel is ordered after previously written output'() {
+    given:
+    def out = new ByteArrayOutputStream()
+    def err = new ByteArrayOutputStream()
+    def io = CommandIO.builder().out(out).err(err).interactive(false).build()
+
+    when:
+    io.outWriter.print('a')
+    io.out.write('b'.bytes)
+    io.outChannel.write(ByteBuffer.wrap('c'.bytes))
+    io.errWriter.print('x')
+    io.errChannel.write(ByteBuffer.wrap('y'.bytes))
+    io.outWriter.print('d')
+    io.flush()
+
+    then:
+    out.toString() == 'abcd'
+    err.toString() == 'xy'
+  }
+
+  def 'Transfer a file to the output'() {
+    given:
+    def file = Files.createTempFile('command-io', '.txt')
+    def content = ('0123456789' * 100_000).getBytes(StandardCharsets.US_ASCII)
+    Files.write(file, content)
+    def out = new ByteArrayOutputStream()
+    def io = CommandIO.builder().out(out).interactive(false).build()
+
+    when:
+    io.outWriter.print('header:')
+    def transferred = io.transferFrom(file)
+    io.outWriter.print(':footer')
+    io.flush()
+
+    then:
+    transferred == content.length
+    out.toString('US-ASCII') == 'header:' + new String(content, 'US-ASCII') + ':footer'
+
+    cleanup:
+    Files.deleteIfExists(file)
+  }
+
+  def 'Transfer a file to a file output'() {
+    given:
+    def source = Files.createTempFile('command-io-source', '.txt')
+    def target = Files.createTempFile('command-io-target', '.txt')
+    def content = ('abcdefghij' * 10_000).getBytes(StandardCharsets.US_ASCII)
+    Files.write(source, content)
+    def out = new FileOutputStream(target.toFile())
+    def io = CommandIO.builder().out(out).interactive(false).build()
+
+    when:
+    io.transferFrom(source)
+    io.transferFrom(source)
+    io.flush()
+    out.close()
+
+    then:
+    new String(Files.readAllBytes(target), 'US-ASCII') == new String(content, 'US-ASCII') * 2
+
+    cleanup:
+    Files.deleteIfExists(source)
+    Files.deleteIfExists(target)
+  }
+
+  def 'Read the input'() {
+    given:
+    def io = CommandIO.builder().in(new ByteArrayInputStream("foo\nbar\n".bytes)).build()
+
+    expect:
+    io.reader.readLine() == 'foo'
+    io.reader.readLine() == 'bar'
+    io.reader.readLine() == null
+  }
+
+  def 'Read the input channel'() {
+    given:
+    def io = CommandIO.builder().in(new ByteArrayInputStream('foo'.bytes)).build()
+    def buffer = ByteBuffer.allocate(10)
+
+    when:
+    def read = io.inChannel.read(buffer)
+
+    then:
+    read == 3
+    new String(buffer.array(), 0, 3) == 'foo'
+  }
+
+  def 'System IO uses the current standard streams'() {
+    given:
+    def original = System.out
+    def out = new ByteArrayOutputStream()
+    System.out = new PrintStream(out, true)
+
+    when:
+    def io = CommandIO.system()
+    io.outWriter.print('hello')
+    io.flush()
+
+    then:
+    io.in.is(System.in)
+    out.toString() == 'hello'
+
+    cleanup:
+    System.out = original
+  }
+}
@@ -0,0 +1,173 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import org.apache.commons.cli.CommandLine
+import org.apache.commons.cli.MissingArgumentException
+import org.apache.commons.cli.MissingOptionException
+import org.apache.commons.cli.Option
+import org.apache.commons.cli.ParseException
+import org.apache.commons.cli.UnrecognizedOptionException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class CommandInvokerSpec extends Specification {
+
+  static final SharedResource<Object> RESOURCE = SharedResource.of('res', { new Object() } as SharedResource.Factory)
+
+  def invoked = []
+
+  def 'Invoke a command with structured options and arguments'() {
+    given:
+    def parent = parentContext()
+
+    when:
+    parent.invoke(command(), [verbose: true, n: 3, D: ['a', 'b'], quiet: false], [NAME: 'foo', FILE: ['x', 'y']])
+
+    then:
+    invoked.size() == 1
+    with(invoked[0] as CommandContext) {
+      parsedOptions.hasOption('verbose')
+      parsedOptions.getInt('count', 0) == 3
+      parsedOptions.getValues('D') == ['a', 'b']
+      !parsedOptions.hasOption('quiet')
+      getArgumentValue('NAME') == 'foo'
+      getArgumentValues('FILE') == ['x', 'y']
+      commandLine.argList == ['foo', 'x', 'y']
+      commandRoute.command.name == 'child'
+    }
+  }
+
+  def 'Share the IO, resources and data of the parent context'() {
+    given:
+    def parent = parentContext()
+    parent.putValue('key', 'value')
+
+    when:
+    parent.invoke(command(), null, [NAME: 'foo'])
+
+    then:
+    with(invoked[0] as CommandContext) {
+      IO.is(parent.IO)
+      getResource(RESOURCE).is(parent.getResource(RESOURCE))
+      getValue('key') == 'value'
+    }
+
+    when:
+    (invoked[0] as CommandContext).putValue('key', 'changed')
+
+    then:
+    parent.getValue('key') == 'value'
+  }
+
+  @Unroll
+  def 'Fail to invoke with invalid values: #expectedMessage'() {
+    when:
+    parentContext().invoke(command(), options, arguments)
+
+    then:
+    def ex = thrown(expectedException)
+    ex.message == expectedMessage
+    invoked.isEmpty()
+
+    where:
+    options             | arguments                     | expectedException           | expectedMessage
+    [foo: 'x']          | [NAME: 'foo']                 | UnrecognizedOptionException | 'Unrecognized option: foo'
+    [verbose: 'x']      | [NAME: 'foo']                 | ParseException              | 'Option does not take a value: verbose'
+    [count: true]       | [NAME: 'foo']                 | MissingArgumentException    | 'Missing argument for option: n'
+    [count: ['1', '2']] | [NAME: 'foo']                 | ParseException              | 'Too many values for option: count'
+    [:]                 | [:]                           | ParseException              | 'Argument is required: NAME'
+    [:]                 | [NAME: ['a', 'b']]            | ParseException              | 'Argument has too many values: NAME'
+    [:]                 | [NAME: 'foo', OTHER: 'x']     | ParseException              | 'Unknown argument: OTHER'
+  }
+
+  def 'Fail to invoke without a required option'() {
+    given:
+    def command = CommandDescriptor.builder('child').description('The child')
+        .addOption(Option.builder('r').longOpt('required').required().build())
+        .factory({ ctx -> { -> } as Command } as CommandFactory)
+        .build()
+
+    when:
+    parentContext().invoke(command, null, null)
+
+    then:
+    thrown(MissingOptionException)
+  }
+
+  def 'Fail to invoke on an interrupted thread'() {
+    when:
+    Thread.currentThread().interrupt()
+    parentContext().invoke(command(), null, [NAME: 'foo'])
+
+    then:
+    def ex = thrown(CommandException)
+    ex.message == 'Interrupted before invoking command: child'
+    invoked.isEmpty()
+
+    cleanup:
+    Thread.interrupted()
+  }
+
+  def 'Propagate the command failure'() {
+    given:
+    def failing = CommandDescriptor.builder('failing').description('Fails')
+        .factory({ ctx -> { -> throw new CommandException('oops') } as Command } as CommandFactory)
+        .build()
+
+    when:
+    parentContext().invoke(failing, null, null)
+
+    then:
+    def ex = thrown(CommandException)
+    ex.message == 'oops'
+  }
+
+  def 'Invoke a nested command from a command executed by the main'() {
+    given:
+    def out = new ByteArrayOutputStream()
+    def child = command()
+    def parent = CommandDescriptor.builder('parent').description('The parent')
+        .factory({ CommandContext ctx -> { -> ctx.invoke(child, [n: 2], [NAME: 'nested']) } as Command } as CommandFactory)
+        .build()
+    def main = CommandsCliMain.builder().mainRoute(RouteDescriptor.builder('cli').description('The cli')
+        .addSubCommand(parent).build()).build()
+
+    when:
+    main.execute(['parent'] as String[], CommandIO.builder().out(out).build())
+
+    then:
+    out.toString() == 'child nested 2'
+  }
+
+  private CommandDescriptor command() {
+    CommandDescriptor.builder('child').description('The child')
+        .addOption(Option.builder('v').longOpt('verbose').build())
+        .addOption(Option.builder('q').longOpt('quiet').build())
+        .addOption(Option.builder('n').longOpt('count').hasArg().build())
+        .addOption(Option.builder('D').hasArgs().build())
+        .addArgument(Argument.builder('NAME').description('The name').required().build())
+        .addArgument(Argument.builder('FILE').description('The files').multiplicityUnlimited().build())
+        .factory({ CommandContext ctx ->
+          { ->
+            invoked << ctx
+            ctx.IO.outWriter.print("child ${ctx.getArgumentValue('NAME')} ${ctx.parsedOptions.getValue('n')}")
+          } as Command
+        } as CommandFactory)
+        .build()
+  }
+
+  private static CommandContext parentContext() {
+    def route = CommandRoute.builder().command(CommandDescriptor.builder('parent').description('The parent')
+        .factory({ ctx -> { -> } as Command } as CommandFactory).build()).build()
+    new CommandContext(new CommandLine.Builder().build(), route, null,
+        CommandIO.builder().out(new ByteArrayOutputStream()).build(), new ResourceRegistry())
+  }
+}
@@ -0,0 +1,168 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import org.apache.commons.cli.MissingOptionException
+import org.apache.commons.cli.Option
+import org.apache.commons.cli.ParseException
+import org.apache.commons.cli.UnrecognizedOptionException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class CommandRequestSpec extends Specification {
+
+  def contexts = []
+  def out = new ByteArrayOutputStream()
+  def io = CommandIO.builder().out(out).build()
+
+  def 'Build a command request'() {
+    given:
+    def builder = CommandRequest.builder('foo', 'bar')
+        .option('v')
+        .option('D', 'a', 'b')
+        .option('D', 'c')
+        .argument('FILE', 'x')
+        .argument('FILE', 'y')
+
+    when:
+    def request = builder.build()
+    builder.option('D', 'd')
+
+    then:
+    request.path == ['foo', 'bar']
+    request.options == [v: [], D: ['a', 'b', 'c']]
+    request.arguments == [FILE: ['x', 'y']]
+  }
+
+  def 'Fail to modify a command request'() {
+    given:
+    def request = CommandRequest.builder('foo').option('D', 'a').build()
+
+    when:
+    request.options.D << 'b'
+
+    then:
+    thrown(UnsupportedOperationException)
+  }
+
+  def 'Execute a command request'() {
+    given:
+    def request = CommandRequest.builder('bar')
+        .option('a', 'A')
+        .option('b')
+        .argument('ARG1', 'arg1')
+        .argument('ARG2', 'arg2a', 'arg2b')
+        .argument('ARG3', 'arg3a', 'arg3b', 'arg3c')
+        .build()
+
+    when:
+    main().execute(request, io)
+
+    then:
+    contexts.size() == 1
+    with(contexts[0] as CommandContext) {
+      commandRoute.fullPathAsString == 'foo bar'
+      commandLine.getOptionValue('a') == 'A'
+      commandLine.hasOption('b')
+      commandLine.argList == ['bar', 'arg1', 'arg2a', 'arg2b', 'arg3a', 'arg3b', 'arg3c']
+      getArgumentValues('ARG1') == ['arg1']
+      getArgumentValues('ARG2') == ['arg2a', 'arg2b']
+      getArgumentValues('ARG3') == ['arg3a', 'arg3b', 'arg3c']
+    }
+    out.toString() == 'executed'
+  }
+
+  def 'Execute a command request the same as the equivalent command line'() {
+    given:
+    def main = main()
+
+    when:
+    main.execute(['bar', '-a', 'A', 'arg1', 'arg2a', 'arg2b'] as String[], io)
+    main.execute(CommandRequest.builder('bar').option('a', 'A').argument('ARG1', 'arg1')
+        .argument('ARG2', 'arg2a', 'arg2b').build(), io)
+
+    then:
+    contexts.size() == 2
+    contexts*.commandLine*.argList.unique().size() == 1
+    contexts*.commandLine*.getOptionValue('a') == ['A', 'A']
+    contexts*.getArgumentValues('ARG2') == [['arg2a', 'arg2b'], ['arg2a', 'arg2b']]
+    contexts*.getArgumentValues('ARG3') == [[], []]
+    out.toString() == 'executedexecuted'
+  }
+
+  def 'Print help for a command request'() {
+    given:
+
+    when:
+    main().execute(CommandRequest.builder('bar').option('h').build(), io)
+
+    then:
+    contexts.isEmpty()
+    out.toString().startsWith('usage: foo bar')
+  }
+
+  @Unroll
+  def 'Fail to execute an invalid command request: #expectedMessage'() {
+    when:
+    main().execute(request.build(), io)
+
+    then:
+    def ex = thrown(expectedException)
+    ex.message == expectedMessage
+    contexts.isEmpty()
+
+    where:
+    request                                                                              | expectedException           | expectedMessage
+    CommandRequest.builder('baz')                                                        | ParseException              | 'Unknown command: baz'
+    CommandRequest.builder()                                                             | ParseException              | 'Command is required for route: foo <CMD>'
+    CommandRequest.builder().argument('ARG1', 'x')                                       | ParseException              | 'Command is required for route: foo <CMD>'
+    CommandRequest.builder('bar').option('x').argument('ARG1', 'x')                      | UnrecognizedOptionException | 'Unrecognized option: x'
+    CommandRequest.builder('bar').option('a').argument('ARG1', 'x')                      | ParseException              | 'Missing argument for option: a'
+    CommandRequest.builder('bar')                                                        | ParseException              | 'Argument is required: ARG1'
+    CommandRequest.builder('bar').argument('ARG1', 'x').argument('ARG2', 'y')            | ParseException              | 'Argument has too few values: ARG2 (expected: 2)'
+    CommandRequest.builder('bar').argument('ARG1', 'x', 'y')                             | ParseException              | 'Argument has too many values: ARG1'
+    CommandRequest.builder('bar').argument('ARG1', 'x').argument('ARG2', 'y', 'z').argument('ARG4', 'w') | ParseException | 'Unknown argument: ARG4'
+    CommandRequest.builder('bar').argument('ARG1', 'x').argument('ARG2', 'y', 'z', 'w')  | ParseException              | 'Argument has too many values: ARG2'
+  }
+
+  def 'Fail to execute a command request without a required option'() {
+    given:
+    def command = CommandDescriptor.builder('cmd').description('')
+        .addOption(Option.builder('r').required().build())
+        .factory({ ctx -> { -> } as Command } as CommandFactory)
+        .build()
+
+    when:
+    CommandsCliMain.builder().mainCommand(command).build().execute(CommandRequest.builder().build(), io)
+
+    then:
+    def ex = thrown(MissingOptionException)
+    ex.message == 'Missing required option: r'
+  }
+
+  private CommandsCliMain main() {
+    def bar = CommandDescriptor.builder('bar')
+        .description('desc')
+        .addOption(Option.builder('a').hasArg().build())
+        .addOption(Option.builder('b').build())
+        .addArgument(Argument.builder('ARG1').description('').required().build())
+        .addArgument(Argument.builder('ARG2').description('').required().multiplicity(2).build())
+        .addArgument(Argument.builder('ARG3').description('').multiplicityUnlimited().build())
+        .factory({ CommandContext ctx ->
+          { ->
+            contexts << ctx
+            ctx.IO.outWriter.print('executed')
+          } as Command
+        } as CommandFactory)
+        .build()
+    CommandsCliMain.builder().mainRoute(RouteDescriptor.builder('foo').description('').addSubCommand(bar).build())
+        .build()
+  }
+}
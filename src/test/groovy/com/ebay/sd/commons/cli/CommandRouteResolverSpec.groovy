@@ -274,13 +274,14 @@ class CommandRouteResolverSpec extends Specification {
   }
 
   private static boolean assertResolvedCommandArguments(CommandRoute route, List args) {
-    route.command.arguments.size() == args.size()
-    for (int i = 0; i < route.command.arguments.size(); i++) {
-      def arg = route.command.arguments[i]
+    assert route.arguments.size() == args.size()
+    for (int i = 0; i < route.arguments.size(); i++) {
+      def arg = route.arguments[i]
       def expectedArg = args[i][0]
       def expectedValues = args[i][1]
-      assert arg == expectedArg
+      assert arg.name == expectedArg.name
       assert arg.values == expectedValues
+      assert expectedArg.values == []
     }
     true
   }
@@ -0,0 +1,249 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import static com.ebay.sd.commons.cli.CommandScheduler.Lane.BULK
+import static com.ebay.sd.commons.cli.CommandScheduler.Lane.INTERACTIVE
+
+class CommandSchedulerSpec extends Specification {
+
+  def 'Execute a command on the calling thread'() {
+    given:
+    def scheduler = CommandScheduler.builder().build()
+    def thread = null
+    def command = { thread = Thread.currentThread() } as Command
+
+    when:
+    scheduler.execute(route('foo'), command)
+
+    then:
+    thread == Thread.currentThread()
+    def metrics = scheduler.getMetrics(INTERACTIVE)
+    metrics.admitted == 1
+    metrics.rejected == 0
+    metrics.running == 0
+    metrics.queueDepth == 0
+  }
+
+  def 'Assign routes to lanes'() {
+    given:
+    def scheduler = CommandScheduler.builder().bulkRoute('cli export').build()
+
+    expect:
+    scheduler.getLane('cli export') == BULK
+    scheduler.getLane('cli list') == INTERACTIVE
+  }
+
+  def 'Reject a command when the lane queue is full'() {
+    given:
+    def scheduler = CommandScheduler.builder().lane(BULK, 1, 0, 1000).bulkRoute('cli export').build()
+    def exportRoute = route('cli', 'export')
+    def blocking = new BlockingCommand()
+    def thread = startThread { scheduler.execute(exportRoute, blocking) }
+    blocking.awaitStarted()
+
+    when:
+    scheduler.execute(exportRoute, Mock(Command))
+
+    then:
+    def e = thrown(CommandRejectedException)
+    e.message == 'Command rejected, the BULK lane queue is full (max queued: 0): cli export'
+    def metrics = scheduler.getMetrics(BULK)
+    metrics.running == 1
+    metrics.admitted == 1
+    metrics.rejected == 1
+
+    when: 'the interactive lane is not affected'
+    scheduler.execute(route('cli', 'list'), Mock(Command))
+
+    then:
+    noExceptionThrown()
+    scheduler.getMetrics(INTERACTIVE).admitted == 1
+
+    cleanup:
+    blocking?.release()
+    thread?.join()
+  }
+
+  def 'Reject a command which waits in the queue for too long'() {
+    given:
+    def scheduler = CommandScheduler.builder().lane(INTERACTIVE, 1, 1, 50).build()
+    def blocking = new BlockingCommand()
+    def thread = startThread { scheduler.execute(route('foo'), blocking) }
+    blocking.awaitStarted()
+
+    when:
+    scheduler.execute(route('foo'), Mock(Command))
+
+    then:
+    def e = thrown(CommandRejectedException)
+    e.message == 'Command rejected, timed out waiting in the INTERACTIVE lane: foo'
+    scheduler.getMetrics(INTERACTIVE).rejected == 1
+
+    cleanup:
+    blocking?.release()
+    thread?.join()
+  }
+
+  def 'Queued command is admitted once a running command completes'() {
+    given:
+    def scheduler = CommandScheduler.builder().lane(INTERACTIVE, 1, 1, 10000).build()
+    def blocking = new BlockingCommand()
+    def executed = new CountDownLatch(1)
+    def thread1 = startThread { scheduler.execute(route('foo'), blocking) }
+    blocking.awaitStarted()
+    def thread2 = startThread { scheduler.execute(route('foo'), { executed.countDown() } as Command) }
+
+    when:
+    waitFor { scheduler.getMetrics(INTERACTIVE).queueDepth == 1 }
+    blocking?.release()
+
+    then:
+    executed.await(5, TimeUnit.SECONDS)
+
+    when:
+    thread1.join()
+    thread2.join()
+    def metrics = scheduler.getMetrics(INTERACTIVE)
+
+    then:
+    metrics.admitted == 2
+    metrics.rejected == 0
+    metrics.queueDepth == 0
+    metrics.running == 0
+    metrics.maxWaitNanos > 0
+    metrics.averageWaitNanos > 0
+  }
+
+  def 'Limit concurrently running commands of a route'() {
+    given:
+    def scheduler = CommandScheduler.builder().lane(INTERACTIVE, 4, 4, 50).routeLimit('cli import', 1).build()
+    def importRoute = route('cli', 'import')
+    def blocking = new BlockingCommand()
+    def thread = startThread { scheduler.execute(importRoute, blocking) }
+    blocking.awaitStarted()
+
+    when:
+    scheduler.execute(importRoute, Mock(Command))
+
+    then:
+    def e = thrown(CommandRejectedException)
+    e.message == 'Command rejected, timed out waiting for the route concurrency limit: cli import'
+
+    when: 'other routes are not limited'
+    scheduler.execute(route('cli', 'list'), Mock(Command))
+
+    then:
+    noExceptionThrown()
+
+    cleanup:
+    blocking?.release()
+    thread?.join()
+  }
+
+  def 'Release permits when a command fails'() {
+    given:
+    def scheduler = CommandScheduler.builder().lane(INTERACTIVE, 1, 0, 0).routeLimit('foo', 1).build()
+    def failing = { throw new CommandException('failed') } as Command
+
+    when:
+    scheduler.execute(route('foo'), failing)
+
+    then:
+    thrown(CommandException)
+
+    when:
+    scheduler.execute(route('foo'), Mock(Command))
+
+    then:
+    noExceptionThrown()
+    scheduler.getMetrics(INTERACTIVE).running == 0
+  }
+
+  @Unroll
+  def 'Fail to build with invalid lane settings (#test)'() {
+    when:
+    CommandScheduler.builder().lane(INTERACTIVE, maxRunning, maxQueued, maxWait)
+
+    then:
+    def e = thrown(IllegalArgumentException)
+    e.message == message
+
+    where:
+    test          | maxRunning | maxQueued | maxWait | message
+    'maxRunning'  | 0          | 0         | 0       | 'maxRunning must be positive'
+    'maxQueued'   | 1          | -1        | 0       | 'maxQueued must be non-negative'
+    'maxWait'     | 1          | 0         | -1      | 'maxWaitMillis must be non-negative'
+  }
+
+  def 'Execute commands with a scheduler through the main entry point'() {
+    given:
+    def scheduler = CommandScheduler.builder().lane(INTERACTIVE, 1, 0, 0).build()
+    def executed = false
+    def descriptor = CommandDescriptor.builder('foo').description('foo command')
+        .factory({ ctx -> { -> executed = true } as Command } as CommandFactory)
+        .build()
+    def main = CommandsCliMain.builder().mainCommand(descriptor).scheduler(scheduler).build()
+
+    when:
+    main.execute([] as String[])
+
+    then:
+    executed
+    scheduler.getMetrics(INTERACTIVE).admitted == 1
+  }
+
+  private CommandRoute route(String... names) {
+    def builder = CommandRoute.builder()
+    def command = CommandDescriptor.builder(names[-1]).description('command').factory(Stub(CommandFactory)).build()
+    for (int i = 0; i < names.length - 1; i++) {
+      builder.addToPath(RouteDescriptor.builder(names[i]).description('route').addSubCommand(command).build())
+    }
+    builder.command(command).build()
+  }
+
+  private static Thread startThread(Closure closure) {
+    def thread = new Thread(closure)
+    thread.start()
+    thread
+  }
+
+  private static void waitFor(Closure<Boolean> condition) {
+    long deadline = System.currentTimeMillis() + 5000
+    while (!condition() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5)
+    }
+  }
+
+  private static class BlockingCommand implements Command {
+    private final CountDownLatch started = new CountDownLatch(1)
+    private final CountDownLatch released = new CountDownLatch(1)
+
+    @Override
+    void execute() throws CommandException {
+      started.countDown()
+      released.await(5, TimeUnit.SECONDS)
+    }
+
+    void awaitStarted() {
+      assert started.await(5, TimeUnit.SECONDS)
+    }
+
+    void release() {
+      released.countDown()
+    }
+  }
+}
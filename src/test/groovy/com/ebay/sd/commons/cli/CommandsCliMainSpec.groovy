@@ -122,6 +122,60 @@ class CommandsCliMainSpec extends Specification {
     command.commandContext.getArgumentValues('ARG3') == ['arg3a', 'arg3b', 'arg3c']
   }
 
+  def 'Execute the same command multiple times with different arguments'() {
+    given:
+    def factory = new DummyCommandFactory()
+    def root = CommandDescriptor.builder('foo')
+        .description('desc')
+        .addArgument(Argument.builder('ARG1').description('').multiplicityUnlimited().build())
+        .factory(factory)
+        .build()
+    def main = CommandsCliMain.builder().mainCommand(root).build()
+
+    when:
+    main.execute(['a', 'b'] as String[])
+
+    then:
+    factory.command.commandContext.getArgumentValues('ARG1') == ['a', 'b']
+
+    when:
+    main.execute(['c'] as String[])
+
+    then:
+    factory.command.commandContext.getArgumentValues('ARG1') == ['c']
+    root.arguments[0].values == []
+  }
+
+  def 'Execute command with options and arguments using the compiled parser'() {
+    given:
+    def factory = new DummyCommandFactory()
+    def root = CommandDescriptor.builder('foo')
+        .description('desc')
+        .addOption(Option.builder('a').hasArg().build())
+        .addOption(Option.builder('b').required().build())
+        .addArgument(Argument.builder('ARG1').description('').multiplicityUnlimited().build())
+        .factory(factory)
+        .build()
+    def main = CommandsCliMain.builder().mainCommand(root).compiledParser(true).build()
+
+    when:
+    main.execute(['-ba', 'A', 'arg1', 'arg2'] as String[])
+
+    then:
+    def command = factory.command
+    command.executed
+    command.commandContext.commandLine.getOptionValue('a') == 'A'
+    command.commandContext.commandLine.hasOption('b')
+    command.commandContext.getArgumentValues('ARG1') == ['arg1', 'arg2']
+
+    when:
+    main.execute(['arg1'] as String[])
+
+    then:
+    def e = thrown(ParseException)
+    e.message == 'Missing required option: b'
+  }
+
   def 'Route 1 level and execute simple command'() {
     given:
     def factory = new DummyCommandFactory()
@@ -289,6 +343,161 @@ Commands:
     e.message == "UNEXPECTED ERROR: dummy"
   }
 
+  def 'Execute commands concurrently, each with its own IO'() {
+    given:
+    def factory = { CommandContext ctx ->
+      { -> ctx.IO.outWriter.print(ctx.getArgumentValue('name')) } as Command
+    } as CommandFactory
+    def descriptor = CommandDescriptor.builder('foo').description('')
+        .addArgument(Argument.builder('name').description('the name').required().build())
+        .factory(factory)
+        .build()
+    def main = CommandsCliMain.builder().mainCommand(descriptor).contextData(noHelp()).build()
+    def outputs = (0..<8).collect { new ByteArrayOutputStream() }
+
+    when:
+    def threads = (0..<8).collect { i ->
+      Thread.start { main.execute(["name-$i"] as String[], CommandIO.builder().out(outputs[i]).interactive(false).build()) }
+    }
+    threads*.join()
+
+    then: 'the output of each execution is flushed once the execution completes'
+    outputs.collect { it.toString() } == (0..<8).collect { "name-$it".toString() }
+  }
+
+  def 'Print help to the command IO'() {
+    given:
+    def descriptor = CommandDescriptor.builder('foo').description('The foo command').factory(Mock(CommandFactory)).build()
+    def main = CommandsCliMain.builder().mainCommand(descriptor).build()
+    def out = new ByteArrayOutputStream()
+
+    when:
+    main.execute(['--help'] as String[], CommandIO.builder().out(out).build())
+
+    then:
+    out.toString().startsWith('usage: foo')
+  }
+
+  @Unroll
+  def 'Execute command with output format #args'() {
+    given:
+    def factory = { CommandContext ctx ->
+      { ->
+        def encoder = ctx.createRecordEncoder('name', 'size')
+        encoder.writeRecord('foo', 1)
+        encoder.close()
+      } as Command
+    } as CommandFactory
+    def descriptor = CommandDescriptor.builder('foo').description('').factory(factory).build()
+    def main = CommandsCliMain.builder().mainCommand(descriptor)
+        .contextData(noHelp([(OutputFormat.CTX_OUTPUT_OPTION_AUTO_ADD): true])).build()
+    def out = new ByteArrayOutputStream()
+
+    when:
+    main.execute(args as String[], CommandIO.builder().out(out).build())
+
+    then:
+    out.toString() == expected
+
+    where:
+    args                  | expected
+    []                    | 'foo 1\n'
+    ['--output', 'jsonl'] | '{"name":"foo","size":1}\n'
+    ['--output=csv']      | 'name,size\nfoo,1\n'
+  }
+
+  def 'Fail to execute command with invalid output format'() {
+    given:
+    def descriptor = CommandDescriptor.builder('foo').description('').factory(Mock(CommandFactory)).build()
+    def main = CommandsCliMain.builder().mainCommand(descriptor)
+        .contextData(noHelp([(OutputFormat.CTX_OUTPUT_OPTION_AUTO_ADD): true])).build()
+
+    when:
+    main.execute(['--output', 'xml'] as String[])
+
+    then:
+    def e = thrown(ParseException)
+    e.message == 'Invalid output format: xml (expected one of: text, json, jsonl, csv, tsv)'
+  }
+
+  def 'Replay the output of a cacheable command from the result cache'() {
+    given:
+    def cacheDir = File.createTempDir().toPath()
+    def executions = 0
+    def factory = { CommandContext ctx ->
+      { ->
+        executions++
+        ctx.IO.outWriter.print("hello ${ctx.getArgumentValue('name')}")
+        if (ctx.getArgumentValue('name') == 'fail') {
+          throw new CommandException('failed')
+        }
+      } as Command
+    } as CommandFactory
+    def descriptor = CommandDescriptor.builder('foo').description('')
+        .addArgument(Argument.builder('name').description('').required().build())
+        .cacheable()
+        .factory(factory)
+        .build()
+    def main = CommandsCliMain.builder().mainCommand(descriptor).contextData(noHelp())
+        .resultCache(ResultCache.builder().directory(cacheDir).build())
+        .build()
+
+    when:
+    def outputs = ['bar', 'bar', 'baz'].collect { name ->
+      def out = new ByteArrayOutputStream()
+      main.execute([name] as String[], CommandIO.builder().out(out).build())
+      out.toString()
+    }
+
+    then:
+    outputs == ['hello bar', 'hello bar', 'hello baz']
+    executions == 2
+
+    when: 'failed executions are not cached'
+    2.times {
+      try {
+        main.execute(['fail'] as String[], CommandIO.builder().out(new ByteArrayOutputStream()).build())
+      } catch (CommandException ignore) {
+      }
+    }
+
+    then:
+    executions == 4
+    cacheDir.toFile().list().length == 2
+
+    cleanup:
+    cacheDir?.toFile()?.deleteDir()
+  }
+
+  def 'Share resources and reuse pooled commands between executions'() {
+    given:
+    def closed = false
+    def resource = SharedResource.of('client', { { -> closed = true } as Closeable } as SharedResource.Factory)
+    def resources = []
+    def created = 0
+    def factory = PooledCommandFactory.of({ CommandContext ctx ->
+      created++
+      new PooledCommand(ctx, resource, resources)
+    } as CommandFactory, 4)
+    def descriptor = CommandDescriptor.builder('foo').description('').factory(factory).build()
+    def main = CommandsCliMain.builder().mainCommand(descriptor).contextData(noHelp()).build()
+
+    when:
+    3.times { main.execute([] as String[]) }
+
+    then:
+    created == 1
+    resources.size() == 3
+    resources.every { it.is(resources[0]) }
+    !closed
+
+    when:
+    main.close()
+
+    then:
+    closed
+  }
+
   def noHelp(Map data = [:]) {
     data = data ?: [:]
     data << [(UsageHelp.CTX_HELP_OPTION_AUTO_ADD):false]
@@ -305,6 +514,29 @@ Commands:
     }
   }
 
+  private static class PooledCommand implements ReusableCommand {
+
+    CommandContext context
+    SharedResource resource
+    List resources
+
+    PooledCommand(CommandContext context, SharedResource resource, List resources) {
+      this.context = context
+      this.resource = resource
+      this.resources = resources
+    }
+
+    @Override
+    void reset(CommandContext commandContext) throws ParseException {
+      context = commandContext
+    }
+
+    @Override
+    void execute() throws CommandException {
+      resources << context.getResource(resource)
+    }
+  }
+
   private static class DummyCommand implements Command {
 
     CommandContext commandContext
@@ -0,0 +1,168 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import org.apache.commons.cli.CommandLine
+import org.apache.commons.cli.DefaultParser
+import org.apache.commons.cli.Option
+import org.apache.commons.cli.OptionGroup
+import org.apache.commons.cli.Options
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Differential tests, verifying the compiled parser produces the same results as the {@link DefaultParser}
+ */
+class CompiledCommandLineParserSpec extends Specification {
+
+  static final List<String> TOKENS = ['-a', '-b', '-ab', '-abc', '-ba', '-c', '-cfoo', '-c=foo', '--config', '--config=x',
+                                      '--conf', '--co', '--c', '-D', '-Dk=v', '-Dflag', '-n', '--pair', '-o', '--output',
+                                      '--output=o', '--verbose', '--version', '--ver', '--verb', '--level', '--level=3',
+                                      '-level', '-Xmx512m', '-verbose', '-1', '-1.5', '-Infinity', '--', '-', 'x', 'y',
+                                      '"q"', '"a b"', '-z', '--zzz', '-a=1', '---a', '--=x', '-=', '-az', '-cb']
+
+  @Shared
+  Options options = createOptions()
+  @Shared
+  CompiledCommandLineParser parser = new CompiledCommandLineParser(options)
+
+  private static Options createOptions() {
+    new Options()
+        .addOption(Option.builder('a').longOpt('all').build())
+        .addOption(Option.builder('b').build())
+        .addOption(Option.builder('c').longOpt('config').hasArg().build())
+        .addOption(Option.builder('D').hasArgs().build())
+        .addOption(Option.builder('n').longOpt('pair').numberOfArgs(2).build())
+        .addOption(Option.builder('o').longOpt('output').hasArg().optionalArg(true).build())
+        .addOption(Option.builder().longOpt('verbose').build())
+        .addOption(Option.builder().longOpt('version').build())
+        .addOption(Option.builder().longOpt('level').hasArg().build())
+        .addOption(Option.builder().longOpt('Xmx').hasArg().build())
+  }
+
+  def 'compiled parser is compiled for simple options'() {
+    expect:
+    parser.compiled
+  }
+
+  @Unroll
+  def 'same result as DefaultParser for: #args'() {
+    expect:
+    parseWithCompiled(args) == parseWithDefault(args)
+
+    where:
+    args << [
+        [],
+        ['x', 'y'],
+        ['-a', '-b', 'x'],
+        ['-ab'],
+        ['-abc', 'v'],
+        ['-abcv'],
+        ['-c', 'v', 'x'],
+        ['-c'],
+        ['-c', '-a'],
+        ['-cv'],
+        ['-c=v'],
+        ['--config', 'v'],
+        ['--config=v'],
+        ['--conf', 'v'],
+        ['--ver'],
+        ['--verb'],
+        ['--version', '--verbose'],
+        ['-verbose'],
+        ['--level', '-1'],
+        ['--level=3'],
+        ['-level', '4'],
+        ['-Xmx512m'],
+        ['-D', 'a', 'b', 'c'],
+        ['-Dkey=value'],
+        ['-Dflag'],
+        ['-n', '1', '2', '3'],
+        ['-n', '1'],
+        ['-o'],
+        ['-o', 'out', 'x'],
+        ['--output=o'],
+        ['--', '-a', '--config'],
+        ['-', 'x'],
+        ['-c', '"quoted"'],
+        ['-z'],
+        ['--zzz'],
+        ['-a=1'],
+        ['---a'],
+        ['--=x'],
+    ]
+  }
+
+  def 'same results as DefaultParser for random command lines'() {
+    given:
+    def random = new Random(20181018L)
+
+    expect:
+    1000.times {
+      def args = []
+      random.nextInt(8).times { args << TOKENS[random.nextInt(TOKENS.size())] }
+      assert parseWithCompiled(args) == parseWithDefault(args): "args: ${args}"
+    }
+  }
+
+  def 'parsing the same options multiple times does not leak values between parsings'() {
+    when:
+    def first = parser.parse(options, ['-c', 'v1'] as String[])
+    def second = parser.parse(options, ['-c', 'v2'] as String[])
+
+    then:
+    first.getOptionValues('c') == ['v1'] as String[]
+    second.getOptionValues('c') == ['v2'] as String[]
+    options.getOption('c').values == null
+  }
+
+  def 'delegate to DefaultParser when options cannot be compiled'() {
+    given:
+    def groupOptions = new Options().addOptionGroup(new OptionGroup()
+        .addOption(Option.builder('x').build())
+        .addOption(Option.builder('y').build()))
+    def compiledParser = new CompiledCommandLineParser(groupOptions)
+
+    expect:
+    !compiledParser.compiled
+    resultOf { compiledParser.parse(groupOptions, ['-x', '-y'] as String[]) } ==
+        resultOf { new DefaultParser().parse(groupOptions, ['-x', '-y'] as String[]) }
+  }
+
+  def 'delegate to DefaultParser when parsing other options'() {
+    given:
+    def otherOptions = new Options().addOption(Option.builder('q').build())
+
+    when:
+    def commandLine = parser.parse(otherOptions, ['-q'] as String[])
+
+    then:
+    commandLine.hasOption('q')
+  }
+
+  private List parseWithCompiled(List<String> args) {
+    resultOf { parser.parse(options, args as String[]) }
+  }
+
+  private List parseWithDefault(List<String> args) {
+    resultOf { new DefaultParser().parse(options, args as String[]) }
+  }
+
+  private static List resultOf(Closure<CommandLine> parse) {
+    try {
+      CommandLine commandLine = parse()
+      def parsedOptions = commandLine.options.collect { [it.key, it.valuesList] }
+      ['OK', parsedOptions, commandLine.argList]
+    } catch (Exception e) {
+      ['ERROR', e.class, e.message]
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import groovy.transform.CompileStatic
+import java.lang.management.ManagementFactory
+import org.apache.commons.cli.CommandLine
+import org.apache.commons.cli.Option
+import org.apache.commons.cli.ParseException
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ConstraintSpec extends Specification {
+
+  @Rule
+  TemporaryFolder tmp = new TemporaryFolder()
+
+  @Unroll
+  def 'Test #value against #constraint.expectation'() {
+    expect:
+    constraint.test(value) == valid
+
+    where:
+    constraint                       | value     | valid
+    Constraint.range(1, 65535)       | '1'       | true
+    Constraint.range(1, 65535)       | '65535'   | true
+    Constraint.range(1, 65535)       | '0'       | false
+    Constraint.range(1, 65535)       | '65536'   | false
+    Constraint.range(1, 65535)       | '8O'      | false
+    Constraint.range(1, 65535)       | ''        | false
+    Constraint.pattern('[a-z]+-\\d') | 'abc-1'   | true
+    Constraint.pattern('[a-z]+-\\d') | 'abc-1x'  | false
+    Constraint.pattern('[a-z]+-\\d') | 'ABC-1'   | false
+    Constraint.oneOf('json', 'csv')  | 'csv'     | true
+    Constraint.oneOf('json', 'csv')  | 'CSV'     | false
+  }
+
+  def 'Describe the expected values'() {
+    expect:
+    Constraint.range(1, 10).expectation == 'an integer between 1 and 10'
+    Constraint.pattern('\\w+').expectation == 'a value matching \\w+'
+    Constraint.oneOf('json', 'csv').expectation == 'one of [json, csv]'
+    Constraint.pathExists().expectation == 'an existing path'
+  }
+
+  def 'Test paths'() {
+    given:
+    def file = tmp.newFile('file.txt').path
+    def dir = tmp.newFolder('dir').path
+    def missing = new File(tmp.root, 'missing').path
+
+    expect:
+    Constraint.pathExists().test(file) && Constraint.pathExists().test(dir) && !Constraint.pathExists().test(missing)
+    Constraint.fileExists().test(file) && !Constraint.fileExists().test(dir) && !Constraint.fileExists().test(missing)
+    !Constraint.directoryExists().test(file) && Constraint.directoryExists().test(dir)
+  }
+
+  def 'Fail to create invalid constraints'() {
+    when:
+    constraint()
+
+    then:
+    thrown(IllegalArgumentException)
+
+    where:
+    constraint << [{ Constraint.range(2, 1) }, { Constraint.oneOf() }, { Constraint.pattern('[') }]
+  }
+
+  def 'Evaluate valid values without allocation'() {
+    given:
+    def threads = ManagementFactory.threadMXBean as com.sun.management.ThreadMXBean
+    def constraints = [Constraint.range(1, 65535), Constraint.pattern('[a-z]+-\\d+'), Constraint.oneOf('json', 'csv')] as Constraint[]
+    def values = ['8080', 'abc-123', 'json'] as String[]
+    evaluate(constraints, values, 20000)
+
+    when:
+    def before = threads.getThreadAllocatedBytes(Thread.currentThread().id)
+    evaluate(constraints, values, 100000)
+    def allocated = threads.getThreadAllocatedBytes(Thread.currentThread().id) - before
+
+    then:
+    allocated < 10000
+  }
+
+  @CompileStatic
+  private static void evaluate(Constraint[] array, String[] values, int times) {
+    for (int i = 0; i < times; i++) {
+      for (int j = 0; j < array.length; j++) {
+        if (!array[j].test(values[j])) {
+          throw new IllegalStateException()
+        }
+      }
+    }
+  }
+
+  def 'Fail to execute with an invalid argument or option value'() {
+    given:
+    def main = CommandsCliMain.builder().mainRoute(root()).build()
+
+    when:
+    main.execute(args as String[])
+
+    then:
+    def ex = thrown(ParseException)
+    ex.message == message
+
+    where:
+    args                                           | message
+    ['serve', '70000']                             | "Invalid value for argument 'PORT': 70000 (expected: an integer between 1 and 65535)"
+    ['serve', '8080', '-f', 'xml']                 | "Invalid value for option 'f': xml (expected: one of [json, csv])"
+    ['--region', 'EU', 'serve', '8080']            | "Invalid value for option 'region': EU (expected: a value matching [a-z]+)"
+  }
+
+  def 'Execute with valid argument and option values'() {
+    given:
+    def main = CommandsCliMain.builder().mainRoute(root()).build()
+    def out = new ByteArrayOutputStream()
+
+    when:
+    main.execute(['--region', 'eu', 'serve', '8080', '-f', 'csv'] as String[], CommandIO.builder().out(out).build())
+
+    then:
+    out.toString() == 'serving'
+  }
+
+  def 'Fail to execute a command request or a nested invocation with an invalid value'() {
+    given:
+    def main = CommandsCliMain.builder().mainRoute(root()).build()
+
+    when:
+    main.execute(CommandRequest.builder('serve').argument('PORT', '0').build())
+
+    then:
+    def ex = thrown(ParseException)
+    ex.message == "Invalid value for argument 'PORT': 0 (expected: an integer between 1 and 65535)"
+
+    when:
+    main.execute(CommandRequest.builder('serve').argument('PORT', '80').option('format', 'xml').build())
+
+    then:
+    ex = thrown(ParseException)
+    ex.message == "Invalid value for option 'f': xml (expected: one of [json, csv])"
+
+    when:
+    def context = new CommandContext(new CommandLine.Builder().build(),
+        CommandRoute.builder().build(), [:])
+    context.invoke(root().subCommands[0] as CommandDescriptor, [f: 'xml'], [PORT: 80])
+
+    then:
+    ex = thrown(ParseException)
+    ex.message == "Invalid value for option 'f': xml (expected: one of [json, csv])"
+  }
+
+  def 'Get the constraints of an argument'() {
+    given:
+    def range = Constraint.range(1, 2)
+
+    expect:
+    Argument.builder('A').description('A').constraint(range).build().constraints == [range]
+    Argument.builder('A').description('A').build().constraints.isEmpty()
+  }
+
+  private static RouteDescriptor root() {
+    RouteDescriptor.builder('cli')
+        .description('The CLI')
+        .addOption(Option.builder().longOpt('region').hasArg().desc('The region').build(), Constraint.pattern('[a-z]+'))
+        .addSubCommand(CommandDescriptor.builder('serve')
+            .description('Serve')
+            .addArgument(Argument.builder('PORT').description('The port').required()
+                .constraint(Constraint.range(1, 65535)).build())
+            .addOption(Option.builder('f').longOpt('format').hasArg().desc('The format').build(),
+                Constraint.oneOf('json', 'csv'))
+            .factory({ ctx -> { -> ctx.IO.outWriter.print('serving') } as Command } as CommandFactory)
+            .build())
+        .build()
+  }
+}
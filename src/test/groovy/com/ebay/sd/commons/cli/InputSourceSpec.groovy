@@ -0,0 +1,327 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import groovy.transform.CompileStatic
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Requires
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+import java.nio.charset.Charset
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.GZIPOutputStream
+
+class InputSourceSpec extends Specification {
+
+  @Rule
+  TemporaryFolder temp = new TemporaryFolder()
+
+  CommandIO io = CommandIO.builder().in(new ByteArrayInputStream('line 1\nline 2\n'.bytes)).interactive(false).build()
+
+  def 'Read a file'() {
+    given:
+    def file = write('plain.txt', 'a\nb\n')
+    def source = InputSource.of(file.toString(), io)
+
+    expect:
+    !source.stdin
+    !source.range
+    !source.compressed
+    source.path == file
+    source.size == 4
+    source.openReader().readLines() == ['a', 'b']
+    source.openStream().bytes == 'a\nb\n'.bytes
+  }
+
+  def 'Read a gzip compressed file transparently, regardless of its name'() {
+    given:
+    def file = temp.root.toPath().resolve('compressed.data')
+    new GZIPOutputStream(Files.newOutputStream(file)).withStream { it.write('a\nb\n'.bytes) }
+    def source = InputSource.of(file.toString(), io)
+
+    expect:
+    source.compressed
+    source.openReader().readLines() == ['a', 'b']
+
+    when:
+    source.map()
+
+    then:
+    thrown(IllegalStateException)
+  }
+
+  def 'Read the standard input with -'() {
+    given:
+    def source = InputSource.of('-', io)
+
+    expect:
+    source.stdin
+    source.path == null
+    source.size == -1
+    !source.compressed
+    source.openReader().readLines() == ['line 1', 'line 2']
+  }
+
+  def 'Read a gzip compressed standard input transparently'() {
+    given:
+    def compressed = new ByteArrayOutputStream()
+    new GZIPOutputStream(compressed).withStream { it.write('zipped\n'.bytes) }
+    def source = InputSource.of('-', CommandIO.builder().in(new ByteArrayInputStream(compressed.toByteArray())).build())
+
+    expect:
+    source.compressed
+    source.openReader().readLines() == ['zipped']
+  }
+
+  def 'Closing the standard input source does not close the standard input'() {
+    given:
+    def closed = false
+    def stdin = new ByteArrayInputStream('x'.bytes) {
+      @Override
+      void close() {
+        closed = true
+      }
+    }
+    def source = InputSource.of('-', CommandIO.builder().in(stdin).build())
+
+    when:
+    source.openStream().close()
+
+    then:
+    !closed
+  }
+
+  def 'Standard input cannot be mapped or split'() {
+    given:
+    def source = InputSource.of('-', io)
+
+    when:
+    source."$method"(*args)
+
+    then:
+    thrown(IllegalStateException)
+
+    where:
+    method  | args
+    'map'   | []
+    'split' | [2]
+  }
+
+  def 'Map a file to memory'() {
+    given:
+    def file = write('plain.txt', 'hello\nworld\n')
+
+    when:
+    def buffer = InputSource.of(file.toString(), io).map()
+
+    then:
+    buffer.remaining() == 12
+    decode(buffer) == 'hello\nworld\n'
+  }
+
+  def 'Split a file into ranges aligned to line boundaries'() {
+    given:
+    def lines = (1..1000).collect { "line number $it" }
+    def file = write('lines.txt', lines.join('\n') + '\n')
+    def source = InputSource.of(file.toString(), io)
+
+    when:
+    def ranges = source.split(parts)
+
+    then:
+    ranges.size() == parts
+    ranges.every { it.range }
+    ranges[0].start == 0
+    (1..<ranges.size()).every { ranges[it].start == ranges[it - 1].start + ranges[it - 1].size }
+    ranges.sum { it.size } == Files.size(file)
+    ranges.collectMany { it.openReader().readLines() } == lines
+    ranges.collectMany { decode(it.map()).readLines() } == lines
+    ranges.every { decode(it.map()).endsWith('\n') }
+
+    where:
+    parts << [1, 2, 3, 7]
+  }
+
+  def 'Split a file without a trailing line separator, and with long lines'() {
+    given:
+    def lines = ['x' * 20000, 'short', 'y' * 10000, 'last']
+    def file = write('long.txt', lines.join('\n'))
+
+    when:
+    def ranges = InputSource.of(file.toString(), io).split(8)
+
+    then:
+    ranges.size() <= 4
+    ranges.collectMany { it.openReader().readLines() } == lines
+  }
+
+  def 'Split a small file into fewer ranges'() {
+    given:
+    def file = write('small.txt', 'a\n')
+
+    expect:
+    InputSource.of(file.toString(), io).split(4)*.size == [2L]
+    InputSource.of(write('empty.txt', '').toString(), io).split(4).empty
+  }
+
+  def 'Get input sources of input file arguments'() {
+    given:
+    def file = write('plain.txt', 'content')
+    def sources = []
+    def descriptor = CommandDescriptor.builder('cmd')
+        .description('A command')
+        .addArgument(Argument.builder('FILE').description('Input files').multiplicityUnlimited().build())
+        .inputFileArgument('FILE')
+        .factory({ CommandContext ctx ->
+          { ->
+            sources.addAll(ctx.getInputSources('FILE'))
+            sources << ctx.getInputSource('FILE')
+          } as Command
+        } as CommandFactory)
+        .build()
+
+    when:
+    CommandsCliMain.builder().mainCommand(descriptor).build().execute(['-', file.toString()] as String[], io)
+
+    then:
+    sources*.name == ['-', file.toString(), '-']
+    sources[2].stdin
+    sources[1].openReader().text == 'content'
+  }
+
+  @Unroll
+  def 'Keep the bytes read to detect compression for reading the standard input with #readWith'() {
+    given:
+    def lines = (1..5000).collect { "line $it".toString() }
+    def stdin = new ByteArrayInputStream((lines.join('\n') + '\n').bytes)
+    def compressed = null
+    def read = null
+    def descriptor = CommandDescriptor.builder('cmd')
+        .description('A command')
+        .addArgument(Argument.builder('FILE').description('Input file').build())
+        .inputFileArgument('FILE')
+        .factory({ CommandContext ctx ->
+          { ->
+            compressed = ctx.getInputSource('FILE').compressed
+            read = reader(ctx).readLines()
+          } as Command
+        } as CommandFactory)
+        .build()
+
+    when:
+    CommandsCliMain.builder().mainCommand(descriptor).build()
+        .execute(['-'] as String[], CommandIO.builder().in(stdin).interactive(false).build())
+
+    then:
+    !compressed
+    read == lines
+
+    where:
+    readWith               | reader
+    'another input source'   | { CommandContext ctx -> ctx.getInputSource('FILE').openReader() }
+    'the reader of the IO'   | { CommandContext ctx -> ctx.IO.reader }
+  }
+
+  def 'Fail to get an input source of an argument which is not an input file argument'() {
+    given:
+    def descriptor = CommandDescriptor.builder('cmd')
+        .description('A command')
+        .addArgument(Argument.builder('NAME').description('A name').build())
+        .factory({ CommandContext ctx -> { -> ctx.getInputSource('NAME') } as Command } as CommandFactory)
+        .build()
+
+    when:
+    CommandsCliMain.builder().mainCommand(descriptor).build().execute(['x'] as String[], io)
+
+    then:
+    def ex = thrown(CommandException)
+    ex.message == 'UNEXPECTED ERROR: Argument is not an input file argument: NAME'
+  }
+
+  @Requires({ Boolean.getBoolean('benchmark') })
+  def 'Compare the read throughput of a memory mapped file with a BufferedReader'() {
+    given:
+    def file = temp.root.toPath().resolve('large.txt')
+    Files.newBufferedWriter(file, Charset.forName('UTF-8')).withWriter { writer ->
+      (1..5_000_000).each { writer.write("line number $it with some more content\n") }
+    }
+    def source = InputSource.of(file.toString(), io)
+    def size = Files.size(file)
+
+    when:
+    def results = [:]
+    5.times {
+      results.reader = measure { countLinesWithReader(source) }
+      results.mapped = measure { countLinesMapped(source) }
+      results.split = measure { countLinesSplit(source) }
+    }
+    results.each { name, result ->
+      println String.format('%-8s %,d lines, %.1f MB/s', name, result[0], size / 1e6 / (result[1] / 1e9))
+    }
+
+    then:
+    results.values().collect { it[0] }.unique() == [5_000_000L]
+  }
+
+  private static List<Long> measure(Closure<Long> count) {
+    long start = System.nanoTime()
+    long lines = count()
+    [lines, System.nanoTime() - start]
+  }
+
+  @CompileStatic
+  private static long countLinesWithReader(InputSource source) {
+    long count = 0
+    BufferedReader reader = source.openReader()
+    try {
+      while (reader.readLine() != null) {
+        count++
+      }
+    } finally {
+      reader.close()
+    }
+    count
+  }
+
+  @CompileStatic
+  private static long countLinesMapped(InputSource source) {
+    ByteBuffer buffer = source.map()
+    long count = 0
+    int limit = buffer.limit()
+    for (int i = buffer.position(); i < limit; i++) {
+      if (buffer.get(i) == (byte) 10) {
+        count++
+      }
+    }
+    count
+  }
+
+  private static long countLinesSplit(InputSource source) {
+    def ranges = source.split(Runtime.runtime.availableProcessors())
+    def threads = ranges.collect { range -> [thread: null, count: 0L, range: range] }
+    threads.each { t -> t.thread = Thread.start { t.count = countLinesMapped((InputSource) t.range) } }
+    threads.each { ((Thread) it.thread).join() }
+    (long) threads.sum { it.count }
+  }
+
+  private Path write(String name, String content) {
+    def file = temp.root.toPath().resolve(name)
+    file.text = content
+    file
+  }
+
+  private static String decode(ByteBuffer buffer) {
+    Charset.forName('UTF-8').decode(buffer.duplicate()).toString()
+  }
+}
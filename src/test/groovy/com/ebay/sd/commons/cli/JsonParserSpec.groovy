@@ -0,0 +1,70 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class JsonParserSpec extends Specification {
+
+  @Unroll
+  def 'Parse #json'() {
+    expect:
+    JsonParser.parse(json) == expected
+
+    where:
+    json                                   | expected
+    '"abc"'                                | 'abc'
+    '"a\\"b\\\\c\\n\\u00e9\\/"'            | 'a"b\\c\né/'
+    '123'                                  | 123L
+    '-1.5e2'                               | -150d
+    'true'                                 | true
+    'false'                                | false
+    'null'                                 | null
+    ' [ 1 , "a" , [ ] , { } ] '            | [1L, 'a', [], [:]]
+    '{"a": {"b": [true, null]}, "c": "d"}' | [a: [b: [true, null]], c: 'd']
+  }
+
+  def 'Keep the order of object members'() {
+    expect:
+    (JsonParser.parse('{"z": 1, "a": 2, "m": 3}') as Map).keySet().toList() == ['z', 'a', 'm']
+  }
+
+  @Unroll
+  def 'Fail to parse invalid JSON #json'() {
+    when:
+    JsonParser.parse(json)
+
+    then:
+    def ex = thrown(IllegalArgumentException)
+    ex.message.startsWith('Invalid JSON at position')
+
+    where:
+    json << ['', '{', '[1,]', '{"a" 1}', '{a: 1}', '"abc', '"\\x"', 'tru', '1 2', '--1']
+  }
+
+  def 'Parse arrays and objects nested up to the maximal depth'() {
+    given:
+    def depth = JsonParser.MAX_DEPTH
+
+    expect:
+    JsonParser.parse('[' * depth + ']' * depth) instanceof List
+    JsonParser.parse('{"a":' * (depth - 1) + '{}' + '}' * (depth - 1)) instanceof Map
+  }
+
+  def 'Fail to parse arrays nested deeper than the maximal depth'() {
+    when:
+    JsonParser.parse('[' * (1024 * 1024))
+
+    then:
+    def ex = thrown(IllegalArgumentException)
+    ex.message == "Invalid JSON at position ${JsonParser.MAX_DEPTH}: Nesting depth exceeds ${JsonParser.MAX_DEPTH}"
+  }
+}
@@ -0,0 +1,65 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import spock.lang.Specification
+
+class LatencyHistogramSpec extends Specification {
+
+  def 'Report percentiles within the histogram precision'() {
+    given:
+    def histogram = new LatencyHistogram()
+    (1..1000).each { histogram.record(it * 1000L) }
+
+    expect:
+    histogram.totalCount == 1000
+    histogram.min == 1000
+    histogram.max == 1000000
+    histogram.mean == 500500d
+    Math.abs(histogram.getValueAtPercentile(50) - 500000) <= 5000
+    Math.abs(histogram.getValueAtPercentile(90) - 900000) <= 9000
+    Math.abs(histogram.getValueAtPercentile(99) - 990000) <= 9900
+    histogram.getValueAtPercentile(100) == 1000000
+  }
+
+  def 'Bucket indexes are monotonic and cover every value'() {
+    expect:
+    LatencyHistogram.index(value) <= LatencyHistogram.index(value + 1)
+    LatencyHistogram.highestValue(LatencyHistogram.index(value)) >= value
+    LatencyHistogram.highestValue(LatencyHistogram.index(value)) - value <= value / 100
+
+    where:
+    value << [0L, 1L, 255L, 256L, 511L, 512L, 1000L, 123456789L, Long.MAX_VALUE - 1]
+  }
+
+  def 'Correct for coordinated omission with the expected interval'() {
+    given:
+    def histogram = new LatencyHistogram()
+
+    when:
+    histogram.recordWithExpectedInterval(100, 10)
+
+    then:
+    histogram.totalCount == 10
+    histogram.min == 10
+    histogram.max == 100
+    histogram.getValueAtPercentile(50) == 50
+  }
+
+  def 'Empty histogram'() {
+    given:
+    def histogram = new LatencyHistogram()
+
+    expect:
+    histogram.totalCount == 0
+    histogram.min == 0
+    histogram.getValueAtPercentile(99) == 0
+  }
+}
@@ -0,0 +1,183 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import org.apache.commons.cli.CommandLine
+import org.apache.commons.cli.ParseException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class LazyCommandFactorySpec extends Specification {
+
+  static final String PREFIX = LazyCommandFactorySpec.name + '$'
+
+  def 'Create a command with a context constructor'() {
+    given:
+    def factory = LazyCommandFactory.of(ContextCommand.name)
+    def context = new CommandContext(new CommandLine.Builder().build(),
+        CommandRoute.builder().build(), [:])
+
+    expect:
+    !factory.loaded
+
+    when:
+    def first = factory.create(context) as ContextCommand
+    def second = factory.create(context) as ContextCommand
+
+    then:
+    factory.loaded
+    first.context.is(context)
+    !first.is(second)
+  }
+
+  def 'Create a command with a no-arg constructor'() {
+    expect:
+    LazyCommandFactory.of(NoArgCommand.name).create(null) instanceof NoArgCommand
+  }
+
+  def 'Create a command using a factory class, which is instantiated once'() {
+    given:
+    def factory = LazyCommandFactory.of(CountingFactory.name)
+    CountingFactory.instances = 0
+
+    when:
+    factory.create(null)
+    factory.create(null)
+
+    then:
+    CountingFactory.instances == 1
+  }
+
+  def 'Propagate a parse exception of the command constructor'() {
+    when:
+    LazyCommandFactory.of(FailingCommand.name).create(null)
+
+    then:
+    def ex = thrown(ParseException)
+    ex.message == 'bad input'
+  }
+
+  def 'Build a command descriptor with a factory class name'() {
+    when:
+    def descriptor = CommandDescriptor.builder('foo').description('Foo').factoryClass(NoArgCommand.name).build()
+
+    then:
+    descriptor.createCommand(null) instanceof NoArgCommand
+  }
+
+  @Unroll
+  def 'Fail to create a command of an invalid class #className'() {
+    when:
+    LazyCommandFactory.of(className).create(null)
+
+    then:
+    def ex = thrown(IllegalStateException)
+    ex.message == message
+
+    where:
+    className                | message
+    'com.example.NoSuchCmd'  | 'Failed to load command class: com.example.NoSuchCmd'
+    String.name              | 'Class is neither a command nor a command factory: java.lang.String'
+    NoPublicConstructor.name | "Command class has no public constructor which takes a CommandContext or no arguments: ${NoPublicConstructor.name}"
+  }
+
+  def 'Load only the classes of the executed command on startup'() {
+    given:
+    def classLoader = new RecordingClassLoader(LazyCommandFactorySpec.classLoader)
+    def names = [ContextCommand, NoArgCommand, CountingFactory]*.name
+    def root = RouteDescriptor.builder('cli').description('The CLI')
+    names.eachWithIndex { name, i ->
+      root.addSubCommand(CommandDescriptor.builder("cmd-$i").description("Command $i")
+          .factory(LazyCommandFactory.of(name, classLoader)).build())
+    }
+
+    when:
+    def main = CommandsCliMain.builder().mainRoute(root.build()).build()
+    main.execute(['--help'] as String[], CommandIO.builder().out(new ByteArrayOutputStream()).build())
+
+    then:
+    classLoader.loaded.isEmpty()
+
+    when:
+    main.execute(['cmd-1'] as String[])
+
+    then:
+    classLoader.loaded == [NoArgCommand.name]
+  }
+
+  static class ContextCommand implements Command {
+    final CommandContext context
+
+    ContextCommand(CommandContext context) {
+      this.context = context
+    }
+
+    @Override
+    void execute() {}
+  }
+
+  static class NoArgCommand implements Command {
+    @Override
+    void execute() {}
+  }
+
+  static class FailingCommand implements Command {
+    FailingCommand(CommandContext context) throws ParseException {
+      throw new ParseException('bad input')
+    }
+
+    @Override
+    void execute() {}
+  }
+
+  static class NoPublicConstructor implements Command {
+    private NoPublicConstructor(String name) {}
+
+    @Override
+    void execute() {}
+  }
+
+  static class CountingFactory implements CommandFactory {
+    static int instances
+
+    CountingFactory() {
+      instances++
+    }
+
+    @Override
+    Command create(CommandContext commandContext) {
+      new NoArgCommand()
+    }
+  }
+
+  /**
+   * A child-first class loader of the nested classes of this spec, which records the classes it loads
+   */
+  static class RecordingClassLoader extends ClassLoader {
+    final List<String> loaded = [].asSynchronized()
+
+    RecordingClassLoader(ClassLoader parent) {
+      super(parent)
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      synchronized (getClassLoadingLock(name)) {
+        def type = findLoadedClass(name)
+        if (type == null && name.startsWith(PREFIX) && !name.contains('RecordingClassLoader')) {
+          def bytes = parent.getResourceAsStream(name.replace('.', '/') + '.class').bytes
+          type = defineClass(name, bytes, 0, bytes.length)
+          loaded << name
+        }
+        type ?: super.loadClass(name, resolve)
+      }
+    }
+  }
+}
@@ -121,6 +121,25 @@ class OptionsAggregatorSpec extends Specification {
     'args number'     | 'a'      | { Option.Builder b -> b.numberOfArgs(10) }
   }
 
+  def 'aggregate sharing the options with the descriptors, copying only required options'() {
+    given:
+    def shared = Option.builder('s').longOpt('shared').build()
+    def required = Option.builder('r').longOpt('required').required().build()
+    def root = routeBuilder('root')
+        .addSubCommand(commandBuilder('foo').addOption(shared).addOption(required).build())
+        .addSubCommand(commandBuilder('bar').addOption(shared).addOption(required).build())
+        .build()
+
+    when:
+    def options = aggregator.aggregate(root)
+
+    then:
+    options.getOption('s').is(shared)
+    !options.getOption('r').is(required)
+    !options.getOption('r').required
+    required.required
+  }
+
   private CommandDescriptor.Builder commandBuilder(String name = 'foo') {
     CommandDescriptor.builder(name)
         .description('')
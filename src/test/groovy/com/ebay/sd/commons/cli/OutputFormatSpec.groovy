@@ -0,0 +1,47 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import org.apache.commons.cli.ParseException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class OutputFormatSpec extends Specification {
+
+  @Unroll
+  def 'Parse output format #name'() {
+    expect:
+    OutputFormat.parse(name) == format
+
+    where:
+    name   | format
+    'text' | OutputFormat.TEXT
+    'json' | OutputFormat.JSON
+    'JSONL'| OutputFormat.JSONL
+    'Csv'  | OutputFormat.CSV
+    'tsv'  | OutputFormat.TSV
+  }
+
+  def 'Fail to parse unknown output format'() {
+    when:
+    OutputFormat.parse('xml')
+
+    then:
+    def e = thrown(ParseException)
+    e.message == 'Invalid output format: xml (expected one of: text, json, jsonl, csv, tsv)'
+  }
+
+  def 'Default output option'() {
+    expect:
+    OutputFormat.DEFAULT_OUTPUT_OPTION.longOpt == 'output'
+    OutputFormat.DEFAULT_OUTPUT_OPTION.opt == null
+    OutputFormat.DEFAULT_OUTPUT_OPTION.hasArg()
+  }
+}
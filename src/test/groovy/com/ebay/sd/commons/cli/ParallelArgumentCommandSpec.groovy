@@ -0,0 +1,198 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import org.apache.commons.cli.DefaultParser
+import org.apache.commons.cli.ParseException
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+
+class ParallelArgumentCommandSpec extends Specification {
+
+  def 'Add the parallelism option to the command descriptor'() {
+    when:
+    def descriptor = descriptor(true)
+
+    then:
+    descriptor.parallelArgument == 'ITEM'
+    descriptor.options.any { it.longOpt == 'parallelism' }
+  }
+
+  def 'Fail to set a parallel argument which does not exist'() {
+    when:
+    CommandDescriptor.builder('cmd').description('')
+        .parallelArgument('ITEM')
+        .factory({ ctx -> { -> } as Command } as CommandFactory)
+        .build()
+
+    then:
+    def e = thrown(IllegalArgumentException)
+    e.message == "Parallel argument 'ITEM' does not exist for command 'cmd'"
+  }
+
+  def 'Process all the items in parallel and emit the results in order'() {
+    given:
+    def out = new ByteArrayOutputStream()
+
+    when:
+    execute(true, out, '--parallelism', '4', '30', '10', '20', '0')
+
+    then:
+    out.toString() == '30:60 10:20 20:40 0:0 '
+    TestCommand.threads.size() > 1
+  }
+
+  def 'Process all the items in parallel and emit the results in order of completion'() {
+    given:
+    def out = new ByteArrayOutputStream()
+
+    when:
+    execute(false, out, '--parallelism', '4', '300', '0')
+
+    then:
+    out.toString() == '0:0 300:600 '
+  }
+
+  def 'Process the items sequentially with parallelism of 1'() {
+    given:
+    def out = new ByteArrayOutputStream()
+
+    when:
+    execute(true, out, '--parallelism', '1', '3', '1', '2')
+
+    then:
+    out.toString() == '3:6 1:2 2:4 '
+    TestCommand.threads.size() == 1
+  }
+
+  def 'Collect the failures of single items and fail after processing all'() {
+    given:
+    def out = new ByteArrayOutputStream()
+    def context = context(true, out, 'x', '1', 'y', '2')
+    def command = new TestCommand(context)
+
+    when:
+    command.execute()
+
+    then:
+    def e = thrown(CommandException)
+    e.message == '2 of 4 items failed:' + System.lineSeparator() +
+        '  x: For input string: "x"' + System.lineSeparator() +
+        '  y: For input string: "y"'
+    e.cause instanceof NumberFormatException
+    context.IO.flush()
+    out.toString() == '1:2 2:4 '
+  }
+
+  def 'Use a shared pool when provided'() {
+    given:
+    def pool = new ForkJoinPool(2)
+    def out = new ByteArrayOutputStream()
+    def context = context(true, out, '1', '2', '3')
+    def command = new TestCommand(context) {
+      @Override
+      protected ForkJoinPool getPool() {
+        return pool
+      }
+    }
+
+    when:
+    command.execute()
+    context.IO.flush()
+
+    then:
+    out.toString() == '1:2 2:4 3:6 '
+    !pool.isShutdown()
+
+    cleanup:
+    pool.shutdown()
+  }
+
+  def 'Fail on invalid parallelism'() {
+    when:
+    new TestCommand(context(true, new ByteArrayOutputStream(), '--parallelism', value, '1'))
+
+    then:
+    def e = thrown(ParseException)
+    e.message == "Invalid parallelism: $value"
+
+    where:
+    value << ['0', '-2', 'abc']
+  }
+
+  def 'Default parallelism is the number of processors'() {
+    expect:
+    new TestCommand(context(true, new ByteArrayOutputStream(), '1')).parallelism ==
+        Runtime.runtime.availableProcessors()
+  }
+
+  private static CommandDescriptor descriptor(boolean ordered) {
+    CommandDescriptor.builder('cmd').description('Double the items')
+        .addArgument(Argument.builder('ITEM').description('The items').multiplicityUnlimited().build())
+        .parallelArgument('ITEM')
+        .factory({ CommandContext ctx -> ordered ? new TestCommand(ctx) : new UnorderedTestCommand(ctx) } as CommandFactory)
+        .build()
+  }
+
+  private static void execute(boolean ordered, OutputStream out, String... args) {
+    TestCommand.threads.clear()
+    CommandsCliMain.builder().mainCommand(descriptor(ordered)).build()
+        .execute(args, CommandIO.builder().out(out).build())
+  }
+
+  private static CommandContext context(boolean ordered, OutputStream out, String... args) {
+    TestCommand.threads.clear()
+    def descriptor = descriptor(ordered)
+    def options = new OptionsAggregator().aggregate(descriptor)
+    def commandLine = new DefaultParser().parse(options, args)
+    def route = new CommandRouteResolver(descriptor).resolve(commandLine, false)
+    new CommandContext(commandLine, route, null, CommandIO.builder().out(out).build(), new ResourceRegistry())
+  }
+
+  static class TestCommand extends ParallelArgumentCommand<Integer> {
+
+    static final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap())
+
+    TestCommand(CommandContext context) throws ParseException {
+      super(context)
+    }
+
+    @Override
+    protected void validate(CommandContext context) throws ParseException {
+    }
+
+    @Override
+    protected Integer process(String item) throws Exception {
+      threads << Thread.currentThread()
+      int value = Integer.parseInt(item)
+      Thread.sleep(value)
+      return value * 2
+    }
+
+    @Override
+    protected void emit(String item, Integer result) throws CommandException {
+      context.IO.outWriter.print("$item:$result ")
+    }
+  }
+
+  static class UnorderedTestCommand extends TestCommand {
+
+    UnorderedTestCommand(CommandContext context) throws ParseException {
+      super(context)
+    }
+
+    @Override
+    protected boolean isOrdered() {
+      return false
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import org.apache.commons.cli.DefaultParser
+import org.apache.commons.cli.Option
+import org.apache.commons.cli.Options
+import org.apache.commons.cli.ParseException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ParsedOptionsSpec extends Specification {
+
+  private Options options = new Options()
+      .addOption(Option.builder('v').longOpt('verbose').build())
+      .addOption(Option.builder('n').longOpt('count').hasArg().build())
+      .addOption(Option.builder().longOpt('ratio').hasArg().build())
+      .addOption(Option.builder('D').hasArgs().valueSeparator(',' as char).build())
+      .addOption(Option.builder('f').longOpt('file').hasArg().type(File).build())
+      .addOption(Option.builder().longOpt('size').hasArg().type(Number).build())
+      .addOption(Option.builder().longOpt('unused').hasArg().build())
+
+  @Unroll
+  def 'Has option: #name'() {
+    expect:
+    parse('-v', '--count', '3').hasOption(name) == expected
+
+    where:
+    name      | expected
+    'v'       | true
+    'verbose' | true
+    '-v'      | true
+    '--count' | true
+    'n'       | true
+    'unused'  | false
+    'ratio'   | false
+    'foo'     | false
+  }
+
+  def 'Get option values'() {
+    when:
+    def parsed = parse('-n', '3', '-D', 'a,b', '-D', 'c', '-v')
+
+    then:
+    parsed.getValue('count') == '3'
+    parsed.getValue('n') == '3'
+    parsed.getValue('D') == 'a'
+    parsed.getValues('D') == ['a', 'b', 'c']
+    parsed.getValues('count') == ['3']
+    parsed.getValue('v') == null
+    parsed.getValues('v') == []
+    parsed.getValue('unused') == null
+    parsed.getValue('unused', 'default') == 'default'
+    parsed.getValues('unused') == []
+  }
+
+  def 'Get typed option values'() {
+    when:
+    def parsed = parse('-n', '3', '--ratio', '0.5', '-f', 'foo.txt', '--size', '12')
+
+    then:
+    parsed.getInt('count', 1) == 3
+    parsed.getLong('count', 1) == 3L
+    parsed.getDouble('ratio', 1) == 0.5d
+    parsed.getInt('unused', 7) == 7
+    parsed.getLong('unused', 7) == 7L
+    parsed.getDouble('unused', 7) == 7d
+    parsed.getParsedValue('file') == new File('foo.txt')
+    parsed.getParsedValue('size') == 12L
+    parsed.getParsedValue('count') == '3'
+    parsed.getParsedValue('unused') == null
+  }
+
+  @Unroll
+  def 'Fail to get an invalid #type value'() {
+    given:
+    def parsed = parse('--count', 'abc', '--size', 'xyz')
+
+    when:
+    getter(parsed)
+
+    then:
+    def ex = thrown(ParseException)
+    ex.message == expectedMessage
+
+    where:
+    type     | getter                                       | expectedMessage
+    'int'    | { ParsedOptions p -> p.getInt('count', 1) }    | "Invalid value for option 'count': abc"
+    'long'   | { ParsedOptions p -> p.getLong('count', 1) }   | "Invalid value for option 'count': abc"
+    'double' | { ParsedOptions p -> p.getDouble('count', 1) } | "Invalid value for option 'count': abc"
+    'number' | { ParsedOptions p -> p.getParsedValue('size') } | 'For input string: "xyz"'
+  }
+
+  @Unroll
+  def 'Convert the value #value to numbers like the JDK parsers do'() {
+    given:
+    def parsed = parse('--count', value)
+
+    expect:
+    convert { parsed.getInt('count', 0) } == convert { Integer.parseInt(value.trim()) }
+    convert { parsed.getLong('count', 0) } == convert { Long.parseLong(value.trim()) }
+    convert { parsed.getDouble('count', 0) } == convert { Double.parseDouble(value.trim()) }
+
+    where:
+    value << [' 42 ', '-7', '+7', '2147483648', '9223372036854775808', '1.5', '.5', '1e3', '0x1p3', 'NaN', '-Infinity',
+              'Nope', '-', '+', '', 'abc', '12abc']
+  }
+
+  def 'Build the parsed options of a context once'() {
+    given:
+    def commandLine = new DefaultParser().parse(options, ['-v'] as String[])
+    def context = new CommandContext(commandLine, Mock(CommandRoute), null)
+
+    expect:
+    context.parsedOptions.hasOption('verbose')
+    context.parsedOptions.is(context.parsedOptions)
+  }
+
+  private static Object convert(Closure<?> conversion) {
+    try {
+      conversion()
+    } catch (ParseException | NumberFormatException ex) {
+      'invalid'
+    }
+  }
+
+  private ParsedOptions parse(String... args) {
+    ParsedOptions.of(new DefaultParser().parse(options, args))
+  }
+}
@@ -0,0 +1,246 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import java.nio.file.Files
+import java.nio.file.Path
+import org.apache.commons.cli.Option
+import org.apache.commons.cli.ParseException
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class PluginIndexSpec extends Specification {
+
+  @Rule
+  TemporaryFolder tmp = new TemporaryFolder()
+
+  File pluginDir
+  ClassLoader classLoader
+  Path cacheFile
+
+  def setup() {
+    pluginDir = tmp.newFolder('plugin')
+    classLoader = new URLClassLoader([pluginDir.toURI().toURL()] as URL[], PluginIndexSpec.classLoader)
+    cacheFile = tmp.root.toPath().resolve('cache').resolve('plugins.idx')
+    ToolsPlugin.reset()
+    registerPlugins(ToolsPlugin, MoreToolsPlugin, OtherPlugin)
+  }
+
+  def 'Discover plugins and cache the index'() {
+    when:
+    def index = PluginIndex.builder().classLoader(classLoader).cacheFile(cacheFile).build()
+
+    then:
+    index.pluginClasses == [tools: [ToolsPlugin.name, MoreToolsPlugin.name], other: [OtherPlugin.name]]
+    !index.fromCache
+    Files.exists(cacheFile)
+    ToolsPlugin.subCommandCalls == 0
+
+    when:
+    ToolsPlugin.reset()
+    def cached = PluginIndex.builder().classLoader(classLoader).cacheFile(cacheFile).build()
+
+    then:
+    cached.pluginClasses == index.pluginClasses
+    cached.fromCache
+    ToolsPlugin.instances == 0
+  }
+
+  def 'Discover plugins again when the classpath changes'() {
+    given:
+    PluginIndex.builder().classLoader(classLoader).cacheFile(cacheFile).build().pluginClasses
+
+    when:
+    registerPlugins(ToolsPlugin)
+    serviceFile().setLastModified(serviceFile().lastModified() - 10000)
+    def index = PluginIndex.builder().classLoader(classLoader).cacheFile(cacheFile).build()
+
+    then:
+    !index.fromCache
+    index.pluginClasses == [tools: [ToolsPlugin.name]]
+  }
+
+  def 'Discover plugins again when the cache file is corrupted'() {
+    given:
+    Files.createDirectories(cacheFile.parent)
+    cacheFile.toFile().text = 'something else'
+
+    when:
+    def index = PluginIndex.builder().classLoader(classLoader).cacheFile(cacheFile).build()
+
+    then:
+    !index.fromCache
+    index.pluginClasses.keySet() == ['tools', 'other'] as Set
+  }
+
+  def 'Discover plugins without a cache file'() {
+    expect:
+    !PluginIndex.builder().classLoader(classLoader).build().fromCache
+  }
+
+  def 'Load plugin sub-commands only when their route is resolved'() {
+    given:
+    def out = new ByteArrayOutputStream()
+    def main = CommandsCliMain.builder().mainRoute(root(index())).build()
+
+    when:
+    main.execute(['core'] as String[], CommandIO.builder().out(out).build())
+
+    then:
+    out.toString() == 'core'
+    ToolsPlugin.subCommandCalls == 0
+    ToolsPlugin.instances == 0
+
+    when:
+    main.execute(['tools', 'hello', '--greeting', 'Hi'] as String[], CommandIO.builder().out(out).build())
+    main.execute(['tools', 'bye'] as String[], CommandIO.builder().out(out).build())
+
+    then:
+    out.toString() == 'coreHi hellobye'
+    ToolsPlugin.subCommandCalls == 1
+  }
+
+  def 'Load plugin sub-commands of a command request'() {
+    given:
+    def out = new ByteArrayOutputStream()
+    def main = CommandsCliMain.builder().mainRoute(root(index())).build()
+
+    when:
+    main.execute(CommandRequest.builder('tools', 'hello').option('greeting', 'Hey').build(),
+        CommandIO.builder().out(out).build())
+
+    then:
+    out.toString() == 'Hey hello'
+  }
+
+  def 'List plugin sub-commands in the usage help of their route'() {
+    given:
+    def out = new ByteArrayOutputStream()
+    def main = CommandsCliMain.builder().mainRoute(root(index())).build()
+
+    when:
+    main.execute(['tools', '--help'] as String[], CommandIO.builder().out(out).build())
+
+    then:
+    out.toString().contains('Say hello')
+    out.toString().contains('Say bye')
+  }
+
+  def 'Fail to resolve an unknown command of a route with plugins'() {
+    given:
+    def route = RouteDescriptor.builder('empty').description('No plugins').plugins(index()).build()
+    def main = CommandsCliMain.builder().mainRoute(RouteDescriptor.builder('cli').description('The CLI')
+        .addSubCommand(route).build()).build()
+
+    when:
+    main.execute(['empty', 'foo'] as String[])
+
+    then:
+    def ex = thrown(ParseException)
+    ex.message == 'Unknown command: foo'
+    route.subCommands.isEmpty()
+  }
+
+  def 'Fail to load a plugin sub-command which already exists'() {
+    given:
+    def route = RouteDescriptor.builder('tools').description('Tools')
+        .addSubCommand(command('bye', 'Static bye'))
+        .plugins(index())
+        .build()
+
+    when:
+    route.subCommands
+
+    then:
+    def ex = thrown(IllegalStateException)
+    ex.message == "Sub-command 'bye' contributed by a plugin already exists for route 'tools'"
+  }
+
+  private PluginIndex index() {
+    PluginIndex.builder().classLoader(classLoader).cacheFile(cacheFile).build()
+  }
+
+  private static RouteDescriptor root(PluginIndex index) {
+    RouteDescriptor.builder('cli').description('The CLI')
+        .addSubCommand(command('core', 'The core command'))
+        .addSubCommand(RouteDescriptor.builder('tools').description('Tools').plugins(index).build())
+        .build()
+  }
+
+  private void registerPlugins(Class... plugins) {
+    def file = serviceFile()
+    file.parentFile.mkdirs()
+    file.text = plugins*.name.join('\n') + '\n'
+  }
+
+  private File serviceFile() {
+    new File(pluginDir, PluginIndex.SERVICE_FILE)
+  }
+
+  static CommandDescriptor command(String name, String description, Option... options) {
+    def builder = CommandDescriptor.builder(name).description(description)
+        .factory({ ctx ->
+          { -> ctx.IO.outWriter.print(ctx.commandLine.hasOption('greeting')
+              ? "${ctx.commandLine.getOptionValue('greeting')} $name" : name) } as Command
+        } as CommandFactory)
+    options.each { builder.addOption(it) }
+    builder.build()
+  }
+
+  static class ToolsPlugin implements CommandPlugin {
+    static int instances
+    static int subCommandCalls
+
+    static void reset() {
+      instances = 0
+      subCommandCalls = 0
+    }
+
+    ToolsPlugin() {
+      instances++
+    }
+
+    @Override
+    String getRoute() {
+      'tools'
+    }
+
+    @Override
+    List<Descriptor> getSubCommands() {
+      subCommandCalls++
+      [command('hello', 'Say hello', Option.builder().longOpt('greeting').hasArg().desc('The greeting').build())]
+    }
+  }
+
+  static class MoreToolsPlugin implements CommandPlugin {
+    @Override
+    String getRoute() {
+      'tools'
+    }
+
+    @Override
+    List<Descriptor> getSubCommands() {
+      [command('bye', 'Say bye')]
+    }
+  }
+
+  static class OtherPlugin implements CommandPlugin {
+    @Override
+    String getRoute() {
+      'other'
+    }
+
+    @Override
+    List<Descriptor> getSubCommands() {
+      [command('other', 'Other')]
+    }
+  }
+}
@@ -0,0 +1,280 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import java.lang.management.ManagementFactory
+import java.lang.ref.WeakReference
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import javax.tools.ToolProvider
+import org.apache.commons.cli.Option
+import org.apache.commons.cli.ParseException
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Requires
+import spock.lang.Specification
+
+@Requires({ ToolProvider.systemJavaCompiler != null })
+class PluginLoaderSpec extends Specification {
+
+  @Rule
+  TemporaryFolder tmp = new TemporaryFolder()
+
+  File pluginDir
+  PluginLoader loader
+
+  def setup() {
+    pluginDir = tmp.newFolder('plugin')
+  }
+
+  def cleanup() {
+    loader?.close()
+  }
+
+  def 'Swap the sub-commands of a route on reload'() {
+    given:
+    compilePlugin('v1', 'quiet')
+    loader = PluginLoader.builder(pluginDir.toPath()).build()
+    def main = main(loader)
+
+    expect:
+    execute(main, 'tools', 'echo', '--quiet') == 'v1'
+    loader.generation == 1
+
+    when:
+    compilePlugin('v2', 'loud')
+    loader.reload()
+
+    then:
+    loader.generation == 2
+    execute(main, 'tools', 'echo', '--loud') == 'v2'
+
+    when:
+    execute(main, 'tools', 'echo', '--quiet')
+
+    then:
+    thrown(ParseException)
+  }
+
+  def 'Keep the previous plugins if the reload fails'() {
+    given:
+    compilePlugin('v1', 'quiet')
+    loader = PluginLoader.builder(pluginDir.toPath()).build()
+    def main = main(loader)
+
+    when:
+    new File(pluginDir, PluginIndex.SERVICE_FILE).delete()
+    loader.reload()
+
+    then:
+    def ex = thrown(IllegalStateException)
+    ex.message.startsWith('No command plugins found in: ')
+    loader.generation == 1
+    execute(main, 'tools', 'echo') == 'v1'
+  }
+
+  def 'Wait for the in-flight invocations before closing the previous plugins'() {
+    given:
+    compilePlugin('v1', 'quiet')
+    loader = PluginLoader.builder(pluginDir.toPath()).build()
+    def main = main(loader)
+    def input = new PipedOutputStream()
+    def out = new LatchOutputStream()
+    def waiting = Thread.start {
+      main.execute(['tools', 'wait'] as String[], CommandIO.builder().in(new PipedInputStream(input)).out(out).build())
+    }
+    assert out.written.await(10, TimeUnit.SECONDS)
+
+    when:
+    compilePlugin('v2', 'loud')
+    def reload = Thread.start { loader.reload() }
+    reload.join(200)
+
+    then:
+    reload.alive
+    execute(main, 'tools', 'echo') == 'v2'
+
+    when:
+    input.write('x'.bytes)
+    input.close()
+    waiting.join(10000)
+    reload.join(10000)
+
+    then:
+    out.toString() == 'waiting v1'
+    !reload.alive
+    loader.generation == 2
+  }
+
+  def 'Reload a command 1000 times without metaspace growth'() {
+    given:
+    compilePlugin('v1', 'quiet')
+    loader = PluginLoader.builder(pluginDir.toPath()).build()
+    def main = main(loader)
+    def firstClassLoader = new WeakReference(loader.@current.classLoader)
+    def classLoading = ManagementFactory.classLoadingMXBean
+    def metaspace = ManagementFactory.memoryPoolMXBeans.find { it.name == 'Metaspace' }
+    100.times {
+      loader.reload()
+      assert execute(main, 'tools', 'echo') == 'v1'
+    }
+    collectGarbage(firstClassLoader)
+    def loadedClasses = classLoading.loadedClassCount
+    def usedMetaspace = metaspace?.usage?.used
+
+    when:
+    1000.times {
+      loader.reload()
+      assert execute(main, 'tools', 'echo') == 'v1'
+    }
+    collectGarbage(null)
+
+    then:
+    firstClassLoader.get() == null
+    loader.generation == 1101
+    classLoading.loadedClassCount - loadedClasses < 300 //3000 classes if the 3 plugin classes were not unloaded
+    metaspace == null || metaspace.usage.used - usedMetaspace < 1024 * 1024
+  }
+
+  def 'Fail to load a plugin which is visible to the parent class loader'() {
+    given:
+    def serviceFile = new File(pluginDir, PluginIndex.SERVICE_FILE)
+    serviceFile.parentFile.mkdirs()
+    serviceFile.text = PluginIndexSpec.ToolsPlugin.name + '\n'
+
+    when:
+    PluginLoader.builder(pluginDir.toPath()).build()
+
+    then:
+    def ex = thrown(IllegalStateException)
+    ex.message == 'Command plugin is visible to the parent class loader and cannot be reloaded: ' +
+        PluginIndexSpec.ToolsPlugin.name
+  }
+
+  def 'Remove the sub-commands once closed'() {
+    given:
+    compilePlugin('v1', 'quiet')
+    loader = PluginLoader.builder(pluginDir.toPath()).build()
+    def main = main(loader)
+
+    when:
+    loader.close()
+    execute(main, 'tools', 'echo')
+
+    then:
+    thrown(ParseException)
+
+    when:
+    loader.reload()
+
+    then:
+    def ex = thrown(IllegalStateException)
+    ex.message == 'Plugin loader is closed'
+  }
+
+  private static CommandsCliMain main(PluginLoader loader) {
+    CommandsCliMain.builder().mainRoute(RouteDescriptor.builder('cli').description('The CLI')
+        .addSubCommand(RouteDescriptor.builder('tools').description('Tools').plugins(loader).build())
+        .build()).build()
+  }
+
+  private static String execute(CommandsCliMain main, String... args) {
+    def out = new ByteArrayOutputStream()
+    main.execute(args, CommandIO.builder().out(out).build())
+    out.toString()
+  }
+
+  private static void collectGarbage(WeakReference<?> reference) {
+    for (int i = 0; i < 10 && (i < 2 || reference?.get() != null); i++) {
+      System.gc()
+      Thread.sleep(50)
+    }
+  }
+
+  /**
+   * Compile a plugin with an <tt>echo</tt> command which prints the version and has the given option, and a <tt>wait</tt>
+   * command which prints the version once a byte is read from its input
+   */
+  private void compilePlugin(String version, String option) {
+    def sourceDir = new File(tmp.root, "src-$version/reloadable")
+    sourceDir.mkdirs()
+    def source = new File(sourceDir, 'ToolsPlugin.java')
+    source.text = """
+        package reloadable;
+
+        import com.ebay.sd.commons.cli.*;
+        import java.io.IOException;
+        import java.util.ArrayList;
+        import java.util.List;
+        import org.apache.commons.cli.Option;
+
+        public class ToolsPlugin implements CommandPlugin {
+          public String getRoute() {
+            return "tools";
+          }
+
+          public List<Descriptor> getSubCommands() {
+            List<Descriptor> subCommands = new ArrayList<>();
+            subCommands.add(CommandDescriptor.builder("echo").description("Print the version")
+                .addOption(new Option(null, "$option", false, "An option"))
+                .factory(new VersionFactory(false))
+                .build());
+            subCommands.add(CommandDescriptor.builder("wait").description("Print the version once a byte is read")
+                .factory(new VersionFactory(true))
+                .build());
+            return subCommands;
+          }
+
+          public static class VersionFactory implements CommandFactory {
+            private final boolean wait;
+
+            public VersionFactory(boolean wait) {
+              this.wait = wait;
+            }
+
+            public Command create(final CommandContext context) {
+              return new Command() {
+                public void execute() throws CommandException {
+                  if (wait) {
+                    context.getIO().getOutWriter().print("waiting ");
+                    context.getIO().getOutWriter().flush();
+                    try {
+                      context.getIO().getIn().read();
+                    } catch (IOException e) {
+                      throw new CommandException(e.getMessage(), e);
+                    }
+                  }
+                  context.getIO().getOutWriter().print("$version");
+                }
+              };
+            }
+          }
+        }
+        """.stripIndent()
+    def classpath = [CommandPlugin, Option].collect {
+      new File(it.protectionDomain.codeSource.location.toURI()).path
+    }.join(File.pathSeparator)
+    assert ToolProvider.systemJavaCompiler.run(null, null, null,
+        '-d', pluginDir.path, '-cp', classpath, source.path) == 0
+    def serviceFile = new File(pluginDir, PluginIndex.SERVICE_FILE)
+    serviceFile.parentFile.mkdirs()
+    serviceFile.text = '# The tools plugin\nreloadable.ToolsPlugin\n'
+  }
+
+  static class LatchOutputStream extends ByteArrayOutputStream {
+    final CountDownLatch written = new CountDownLatch(1)
+
+    @Override
+    synchronized void write(byte[] b, int off, int len) {
+      super.write(b, off, len)
+      written.countDown()
+    }
+  }
+}
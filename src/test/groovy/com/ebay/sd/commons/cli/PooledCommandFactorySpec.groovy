@@ -0,0 +1,112 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import org.apache.commons.cli.ParseException
+import spock.lang.Specification
+
+class PooledCommandFactorySpec extends Specification {
+
+  def 'Create a new command when the pool is empty'() {
+    given:
+    def context = Mock(CommandContext)
+    def delegate = Mock(CommandFactory)
+    def command = new CountingCommand()
+    def factory = PooledCommandFactory.of(delegate, 2)
+
+    when:
+    def created = factory.create(context)
+
+    then:
+    1 * delegate.create(context) >> command
+    created.is(command)
+    command.resets == 0
+  }
+
+  def 'Reuse a released command'() {
+    given:
+    def context1 = Mock(CommandContext)
+    def context2 = Mock(CommandContext)
+    def delegate = Mock(CommandFactory)
+    def factory = PooledCommandFactory.of(delegate, 2)
+
+    when:
+    def command1 = factory.create(context1)
+    factory.release(command1)
+
+    then:
+    1 * delegate.create(context1) >> new CountingCommand()
+    factory.idleCount == 1
+
+    when:
+    def command2 = factory.create(context2)
+
+    then:
+    0 * delegate.create(_)
+    command2.is(command1)
+    command2.context.is(context2)
+    command2.resets == 1
+    factory.idleCount == 0
+  }
+
+  def 'Keep up to max idle commands'() {
+    given:
+    def factory = PooledCommandFactory.of(Mock(CommandFactory), 2)
+
+    when:
+    3.times { factory.release(new CountingCommand()) }
+
+    then:
+    factory.idleCount == 2
+  }
+
+  def 'Do not pool commands which are not reusable'() {
+    given:
+    def factory = PooledCommandFactory.of(Mock(CommandFactory), 2)
+
+    when:
+    factory.release(Mock(Command))
+
+    then:
+    factory.idleCount == 0
+  }
+
+  def 'Fail to create with invalid params'() {
+    when:
+    PooledCommandFactory.of(null, 1)
+
+    then:
+    def e1 = thrown(NullPointerException)
+    e1.message == 'delegate is required'
+
+    when:
+    PooledCommandFactory.of(Mock(CommandFactory), -1)
+
+    then:
+    def e2 = thrown(IllegalArgumentException)
+    e2.message == 'maxIdle must be non-negative'
+  }
+
+  static class CountingCommand implements ReusableCommand {
+
+    CommandContext context
+    int resets
+
+    @Override
+    void reset(CommandContext commandContext) throws ParseException {
+      context = commandContext
+      resets++
+    }
+
+    @Override
+    void execute() throws CommandException {
+    }
+  }
+}
@@ -0,0 +1,264 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import groovy.transform.CompileStatic
+import org.apache.commons.cli.ParseException
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Requires
+import spock.lang.Specification
+
+import java.nio.charset.Charset
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.GZIPOutputStream
+
+class RecordCommandSpec extends Specification {
+
+  @Rule
+  TemporaryFolder temp = new TemporaryFolder()
+
+  ByteArrayOutputStream out = new ByteArrayOutputStream()
+
+  def 'Process records in parallel and write the output in the order of the input'() {
+    given:
+    def lines = (1..5000).collect { "line $it" }
+    def file = write('input.txt', lines.join('\n') + '\n')
+
+    when:
+    execute(new TestRecordFactory(chunkSize: 64, jitter: true), '--parallelism', '4', file.toString())
+
+    then:
+    out.toString('UTF-8').readLines() == lines.collect { it.toUpperCase() }
+  }
+
+  def 'Process lines longer than the chunk size, CRLF line endings and a last line without a line separator'() {
+    given:
+    def lines = ['a' * 1000, 'b', 'c' * 300, 'last']
+    def file = write('input.txt', lines.join('\r\n'))
+
+    when:
+    execute(new TestRecordFactory(chunkSize: 16), file.toString())
+
+    then:
+    out.toString('UTF-8') == lines.collect { it.toUpperCase() + '\n' }.join('')
+  }
+
+  def 'Process multi-byte characters split across reads'() {
+    given:
+    def lines = (1..500).collect { "שלום עולם $it ü" }
+    def file = write('input.txt', lines.join('\n') + '\n')
+
+    when:
+    execute(new TestRecordFactory(chunkSize: 7), '--parallelism', '3', file.toString())
+
+    then:
+    out.toString('UTF-8').readLines() == lines.collect { it.toUpperCase() }
+  }
+
+  def 'Process several inputs, gzip compressed or the standard input'() {
+    given:
+    def compressed = temp.root.toPath().resolve('input.gz')
+    new GZIPOutputStream(Files.newOutputStream(compressed)).withStream { it.write('b\nc\n'.getBytes('UTF-8')) }
+    def plain = write('input.txt', 'a\n')
+    def io = CommandIO.builder().in(new ByteArrayInputStream('d\ne'.getBytes('UTF-8'))).out(out).interactive(false).build()
+
+    when:
+    main(new TestRecordFactory(chunkSize: 1)).execute([plain.toString(), compressed.toString(), '-'] as String[], io)
+
+    then:
+    out.toString('UTF-8') == 'A\nB\nC\nD\nE\n'
+  }
+
+  def 'Process an empty input'() {
+    given:
+    def file = write('empty.txt', '')
+
+    when:
+    execute(new TestRecordFactory(), file.toString())
+
+    then:
+    out.size() == 0
+  }
+
+  def 'Fail on a record which fails to process'() {
+    given:
+    def file = write('input.txt', (1..1000).collect { it == 700 ? 'fail' : "line $it" }.join('\n'))
+
+    when:
+    execute(new TestRecordFactory(chunkSize: 32), '--parallelism', '4', file.toString())
+
+    then:
+    def ex = thrown(CommandException)
+    ex.message == 'Failed to process a record: bad record: fail'
+    !out.toString('UTF-8').contains('LINE 700')
+  }
+
+  def 'Fail on a record which fails to process with an error'() {
+    given:
+    def file = write('input.txt', (1..1000).collect { it == 700 ? 'error' : "line $it" }.join('\n'))
+
+    when:
+    execute(new TestRecordFactory(chunkSize: 32), '--parallelism', '4', file.toString())
+
+    then:
+    def ex = thrown(CommandException)
+    ex.message == 'Failed to process a record: broken record: error'
+    ex.cause instanceof AssertionError
+    !out.toString('UTF-8').contains('LINE 701')
+  }
+
+  def 'Fail on an invalid parallelism'() {
+    given:
+    def file = write('input.txt', 'a')
+
+    when:
+    execute(new TestRecordFactory(), '--parallelism', '0', file.toString())
+
+    then:
+    def ex = thrown(ParseException)
+    ex.message == 'Invalid parallelism: 0'
+  }
+
+  def 'Record argument declares an input file argument and the parallelism option'() {
+    when:
+    def descriptor = descriptor(new TestRecordFactory())
+
+    then:
+    descriptor.recordArgument == 'FILE'
+    descriptor.inputFileArguments == ['FILE'] as Set
+    descriptor.options == [ParallelArgumentCommand.PARALLELISM_OPTION]
+
+    when:
+    CommandDescriptor.builder('cmd')
+        .description('A command')
+        .recordArgument('MISSING')
+        .factory(new TestRecordFactory())
+        .build()
+
+    then:
+    def ex = thrown(IllegalArgumentException)
+    ex.message == "Record argument 'MISSING' does not exist for command 'cmd'"
+  }
+
+  @Requires({ Boolean.getBoolean('benchmark') })
+  def 'Compare the record processing throughput with reading the input'() {
+    given:
+    def file = temp.root.toPath().resolve('large.txt')
+    Files.newBufferedWriter(file, Charset.forName('UTF-8')).withWriter { writer ->
+      (1..20_000_000).each { writer.write("line number $it with some more content\n") }
+    }
+    def size = Files.size(file)
+    def discard = CommandIO.builder().out(WarmUp.DiscardOutputStream.INSTANCE).interactive(false).build()
+
+    when:
+    def results = [:]
+    3.times {
+      results.read = measure { readAll(file) }
+      results.records = measure { main(new TestRecordFactory()).execute([file.toString()] as String[], discard) }
+    }
+    results.each { name, nanos -> println String.format('%-8s %.1f MB/s', name, size / 1e6 / (nanos / 1e9)) }
+
+    then:
+    results.records > 0
+  }
+
+  private static long measure(Closure body) {
+    long start = System.nanoTime()
+    body()
+    System.nanoTime() - start
+  }
+
+  @CompileStatic
+  private static void readAll(Path file) {
+    byte[] buffer = new byte[1 << 20]
+    InputStream input = Files.newInputStream(file)
+    try {
+      while (input.read(buffer) >= 0) {
+      }
+    } finally {
+      input.close()
+    }
+  }
+
+  private void execute(TestRecordFactory factory, String... args) {
+    main(factory).execute(args, CommandIO.builder().out(out).interactive(false).build())
+  }
+
+  private static CommandsCliMain main(TestRecordFactory factory) {
+    CommandsCliMain.builder().mainCommand(descriptor(factory)).build()
+  }
+
+  private static CommandDescriptor descriptor(TestRecordFactory factory) {
+    CommandDescriptor.builder('upper')
+        .description('Upper case the lines')
+        .addArgument(Argument.builder('FILE').description('The input files').multiplicityUnlimited().build())
+        .recordArgument('FILE')
+        .factory(factory)
+        .build()
+  }
+
+  private Path write(String name, String content) {
+    def file = temp.root.toPath().resolve(name)
+    file.setText(content, 'UTF-8')
+    file
+  }
+
+  static class TestRecordFactory implements CommandFactory {
+
+    int chunkSize = RecordCommand.DEFAULT_CHUNK_SIZE
+    boolean jitter
+
+    @Override
+    Command create(CommandContext context) throws ParseException {
+      new UpperCaseCommand(context, chunkSize, jitter)
+    }
+  }
+
+  @CompileStatic
+  static class UpperCaseCommand extends RecordCommand {
+
+    private final int chunkSize
+    private final boolean jitter
+
+    UpperCaseCommand(CommandContext context, int chunkSize, boolean jitter) {
+      super(context)
+      this.chunkSize = chunkSize
+      this.jitter = jitter
+    }
+
+    @Override
+    protected void validate(CommandContext commandContext) throws ParseException {
+    }
+
+    @Override
+    protected int getChunkSize() {
+      chunkSize
+    }
+
+    @Override
+    protected void process(CharSequence record, RecordCommand.Output output) throws Exception {
+      if (record.length() == 4 && record.toString() == 'fail') {
+        throw new IllegalArgumentException('bad record: fail')
+      }
+      if (record.length() == 5 && record.toString() == 'error') {
+        throw new AssertionError((Object) 'broken record: error')
+      }
+      if (jitter && record.length() > 0 && record.charAt(record.length() - 1) == ((char) '7')) {
+        Thread.sleep(1)
+      }
+      for (int i = 0; i < record.length(); i++) {
+        output.append(Character.toUpperCase(record.charAt(i)))
+      }
+      output.newLine()
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class RecordEncoderSpec extends Specification {
+
+  @Unroll
+  def 'Encode records as #format'() {
+    given:
+    def out = new StringWriter()
+    def encoder = RecordEncoder.create(format, out, 'name', 'size', 'ok')
+
+    when:
+    encoder.writeRecord('foo', 12, true)
+    encoder.beginRecord().value('bar').value(-3.5d).value(false).endRecord()
+    encoder.close()
+
+    then:
+    out.toString() == expected
+    encoder.recordCount == 2
+
+    where:
+    format              | expected
+    OutputFormat.TEXT   | 'foo 12 true\nbar -3.5 false\n'
+    OutputFormat.JSON   | '[\n{"name":"foo","size":12,"ok":true},\n{"name":"bar","size":-3.5,"ok":false}\n]\n'
+    OutputFormat.JSONL  | '{"name":"foo","size":12,"ok":true}\n{"name":"bar","size":-3.5,"ok":false}\n'
+    OutputFormat.CSV    | 'name,size,ok\nfoo,12,true\nbar,-3.5,false\n'
+    OutputFormat.TSV    | 'name\tsize\tok\nfoo\t12\ttrue\nbar\t-3.5\tfalse\n'
+  }
+
+  @Unroll
+  def 'Encode no records as #format'() {
+    given:
+    def out = new StringWriter()
+
+    when:
+    RecordEncoder.create(format, out, 'a', 'b').close()
+
+    then:
+    out.toString() == expected
+
+    where:
+    format              | expected
+    OutputFormat.TEXT   | ''
+    OutputFormat.JSON   | '[]\n'
+    OutputFormat.JSONL  | ''
+    OutputFormat.CSV    | 'a,b\n'
+    OutputFormat.TSV    | 'a\tb\n'
+  }
+
+  @Unroll
+  def 'Escape special characters and nulls in #format'() {
+    given:
+    def out = new StringWriter()
+    def encoder = RecordEncoder.create(format, out, 'a', 'b')
+
+    when:
+    encoder.writeRecord('x,"y"\tz\n\\\u0001', null)
+    encoder.close()
+
+    then:
+    out.toString() == expected
+
+    where:
+    format              | expected
+    OutputFormat.JSONL  | '{"a":"x,\\"y\\"\\tz\\n\\\\\\u0001","b":null}\n'
+    OutputFormat.CSV    | 'a,b\n"x,""y""\tz\n\\\u0001",\n'
+    OutputFormat.TSV    | 'a\tb\nx,"y"\\tz\\n\\\\\u0001\t\n'
+  }
+
+  @Unroll
+  def 'Encode number #value'() {
+    given:
+    def out = new StringWriter()
+    def encoder = RecordEncoder.create(OutputFormat.JSONL, out, 'n')
+
+    when:
+    encoder.writeRecord(value)
+
+    then:
+    out.toString() == "{\"n\":$expected}\n"
+
+    where:
+    value                    | expected
+    0                        | '0'
+    -1                       | '-1'
+    Long.MAX_VALUE           | '9223372036854775807'
+    Long.MIN_VALUE           | '-9223372036854775808'
+    7 as short               | '7'
+    2.0d                     | '2'
+    0.25f                    | '0.25'
+    1e20d                    | '1.0E20'
+    Double.NaN               | 'null'
+    Double.POSITIVE_INFINITY | 'null'
+    new BigDecimal('1.5')    | '1.5'
+  }
+
+  def 'Quote column names in JSON'() {
+    given:
+    def out = new StringWriter()
+    def encoder = RecordEncoder.create(OutputFormat.JSONL, out, 'a"b')
+
+    when:
+    encoder.writeRecord('c')
+
+    then:
+    out.toString() == '{"a\\"b":"c"}\n'
+  }
+
+  def 'Close does not close the underlying writer'() {
+    given:
+    def out = Mock(Writer)
+    def encoder = RecordEncoder.create(OutputFormat.JSONL, out, 'a')
+
+    when:
+    encoder.close()
+    encoder.close()
+
+    then:
+    1 * out.flush()
+    0 * out.close()
+  }
+
+  @Unroll
+  def 'Fail on invalid usage: #message'() {
+    given:
+    def encoder = RecordEncoder.create(OutputFormat.CSV, new StringWriter(), 'a', 'b')
+
+    when:
+    usage(encoder)
+
+    then:
+    def e = thrown(IllegalStateException)
+    e.message == message
+
+    where:
+    message                                   | usage
+    'Record was not begun'                    | { RecordEncoder enc -> enc.value('x') }
+    'Record was not begun'                    | { RecordEncoder enc -> enc.endRecord() }
+    'Previous record was not ended'           | { RecordEncoder enc -> enc.beginRecord().beginRecord() }
+    'Expected 2 values in record but got 1'   | { RecordEncoder enc -> enc.beginRecord().value('x').endRecord() }
+    'Too many values in record, expected 2'   | { RecordEncoder enc -> enc.writeRecord('x', 'y', 'z') }
+    'Last record was not ended'               | { RecordEncoder enc -> enc.beginRecord().close() }
+    'Encoder is closed'                       | { RecordEncoder enc -> enc.close(); enc.beginRecord() }
+  }
+
+  def 'Fail to create without columns'() {
+    when:
+    RecordEncoder.create(OutputFormat.CSV, new StringWriter())
+
+    then:
+    def e = thrown(IllegalArgumentException)
+    e.message == 'At least one column is required'
+  }
+}
@@ -0,0 +1,148 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+class ResourceRegistrySpec extends Specification {
+
+  def 'Create a resource lazily, only once'() {
+    given:
+    def creations = new AtomicInteger()
+    def resource = SharedResource.of('foo', { creations.incrementAndGet(); new Object() } as SharedResource.Factory)
+    def registry = new ResourceRegistry()
+
+    expect:
+    !registry.isCreated(resource)
+    creations.get() == 0
+
+    when:
+    def value1 = registry.get(resource)
+    def value2 = registry.get(resource)
+
+    then:
+    value1.is(value2)
+    creations.get() == 1
+    registry.isCreated(resource)
+  }
+
+  def 'Create a resource only once when used concurrently'() {
+    given:
+    def creations = new AtomicInteger()
+    def resource = SharedResource.of('foo', {
+      creations.incrementAndGet()
+      Thread.sleep(10)
+      new Object()
+    } as SharedResource.Factory)
+    def registry = new ResourceRegistry()
+    def start = new CountDownLatch(1)
+    def values = Collections.synchronizedList([])
+
+    when:
+    def threads = (1..8).collect { Thread.start { start.await(); values << registry.get(resource) } }
+    start.countDown()
+    threads*.join()
+
+    then:
+    creations.get() == 1
+    values.size() == 8
+    values.every { it.is(values[0]) }
+  }
+
+  def 'Separate registries create separate resources'() {
+    given:
+    def resource = SharedResource.of('foo', { new Object() } as SharedResource.Factory)
+
+    expect:
+    !new ResourceRegistry().get(resource).is(new ResourceRegistry().get(resource))
+  }
+
+  def 'Close resources in reverse order of creation'() {
+    given:
+    def closed = []
+    def resource1 = SharedResource.of('r1', { { -> closed << 'r1' } as Closeable } as SharedResource.Factory)
+    def resource2 = SharedResource.of('r2', { { -> closed << 'r2' } as Closeable } as SharedResource.Factory)
+    def resource3 = SharedResource.of('r3', { { -> closed << 'r3' } as Closeable } as SharedResource.Factory)
+    def registry = new ResourceRegistry()
+    registry.get(resource2)
+    registry.get(resource1)
+
+    when:
+    registry.close()
+    registry.close()
+
+    then:
+    closed == ['r1', 'r2']
+    !registry.isCreated(resource1)
+
+    when:
+    registry.get(resource3)
+
+    then:
+    def e = thrown(IllegalStateException)
+    e.message == 'Resource registry is closed'
+  }
+
+  def 'Close all resources even if some fail to close'() {
+    given:
+    def closed = []
+    def failing = SharedResource.of('failing', { { -> throw new IOException('oops') } as Closeable } as SharedResource.Factory)
+    def ok = SharedResource.of('ok', { { -> closed << 'ok' } as Closeable } as SharedResource.Factory)
+    def registry = new ResourceRegistry()
+    registry.get(ok)
+    registry.get(failing)
+
+    when:
+    registry.close()
+
+    then:
+    def e = thrown(IOException)
+    e.message == 'Failed to close shared resource: failing'
+    closed == ['ok']
+  }
+
+  def 'Fail to create a resource'() {
+    given:
+    def attempts = 0
+    def resource = SharedResource.of('foo', {
+      if (attempts++ == 0) {
+        throw new IOException('connection refused')
+      }
+      'ok'
+    } as SharedResource.Factory)
+    def registry = new ResourceRegistry()
+
+    when:
+    registry.get(resource)
+
+    then:
+    def e = thrown(IllegalStateException)
+    e.message == 'Failed to create shared resource: foo: connection refused'
+    !registry.isCreated(resource)
+
+    expect: 'creation is retried on next use'
+    registry.get(resource) == 'ok'
+  }
+
+  def 'Fail to create a null resource'() {
+    given:
+    def resource = SharedResource.of('foo', { null } as SharedResource.Factory)
+
+    when:
+    new ResourceRegistry().get(resource)
+
+    then:
+    def e = thrown(NullPointerException)
+    e.message == 'shared resource foo is required'
+  }
+}
@@ -0,0 +1,198 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import org.apache.commons.cli.DefaultParser
+import org.apache.commons.cli.Option
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+
+class ResultCacheSpec extends Specification {
+
+  @Rule
+  TemporaryFolder temp = new TemporaryFolder()
+
+  Path cacheDir
+  Path inputFile
+  ResultCache cache
+
+  def setup() {
+    cacheDir = temp.newFolder('cache').toPath()
+    inputFile = temp.newFile('input.txt').toPath()
+    inputFile.text = 'input'
+    cache = ResultCache.builder().directory(cacheDir).build()
+  }
+
+  def 'Compute the same key for the same execution'() {
+    expect:
+    key('-a', '1', '-b', inputFile.toString()) == key('-b', '-a', '1', inputFile.toString())
+    key('-a', '1', inputFile.toString()) ==~ /[0-9a-f]{64}/
+  }
+
+  def 'Compute different keys for different executions'() {
+    given:
+    def keys = [
+        key(inputFile.toString()),
+        key('-a', '1', inputFile.toString()),
+        key('-a', '2', inputFile.toString()),
+        key('-b', inputFile.toString()),
+        key(inputFile.toString(), 'x'),
+    ]
+
+    expect:
+    keys.unique(false).size() == keys.size()
+  }
+
+  def 'Compute a different key when the content of an input file changes'() {
+    given:
+    def key1 = key(inputFile.toString())
+
+    when:
+    inputFile.text = 'changed'
+
+    then:
+    key(inputFile.toString()) != key1
+  }
+
+  def 'No key for a non-cacheable command, a missing input file or the standard input'() {
+    expect:
+    key(descriptor(false), inputFile.toString()) == null
+    key(temp.root.toPath().resolve('missing').toString()) == null
+    key(InputSource.STDIN) == null
+  }
+
+  def 'Record and replay the output of a command'() {
+    given:
+    def out = new ByteArrayOutputStream()
+    def io = CommandIO.builder().out(out).interactive(false).build()
+
+    expect:
+    !cache.replay('k1', io)
+
+    when:
+    def recording = cache.record('k1', io)
+    recording.IO.outWriter.print('hello')
+    recording.commit()
+    recording.close()
+    io.flush()
+
+    then:
+    out.toString() == 'hello'
+    Files.exists(cacheDir.resolve('k1.out'))
+    cacheDir.toFile().list() as List == ['k1.out']
+
+    when:
+    def replayed = new ByteArrayOutputStream()
+
+    then:
+    cache.replay('k1', CommandIO.builder().out(replayed).build())
+    replayed.toString() == 'hello'
+  }
+
+  def 'Fail a replay which fails to write the output, rather than executing the command again'() {
+    given:
+    store('k1', 'hello')
+    def brokenPipe = new OutputStream() {
+      @Override
+      void write(int b) throws IOException {
+        throw new IOException('Broken pipe')
+      }
+    }
+
+    when:
+    cache.replay('k1', CommandIO.builder().out(brokenPipe).build())
+
+    then:
+    def ex = thrown(CommandException)
+    ex.message == 'Failed to replay the cached output: Broken pipe'
+  }
+
+  def 'Discard the recording if not committed'() {
+    given:
+    def recording = cache.record('k1', CommandIO.builder().out(new ByteArrayOutputStream()).build())
+    recording.IO.outWriter.print('hello')
+
+    when:
+    recording.close()
+
+    then:
+    cacheDir.toFile().list().length == 0
+  }
+
+  def 'Evict least recently used entries when exceeding the max size'() {
+    given:
+    cache = ResultCache.builder().directory(cacheDir).maxSizeBytes(10).build()
+    def io = CommandIO.builder().out(new ByteArrayOutputStream()).build()
+    store('k1', '1234')
+    store('k2', '1234')
+    Files.setLastModifiedTime(cacheDir.resolve('k1.out'), FileTime.fromMillis(1000))
+    Files.setLastModifiedTime(cacheDir.resolve('k2.out'), FileTime.fromMillis(2000))
+
+    when: 'k1 is used, so k2 becomes the least recently used'
+    cache.replay('k1', io)
+    store('k3', '1234')
+
+    then:
+    cacheDir.toFile().list() as Set == ['k1.out', 'k3.out'] as Set
+  }
+
+  def 'Fail to build with invalid settings'() {
+    when:
+    ResultCache.builder().build()
+
+    then:
+    def e1 = thrown(NullPointerException)
+    e1.message == 'directory is required'
+
+    when:
+    ResultCache.builder().maxSizeBytes(-1)
+
+    then:
+    def e2 = thrown(IllegalArgumentException)
+    e2.message == 'maxSizeBytes must be non-negative'
+  }
+
+  private void store(String key, String content) {
+    def recording = cache.record(key, CommandIO.builder().out(new ByteArrayOutputStream()).build())
+    recording.IO.outWriter.print(content)
+    recording.commit()
+    recording.close()
+  }
+
+  private String key(String... args) {
+    key(descriptor(true), args)
+  }
+
+  private String key(CommandDescriptor descriptor, String... args) {
+    def options = new OptionsAggregator().aggregate(descriptor)
+    def commandLine = new DefaultParser().parse(options, args)
+    def route = new CommandRouteResolver(descriptor).resolve(commandLine, false)
+    cache.computeKey(commandLine, route)
+  }
+
+  private CommandDescriptor descriptor(boolean cacheable) {
+    def builder = CommandDescriptor.builder('foo').description('')
+        .addOption(Option.builder('a').hasArg().build())
+        .addOption(Option.builder('b').build())
+        .addArgument(Argument.builder('in').description('').required().build())
+        .addArgument(Argument.builder('extra').description('').build())
+        .inputFileArgument('in')
+        .factory(Stub(CommandFactory))
+    if (cacheable) {
+      builder.cacheable()
+    }
+    builder.build()
+  }
+}
@@ -104,6 +104,26 @@ class RouteDescriptorSpec extends Specification {
     }
   }
 
+  def 'Use compact lists and interned names in descriptors'() {
+    given:
+    def argument = Argument.builder(new String('NAME')).description('The name').build()
+    def command = CommandDescriptor.builder(new String('command')).description('A command')
+        .addArgument(argument)
+        .factory(Mock(CommandFactory))
+        .build()
+    def route = RouteDescriptor.builder(new String('route')).description('A route').addSubCommand(command).build()
+
+    expect:
+    command.options.is(Collections.emptyList())
+    command.optionGroups.is(Collections.emptyList())
+    command.sampleInvocations.is(Collections.emptyList())
+    command.arguments.getClass() == Collections.singletonList(argument).getClass()
+    route.subCommands.getClass() == Collections.singletonList(command).getClass()
+    command.name.is('command')
+    route.name.is('route')
+    argument.name.is('NAME')
+  }
+
   private static RouteDescriptor.Builder minimalBuilder(Descriptor... subCommands) {
     def builder = RouteDescriptor.builder('cmd1').description('desc')
     for (Descriptor descriptor in subCommands) {
@@ -0,0 +1,248 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import groovy.transform.CompileStatic
+import org.apache.commons.cli.DefaultParser
+import org.apache.commons.cli.Option
+import org.apache.commons.cli.Options
+import spock.lang.Requires
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Scalability tests over synthetic command trees.
+ * <p>
+ * The measurements are slow, and run only with <tt>-Dscalability=true</tt>. For each scenario, the growth exponent
+ * of each metric (<tt>time ~ size^exponent</tt>) between the two largest sizes is compared with the recorded baseline,
+ * and the test fails if it grows by more than the tolerance.
+ * </p>
+ */
+class ScalabilitySpec extends Specification {
+
+  static final Map<String, Map<String, SyntheticCommandTree>> SCENARIOS = [
+      routes : [
+          '10 routes'  : new SyntheticCommandTree(depth: 1, fanOut: 10, options: 5, arguments: 2),
+          '1k routes'  : new SyntheticCommandTree(depth: 3, fanOut: 10, options: 5, arguments: 2),
+          '100k routes': new SyntheticCommandTree(depth: 5, fanOut: 10, options: 5, arguments: 2),
+      ],
+      options: [
+          '10 options' : new SyntheticCommandTree(depth: 1, fanOut: 1, options: 10, arguments: 2),
+          '1k options' : new SyntheticCommandTree(depth: 1, fanOut: 1, options: 1000, arguments: 2),
+      ],
+  ]
+
+  static final List<String> METRICS = ['build', 'aggregate', 'resolve', 'help', 'heap']
+
+  @Shared
+  Properties baseline = loadBaseline()
+
+  def 'Generate a synthetic command tree'() {
+    given:
+    def generator = new SyntheticCommandTree(depth: 2, fanOut: 3, options: 4, arguments: 2)
+
+    when:
+    def root = generator.build()
+
+    then:
+    generator.commandCount == 9
+    root.name == 'cli'
+    root.subCommands*.name == ['route-0', 'route-1', 'route-2']
+    root.subCommands[2].subCommands*.name == ['command-0', 'command-1', 'command-2']
+    def command = root.subCommands[2].subCommands[1] as CommandDescriptor
+    command.options*.longOpt == ['option-0', 'option-1', 'option-2', 'option-3']
+    command.arguments*.name == ['ARG0', 'ARG1']
+    command.options[0].is(root.subCommands[0].subCommands[0].options[0])
+  }
+
+  def 'Resolve all the commands of a synthetic command tree'() {
+    given:
+    def generator = new SyntheticCommandTree(depth: 2, fanOut: 3, options: 4, arguments: 2)
+    def root = generator.build()
+    def options = new OptionsAggregator().aggregate(root)
+
+    expect:
+    (0..<generator.commandCount).collect { resolve(root, options, generator.commandLine(it)).command.name } ==
+        (0..<3).collect { r -> (0..<3).collect { c -> "command-$c" } }.flatten()
+    generator.commandLine(5) == ['route-1', 'command-2', '--option-1', 'value', 'value-0', 'value-1']
+    generator.path(5, 1) == ['route-1']
+  }
+
+  @Unroll
+  @Requires({ Boolean.getBoolean('scalability') })
+  def 'Scale with the number of #scenario'() {
+    given:
+    def sizes = SCENARIOS[scenario]
+
+    when:
+    def results = sizes.collectEntries { name, generator -> [(name): measure(generator)] }
+    report(scenario, results)
+    def (small, large) = sizes.keySet().toList().takeRight(2)
+    def ratio = size(scenario, sizes[large]) / size(scenario, sizes[small])
+    def exponents = METRICS.collectEntries { metric ->
+      [(metric): Math.log(results[large][metric] / results[small][metric]) / Math.log(ratio)]
+    }
+    println "Growth exponents ($small -> $large): " + exponents.collect { k, v -> "$k=${String.format('%.2f', v)}" }.join(', ')
+
+    then:
+    def tolerance = baseline.getProperty('tolerance') as double
+    METRICS.each { metric ->
+      def expected = baseline.getProperty("${scenario}.${metric}") as double
+      assert exponents[metric] <= expected + tolerance: "$metric grows super-linearly: $scenario $metric exponent " +
+          "${String.format('%.2f', exponents[metric])} exceeds the baseline $expected (tolerance $tolerance)"
+    }
+
+    where:
+    scenario << SCENARIOS.keySet().toList()
+  }
+
+  @Unroll
+  @Requires({ Boolean.getBoolean('scalability') })
+  def 'Execute command requests with no more overhead than command lines, with #size'() {
+    given:
+    def generator = SCENARIOS[scenario][size]
+    def main = CommandsCliMain.builder().mainRoute(generator.build()).build()
+    def io = CommandIO.builder().out(new ByteArrayOutputStream()).build()
+    def random = new Random(42)
+    def indexes = (0..<100).collect { random.nextInt(generator.commandCount) }
+    List<String[]> commandLines = indexes.collect { generator.commandLine(it) }
+    List<CommandRequest> requests = indexes.collect { generator.request(it) }
+
+    when:
+    def commandLineTime = time { executeCommandLines(main, commandLines, io) } / indexes.size()
+    def requestTime = time { executeRequests(main, requests, io) } / indexes.size()
+    println String.format('Execution overhead with %s: command line %.1fus, request %.1fus', size,
+        commandLineTime / 1000, requestTime / 1000)
+
+    then:
+    def tolerance = baseline.getProperty('tolerance') as double
+    requestTime <= commandLineTime * (1 + tolerance)
+
+    where:
+    scenario  | size
+    'routes'  | '1k routes'
+    'options' | '1k options'
+  }
+
+  @Requires({ Boolean.getBoolean('scalability') })
+  def 'Keep a small heap footprint for large command trees'() {
+    given:
+    def verbose = Option.builder('v').longOpt('verbose').desc('Verbose output').build()
+    def format = Option.builder('f').longOpt('format').hasArg().desc('The format').build()
+    def argument = Argument.builder('NAME').description('The name').build()
+    def factory = Mock(CommandFactory)
+    def before = SyntheticCommandTree.usedHeap()
+
+    when:
+    def root = RouteDescriptor.builder('root').description('The root')
+    2000.times { r ->
+      def route = RouteDescriptor.builder("route-$r").description('A route')
+      100.times { c ->
+        route.addSubCommand(CommandDescriptor.builder("command-$c").description('A command')
+            .addOption(verbose)
+            .addOption(format)
+            .addArgument(argument)
+            .factory(factory)
+            .build())
+      }
+      root.addSubCommand(route.build())
+    }
+    def tree = root.build()
+    def bytesPerNode = (SyntheticCommandTree.usedHeap() - before) / (2000 * 101 + 1)
+    println "Descriptor heap footprint: ${bytesPerNode as long} bytes per node"
+
+    then:
+    tree.subCommands.size() == 2000
+    bytesPerNode < 250
+  }
+
+  @CompileStatic
+  private static void executeCommandLines(CommandsCliMain main, List<String[]> commandLines, CommandIO io) {
+    for (String[] args : commandLines) {
+      main.execute(args, io)
+    }
+  }
+
+  @CompileStatic
+  private static void executeRequests(CommandsCliMain main, List<CommandRequest> requests, CommandIO io) {
+    for (CommandRequest request : requests) {
+      main.execute(request, io)
+    }
+  }
+
+  private static double size(String scenario, SyntheticCommandTree generator) {
+    scenario == 'options' ? generator.options : generator.commandCount
+  }
+
+  private static Map<String, Double> measure(SyntheticCommandTree generator) {
+    def copies = Math.max(1, 100_000.intdiv(generator.commandCount * Math.max(1, generator.options)))
+    def before = SyntheticCommandTree.usedHeap()
+    def trees = (1..copies).collect { generator.build() }
+    def heap = (SyntheticCommandTree.usedHeap() - before) / copies
+    def root = trees[0]
+    trees = null
+    def main = CommandsCliMain.builder().mainRoute(root).build()
+    def options = new OptionsAggregator().aggregate(root)
+    def io = CommandIO.builder().out(new ByteArrayOutputStream()).build()
+    def random = new Random(42)
+    def commandLines = (0..<100).collect { generator.commandLine(random.nextInt(generator.commandCount)) }
+    def helpPath = generator.path(random.nextInt(generator.commandCount), generator.depth)
+    [
+        build    : time { generator.build() },
+        aggregate: time { new OptionsAggregator().aggregate(root) },
+        resolve  : time { commandLines.each { resolve(root, options, it) } } / commandLines.size(),
+        help     : time { main.printUsage(helpPath, io) },
+        heap     : heap as double,
+    ]
+  }
+
+  private static CommandRoute resolve(RouteDescriptor root, Options options, String[] args) {
+    def commandLine = new DefaultParser().parse(options, args)
+    new CommandRouteResolver(root).resolve(commandLine, false)
+  }
+
+  /**
+   * Measure the time of a task, as the minimum of several samples, each of at least 50ms
+   *
+   * @return the time in nanoseconds of a single run of the task
+   */
+  private static double time(Closure task) {
+    task()
+    def best = Double.MAX_VALUE
+    5.times {
+      int iterations = 0
+      long start = System.nanoTime()
+      long elapsed
+      while ((elapsed = System.nanoTime() - start) < 50_000_000L || iterations == 0) {
+        task()
+        iterations++
+      }
+      best = Math.min(best, elapsed / (double) iterations)
+    }
+    best
+  }
+
+  private static void report(String scenario, Map<String, Map<String, Double>> results) {
+    println "Scalability with the number of $scenario:"
+    println String.format('  %-12s %14s %14s %14s %14s %14s', 'size', 'build (us)', 'aggregate (us)', 'resolve (us)',
+        'help (us)', 'heap (KB)')
+    results.each { name, result ->
+      println String.format('  %-12s %14.1f %14.1f %14.1f %14.1f %14.1f', name, result.build / 1000,
+          result.aggregate / 1000, result.resolve / 1000, result.help / 1000, result.heap / 1024)
+    }
+  }
+
+  private static Properties loadBaseline() {
+    def baseline = new Properties()
+    ScalabilitySpec.getResourceAsStream('ScalabilitySpec/baseline.properties').withStream { baseline.load(it) }
+    baseline
+  }
+}
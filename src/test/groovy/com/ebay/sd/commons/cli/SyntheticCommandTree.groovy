@@ -0,0 +1,124 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import org.apache.commons.cli.Option
+
+/**
+ * Generator of synthetic command trees, for scalability tests.
+ * <p>
+ * The tree has <tt>depth</tt> levels of routes, each with <tt>fanOut</tt> sub-commands, and the commands are the leaves.
+ * Each command has the first <tt>options</tt> options and the first <tt>arguments</tt> arguments of shared pools,
+ * the same way real commands share common options. For example, <tt>depth: 3, fanOut: 10</tt> generates 1000 commands.
+ * </p>
+ */
+class SyntheticCommandTree {
+
+  int depth = 1
+  int fanOut = 10
+  int options = 0
+  int arguments = 0
+
+  private final CommandFactory factory = { ctx -> { -> } as Command } as CommandFactory
+
+  /**
+   * Get the number of generated commands
+   */
+  int getCommandCount() {
+    fanOut ** depth
+  }
+
+  /**
+   * Generate the tree
+   *
+   * @return the root route descriptor, named <tt>cli</tt>
+   */
+  RouteDescriptor build() {
+    def optionPool = (0..<options).collect { i ->
+      Option.builder().longOpt("option-$i").hasArg(i % 2 == 1).desc("Option number $i").build()
+    }
+    def argumentPool = (0..<arguments).collect { i ->
+      Argument.builder("ARG$i").description("Argument number $i").required().build()
+    }
+    (RouteDescriptor) buildLevel('cli', 0, optionPool, argumentPool)
+  }
+
+  private Descriptor buildLevel(String name, int level, List<Option> optionPool, List<Argument> argumentPool) {
+    if (level == depth) {
+      def command = CommandDescriptor.builder(name).description("The $name command").factory(factory)
+      optionPool.each { command.addOption(it) }
+      argumentPool.each { command.addArgument(it) }
+      return command.build()
+    }
+    def route = RouteDescriptor.builder(name).description("The $name route")
+    def childName = level + 1 == depth ? 'command' : 'route'
+    for (int i = 0; i < fanOut; i++) {
+      route.addSubCommand(buildLevel("$childName-$i", level + 1, optionPool, argumentPool))
+    }
+    route.build()
+  }
+
+  /**
+   * Get the command line arguments to invoke a command, with the options and arguments it requires
+   *
+   * @param index the index of the command, between 0 and the {@link #getCommandCount() command count}
+   * @return the command line arguments
+   */
+  String[] commandLine(int index) {
+    def path = []
+    for (int level = 0; level < depth; level++) {
+      path.add(0, "${level == 0 ? 'command' : 'route'}-${index % fanOut}".toString())
+      index = index.intdiv(fanOut)
+    }
+    def optionArgs = options > 1 ? ['--option-1', 'value'] : []
+    def argumentValues = (0..<arguments).collect { "value-$it".toString() }
+    (path + optionArgs + argumentValues) as String[]
+  }
+
+  /**
+   * Get the command request equivalent to the {@link #commandLine(int) command line} of a command
+   *
+   * @param index the index of the command, between 0 and the {@link #getCommandCount() command count}
+   * @return the command request
+   */
+  CommandRequest request(int index) {
+    def request = CommandRequest.builder(path(index, depth))
+    if (options > 1) {
+      request.option('option-1', 'value')
+    }
+    (0..<arguments).each { request.argument("ARG$it", "value-$it") }
+    request.build()
+  }
+
+  /**
+   * Get the command line arguments to the route or command at the given path
+   *
+   * @param index the index of the command, between 0 and the {@link #getCommandCount() command count}
+   * @param level the number of sub-commands in the path, up to the depth
+   * @return the command line arguments
+   */
+  String[] path(int index, int level) {
+    commandLine(index).take(level) as String[]
+  }
+
+  /**
+   * Get the currently used heap, after garbage collection
+   *
+   * @return the used heap in bytes
+   */
+  static long usedHeap() {
+    def runtime = Runtime.runtime
+    3.times {
+      System.gc()
+      Thread.sleep(50)
+    }
+    runtime.totalMemory() - runtime.freeMemory()
+  }
+}
@@ -175,6 +175,25 @@ Commands:
 """)
   }
 
+  def 'Command with output format option'() {
+    given:
+    CommandRoute route = CommandRoute.builder()
+        .command(CommandDescriptor.builder("foo")
+            .description("The foo command")
+            .factory(Mock(CommandFactory))
+            .build())
+        .build()
+
+    expect:
+    printUsage(route, [(UsageHelp.CTX_HELP_OPTION_AUTO_ADD):false, (OutputFormat.CTX_OUTPUT_OPTION_AUTO_ADD):true]) == normalizedUsage("""usage: foo [OPTIONS]
+
+The foo command
+
+Options:
+    --output <FORMAT>   Output format, one of: text, json, jsonl, csv, tsv
+""")
+  }
+
   def 'default help option'() {
     expect:
     UsageHelp.DEFAULT_HELP_OPTION.opt == 'h'
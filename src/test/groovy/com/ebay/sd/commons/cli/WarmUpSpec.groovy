@@ -0,0 +1,164 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class WarmUpSpec extends Specification {
+
+  def 'No warm-up by default'() {
+    given:
+    def main = CommandsCliMain.builder().mainRoute(route(new AtomicInteger())).build()
+
+    expect:
+    main.warmUp == null
+  }
+
+  def 'Warm up all routes in the background'() {
+    given:
+    def executions = new AtomicInteger()
+    def main = CommandsCliMain.builder().mainRoute(route(executions)).warmUp(10000).build()
+
+    when:
+    def done = main.warmUp.await(20, TimeUnit.SECONDS)
+
+    then:
+    done
+    main.warmUp.done
+    main.warmUp.totalRoutes == 4
+    main.warmUp.warmedRoutes == 4
+    main.warmUp.rounds == WarmUp.MAX_ROUNDS
+    executions.get() == 2 * WarmUp.MAX_ROUNDS
+  }
+
+  def 'Warm-up is bounded by time'() {
+    given:
+    def executions = new AtomicInteger()
+    def slow = CommandDescriptor.builder('slow').description('')
+        .sampleInvocation()
+        .factory({ ctx -> { -> executions.incrementAndGet(); Thread.sleep(20) } as Command } as CommandFactory)
+        .build()
+    def main = CommandsCliMain.builder().mainCommand(slow).warmUp(100).build()
+
+    when:
+    def done = main.warmUp.await(5, TimeUnit.SECONDS)
+
+    then:
+    done
+    main.warmUp.warmedRoutes == 1
+    main.warmUp.rounds < 20
+    main.warmUp.elapsedMillis < 1000
+    executions.get() < 20
+  }
+
+  def 'Routes which fail to warm up are not counted'() {
+    given:
+    def failing = CommandDescriptor.builder('fail').description('')
+        .sampleInvocation()
+        .factory({ ctx -> { -> throw new CommandException('failed') } as Command } as CommandFactory)
+        .build()
+    def root = RouteDescriptor.builder('cli').description('')
+        .addSubCommand(failing)
+        .addSubCommand(command('ok', new AtomicInteger()))
+        .build()
+    def main = CommandsCliMain.builder().mainRoute(root).warmUp(10000).build()
+
+    when:
+    main.warmUp.await(20, TimeUnit.SECONDS)
+
+    then:
+    main.warmUp.totalRoutes == 3
+    main.warmUp.warmedRoutes == 2
+  }
+
+  def 'Cancel the warm-up'() {
+    given:
+    def main = CommandsCliMain.builder().mainRoute(route(new AtomicInteger())).warmUp(60000).build()
+
+    when:
+    main.warmUp.cancel()
+
+    then:
+    main.warmUp.await(5, TimeUnit.SECONDS)
+  }
+
+  def 'Warm-up does not affect command executions'() {
+    given:
+    def executions = new AtomicInteger()
+    def main = CommandsCliMain.builder().mainRoute(route(executions)).warmUp(10000).build()
+    main.warmUp.await(20, TimeUnit.SECONDS)
+    def out = new ByteArrayOutputStream()
+
+    when:
+    main.execute(['sub', 'foo', 'real'] as String[], CommandIO.builder().out(out).build())
+
+    then:
+    out.toString() == 'hello real'
+  }
+
+  def 'Warm-up does not write to the help writer or go through the scheduler'() {
+    given:
+    def executions = new AtomicInteger()
+    def help = new StringWriter()
+    def scheduler = CommandScheduler.builder().build()
+    def main = CommandsCliMain.builder().mainRoute(route(executions))
+        .contextData([(UsageHelp.CTX_HELP_PRINT_WRITER): new PrintWriter(help)] as Map<String, Object>)
+        .scheduler(scheduler)
+        .warmUp(10000)
+        .build()
+
+    when:
+    main.warmUp.await(20, TimeUnit.SECONDS)
+
+    then:
+    executions.get() == 2 * WarmUp.MAX_ROUNDS
+    help.toString().isEmpty()
+    scheduler.getMetrics(CommandScheduler.Lane.INTERACTIVE).admitted == 0
+  }
+
+  def 'Fail to set a negative warm-up time'() {
+    when:
+    CommandsCliMain.builder().warmUp(-1)
+
+    then:
+    def e = thrown(IllegalArgumentException)
+    e.message == 'maxMillis must be non-negative'
+  }
+
+  private static RouteDescriptor route(AtomicInteger executions) {
+    def sub = RouteDescriptor.builder('sub').description('The sub route')
+        .addSubCommand(command('foo', executions))
+        .addSubCommand(CommandDescriptor.builder('bar').description('The bar command')
+            .addArgument(Argument.builder('name').description('').required().build())
+            .factory({ ctx -> { -> } as Command } as CommandFactory)
+            .build())
+        .build()
+    RouteDescriptor.builder('cli').description('The cli').addSubCommand(sub).build()
+  }
+
+  private static CommandDescriptor command(String name, AtomicInteger executions) {
+    CommandDescriptor.builder(name).description("The $name command")
+        .addArgument(Argument.builder('name').description('').required().build())
+        .sampleInvocation('sample1')
+        .sampleInvocation('sample2')
+        .factory({ CommandContext ctx ->
+          { ->
+            if (ctx.getArgumentValue('name').startsWith('sample')) {
+              executions.incrementAndGet()
+            }
+            ctx.IO.outWriter.print("hello ${ctx.getArgumentValue('name')}")
+          } as Command
+        } as CommandFactory)
+        .build()
+  }
+}
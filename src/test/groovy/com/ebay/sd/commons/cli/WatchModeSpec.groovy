@@ -0,0 +1,240 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import org.apache.commons.cli.ParseException
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Path
+import java.util.concurrent.BlockingQueue
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class WatchModeSpec extends Specification {
+
+  @Rule
+  TemporaryFolder temp = new TemporaryFolder()
+
+  BlockingQueue<Object> executions = new LinkedBlockingQueue<>()
+  AtomicInteger created = new AtomicInteger()
+  ByteArrayOutputStream err = new ByteArrayOutputStream()
+  Thread watcher
+
+  def cleanup() {
+    watcher?.interrupt()
+    watcher?.join(5000)
+  }
+
+  def 'Watchable command must have input file arguments'() {
+    when:
+    CommandDescriptor.builder('cmd')
+        .description('A command')
+        .factory({ ctx -> { -> } as Command } as CommandFactory)
+        .watchable()
+        .build()
+
+    then:
+    def ex = thrown(IllegalArgumentException)
+    ex.message == "Watchable command 'cmd' must have input file arguments"
+  }
+
+  def 'Watchable command has the watch option'() {
+    expect:
+    descriptor(false).watchable
+    descriptor(false).options.contains(WatchMode.WATCH_OPTION)
+  }
+
+  def 'Execute a command again with a new instance when its input file changes'() {
+    given:
+    def file = temp.newFile('input.txt').toPath()
+    def other = temp.newFile('other.txt').toPath()
+
+    when:
+    watch(descriptor(false), file)
+
+    then:
+    executions.poll(5, TimeUnit.SECONDS) == 'full'
+
+    when:
+    other.text = 'ignored'
+    file.text = 'changed'
+
+    then:
+    executions.poll(5, TimeUnit.SECONDS) == 'full'
+    created.get() == 2
+  }
+
+  def 'Execute an incremental command again with the changed paths of a burst of changes'() {
+    given:
+    def dir = temp.newFolder('dir').toPath()
+
+    when:
+    watch(descriptor(true), dir)
+
+    then:
+    executions.poll(5, TimeUnit.SECONDS) == 'full'
+
+    when:
+    dir.resolve('a.txt').text = 'a'
+    dir.resolve('b.txt').text = 'b'
+
+    then:
+    def changed = executions.poll(5, TimeUnit.SECONDS) as Set<Path>
+    changed.containsAll([dir.resolve('a.txt'), dir.resolve('b.txt')].collect { it.toAbsolutePath().normalize() })
+    executions.poll(500, TimeUnit.MILLISECONDS) == null
+    created.get() == 1
+  }
+
+  def 'Watch directories created under a watched directory'() {
+    given:
+    def dir = temp.newFolder('dir').toPath()
+
+    when:
+    watch(descriptor(true), dir)
+
+    then:
+    executions.poll(5, TimeUnit.SECONDS) == 'full'
+
+    when:
+    def sub = dir.resolve('sub')
+    sub.toFile().mkdir()
+
+    then:
+    executions.poll(5, TimeUnit.SECONDS) == [sub.toAbsolutePath().normalize()] as Set
+
+    when:
+    sub.resolve('c.txt').text = 'c'
+
+    then:
+    (executions.poll(5, TimeUnit.SECONDS) as Set).contains(sub.resolve('c.txt').toAbsolutePath().normalize())
+  }
+
+  def 'Report errors and continue watching'() {
+    given:
+    def file = temp.newFile('input.txt').toPath()
+    def descriptor = CommandDescriptor.builder('cmd')
+        .description('A command')
+        .addArgument(Argument.builder('FILE').description('The input').build())
+        .inputFileArgument('FILE')
+        .watchable()
+        .factory({ ctx ->
+          { ->
+            executions.add('failed')
+            throw new CommandException('boom')
+          } as Command
+        } as CommandFactory)
+        .build()
+
+    when:
+    watch(descriptor, file)
+
+    then:
+    executions.poll(5, TimeUnit.SECONDS) == 'failed'
+
+    when:
+    file.text = 'changed'
+
+    then:
+    executions.poll(5, TimeUnit.SECONDS) == 'failed'
+    err.toString().contains('ERROR: boom')
+  }
+
+  def 'Report unexpected errors and continue watching'() {
+    given:
+    def file = temp.newFile('input.txt').toPath()
+    def descriptor = CommandDescriptor.builder('cmd')
+        .description('A command')
+        .addArgument(Argument.builder('FILE').description('The input').build())
+        .inputFileArgument('FILE')
+        .watchable()
+        .factory({ ctx ->
+          executions.add('failed')
+          throw new IllegalStateException('boom')
+        } as CommandFactory)
+        .build()
+
+    when:
+    watch(descriptor, file)
+
+    then:
+    executions.poll(5, TimeUnit.SECONDS) == 'failed'
+
+    when:
+    file.text = 'changed'
+
+    then:
+    executions.poll(5, TimeUnit.SECONDS) == 'failed'
+    err.toString().contains('ERROR: UNEXPECTED ERROR: boom')
+  }
+
+  @Unroll
+  def 'Reject watching when there is nothing to watch: #path'() {
+    when:
+    watch(descriptor(false), path)
+    def result = executions.poll(5, TimeUnit.SECONDS)
+
+    then:
+    result instanceof ParseException
+    result.message == 'Nothing to watch: the input files must be in existing directories, and not the standard input'
+    executions.empty
+
+    where:
+    path << [InputSource.STDIN, '/no/such/directory/input.txt']
+  }
+
+  private void watch(CommandDescriptor descriptor, Path path) {
+    watch(descriptor, path.toString())
+  }
+
+  private void watch(CommandDescriptor descriptor, String path) {
+    def main = CommandsCliMain.builder()
+        .mainCommand(descriptor)
+        .contextData([(WatchMode.CTX_WATCH_DEBOUNCE_MILLIS): 100] as Map<String, Object>)
+        .build()
+    def io = CommandIO.builder().err(err).interactive(false).build()
+    watcher = Thread.start {
+      try {
+        main.execute(['--watch', path] as String[], io)
+      } catch (ParseException | CommandException e) {
+        executions.add(e)
+      }
+    }
+  }
+
+  private CommandDescriptor descriptor(boolean incremental) {
+    CommandDescriptor.builder('cmd')
+        .description('A command')
+        .addArgument(Argument.builder('FILE').description('The input').build())
+        .inputFileArgument('FILE')
+        .watchable()
+        .factory({ ctx ->
+          created.incrementAndGet()
+          incremental ? new TestIncrementalCommand() : ({ -> executions.add('full') } as Command)
+        } as CommandFactory)
+        .build()
+  }
+
+  private class TestIncrementalCommand implements IncrementalCommand {
+
+    @Override
+    void execute() throws CommandException {
+      executions.add('full')
+    }
+
+    @Override
+    void executeChanged(Set<Path> changedPaths) throws CommandException {
+      executions.add(changedPaths)
+    }
+  }
+}
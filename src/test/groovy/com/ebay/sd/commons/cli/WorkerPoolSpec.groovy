@@ -0,0 +1,208 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli
+
+import spock.lang.Specification
+
+import java.lang.management.ManagementFactory
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class WorkerPoolSpec extends Specification {
+
+  WorkerPool pool
+
+  def cleanup() {
+    pool?.close()
+  }
+
+  def 'Execute invocations on worker processes and merge the results in order'() {
+    given:
+    pool = WorkerPool.builder(TestWorkerMainFactory.name).workers(3).build()
+    def invocations = (1..20).collect { ['echo', "value-$it"] as String[] }
+
+    when:
+    def results = pool.executeAll(invocations)
+
+    then:
+    results*.status == [0] * 20
+    results.collect { new String(it.out, 'UTF-8') } == (1..20).collect { "value-$it\n" }
+    pool.startedProcesses <= 3
+  }
+
+  def 'Execute in a separate process with the given standard input'() {
+    given:
+    pool = WorkerPool.builder(TestWorkerMainFactory.name).workers(1).build()
+
+    when:
+    def pid = new String(pool.submit(['pid'] as String[], new byte[0]).get().out, 'UTF-8').trim()
+    def echoed = pool.submit(['cat'] as String[], 'from stdin'.getBytes('UTF-8')).get()
+
+    then:
+    pid != ManagementFactory.runtimeMXBean.name
+    new String(echoed.out, 'UTF-8') == 'from stdin'
+  }
+
+  def 'Report command errors and stray output on the standard error'() {
+    given:
+    pool = WorkerPool.builder(TestWorkerMainFactory.name).workers(1).build()
+
+    when:
+    def results = pool.executeAll([['fail'] as String[], ['stray'] as String[], ['unknown'] as String[]])
+
+    then:
+    results*.status == [1, 0, 1]
+    new String(results[0].err, 'UTF-8') == 'ERROR: boom\n'
+    new String(results[1].out, 'UTF-8') == 'ok\n'
+    new String(results[2].err, 'UTF-8').startsWith('ERROR: ')
+  }
+
+  def 'Isolate a crashed worker and restart it for the next invocation'() {
+    given:
+    pool = WorkerPool.builder(TestWorkerMainFactory.name).workers(1).build()
+
+    when:
+    def results = pool.executeAll([['echo', 'a'] as String[], ['crash'] as String[], ['echo', 'b'] as String[]])
+
+    then:
+    results*.status == [0, 1, 0]
+    new String(results[1].err, 'UTF-8').startsWith('ERROR: Worker process failed (exit code: 7)')
+    new String(results[2].out, 'UTF-8') == 'b\n'
+    pool.startedProcesses == 2
+  }
+
+  def 'Destroy a failed worker which does not exit'() {
+    given:
+    pool = WorkerPool.builder(TestWorkerMainFactory.name).workers(1).build()
+    def start = System.nanoTime()
+
+    when:
+    def results = pool.executeAll([['hang'] as String[], ['echo', 'b'] as String[]])
+
+    then:
+    results*.status == [1, 0]
+    new String(results[0].err, 'UTF-8').startsWith('ERROR: Worker process failed')
+    new String(results[1].out, 'UTF-8') == 'b\n'
+    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < WorkerPool.DISCARD_TIMEOUT_MILLIS + 30000
+  }
+
+  def 'Cancel or complete every invocation submitted while closing'() {
+    given:
+    pool = WorkerPool.builder(TestWorkerMainFactory.name).workers(2).build()
+    def futures = Collections.synchronizedList([])
+    def submitting = new CountDownLatch(1)
+    def submitter = Thread.start {
+      try {
+        while (true) {
+          futures << pool.submit(['echo', 'x'] as String[], new byte[0])
+          submitting.countDown()
+        }
+      } catch (IllegalStateException e) {
+        //Closed
+      }
+    }
+    submitting.await(10, TimeUnit.SECONDS)
+
+    when:
+    pool.close()
+    submitter.join(10000)
+
+    then:
+    !submitter.alive
+    futures.every { future ->
+      try {
+        future.get(10, TimeUnit.SECONDS).status == 0
+      } catch (CancellationException ex) {
+        true
+      }
+    }
+  }
+
+  def 'Recycle workers after a number of invocations'() {
+    given:
+    pool = WorkerPool.builder(TestWorkerMainFactory.name).workers(1).maxInvocationsPerWorker(2).build()
+
+    when:
+    def pids = pool.executeAll((1..5).collect { ['pid'] as String[] }).collect { new String(it.out, 'UTF-8') }
+
+    then:
+    pids[0] == pids[1]
+    pids[2] == pids[3]
+    pids[1] != pids[2]
+    pids[3] != pids[4]
+    pool.startedProcesses == 3
+  }
+
+  def 'Execute with an IO as if in this process'() {
+    given:
+    pool = WorkerPool.builder(TestWorkerMainFactory.name).workers(1).build()
+    def out = new ByteArrayOutputStream()
+    def err = new ByteArrayOutputStream()
+    def io = CommandIO.builder().out(out).err(err).interactive(false).build()
+
+    when:
+    pool.execute(['echo', 'x'] as String[], io)
+
+    then:
+    out.toString() == 'x\n'
+
+    when:
+    pool.execute(['fail'] as String[], io)
+
+    then:
+    def ex = thrown(CommandException)
+    ex.message == 'Worker invocation failed with status 1'
+    err.toString() == 'ERROR: boom\n'
+  }
+
+  def 'Reject invocations once closed'() {
+    given:
+    pool = WorkerPool.builder(TestWorkerMainFactory.name).workers(1).build()
+    pool.close()
+
+    when:
+    pool.submit(['echo'] as String[], new byte[0])
+
+    then:
+    thrown(IllegalStateException)
+  }
+}
+
+class TestWorkerMainFactory implements WorkerPool.MainFactory {
+
+  @Override
+  CommandsCliMain create() {
+    def route = RouteDescriptor.builder('worker').description('Worker')
+        .addSubCommand(command('echo', { CommandContext ctx -> ctx.getIO().outWriter.println(ctx.getArgumentValue('VALUE')) }))
+        .addSubCommand(command('pid', { CommandContext ctx -> ctx.getIO().outWriter.println(ManagementFactory.runtimeMXBean.name) }))
+        .addSubCommand(command('cat', { CommandContext ctx -> ctx.getIO().outWriter.print(ctx.getIO().reader.text) }))
+        .addSubCommand(command('fail', { CommandContext ctx -> throw new CommandException('boom') }))
+        .addSubCommand(command('crash', { CommandContext ctx -> Runtime.runtime.halt(7) }))
+        .addSubCommand(command('hang', { CommandContext ctx ->
+          new FileOutputStream(FileDescriptor.out).close()
+          Thread.sleep(600000)
+        }))
+        .addSubCommand(command('stray', { CommandContext ctx ->
+          System.out.println('stray output')
+          ctx.getIO().outWriter.println('ok')
+        }))
+        .build()
+    CommandsCliMain.builder().mainRoute(route).build()
+  }
+
+  private static CommandDescriptor command(String name, Closure body) {
+    CommandDescriptor.builder(name)
+        .description(name)
+        .addArgument(Argument.builder('VALUE').description('A value').required(false).build())
+        .factory({ CommandContext ctx -> { -> body(ctx) } as Command } as CommandFactory)
+        .build()
+  }
+}
@@ -0,0 +1,259 @@
+/* *********************************************************
+Copyright 2018 eBay Inc.
+Developer: Yinon Avraham
+
+Use of this source code is governed by an Apache-2.0-style
+license that can be found in the LICENSE.txt file or at
+http://www.apache.org/licenses/LICENSE-2.0.
+************************************************************/
+
+package com.ebay.sd.commons.cli.annotation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeNotNull;
+
+import com.ebay.sd.commons.cli.AbstractCommand;
+import com.ebay.sd.commons.cli.Argument;
+import com.ebay.sd.commons.cli.Command;
+import com.ebay.sd.commons.cli.CommandContext;
+import com.ebay.sd.commons.cli.CommandDescriptor;
+import com.ebay.sd.commons.cli.CommandException;
+import com.ebay.sd.commons.cli.CommandsCliMain;
+import com.ebay.sd.commons.cli.RouteDescriptor;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.ParseException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CommandAnnotationProcessorTest {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+  private File generatedDir;
+
+  @Test
+  public void testGeneratedDescriptor() {
+    CommandDescriptor descriptor = CommandAnnotationProcessorTest_CopyCommand_Descriptor.DESCRIPTOR;
+    assertEquals("copy", descriptor.getName());
+    assertEquals("Copy \"files\"", descriptor.getDescription());
+
+    List<Option> options = (List<Option>) descriptor.getOptions();
+    assertEquals(4, options.size());
+    assertEquals("v", options.get(0).getOpt());
+    assertEquals("verbose", options.get(0).getLongOpt());
+    assertFalse(options.get(0).hasArg());
+    assertNull(options.get(1).getOpt());
+    assertEquals("retries", options.get(1).getLongOpt());
+    assertTrue(options.get(1).hasArg());
+    assertEquals("N", options.get(1).getArgName());
+    assertTrue(options.get(2).isRequired());
+    assertEquals(Option.UNLIMITED_VALUES, options.get(3).getArgs());
+
+    List<Argument> arguments = descriptor.getArguments();
+    assertEquals(2, arguments.size());
+    assertEquals("TARGET", arguments.get(0).getName());
+    assertTrue(arguments.get(0).isRequired());
+    assertEquals(1, arguments.get(0).getMultiplicity());
+    assertEquals("SOURCE", arguments.get(1).getName());
+    assertEquals(Argument.UNLIMITED_VALUES, arguments.get(1).getMultiplicity());
+  }
+
+  @Test
+  public void testGeneratedBinder() throws ParseException, CommandException {
+    CommandsCliMain main = CommandsCliMain.builder()
+        .mainRoute(CommandsDispatcher.addTo(RouteDescriptor.builder("my-cli").description("My CLI")).build())
+        .build();
+    main.execute(new String[] {"copy", "target", "src1", "src2", "-v", "--retries", "3", "-m", "fast", "-x", "a", "b"});
+
+    CopyCommand command = CopyCommand.lastExecuted;
+    assertTrue(command.verbose);
+    assertEquals(3, command.retries);
+    assertEquals("fast", command.mode);
+    assertEquals(Arrays.asList("a", "b"), command.excludes);
+    assertEquals("target", command.target);
+    assertArrayEquals(new String[] {"src1", "src2"}, command.sources);
+  }
+
+  @Test
+  public void testGeneratedBinderKeepsFieldDefaults() throws ParseException, CommandException {
+    CommandsCliMain main = CommandsCliMain.builder()
+        .mainCommand(CommandAnnotationProcessorTest_CountCommand_Descriptor.DESCRIPTOR)
+        .build();
+    main.execute(new String[] {});
+    assertEquals(42L, CountCommand.lastExecuted.limit);
+    assertEquals("none", CountCommand.lastExecuted.name);
+  }
+
+  @Test
+  public void testGeneratedBinderConversionError() throws CommandException {
+    CommandsCliMain main = CommandsCliMain.builder()
+        .mainCommand(CommandAnnotationProcessorTest_CountCommand_Descriptor.DESCRIPTOR)
+        .build();
+    try {
+      main.execute(new String[] {"abc"});
+      fail("Expected a parse exception");
+    } catch (ParseException e) {
+      assertEquals("Invalid long value for LIMIT: abc", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testDispatcher() {
+    assertSame(CommandAnnotationProcessorTest_CopyCommand_Descriptor.DESCRIPTOR, CommandsDispatcher.find("copy"));
+    assertSame(CommandAnnotationProcessorTest_CountCommand_Descriptor.DESCRIPTOR, CommandsDispatcher.find("count"));
+    assertNull(CommandsDispatcher.find("unknown"));
+    assertNull(CommandsDispatcher.find(null));
+    assertEquals(2, CommandsDispatcher.getCommands().size());
+  }
+
+  @Test
+  public void testDuplicateCommandIsNotDispatched() throws IOException {
+    List<String> errors = compile(
+        "@CliCommand(name = \"same\", description = \"Same\")\n"
+            + "public class First implements Command {\n"
+            + "  public void execute() {\n"
+            + "  }\n"
+            + "}\n",
+        "@CliCommand(name = \"same\", description = \"Same\")\n"
+            + "public class Second implements Command {\n"
+            + "  public void execute() {\n"
+            + "  }\n"
+            + "}\n");
+    assertEquals(Arrays.asList("Command 'same' already exists in package 'dup'"), errors);
+    String dispatcher = new String(Files.readAllBytes(new File(generatedDir, "dup/CommandsDispatcher.java").toPath()), UTF_8);
+    assertTrue(dispatcher.contains("First_Descriptor.DESCRIPTOR"));
+    assertFalse(dispatcher.contains("Second_Descriptor.DESCRIPTOR"));
+  }
+
+  @Test
+  public void testInvalidArgumentMultiplicity() throws IOException {
+    List<String> errors = compile(
+        "@CliCommand(name = \"invalid\", description = \"Invalid\")\n"
+            + "public class Invalid implements Command {\n"
+            + "  @Arg(name = \"ONE\", description = \"\", multiplicity = 3)\n"
+            + "  String one;\n"
+            + "  @Arg(name = \"NEGATIVE\", description = \"\", multiplicity = -1)\n"
+            + "  List<String> negative;\n"
+            + "  @Arg(name = \"UNLIMITED\", description = \"\", multiplicity = Argument.UNLIMITED_VALUES)\n"
+            + "  String[] unlimited;\n"
+            + "  public void execute() {\n"
+            + "  }\n"
+            + "}\n");
+    assertEquals(Arrays.asList(
+        "@Arg multiplicity other than 1 requires an array or a List<String> field: java.lang.String",
+        "@Arg multiplicity must be positive or Argument.UNLIMITED_VALUES: -1"), errors);
+  }
+
+  /**
+   * Run the processor on sources of the <tt>dup</tt> package, each declaring a single class
+   *
+   * @return the error messages
+   */
+  private List<String> compile(String... classSources) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    assumeNotNull(compiler);
+    File sourceDir = tmp.newFolder("src", "dup");
+    generatedDir = tmp.newFolder("generated");
+    File classesDir = tmp.newFolder("classes");
+    List<File> sources = new ArrayList<>();
+    for (String classSource : classSources) {
+      String className = classSource.replaceFirst("(?s).*public class (\\w+).*", "$1");
+      File source = new File(sourceDir, className + ".java");
+      Files.write(source.toPath(), ("package dup;\n"
+          + "import com.ebay.sd.commons.cli.Argument;\n"
+          + "import com.ebay.sd.commons.cli.Command;\n"
+          + "import com.ebay.sd.commons.cli.annotation.Arg;\n"
+          + "import com.ebay.sd.commons.cli.annotation.CliCommand;\n"
+          + "import java.util.List;\n"
+          + classSource).getBytes(UTF_8));
+      sources.add(source);
+    }
+    String classpath = new File(Command.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath()
+        + File.pathSeparator
+        + new File(Option.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, UTF_8)) {
+      compiler.getTask(null, fileManager, diagnostics,
+          Arrays.asList("-proc:only", "-processor", CommandAnnotationProcessor.class.getName(), "-cp", classpath,
+              "-s", generatedDir.getPath(), "-d", classesDir.getPath()),
+          null, fileManager.getJavaFileObjectsFromFiles(sources)).call();
+    }
+    List<String> errors = new ArrayList<>();
+    for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+      if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+        errors.add(diagnostic.getMessage(null));
+      }
+    }
+    return errors;
+  }
+
+  @CliCommand(name = "copy", description = "Copy \"files\"")
+  public static class CopyCommand extends AbstractCommand {
+
+    static CopyCommand lastExecuted;
+
+    @Opt(opt = "v", longOpt = "verbose", description = "Show verbose output")
+    boolean verbose;
+    @Opt(longOpt = "retries", argName = "N")
+    int retries;
+    @Opt(opt = "m", required = true)
+    String mode;
+    @Opt(opt = "x")
+    List<String> excludes;
+    @Arg(name = "TARGET", description = "The target", required = true)
+    String target;
+    @Arg(name = "SOURCE", description = "The sources")
+    String[] sources;
+
+    public CopyCommand(CommandContext commandContext) throws ParseException {
+      super(commandContext);
+    }
+
+    @Override
+    protected void validate(CommandContext commandContext) throws ParseException {
+    }
+
+    @Override
+    public void execute() throws CommandException {
+      lastExecuted = this;
+    }
+  }
+
+  @CliCommand(name = "count", description = "Count")
+  static class CountCommand implements Command {
+
+    static CountCommand lastExecuted;
+
+    @Arg(name = "LIMIT", description = "The limit")
+    long limit = 42L;
+    @Opt(opt = "n")
+    String name = "none";
+
+    @Override
+    public void execute() throws CommandException {
+      lastExecuted = this;
+    }
+  }
+}